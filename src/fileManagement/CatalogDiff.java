@@ -0,0 +1,277 @@
+package fileManagement;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Hashtable;
+
+import support.Utilities;
+
+/**
+ * Differences between two catalogs (idFiles), such as yesterday's and today's or a backup and its offsite copy,
+ * found from the idFiles alone without reading either tree. Both catalogs are walked side by side in path order,
+ * only the differences are kept in memory.
+ *
+ * @author Tony Hsu
+ */
+public class CatalogDiff
+{
+    /**
+     * Files only in the new catalog
+     */
+    private ArrayList<CatalogEntry> added;
+    /**
+     * Files only in the old catalog
+     */
+    private ArrayList<CatalogEntry> removed;
+    /**
+     * Files at the same path with a different checksum, [old, new]
+     */
+    private ArrayList<CatalogEntry[]> changed;
+    /**
+     * Files with the same content at a different path, [old, new]
+     */
+    private ArrayList<CatalogEntry[]> moved;
+    /**
+     * Number of files the same in both
+     */
+    private long unchanged;
+
+    /**
+     * Compares two catalogs.
+     *
+     * @param oldCatalog Catalog to compare from
+     * @param newCatalog Catalog to compare to
+     * @throws IOException Unable to read a catalog, or the catalogs use different checksum algorithms
+     */
+    public CatalogDiff(CatalogReader oldCatalog, CatalogReader newCatalog) throws IOException
+    {
+        if(oldCatalog.getChecksumAlgorithm() != newCatalog.getChecksumAlgorithm())
+        {
+            throw new IOException("Catalogs use different checksums (" + oldCatalog.getChecksumAlgorithm() +
+                ", " + newCatalog.getChecksumAlgorithm() + ")");
+        }
+        added = new ArrayList<CatalogEntry>();
+        removed = new ArrayList<CatalogEntry>();
+        changed = new ArrayList<CatalogEntry[]>();
+        moved = new ArrayList<CatalogEntry[]>();
+
+        CatalogEntry a = oldCatalog.next();
+        CatalogEntry b = newCatalog.next();
+        while(a != null || b != null)
+        {
+            int result = a == null ? 1 : b == null ? -1 : a.comparePath(b);
+            if(result == 0)
+            {
+                if(a.getCRC().equalsIgnoreCase(b.getCRC()))
+                {
+                    unchanged++;
+                }
+                else
+                {
+                    changed.add(new CatalogEntry[] {a, b});
+                }
+                a = oldCatalog.next();
+                b = newCatalog.next();
+            }
+            else if(result < 0)
+            {
+                removed.add(a);
+                a = oldCatalog.next();
+            }
+            else
+            {
+                added.add(b);
+                b = newCatalog.next();
+            }
+        }
+        findMoves();
+    }
+
+    /**
+     * Opens each catalog and compares them.
+     *
+     * @param oldCatalog IdFile, or directory holding one, to compare from
+     * @param newCatalog IdFile, or directory holding one, to compare to
+     * @return Differences found
+     * @throws IOException Unable to read a catalog, or the catalogs use different checksum algorithms
+     */
+    public static CatalogDiff compare(File oldCatalog, File newCatalog) throws IOException
+    {
+        CatalogReader a = CatalogReader.openSorted(getIDFile(oldCatalog));
+        try
+        {
+            CatalogReader b = CatalogReader.openSorted(getIDFile(newCatalog));
+            try
+            {
+                return new CatalogDiff(a, b);
+            }
+            finally
+            {
+                b.close();
+            }
+        }
+        finally
+        {
+            a.close();
+        }
+    }
+
+    /**
+     * Pairs a removed file with an added file of the same checksum and size as a move.
+     */
+    private void findMoves()
+    {
+        Hashtable<String, ArrayList<CatalogEntry>> removedContent = new Hashtable<String, ArrayList<CatalogEntry>>();
+        for(CatalogEntry entry : removed)
+        {
+            String key = entry.getCRC().toLowerCase();
+            ArrayList<CatalogEntry> entries = removedContent.get(key);
+            if(entries == null)
+            {
+                entries = new ArrayList<CatalogEntry>();
+                removedContent.put(key, entries);
+            }
+            entries.add(entry);
+        }
+
+        ArrayList<CatalogEntry> stillAdded = new ArrayList<CatalogEntry>();
+        HashSet<CatalogEntry> movedFrom = new HashSet<CatalogEntry>();
+        for(CatalogEntry entry : added)
+        {
+            CatalogEntry from = null;
+            ArrayList<CatalogEntry> entries = removedContent.get(entry.getCRC().toLowerCase());
+            if(entries != null)
+            {
+                for(int i = 0; i < entries.size() && from == null; i++)
+                {
+                    CatalogEntry candidate = entries.get(i);
+                    if(candidate.getSize() < 0 || entry.getSize() < 0 || candidate.getSize() == entry.getSize())
+                    {
+                        from = entries.remove(i);
+                    }
+                }
+            }
+            if(from == null)
+            {
+                stillAdded.add(entry);
+            }
+            else
+            {
+                moved.add(new CatalogEntry[] {from, entry});
+                movedFrom.add(from);
+            }
+        }
+        added = stillAdded;
+
+        ArrayList<CatalogEntry> stillRemoved = new ArrayList<CatalogEntry>();
+        for(CatalogEntry entry : removed)
+        {
+            if(!movedFrom.contains(entry))
+            {
+                stillRemoved.add(entry);
+            }
+        }
+        removed = stillRemoved;
+    }
+
+    /**
+     * @param location IdFile, or directory holding one
+     * @return IdFile
+     */
+    private static File getIDFile(File location)
+    {
+        return location.isDirectory() ? new File(location, Utilities.ID_FILE_NAME) : location;
+    }
+
+    /**
+     * @param entries Files
+     * @return Total size of entries, unknown sizes not counted
+     */
+    public static long getBytes(ArrayList<CatalogEntry> entries)
+    {
+        long bytes = 0;
+        for(CatalogEntry entry : entries)
+        {
+            bytes += Math.max(entry.getSize(), 0);
+        }
+        return bytes;
+    }
+
+    /**
+     * @param pairs Files as [old, new]
+     * @param index 0 to total old, 1 to total new
+     * @return Total size of one side of pairs, unknown sizes not counted
+     */
+    private static long getBytes(ArrayList<CatalogEntry[]> pairs, int index)
+    {
+        long bytes = 0;
+        for(CatalogEntry[] pair : pairs)
+        {
+            bytes += Math.max(pair[index].getSize(), 0);
+        }
+        return bytes;
+    }
+
+    // Dumps totals followed by each difference
+    public String toString()
+    {
+        StringBuilder str = new StringBuilder();
+        str.append("Added: " + added.size() + " files (" + Utilities.formatBytes(getBytes(added)) + ")\n");
+        str.append("Removed: " + removed.size() + " files (" + Utilities.formatBytes(getBytes(removed)) + ")\n");
+        str.append("Changed: " + changed.size() + " files (" + Utilities.formatBytes(getBytes(changed, 0)) +
+            " -> " + Utilities.formatBytes(getBytes(changed, 1)) + ")\n");
+        str.append("Moved: " + moved.size() + " files (" + Utilities.formatBytes(getBytes(moved, 1)) + ")\n");
+        str.append("Unchanged: " + unchanged + " files\n");
+        for(CatalogEntry entry : added)
+        {
+            str.append("+ " + entry.getRelativePath() + "\n");
+        }
+        for(CatalogEntry entry : removed)
+        {
+            str.append("- " + entry.getRelativePath() + "\n");
+        }
+        for(CatalogEntry[] pair : changed)
+        {
+            str.append("~ " + pair[1].getRelativePath() + "\n");
+        }
+        for(CatalogEntry[] pair : moved)
+        {
+            str.append("> " + pair[0].getRelativePath() + " -> " + pair[1].getRelativePath() + "\n");
+        }
+        return str.toString();
+    }
+
+    // ~~~~~ Getters & Setters ~~~~~ //
+    public ArrayList<CatalogEntry> getAdded()
+    {
+        return added;
+    }
+
+    public ArrayList<CatalogEntry> getRemoved()
+    {
+        return removed;
+    }
+
+    /**
+     * @return Files at the same path with a different checksum, [old, new]
+     */
+    public ArrayList<CatalogEntry[]> getChanged()
+    {
+        return changed;
+    }
+
+    /**
+     * @return Files with the same content at a different path, [old, new]
+     */
+    public ArrayList<CatalogEntry[]> getMoved()
+    {
+        return moved;
+    }
+
+    public long getUnchanged()
+    {
+        return unchanged;
+    }
+}
@@ -0,0 +1,180 @@
+package fileManagement;
+
+import java.io.File;
+import java.util.Comparator;
+
+/**
+ * A file listed in a catalog (idFile), identified by its directory and name relative to the catalog's root.
+ * Entries are ordered by directory, then name, then checksum, the same order idFiles are written in.
+ * Directories are compared with the separator sorting first, so every sub-directory of a directory follows it
+ * before any sibling (ie. "/a", "/a/x", "/a-b").
+ *
+ * @author Tony Hsu
+ */
+public class CatalogEntry implements Comparable<CatalogEntry>
+{
+    /**
+     * Orders fileIDs ("crc \"name\"") by name, then checksum
+     */
+    public static final Comparator<String> FILE_ID_ORDER = new Comparator<String>()
+    {
+        @Override
+        public int compare(String a, String b)
+        {
+            int result = a.substring(a.indexOf('"')).compareTo(b.substring(b.indexOf('"')));
+            return result != 0 ? result : a.compareTo(b);
+        }
+    };
+
+    /**
+     * Directory relative to root, empty for root
+     */
+    private String directory;
+    /**
+     * Name of file
+     */
+    private String name;
+    /**
+     * Checksum of file
+     */
+    private String crc;
+    /**
+     * Size in bytes, -1 if unknown
+     */
+    private long size;
+    /**
+     * Last modified time in milliseconds, -1 if unknown
+     */
+    private long modified;
+
+    /**
+     * @param directory Directory relative to root, empty for root
+     * @param name Name of file
+     * @param crc Checksum of file
+     * @param size Size in bytes, -1 if unknown
+     * @param modified Last modified time in milliseconds, -1 if unknown
+     */
+    public CatalogEntry(String directory, String name, String crc, long size, long modified)
+    {
+        this.directory = directory;
+        this.name = name;
+        this.crc = crc;
+        this.size = size;
+        this.modified = modified;
+    }
+
+    /**
+     * @param directoryID UniqueID of a directory ("~level: path")
+     * @return Directory relative to root, empty for root
+     */
+    public static String getDirectory(String directoryID)
+    {
+        String[] splitDir = directoryID.split(": ", 2); // [level, path]
+        return splitDir.length == 2 ? splitDir[1] : "";
+    }
+
+    /**
+     * Compares directories with the separator sorting before any other character.
+     *
+     * @param a Directory relative to root
+     * @param b Directory relative to root
+     * @return Negative, zero or positive as a sorts before, same as or after b
+     */
+    public static int compareDirectories(String a, String b)
+    {
+        int length = Math.min(a.length(), b.length());
+        for(int i = 0; i < length; i++)
+        {
+            char x = a.charAt(i);
+            char y = b.charAt(i);
+            if(x != y)
+            {
+                return x == File.separatorChar ? -1 : y == File.separatorChar ? 1 : x - y;
+            }
+        }
+        return a.length() - b.length();
+    }
+
+    /**
+     * Compares directory and name only.
+     *
+     * @param other Entry to compare with
+     * @return Negative, zero or positive as this path sorts before, same as or after other
+     */
+    public int comparePath(CatalogEntry other)
+    {
+        int result = compareDirectories(directory, other.directory);
+        return result != 0 ? result : name.compareTo(other.name);
+    }
+
+    @Override
+    public int compareTo(CatalogEntry other)
+    {
+        int result = comparePath(other);
+        return result != 0 ? result : crc.compareTo(other.crc);
+    }
+
+    // Dumps entry as path and checksum
+    public String toString()
+    {
+        return getRelativePath() + " [" + crc + "]";
+    }
+
+    // ~~~~~ Getters & Setters ~~~~~ //
+    /**
+     * @return Directory relative to root, empty for root
+     */
+    public String getDirectory()
+    {
+        return directory;
+    }
+
+    /**
+     * @return UniqueID of the directory ("~level: path")
+     */
+    public String getDirectoryID()
+    {
+        int level = 0;
+        for(int i = directory.indexOf(File.separator); i >= 0; i = directory.indexOf(File.separator, i + 1))
+        {
+            level++;
+        }
+        return "~" + level + ": " + directory;
+    }
+
+    /**
+     * @return Path relative to root
+     */
+    public String getRelativePath()
+    {
+        return directory + File.separator + name;
+    }
+
+    /**
+     * @return UniqueID of file (crc + name)
+     */
+    public String getFileID()
+    {
+        return crc + " \"" + name + "\"";
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public String getCRC()
+    {
+        return crc;
+    }
+
+    public long getSize()
+    {
+        return size;
+    }
+
+    public long getModified()
+    {
+        return modified;
+    }
+}
@@ -0,0 +1,721 @@
+package fileManagement;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collection;
+import java.util.Map.Entry;
+
+import support.Utilities;
+import support.checksum.ChecksumAlgorithm;
+
+/**
+ * Off-heap index of a destination catalog, so a sync can tell a file is already in destination without
+ * reading its directory into memory. The index is a memory-mapped open-addressing (linear probing) hash file
+ * keyed by the DirectoryID and name of each file, so a lookup touches a page or two and the index can be larger
+ * than the heap. It is kept next to the idFile and reopened as is while the catalog is unchanged, otherwise it
+ * is rebuilt by streaming the catalog (see CatalogReader).
+ *
+ * <p>Files found during a run are marked with the generation of the run, so marks of earlier runs are
+ * cleared by bumping the generation instead of touching every slot.</p>
+ *
+ * <p>A mapped file cannot be replaced or deleted on Windows, so each rebuild or growth is written to a new
+ * numbered file ("~catalogIndex.bin", "~catalogIndex.bin.1", ...) and the highest number is the index in use.
+ * Older files are deleted once no longer mapped, or on a later open where they still were.</p>
+ *
+ * @author Tony Hsu
+ * @structure Header of HEADER_SIZE bytes, then a power of 2 number of slots of SLOT_SIZE bytes each:
+ *             [DirectoryID hash][name hash][checksum fingerprint][size][modified][state][generation marked]
+ */
+public class CatalogIndex
+{
+    /**
+     * First bytes of an index file
+     */
+    private static final int MAGIC = 0x53594958;
+    /**
+     * Layout version, an index of another version is rebuilt
+     */
+    private static final int VERSION = 1;
+    /**
+     * Bytes of the header
+     */
+    private static final int HEADER_SIZE = 64;
+    /**
+     * Bytes of a slot
+     */
+    private static final int SLOT_SIZE = 48;
+    /**
+     * Each mapping holds 2^SEGMENT_BITS slots, as a single mapping is limited to 2GB
+     */
+    private static final int SEGMENT_BITS = 22;
+    /**
+     * Fewest slots of an index
+     */
+    private static final long MIN_CAPACITY = 1024;
+
+    // header offsets
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int CAPACITY_OFFSET = 8;
+    private static final int COUNT_OFFSET = 16;
+    private static final int USED_OFFSET = 24;
+    private static final int GENERATION_OFFSET = 32;
+    private static final int ALGORITHM_OFFSET = 36;
+    private static final int STAMP_OFFSET = 40;
+
+    // slot offsets
+    private static final int DIRECTORY_HASH = 0;
+    private static final int NAME_HASH = 8;
+    private static final int FINGERPRINT = 16;
+    private static final int SIZE = 24;
+    private static final int MODIFIED = 32;
+    private static final int STATE = 40;
+    private static final int MARK = 44;
+
+    // slot states
+    private static final int EMPTY = 0;
+    private static final int USED = 1;
+    private static final int DELETED = 2;
+
+    /**
+     * Location the index belongs to
+     */
+    private File location;
+    /**
+     * Index file
+     */
+    private File file;
+    /**
+     * Number of the index file, higher for each rebuild or growth
+     */
+    private long fileNumber;
+    /**
+     * Index file opened for reading and writing
+     */
+    private RandomAccessFile randomAccessFile;
+    /**
+     * Mapping of the header
+     */
+    private MappedByteBuffer header;
+    /**
+     * Mappings of the slots
+     */
+    private MappedByteBuffer[] segments;
+    /**
+     * Number of slots, a power of 2
+     */
+    private long capacity;
+    /**
+     * Number of files in the index
+     */
+    private long count;
+    /**
+     * Number of slots not empty, including removed files
+     */
+    private long used;
+    /**
+     * Generation of the current run, slots marked with it were found this run
+     */
+    private int generation;
+    /**
+     * True if the index was rebuilt from the catalog when opened
+     */
+    private boolean rebuilt;
+
+    /**
+     * @param location Location the index belongs to
+     * @param fileNumber Number of the index file
+     * @throws IOException Unable to open index file
+     */
+    private CatalogIndex(File location, long fileNumber) throws IOException
+    {
+        this.location = location;
+        this.fileNumber = fileNumber;
+        file = getIndexFile(location, fileNumber);
+        randomAccessFile = new RandomAccessFile(file, "rw");
+    }
+
+    /**
+     * Opens the index of a location, rebuilt from its catalog if missing or out of date.
+     *
+     * @param location Location holding the idFile
+     * @param checksumAlgorithm Algorithm the checksums of the catalog were computed with
+     * @return Index of the location
+     * @throws IOException Unable to read the catalog or write the index
+     */
+    public static CatalogIndex open(File location, ChecksumAlgorithm checksumAlgorithm) throws IOException
+    {
+        long fileNumber = getCurrentFileNumber(location);
+        if(fileNumber >= 0)
+        {
+            CatalogIndex index = new CatalogIndex(location, fileNumber);
+            if(index.readHeader(checksumAlgorithm, getStamp(location)))
+            {
+                index.nextGeneration();
+                deleteOtherFiles(location, fileNumber);
+                return index;
+            }
+            index.close(); // header stays mapped until released, built under the next number instead
+        }
+        fileNumber++;
+        build(location, fileNumber, checksumAlgorithm);
+        CatalogIndex index = new CatalogIndex(location, fileNumber);
+        if(!index.readHeader(checksumAlgorithm, getStamp(location)))
+        {
+            index.close();
+            throw new IOException("Unable to build index of " + location.getPath());
+        }
+        index.rebuilt = true;
+        index.nextGeneration();
+        deleteOtherFiles(location, fileNumber);
+        return index;
+    }
+
+    /**
+     * Writes a new index of the catalog. The stamp is written last, so an index cut short is rebuilt.
+     *
+     * @param location Location holding the idFile
+     * @param fileNumber Number of the index file to write
+     * @param checksumAlgorithm Algorithm the checksums of the catalog were computed with
+     * @throws IOException Unable to read the catalog or write the index
+     */
+    private static void build(File location, long fileNumber, ChecksumAlgorithm checksumAlgorithm) throws IOException
+    {
+        File idFile = new File(location, Utilities.ID_FILE_NAME);
+        long files = 0;
+        if(idFile.exists())
+        {
+            CatalogReader reader = CatalogReader.open(idFile);
+            try
+            {
+                while(reader.next() != null)
+                {
+                    files++;
+                }
+            }
+            finally
+            {
+                reader.close();
+            }
+        }
+
+        CatalogIndex index = new CatalogIndex(location, fileNumber);
+        try
+        {
+            index.create(checksumAlgorithm, getCapacity(files));
+            if(idFile.exists())
+            {
+                CatalogReader reader = CatalogReader.open(idFile);
+                try
+                {
+                    CatalogEntry entry;
+                    while((entry = reader.next()) != null)
+                    {
+                        index.put(entry.getDirectoryID(), entry.getFileID(), new long[] {entry.getSize(), entry.getModified()});
+                    }
+                }
+                finally
+                {
+                    reader.close();
+                }
+            }
+            index.force();
+            index.header.putLong(STAMP_OFFSET, getStamp(location));
+        }
+        finally
+        {
+            index.close();
+        }
+    }
+
+    /**
+     * @param location Location holding the idFile
+     * @param fileNumber Number of the index file
+     * @return Index file of the number, "~catalogIndex.bin" for 0
+     */
+    private static File getIndexFile(File location, long fileNumber)
+    {
+        return new File(location, Utilities.INDEX_FILE_NAME + (fileNumber == 0 ? "" : "." + fileNumber));
+    }
+
+    /**
+     * @param location Location holding the idFile
+     * @return Highest number of the index files in location, -1 if none
+     */
+    private static long getCurrentFileNumber(File location)
+    {
+        long current = -1;
+        String[] names = location.list();
+        for(int i = 0; names != null && i < names.length; i++)
+        {
+            current = Math.max(current, getFileNumber(names[i]));
+        }
+        return current;
+    }
+
+    /**
+     * @param name Name of a file
+     * @return Number of the index file of name, -1 if not an index file
+     */
+    private static long getFileNumber(String name)
+    {
+        if(name.equals(Utilities.INDEX_FILE_NAME))
+        {
+            return 0;
+        }
+        if(!name.startsWith(Utilities.INDEX_FILE_NAME + "."))
+        {
+            return -1;
+        }
+        try
+        {
+            return Long.parseLong(name.substring(Utilities.INDEX_FILE_NAME.length() + 1));
+        }
+        catch (NumberFormatException e)
+        {
+            return -1;
+        }
+    }
+
+    /**
+     * Delete the index files (and files of earlier layouts, ie. ".tmp") other than the one in use.
+     * Files still mapped cannot be deleted on Windows, they are left for a later open.
+     *
+     * @param location Location holding the idFile
+     * @param fileNumber Number of the index file in use
+     */
+    private static void deleteOtherFiles(File location, long fileNumber)
+    {
+        String[] names = location.list();
+        for(int i = 0; names != null && i < names.length; i++)
+        {
+            if(names[i].startsWith(Utilities.INDEX_FILE_NAME) && getFileNumber(names[i]) != fileNumber)
+            {
+                new File(location, names[i]).delete();
+            }
+        }
+    }
+
+    /**
+     * Maps an existing index file.
+     *
+     * @param checksumAlgorithm Algorithm the checksums of the catalog were computed with
+     * @param stamp Stamp of the catalog as it is now
+     * @return False if the index is of another layout, algorithm or catalog
+     * @throws IOException Unable to map index file
+     */
+    private boolean readHeader(ChecksumAlgorithm checksumAlgorithm, long stamp) throws IOException
+    {
+        FileChannel channel = randomAccessFile.getChannel();
+        if(channel.size() < HEADER_SIZE)
+        {
+            return false;
+        }
+        header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+        capacity = header.getLong(CAPACITY_OFFSET);
+        if(header.getInt(MAGIC_OFFSET) != MAGIC || header.getInt(VERSION_OFFSET) != VERSION ||
+            header.getInt(ALGORITHM_OFFSET) != checksumAlgorithm.ordinal() || header.getLong(STAMP_OFFSET) != stamp ||
+            capacity < MIN_CAPACITY || Long.bitCount(capacity) != 1 || channel.size() < HEADER_SIZE + capacity * SLOT_SIZE)
+        {
+            return false;
+        }
+        count = header.getLong(COUNT_OFFSET);
+        used = header.getLong(USED_OFFSET);
+        generation = header.getInt(GENERATION_OFFSET);
+        mapSegments();
+        return true;
+    }
+
+    /**
+     * Lays out an empty index file. Slots are left sparse, reading as EMPTY.
+     *
+     * @param checksumAlgorithm Algorithm the checksums of the catalog were computed with
+     * @param capacity Number of slots, a power of 2
+     * @throws IOException Unable to write index file
+     */
+    private void create(ChecksumAlgorithm checksumAlgorithm, long capacity) throws IOException
+    {
+        this.capacity = capacity;
+        randomAccessFile.setLength(HEADER_SIZE + capacity * SLOT_SIZE);
+        header = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+        header.putInt(MAGIC_OFFSET, MAGIC);
+        header.putInt(VERSION_OFFSET, VERSION);
+        header.putLong(CAPACITY_OFFSET, capacity);
+        header.putInt(ALGORITHM_OFFSET, checksumAlgorithm.ordinal());
+        mapSegments();
+    }
+
+    /**
+     * Maps the slots, a segment at a time.
+     *
+     * @throws IOException Unable to map index file
+     */
+    private void mapSegments() throws IOException
+    {
+        long segmentSlots = 1L << SEGMENT_BITS;
+        segments = new MappedByteBuffer[(int)((capacity + segmentSlots - 1) >>> SEGMENT_BITS)];
+        for(int i = 0; i < segments.length; i++)
+        {
+            long slots = Math.min(segmentSlots, capacity - i * segmentSlots);
+            segments[i] = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE,
+                HEADER_SIZE + i * segmentSlots * SLOT_SIZE, slots * SLOT_SIZE);
+        }
+    }
+
+    /**
+     * Looks up a file and marks it as found this run.
+     *
+     * @param directoryID DirectoryID of file
+     * @param fileID UniqueID of file (crc + name)
+     * @return [size, modified] (-1 if unknown) if the file is in the index with the same checksum, otherwise null
+     */
+    public long[] mark(String directoryID, String fileID)
+    {
+        String[] splitStr = fileID.split(" ", 2); // [crc, "name"]
+        long slot = splitStr.length == 2 ? find(hash(directoryID), hash(splitStr[1]), false) : -1;
+        if(slot < 0 || getLong(slot, FINGERPRINT) != fingerprint(splitStr[0]))
+        {
+            return null;
+        }
+        putInt(slot, MARK, generation);
+        return new long[] {getLong(slot, SIZE), getLong(slot, MODIFIED)};
+    }
+
+    /**
+     * @param directoryID DirectoryID of file
+     * @param fileID UniqueID of file (crc + name)
+     * @return True if the file was marked as found this run
+     */
+    public boolean isMarked(String directoryID, String fileID)
+    {
+        String[] splitStr = fileID.split(" ", 2); // [crc, "name"]
+        long slot = splitStr.length == 2 ? find(hash(directoryID), hash(splitStr[1]), false) : -1;
+        return slot >= 0 && getInt(slot, MARK) == generation && getLong(slot, FINGERPRINT) == fingerprint(splitStr[0]);
+    }
+
+    /**
+     * Add a file, replacing the file of the same name in its directory.
+     *
+     * @param directoryID DirectoryID of file
+     * @param fileID UniqueID of file (crc + name)
+     * @param metadata [size, modified] if known, otherwise null
+     * @throws IOException Unable to grow index file
+     */
+    public void put(String directoryID, String fileID, long[] metadata) throws IOException
+    {
+        String[] splitStr = fileID.split(" ", 2); // [crc, "name"]
+        if(splitStr.length != 2)
+        {
+            return;
+        }
+        if((used + 1) * 10 > capacity * 7) // keep probes short
+        {
+            rehash();
+        }
+        long directoryHash = hash(directoryID);
+        long nameHash = hash(splitStr[1]);
+        long slot = find(directoryHash, nameHash, true);
+        int state = getInt(slot, STATE);
+        if(state != USED)
+        {
+            count++;
+            used += state == EMPTY ? 1 : 0;
+            header.putLong(COUNT_OFFSET, count);
+            header.putLong(USED_OFFSET, used);
+        }
+        putLong(slot, DIRECTORY_HASH, directoryHash);
+        putLong(slot, NAME_HASH, nameHash);
+        putLong(slot, FINGERPRINT, fingerprint(splitStr[0]));
+        putLong(slot, SIZE, metadata == null ? -1 : metadata[0]);
+        putLong(slot, MODIFIED, metadata == null ? -1 : metadata[1]);
+        putInt(slot, MARK, 0);
+        putInt(slot, STATE, USED);
+    }
+
+    /**
+     * Remove a file. The slot is left as DELETED so later files in its probe sequence are still found.
+     *
+     * @param directoryID DirectoryID of file
+     * @param fileID UniqueID of file (crc + name)
+     */
+    public void remove(String directoryID, String fileID)
+    {
+        String[] splitStr = fileID.split(" ", 2); // [crc, "name"]
+        long slot = splitStr.length == 2 ? find(hash(directoryID), hash(splitStr[1]), false) : -1;
+        if(slot >= 0 && getLong(slot, FINGERPRINT) == fingerprint(splitStr[0]))
+        {
+            putInt(slot, STATE, DELETED);
+            count--;
+            header.putLong(COUNT_OFFSET, count);
+        }
+    }
+
+    /**
+     * Apply the changes of each directory (see SynchiveDirectory) not yet saved to the catalog.
+     *
+     * @param directories Directories read in
+     * @throws IOException Unable to grow index file
+     */
+    public void update(Collection<SynchiveDirectory> directories) throws IOException
+    {
+        for(SynchiveDirectory dir : directories)
+        {
+            for(Entry<String, Boolean> change : dir.getChanges().entrySet())
+            {
+                if(change.getValue())
+                {
+                    put(dir.getUniqueID(), change.getKey(), dir.getMetadata(change.getKey()));
+                }
+                else
+                {
+                    remove(dir.getUniqueID(), change.getKey());
+                }
+            }
+        }
+    }
+
+    /**
+     * Tie the index to the catalog as it is now and flush it to disk, so a later run can reopen it as is.
+     */
+    public void stamp()
+    {
+        header.putLong(STAMP_OFFSET, getStamp(location));
+        force();
+    }
+
+    /**
+     * Flush the index to disk and close it.
+     */
+    public void close()
+    {
+        force();
+        try
+        {
+            randomAccessFile.close();
+        }
+        catch (IOException e)
+        {
+            // mappings stay valid until released
+        }
+    }
+
+    /**
+     * Flush the mappings to disk.
+     */
+    private void force()
+    {
+        if(header != null)
+        {
+            header.force();
+        }
+        for(int i = 0; segments != null && i < segments.length; i++)
+        {
+            segments[i].force();
+        }
+    }
+
+    /**
+     * Start a run, marks of earlier runs no longer count as found.
+     */
+    private void nextGeneration()
+    {
+        generation++;
+        header.putInt(GENERATION_OFFSET, generation);
+    }
+
+    /**
+     * Copy every file into the next index file, doubled if more than half full, and switch to it.
+     * Removed files are dropped. The file being left is never replaced, as it is still mapped.
+     *
+     * @throws IOException Unable to write index file, the index in use is left as is
+     */
+    private void rehash() throws IOException
+    {
+        CatalogIndex grown = new CatalogIndex(location, fileNumber + 1);
+        try
+        {
+            grown.create(ChecksumAlgorithm.values()[header.getInt(ALGORITHM_OFFSET)],
+                count * 2 > capacity ? capacity * 2 : capacity);
+            for(long slot = 0; slot < capacity; slot++)
+            {
+                if(getInt(slot, STATE) == USED)
+                {
+                    long to = grown.find(getLong(slot, DIRECTORY_HASH), getLong(slot, NAME_HASH), true);
+                    for(int offset = 0; offset < SLOT_SIZE; offset += 4)
+                    {
+                        grown.putInt(to, offset, getInt(slot, offset));
+                    }
+                    grown.count++;
+                    grown.used++;
+                }
+            }
+            grown.header.putLong(COUNT_OFFSET, grown.count);
+            grown.header.putLong(USED_OFFSET, grown.used);
+            grown.header.putInt(GENERATION_OFFSET, generation);
+            grown.force();
+            grown.header.putLong(STAMP_OFFSET, header.getLong(STAMP_OFFSET)); // last, so a grown index cut short is rebuilt
+        }
+        catch (IOException | RuntimeException e)
+        {
+            grown.close();
+            grown.file.delete();
+            throw e;
+        }
+
+        File previous = file;
+        force();
+        randomAccessFile.close(); // mappings of previous are released once unreachable
+        randomAccessFile = grown.randomAccessFile;
+        header = grown.header;
+        segments = grown.segments;
+        file = grown.file;
+        fileNumber = grown.fileNumber;
+        capacity = grown.capacity;
+        count = grown.count;
+        used = grown.used;
+        previous.delete(); // fails on Windows while still mapped, deleted on a later open
+    }
+
+    /**
+     * @param directoryHash Hash of DirectoryID
+     * @param nameHash Hash of name
+     * @param insert True to return the slot to insert into if not found
+     * @return Slot of the file, or slot to insert into. -1 if not found and not inserting
+     */
+    private long find(long directoryHash, long nameHash, boolean insert)
+    {
+        long mask = capacity - 1;
+        long slot = mix(directoryHash * 31 + nameHash) & mask;
+        long free = -1;
+        for(long i = 0; i < capacity; i++, slot = (slot + 1) & mask)
+        {
+            int state = getInt(slot, STATE);
+            if(state == EMPTY)
+            {
+                return !insert ? -1 : free >= 0 ? free : slot;
+            }
+            if(state == DELETED)
+            {
+                free = free < 0 ? slot : free;
+            }
+            else if(getLong(slot, DIRECTORY_HASH) == directoryHash && getLong(slot, NAME_HASH) == nameHash)
+            {
+                return slot;
+            }
+        }
+        return insert ? free : -1;
+    }
+
+    /**
+     * @param files Number of files to hold
+     * @return Number of slots holding files at most half full
+     */
+    private static long getCapacity(long files)
+    {
+        long capacity = MIN_CAPACITY;
+        while(capacity < files * 2)
+        {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    /**
+     * @param location Location holding the idFile
+     * @return Value changed whenever the idFile, its change log or shard manifest is written
+     */
+    private static long getStamp(File location)
+    {
+        long stamp = 17;
+        for(String name : new String[] {Utilities.ID_FILE_NAME, Utilities.ID_LOG_FILE_NAME, Utilities.MANIFEST_FILE_NAME})
+        {
+            File file = new File(location, name);
+            stamp = stamp * 31 + file.length();
+            stamp = stamp * 31 + file.lastModified();
+        }
+        return stamp;
+    }
+
+    /**
+     * @param str String to hash
+     * @return 64 bit FNV-1a hash of str
+     */
+    private static long hash(String str)
+    {
+        long hash = 0xcbf29ce484222325L;
+        for(int i = 0; i < str.length(); i++)
+        {
+            hash ^= str.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * @param hash Hash to spread
+     * @return Hash with its bits mixed so the low bits pick a slot evenly
+     */
+    private static long mix(long hash)
+    {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * @param crc Checksum in hexadecimal
+     * @return First 64 bits of the checksum (all of a CRC32), or its hash if not hexadecimal
+     */
+    private static long fingerprint(String crc)
+    {
+        try
+        {
+            return Long.parseUnsignedLong(crc.substring(0, Math.min(16, crc.length())), 16);
+        }
+        catch (NumberFormatException e)
+        {
+            return hash(crc);
+        }
+    }
+
+    private long getLong(long slot, int offset)
+    {
+        return segments[(int)(slot >>> SEGMENT_BITS)].getLong((int)(slot & ((1L << SEGMENT_BITS) - 1)) * SLOT_SIZE + offset);
+    }
+
+    private int getInt(long slot, int offset)
+    {
+        return segments[(int)(slot >>> SEGMENT_BITS)].getInt((int)(slot & ((1L << SEGMENT_BITS) - 1)) * SLOT_SIZE + offset);
+    }
+
+    private void putLong(long slot, int offset, long value)
+    {
+        segments[(int)(slot >>> SEGMENT_BITS)].putLong((int)(slot & ((1L << SEGMENT_BITS) - 1)) * SLOT_SIZE + offset, value);
+    }
+
+    private void putInt(long slot, int offset, int value)
+    {
+        segments[(int)(slot >>> SEGMENT_BITS)].putInt((int)(slot & ((1L << SEGMENT_BITS) - 1)) * SLOT_SIZE + offset, value);
+    }
+
+    // ~~~~~ Getters & Setters ~~~~~ //
+    /**
+     * @return Number of files in the index
+     */
+    public long getCount()
+    {
+        return count;
+    }
+
+    /**
+     * @return True if the index was rebuilt from the catalog when opened
+     */
+    public boolean wasRebuilt()
+    {
+        return rebuilt;
+    }
+}
@@ -0,0 +1,385 @@
+package fileManagement;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Hashtable;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import support.Utilities;
+
+/**
+ * Number of files and bytes of a location grouped by extension, by top-level directory and by size, to see where
+ * the bytes are before choosing which extensions to skip or add the CRC to. Read from the location's catalog
+ * (idFile, with its change log and shards) when there is one, otherwise the tree is walked in parallel.
+ *
+ * @author Tony Hsu
+ * @structure Lookup table for each group of "key" -> [files, bytes]. Files of unknown size are counted, not summed
+ */
+public class CatalogInventory
+{
+    /**
+     * Groups files are totaled by
+     */
+    public static enum Group { EXTENSION, DIRECTORY, SIZE }
+
+    /**
+     * Upper bound (exclusive) of each size bucket, the last bucket has none
+     */
+    private static final long[] SIZE_BOUNDS = {4L << 10, 64L << 10, 1L << 20, 16L << 20, 256L << 20, 4L << 30};
+    /**
+     * Label of each size bucket
+     */
+    private static final String[] SIZE_LABELS = {"< 4 KB", "4 KB - 64 KB", "64 KB - 1 MB", "1 MB - 16 MB",
+        "16 MB - 256 MB", "256 MB - 4 GB", ">= 4 GB"};
+    /**
+     * Key of files without an extension, or of unknown size
+     */
+    private static final String NONE = "(none)";
+    /**
+     * Number of threads walking a location without a catalog, reading directories is mostly waiting on disk
+     */
+    private static final int THREADS = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+
+    /**
+     * Lookup table of "Group" -> "key" -> [files, bytes]
+     */
+    private Hashtable<Group, Hashtable<String, long[]>> groups;
+    /**
+     * Total [files, bytes]
+     */
+    private long[] total;
+    /**
+     * True if read from a catalog, false if walked
+     */
+    private boolean fromCatalog;
+
+    /**
+     * Creates an empty inventory
+     */
+    public CatalogInventory()
+    {
+        groups = new Hashtable<Group, Hashtable<String, long[]>>();
+        for(Group group : Group.values())
+        {
+            groups.put(group, new Hashtable<String, long[]>());
+        }
+        total = new long[2];
+    }
+
+    /**
+     * Totals every file of a catalog.
+     *
+     * @param catalog Catalog to read
+     * @return Inventory of the catalog
+     * @throws IOException Unable to read catalog
+     */
+    public static CatalogInventory fromCatalog(CatalogReader catalog) throws IOException
+    {
+        CatalogInventory inventory = new CatalogInventory();
+        inventory.fromCatalog = true;
+        CatalogEntry entry;
+        while((entry = catalog.next()) != null)
+        {
+            inventory.add(entry.getDirectory(), entry.getName(), entry.getSize());
+        }
+        return inventory;
+    }
+
+    /**
+     * Totals every file of a location, from its catalog if it has one.
+     *
+     * @param location Directory, or idFile of one
+     * @return Inventory of the location
+     * @throws IOException Unable to read catalog
+     */
+    public static CatalogInventory of(File location) throws IOException
+    {
+        File idFile = location.isDirectory() ? new File(location, Utilities.ID_FILE_NAME) : location;
+        if(idFile.exists())
+        {
+            CatalogReader catalog = CatalogReader.open(idFile);
+            try
+            {
+                return fromCatalog(catalog);
+            }
+            finally
+            {
+                catalog.close();
+            }
+        }
+        if(!location.isDirectory())
+        {
+            throw new IOException("\"" + location.getPath() + "\" is not a directory");
+        }
+        CatalogInventory inventory = new CatalogInventory();
+        ForkJoinPool pool = new ForkJoinPool(THREADS);
+        try
+        {
+            pool.invoke(inventory.new DirectoryTask(location, ""));
+        }
+        finally
+        {
+            pool.shutdownNow();
+        }
+        return inventory;
+    }
+
+    /**
+     * Reads the files of a directory, each sub-directory is forked into its own task.
+     * Skips what a sync skips: the leftover folder and files Synchive keeps next to the files it syncs.
+     */
+    @SuppressWarnings("serial")
+    private class DirectoryTask extends RecursiveAction
+    {
+        /**
+         * Directory to read
+         */
+        private File dir;
+        /**
+         * Directory relative to root, empty for root
+         */
+        private String directory;
+
+        private DirectoryTask(File dir, String directory)
+        {
+            this.dir = dir;
+            this.directory = directory;
+        }
+
+        @Override
+        protected void compute()
+        {
+            File[] files = dir.listFiles();
+            if(files == null) // unreadable directory
+            {
+                return;
+            }
+            ArrayList<DirectoryTask> subDirectories = new ArrayList<DirectoryTask>();
+            for(File f : files)
+            {
+                if(f.isDirectory())
+                {
+                    if(!f.getName().equals(Utilities.LEFTOVER_FOLDER))
+                    {
+                        DirectoryTask task = new DirectoryTask(f, directory + File.separator + f.getName());
+                        task.fork();
+                        subDirectories.add(task);
+                    }
+                }
+                else if(!Utilities.isGeneratedFile(f.getName()))
+                {
+                    add(directory, f.getName(), f.length());
+                }
+            }
+            for(DirectoryTask task : subDirectories)
+            {
+                task.join();
+            }
+        }
+    }
+
+    /**
+     * Count a file in each group.
+     *
+     * @param directory Directory relative to root, empty for root
+     * @param name Name of file
+     * @param size Size in bytes, -1 if unknown
+     */
+    public synchronized void add(String directory, String name, long size)
+    {
+        String extension = Utilities.getExtensionType(name).toLowerCase();
+        int end = directory.indexOf(File.separatorChar, 1);
+        count(Group.EXTENSION, extension.isEmpty() ? NONE : extension, size);
+        count(Group.DIRECTORY, directory.isEmpty() ? File.separator : end < 0 ? directory : directory.substring(0, end), size);
+        count(Group.SIZE, getSizeBucket(size), size);
+        total[0]++;
+        total[1] += Math.max(size, 0);
+    }
+
+    /**
+     * @param group Group to count in
+     * @param key Key within the group
+     * @param size Size in bytes, -1 if unknown
+     */
+    private void count(Group group, String key, long size)
+    {
+        long[] totals = groups.get(group).get(key);
+        if(totals == null)
+        {
+            totals = new long[2];
+            groups.get(group).put(key, totals);
+        }
+        totals[0]++;
+        totals[1] += Math.max(size, 0);
+    }
+
+    /**
+     * @param size Size in bytes, -1 if unknown
+     * @return Label of the size bucket
+     */
+    private static String getSizeBucket(long size)
+    {
+        if(size < 0)
+        {
+            return NONE;
+        }
+        for(int i = 0; i < SIZE_BOUNDS.length; i++)
+        {
+            if(size < SIZE_BOUNDS[i])
+            {
+                return SIZE_LABELS[i];
+            }
+        }
+        return SIZE_LABELS[SIZE_LABELS.length - 1];
+    }
+
+    /**
+     * Write every group to a CSV file, one line per key: "group,key,files,bytes,percent of bytes".
+     *
+     * @param csvFile File to write
+     * @throws IOException Unable to write file
+     */
+    public synchronized void writeToCSV(File csvFile) throws IOException
+    {
+        BufferedWriter output = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(csvFile),
+            Charset.forName("UTF-8").newEncoder()));
+        try
+        {
+            output.write("group,key,files,bytes,percent");
+            output.newLine();
+            for(Group group : Group.values())
+            {
+                for(String key : getKeys(group))
+                {
+                    long[] totals = groups.get(group).get(key);
+                    output.write(group.name().toLowerCase() + "," + quote(key) + "," + totals[0] + "," + totals[1] + "," +
+                        String.format(Locale.ROOT, "%.2f", getPercent(totals[1])));
+                    output.newLine();
+                }
+            }
+        }
+        finally
+        {
+            output.close();
+        }
+    }
+
+    /**
+     * @param value Value of a CSV field
+     * @return Value quoted if it holds a comma, quote or line break
+     */
+    private static String quote(String value)
+    {
+        if(value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0)
+        {
+            return value;
+        }
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+
+    /**
+     * @param bytes Bytes of a key
+     * @return Percent of all bytes
+     */
+    private double getPercent(long bytes)
+    {
+        return total[1] == 0 ? 0 : bytes * 100.0 / total[1];
+    }
+
+    // Dumps totals followed by the largest keys of each group
+    public synchronized String toString()
+    {
+        StringBuilder str = new StringBuilder();
+        str.append("Total: " + total[0] + " files (" + Utilities.formatBytes(total[1]) + ")" +
+            (fromCatalog ? "" : ", no catalog, read from disk") + "\n");
+        for(Group group : Group.values())
+        {
+            str.append("By " + group.name().toLowerCase() + ":\n");
+            ArrayList<String> keys = getKeys(group);
+            for(int i = 0; i < keys.size() && (group == Group.SIZE || i < 20); i++)
+            {
+                long[] totals = groups.get(group).get(keys.get(i));
+                str.append("  " + keys.get(i) + ": " + totals[0] + " files (" + Utilities.formatBytes(totals[1]) + ", " +
+                    String.format("%.1f", getPercent(totals[1])) + "%)\n");
+            }
+            if(group != Group.SIZE && keys.size() > 20)
+            {
+                str.append("  ... " + (keys.size() - 20) + " more\n");
+            }
+        }
+        return str.toString();
+    }
+
+    // ~~~~~ Getters & Setters ~~~~~ //
+    /**
+     * @param group Group of keys
+     * @return Keys of the group, size buckets smallest first, others largest bytes first
+     */
+    public synchronized ArrayList<String> getKeys(Group group)
+    {
+        Hashtable<String, long[]> table = groups.get(group);
+        ArrayList<String> keys = new ArrayList<String>();
+        if(group == Group.SIZE)
+        {
+            for(String label : SIZE_LABELS)
+            {
+                if(table.containsKey(label))
+                {
+                    keys.add(label);
+                }
+            }
+            if(table.containsKey(NONE))
+            {
+                keys.add(NONE);
+            }
+            return keys;
+        }
+        keys.addAll(table.keySet());
+        Collections.sort(keys, new Comparator<String>()
+        {
+            @Override
+            public int compare(String a, String b)
+            {
+                int result = Long.compare(table.get(b)[1], table.get(a)[1]);
+                return result != 0 ? result : a.compareTo(b);
+            }
+        });
+        return keys;
+    }
+
+    /**
+     * @param group Group of key
+     * @param key Key within the group (ie. ".mkv", directory relative to root, size bucket)
+     * @return [files, bytes], null if no file
+     */
+    public synchronized long[] get(Group group, String key)
+    {
+        long[] totals = groups.get(group).get(key);
+        return totals == null ? null : new long[] {totals[0], totals[1]};
+    }
+
+    /**
+     * @return Total [files, bytes]
+     */
+    public synchronized long[] getTotal()
+    {
+        return new long[] {total[0], total[1]};
+    }
+
+    /**
+     * @return True if read from a catalog, false if walked
+     */
+    public boolean isFromCatalog()
+    {
+        return fromCatalog;
+    }
+}
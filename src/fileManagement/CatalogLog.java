@@ -0,0 +1,263 @@
+package fileManagement;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.Hashtable;
+import java.util.Map.Entry;
+
+import support.Utilities;
+
+/**
+ * Append-only change log kept next to an idFile, so a run only writes the files it added or removed
+ * instead of rewriting the whole idFile. The log is tied to the idFile it was started against; once the
+ * idFile is rewritten (compacted) the log is deleted, and a log left behind for another idFile is ignored.
+ * A later record of a file supersedes both earlier records and the idFile line of that file.
+ *
+ * @author Tony Hsu
+ * @structure Header "Synchive log - base=[idFile length] [idFile last modified]", then each line is
+ *             "[op]\t[DirectoryID]\t[FileID]" followed by "\t[size] [modified]" if known.
+ *             op: '+' file added, '-' file removed.
+ */
+public class CatalogLog
+{
+    /**
+     * Change of a file that was removed
+     */
+    public static final long[] REMOVED = new long[0];
+    /**
+     * Prefix of an added record
+     */
+    private static final char ADDED_RECORD = '+';
+    /**
+     * Prefix of a removed record
+     */
+    private static final char REMOVED_RECORD = '-';
+    /**
+     * Separator between fields of a record
+     */
+    private static final String DELIMITER = "\t";
+    /**
+     * Prefix of the header
+     */
+    private static final String HEADER_PREFIX = "Synchive log - base=";
+
+    /**
+     * IdFile the log belongs to
+     */
+    private File idFile;
+    /**
+     * Location of the log
+     */
+    private File logFile;
+    /**
+     * Lookup table of "DirectoryID" -> "FileID" -> [size, modified] if added or REMOVED
+     */
+    private Hashtable<String, Hashtable<String, long[]>> changes;
+    /**
+     * Records in the log, including superseded ones
+     */
+    private int records;
+    /**
+     * True if the log on disk belongs to the idFile
+     */
+    private boolean valid;
+
+    /**
+     * Opens the log of an idFile, reading in its records.
+     *
+     * @param idFile IdFile the log belongs to
+     */
+    public CatalogLog(File idFile)
+    {
+        this.idFile = idFile;
+        logFile = new File(idFile.getParentFile(), Utilities.ID_LOG_FILE_NAME);
+        changes = new Hashtable<String, Hashtable<String, long[]>>();
+        if(logFile.exists())
+        {
+            try
+            {
+                readFromLog();
+            }
+            catch (IOException e)
+            {
+                // unreadable log, the idFile alone is used
+                changes.clear();
+                records = 0;
+                valid = false;
+            }
+        }
+    }
+
+    /**
+     * Reads in the records of the log if it belongs to the idFile.
+     * Malformed lines (ie. partially written from power loss) are skipped.
+     *
+     * @throws IOException Unable to read log
+     */
+    private void readFromLog() throws IOException
+    {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(logFile), "UTF8"));
+        try
+        {
+            String header = reader.readLine();
+            valid = header != null && header.equals(getHeader());
+            if(!valid) // written against another idFile
+            {
+                return;
+            }
+            String str;
+            while((str = reader.readLine()) != null)
+            {
+                String[] split = str.split(DELIMITER, 4); // [op, directoryID, fileID, size modified]
+                if(split.length < 3 || split[0].length() != 1 || split[2].indexOf('"') == split[2].lastIndexOf('"'))
+                {
+                    continue;
+                }
+                long[] change = REMOVED;
+                if(split[0].charAt(0) == ADDED_RECORD)
+                {
+                    change = new long[] {-1, -1};
+                    String[] metadata = split.length == 4 ? split[3].split(" ") : new String[0];
+                    if(metadata.length == 2)
+                    {
+                        try
+                        {
+                            change = new long[] {Long.parseLong(metadata[0]), Long.parseLong(metadata[1])};
+                        }
+                        catch (NumberFormatException e)
+                        {
+                            // metadata unknown
+                        }
+                    }
+                }
+                else if(split[0].charAt(0) != REMOVED_RECORD)
+                {
+                    continue;
+                }
+                getChanges(split[1], true).put(split[2], change);
+                records++;
+            }
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+
+    /**
+     * Appends the changes of each directory and flushes them to disk, then forgets the changes.
+     *
+     * @param directories Directories to save
+     * @throws IOException Unable to write log
+     */
+    public void append(Collection<SynchiveDirectory> directories) throws IOException
+    {
+        FileOutputStream outputStream = new FileOutputStream(logFile, valid);
+        BufferedWriter output = new BufferedWriter(new OutputStreamWriter(outputStream, Charset.forName("UTF-8").newEncoder()));
+        try
+        {
+            if(!valid)
+            {
+                output.write(getHeader());
+                output.newLine();
+                valid = true;
+            }
+            for(SynchiveDirectory dir : directories)
+            {
+                for(Entry<String, Boolean> entry : dir.getChanges().entrySet())
+                {
+                    long[] metadata = dir.getMetadata(entry.getKey());
+                    long[] change = !entry.getValue() ? REMOVED : metadata == null ? new long[] {-1, -1} : metadata;
+                    output.write(change == REMOVED ? REMOVED_RECORD : ADDED_RECORD);
+                    output.write(DELIMITER + dir.getUniqueID() + DELIMITER + entry.getKey());
+                    if(metadata != null && change != REMOVED)
+                    {
+                        output.write(DELIMITER + metadata[0] + " " + metadata[1]);
+                    }
+                    output.newLine();
+                    getChanges(dir.getUniqueID(), true).put(entry.getKey(), change);
+                    records++;
+                }
+            }
+            output.flush();
+            outputStream.getChannel().force(false);
+        }
+        finally
+        {
+            output.close();
+        }
+        for(SynchiveDirectory dir : directories)
+        {
+            dir.clearChanges();
+        }
+    }
+
+    /**
+     * Removes the log, used once its records are part of a rewritten idFile.
+     */
+    public void delete()
+    {
+        logFile.delete();
+        changes.clear();
+        records = 0;
+        valid = false;
+    }
+
+    /**
+     * @return Header tying the log to the idFile as it is now
+     */
+    private String getHeader()
+    {
+        return HEADER_PREFIX + idFile.length() + " " + idFile.lastModified();
+    }
+
+    /**
+     * @param dirID DirectoryID
+     * @param create True to create an empty table if none
+     * @return Lookup table of "FileID" -> [size, modified] if added or REMOVED, null if none
+     */
+    private Hashtable<String, long[]> getChanges(String dirID, boolean create)
+    {
+        Hashtable<String, long[]> table = changes.get(dirID);
+        if(table == null && create)
+        {
+            table = new Hashtable<String, long[]>();
+            changes.put(dirID, table);
+        }
+        return table;
+    }
+
+    // ~~~~~ Getters & Setters ~~~~~ //
+    /**
+     * @param dirID DirectoryID as written in the idFile
+     * @return Lookup table of "FileID" -> [size, modified] if added or REMOVED, null if none
+     */
+    public Hashtable<String, long[]> getChanges(String dirID)
+    {
+        return getChanges(dirID, false);
+    }
+
+    /**
+     * @return Lookup table of "DirectoryID" -> "FileID" -> [size, modified] if added or REMOVED
+     */
+    public Hashtable<String, Hashtable<String, long[]>> getChanges()
+    {
+        return changes;
+    }
+
+    /**
+     * @return Records in the log, including superseded ones
+     */
+    public int getRecords()
+    {
+        return records;
+    }
+}
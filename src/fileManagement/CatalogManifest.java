@@ -0,0 +1,290 @@
+package fileManagement;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Hashtable;
+
+import support.Utilities;
+
+/**
+ * Lists the directories of a location that have their own idFile (shard) instead of being in the root idFile.
+ * Every directory at the shard depth owns a shard holding itself and its sub-directories, so a shard can be read
+ * only when a sync reaches that part of the tree.
+ *
+ * @author Tony Hsu
+ * @structure Header "Synchive manifest - depth=[depth]", then each line is "[checksum]\t[files]\t[DirectoryID]".
+ *             checksum: CRC32 of the shard's idFile, files: number of files listed in it.
+ */
+public class CatalogManifest
+{
+    /**
+     * Prefix of the header
+     */
+    private static final String HEADER_PREFIX = "Synchive manifest - depth=";
+    /**
+     * Separator between fields of a line
+     */
+    private static final String DELIMITER = "\t";
+
+    /**
+     * An idFile holding a directory and its sub-directories
+     */
+    public static class Shard
+    {
+        /**
+         * DirectoryID of the shard's directory, relative to root
+         */
+        private String directoryID;
+        /**
+         * CRC32 of the shard's idFile
+         */
+        private String checksum;
+        /**
+         * Number of files listed in the shard
+         */
+        private long files;
+
+        /**
+         * @param directoryID DirectoryID of the shard's directory, relative to root
+         * @param checksum CRC32 of the shard's idFile
+         * @param files Number of files listed in the shard
+         */
+        public Shard(String directoryID, String checksum, long files)
+        {
+            this.directoryID = directoryID;
+            this.checksum = checksum;
+            this.files = files;
+        }
+
+        public String getDirectoryID()
+        {
+            return directoryID;
+        }
+
+        /**
+         * @return Directory of the shard relative to root
+         */
+        public String getDirectory()
+        {
+            return CatalogEntry.getDirectory(directoryID);
+        }
+
+        public String getChecksum()
+        {
+            return checksum;
+        }
+
+        public long getFiles()
+        {
+            return files;
+        }
+    }
+
+    /**
+     * Location the manifest belongs to
+     */
+    private File root;
+    /**
+     * Depth of the directories owning a shard
+     */
+    private int depth;
+    /**
+     * Lookup table of "DirectoryID" -> Shard
+     */
+    private Hashtable<String, Shard> shards;
+
+    /**
+     * Creates an empty manifest
+     *
+     * @param root Location the manifest belongs to
+     * @param depth Depth of the directories owning a shard
+     */
+    public CatalogManifest(File root, int depth)
+    {
+        this.root = root;
+        this.depth = depth;
+        shards = new Hashtable<String, Shard>();
+    }
+
+    /**
+     * @param root Location to read the manifest of
+     * @return Manifest of root, null if none or unreadable
+     */
+    public static CatalogManifest read(File root)
+    {
+        File file = new File(root, Utilities.MANIFEST_FILE_NAME);
+        if(!file.exists())
+        {
+            return null;
+        }
+        try
+        {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF8"));
+            try
+            {
+                String header = reader.readLine();
+                if(header == null || !header.startsWith(HEADER_PREFIX))
+                {
+                    return null;
+                }
+                CatalogManifest manifest = new CatalogManifest(root, Integer.parseInt(header.substring(HEADER_PREFIX.length())));
+                String str;
+                while((str = reader.readLine()) != null)
+                {
+                    String[] split = str.split(DELIMITER, 3); // [checksum, files, directoryID]
+                    if(split.length == 3)
+                    {
+                        manifest.put(new Shard(split[2], split[0], Long.parseLong(split[1])));
+                    }
+                }
+                return manifest;
+            }
+            finally
+            {
+                reader.close();
+            }
+        }
+        catch (IOException | NumberFormatException e)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Write out the manifest aside and swap it in. An empty manifest is removed instead.
+     *
+     * @throws IOException Unable to write manifest
+     */
+    public void write() throws IOException
+    {
+        File file = new File(root, Utilities.MANIFEST_FILE_NAME);
+        if(shards.isEmpty())
+        {
+            Files.deleteIfExists(file.toPath());
+            return;
+        }
+        File tempFile = new File(root, Utilities.MANIFEST_FILE_NAME + ".tmp");
+        FileOutputStream outputStream = new FileOutputStream(tempFile);
+        BufferedWriter output = new BufferedWriter(new OutputStreamWriter(outputStream, Charset.forName("UTF-8").newEncoder()));
+        try
+        {
+            output.write(HEADER_PREFIX + depth);
+            output.newLine();
+            for(Shard shard : getShards())
+            {
+                output.write(shard.getChecksum() + DELIMITER + shard.getFiles() + DELIMITER + shard.getDirectoryID());
+                output.newLine();
+            }
+            output.flush();
+            outputStream.getChannel().force(false);
+        }
+        finally
+        {
+            output.close();
+        }
+        try
+        {
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (AtomicMoveNotSupportedException e)
+        {
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * @param directoryID DirectoryID relative to root
+     * @param depth Depth of the directories owning a shard
+     * @return DirectoryID of the shard holding the directory, null if the directory is above the shard depth
+     */
+    public static String getShardID(String directoryID, int depth)
+    {
+        if(depth <= 0)
+        {
+            return null;
+        }
+        String directory = CatalogEntry.getDirectory(directoryID);
+        int index = 0;
+        for(int i = 0; i < depth; i++) // directory starts with a separator
+        {
+            index = directory.indexOf(File.separatorChar, index + 1);
+            if(index < 0)
+            {
+                return i == depth - 1 && !directory.isEmpty() ? "~" + depth + ": " + directory : null;
+            }
+        }
+        return "~" + depth + ": " + directory.substring(0, index);
+    }
+
+    /**
+     * @param shard Shard of this manifest
+     * @return IdFile of the shard
+     */
+    public File getIDFile(Shard shard)
+    {
+        return new File(root.getPath() + shard.getDirectory() + File.separator + Utilities.ID_FILE_NAME);
+    }
+
+    /**
+     * Add or replace a shard
+     *
+     * @param shard Shard to add
+     */
+    public void put(Shard shard)
+    {
+        shards.put(shard.getDirectoryID(), shard);
+    }
+
+    /**
+     * @param directoryID DirectoryID of the shard
+     */
+    public void remove(String directoryID)
+    {
+        shards.remove(directoryID);
+    }
+
+    // ~~~~~ Getters & Setters ~~~~~ //
+    /**
+     * @param directoryID DirectoryID of the shard
+     * @return Shard, null if none
+     */
+    public Shard get(String directoryID)
+    {
+        return shards.get(directoryID);
+    }
+
+    /**
+     * @return Shards in catalog order (see CatalogEntry)
+     */
+    public ArrayList<Shard> getShards()
+    {
+        ArrayList<Shard> list = new ArrayList<Shard>(shards.values());
+        Collections.sort(list, new Comparator<Shard>()
+        {
+            @Override
+            public int compare(Shard a, Shard b)
+            {
+                return CatalogEntry.compareDirectories(a.getDirectory(), b.getDirectory());
+            }
+        });
+        return list;
+    }
+
+    public int getDepth()
+    {
+        return depth;
+    }
+}
@@ -0,0 +1,515 @@
+package fileManagement;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+
+import support.checksum.ChecksumAlgorithm;
+import synchive.Globals;
+
+/**
+ * Reads the entries of a catalog (idFile) in order (see CatalogEntry). A sorted idFile is streamed
+ * a line at a time so memory does not grow with its size, otherwise entries are sorted in memory.
+ * Records of the idFile's change log (see CatalogLog) supersede its lines. Shards listed in a manifest beside the
+ * idFile (see CatalogManifest) are merged in, one shard open at a time as each holds a contiguous part of the order.
+ *
+ * @author Tony Hsu
+ * @structure idFile: header line, then each directory line ("~level: path") followed by its file lines
+ *             ("crc \"name\"", optionally followed by " size modified")
+ */
+public class CatalogReader
+{
+    /**
+     * Prefix of the checksum algorithm within the idFile header
+     */
+    private static final String CHECKSUM_HEADER_PREFIX = " - checksum=";
+    /**
+     * Prefix of the root within the idFile header
+     */
+    private static final String ROOT_HEADER_PREFIX = " - root=";
+
+    /**
+     * IdFile being streamed, null if entries are in memory
+     */
+    private BufferedReader reader;
+    /**
+     * Entries in order, null if streaming
+     */
+    private Iterator<CatalogEntry> entries;
+    /**
+     * Directory line of the file lines being streamed
+     */
+    private String directoryLine;
+    /**
+     * Directory of the file lines being streamed
+     */
+    private String directory;
+    /**
+     * Change log of the idFile being streamed
+     */
+    private CatalogLog log;
+    /**
+     * Files added by the change log in order, merged into the idFile's entries
+     */
+    private ArrayList<CatalogEntry> logged;
+    /**
+     * Index of the next entry of logged
+     */
+    private int loggedIndex;
+    /**
+     * Next entry read from the idFile, null if not read yet
+     */
+    private CatalogEntry peeked;
+    /**
+     * Next entry of the idFile merged with its change log, null if not read yet
+     */
+    private CatalogEntry merged;
+    /**
+     * Directory of the idFile relative to root, prefixed to each directory read
+     */
+    private String prefix;
+    /**
+     * Manifest listing the shards of the idFile, null if none
+     */
+    private CatalogManifest manifest;
+    /**
+     * Shards of the idFile in order
+     */
+    private ArrayList<CatalogManifest.Shard> shards;
+    /**
+     * Index of the next shard to open
+     */
+    private int shardIndex;
+    /**
+     * Shard being streamed, null if none open
+     */
+    private CatalogReader shard;
+    /**
+     * Next entry of the shards, null if not read yet
+     */
+    private CatalogEntry shardEntry;
+    /**
+     * Last entry returned, to check the idFile is sorted
+     */
+    private CatalogEntry last;
+    /**
+     * True to read the rest into memory on the first entry out of order, instead of failing (see open)
+     */
+    private boolean sortOnDemand;
+    /**
+     * Algorithm the checksums were computed with
+     */
+    private ChecksumAlgorithm checksumAlgorithm;
+    /**
+     * Root recorded in the idFile header, empty if unknown
+     */
+    private String root;
+
+    /**
+     * Streams a sorted idFile.
+     *
+     * @param idFile IdFile to read
+     * @throws IOException Unable to read or bad format
+     */
+    public CatalogReader(File idFile) throws IOException
+    {
+        this(idFile, "");
+        manifest = CatalogManifest.read(idFile.getAbsoluteFile().getParentFile());
+        if(manifest != null)
+        {
+            shards = manifest.getShards();
+        }
+    }
+
+    /**
+     * Streams a sorted idFile holding part of a location.
+     *
+     * @param idFile IdFile to read
+     * @param prefix Directory of the idFile relative to root
+     * @throws IOException Unable to read or bad format
+     */
+    private CatalogReader(File idFile, String prefix) throws IOException
+    {
+        this.prefix = prefix;
+        shards = new ArrayList<CatalogManifest.Shard>();
+        reader = new BufferedReader(new InputStreamReader(new FileInputStream(idFile), "UTF8"));
+        String header = reader.readLine();
+        if(header == null || !header.startsWith("Synchive "))
+        {
+            reader.close();
+            throw new IOException("Bad format found");
+        }
+        checksumAlgorithm = getChecksum(header);
+        int index = header.indexOf(ROOT_HEADER_PREFIX);
+        root = index < 0 ? "" : header.substring(index + ROOT_HEADER_PREFIX.length());
+
+        log = new CatalogLog(idFile);
+        logged = new ArrayList<CatalogEntry>();
+        for(Entry<String, Hashtable<String, long[]>> dir : log.getChanges().entrySet())
+        {
+            String directory = prefix + CatalogEntry.getDirectory(dir.getKey());
+            for(Entry<String, long[]> change : dir.getValue().entrySet())
+            {
+                if(change.getValue() != CatalogLog.REMOVED)
+                {
+                    logged.add(parseFile(change.getKey(), directory, change.getValue()));
+                }
+            }
+        }
+        Collections.sort(logged);
+    }
+
+    /**
+     * Reads entries held in memory, sorted first.
+     *
+     * @param entries Entries in any order
+     * @param checksumAlgorithm Algorithm the checksums were computed with
+     */
+    public CatalogReader(List<CatalogEntry> entries, ChecksumAlgorithm checksumAlgorithm)
+    {
+        Collections.sort(entries);
+        this.entries = entries.iterator();
+        this.checksumAlgorithm = checksumAlgorithm;
+        root = "";
+    }
+
+    /**
+     * Reads an idFile into memory, for idFiles written before they were sorted.
+     *
+     * @param idFile IdFile to read
+     * @return Reader of the entries in order
+     * @throws IOException Unable to read or bad format
+     */
+    public static CatalogReader load(File idFile) throws IOException
+    {
+        CatalogReader file = new CatalogReader(idFile);
+        ArrayList<CatalogEntry> list = new ArrayList<CatalogEntry>();
+        try
+        {
+            CatalogEntry entry;
+            while((entry = file.read()) != null)
+            {
+                list.add(entry);
+            }
+            list.addAll(file.logged);
+            while((entry = file.readShard()) != null)
+            {
+                list.add(entry);
+            }
+        }
+        finally
+        {
+            file.close();
+        }
+        CatalogReader loaded = new CatalogReader(list, file.checksumAlgorithm);
+        loaded.root = file.root;
+        return loaded;
+    }
+
+    /**
+     * Opens an idFile streamed, checking its order while reading. On the first entry out of order (an idFile
+     * written before they were sorted), the entries not returned yet are read into memory and returned sorted.
+     * Every entry is returned once, but only in full order if the idFile is sorted, see openSorted.
+     *
+     * @param idFile IdFile to read
+     * @return Reader of each entry
+     * @throws IOException Unable to read or bad format
+     */
+    public static CatalogReader open(File idFile) throws IOException
+    {
+        CatalogReader reader = new CatalogReader(idFile);
+        reader.sortOnDemand = true;
+        return reader;
+    }
+
+    /**
+     * Opens an idFile, streamed if sorted otherwise read into memory. The order is checked by reading
+     * the idFile through first, so only use where every entry must come in order (ie. to merge catalogs).
+     *
+     * @param idFile IdFile to read
+     * @return Reader of the entries in order
+     * @throws IOException Unable to read or bad format
+     */
+    public static CatalogReader openSorted(File idFile) throws IOException
+    {
+        CatalogReader reader = new CatalogReader(idFile);
+        try
+        {
+            while(reader.next() != null) // checks order without keeping entries
+            {
+                // keep reading
+            }
+            return new CatalogReader(idFile);
+        }
+        catch (IOException e)
+        {
+            return load(idFile);
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+
+    /**
+     * @param mapping Mapping of each directory (ie. from DestinationFileProcessor)
+     * @param checksumAlgorithm Algorithm the checksums were computed with
+     * @return Reader of the files in mapping in order
+     */
+    public static CatalogReader fromMapping(Hashtable<String, SynchiveDirectory> mapping, ChecksumAlgorithm checksumAlgorithm)
+    {
+        ArrayList<CatalogEntry> list = new ArrayList<CatalogEntry>();
+        for(SynchiveDirectory dir : mapping.values())
+        {
+            String directory = CatalogEntry.getDirectory(dir.getUniqueID());
+            for(Entry<String, SynchiveDirectory.FileFlag> file : dir.getLookupTable().entrySet())
+            {
+                list.add(parseFile(file.getKey(), directory, dir.getMetadata(file.getKey())));
+            }
+        }
+        return new CatalogReader(list, checksumAlgorithm);
+    }
+
+    /**
+     * @return Next entry in order, null when done
+     * @throws IOException Unable to read, bad format or the idFile is not sorted (unless opened with open)
+     */
+    public CatalogEntry next() throws IOException
+    {
+        if(entries != null)
+        {
+            return entries.hasNext() ? entries.next() : null;
+        }
+        CatalogEntry entry = readNext();
+        if(entry != null && last != null && entry.compareTo(last) < 0)
+        {
+            if(!sortOnDemand)
+            {
+                throw new IOException("Catalog not sorted");
+            }
+            ArrayList<CatalogEntry> rest = new ArrayList<CatalogEntry>();
+            for(; entry != null; entry = readNext())
+            {
+                rest.add(entry);
+            }
+            close();
+            reader = null;
+            shard = null;
+            Collections.sort(rest);
+            entries = rest.iterator();
+            return next();
+        }
+        last = entry;
+        return entry;
+    }
+
+    /**
+     * @return Next entry of the idFile and its shards, merged in order of each, null when done
+     * @throws IOException Unable to read, bad format or a shard is not sorted
+     */
+    private CatalogEntry readNext() throws IOException
+    {
+        if(merged == null)
+        {
+            merged = readMerged();
+        }
+        if(shardEntry == null)
+        {
+            shardEntry = readShard();
+        }
+        CatalogEntry entry;
+        if(shardEntry != null && (merged == null || shardEntry.compareTo(merged) < 0))
+        {
+            entry = shardEntry;
+            shardEntry = null;
+        }
+        else
+        {
+            entry = merged;
+            merged = null;
+        }
+        return entry;
+    }
+
+    /**
+     * @return Next entry of the idFile merged with its change log, null when done
+     * @throws IOException Unable to read or bad format
+     */
+    private CatalogEntry readMerged() throws IOException
+    {
+        if(peeked == null)
+        {
+            peeked = read();
+        }
+        if(loggedIndex < logged.size() && (peeked == null || logged.get(loggedIndex).compareTo(peeked) < 0))
+        {
+            return logged.get(loggedIndex++);
+        }
+        CatalogEntry entry = peeked;
+        peeked = null;
+        return entry;
+    }
+
+    /**
+     * @return Next entry of the shards, opening the next shard when one is done. Null when done
+     * @throws IOException Unable to read, bad format or a shard is not sorted
+     */
+    private CatalogEntry readShard() throws IOException
+    {
+        while(shard != null || shardIndex < shards.size())
+        {
+            if(shard == null)
+            {
+                CatalogManifest.Shard next = shards.get(shardIndex++);
+                shard = new CatalogReader(manifest.getIDFile(next), next.getDirectory());
+                shard.sortOnDemand = sortOnDemand;
+            }
+            CatalogEntry entry = shard.next();
+            if(entry != null)
+            {
+                return entry;
+            }
+            shard.close();
+            shard = null;
+        }
+        return null;
+    }
+
+    /**
+     * @return Next file line of the idFile not superseded by the change log, null at end of file
+     * @throws IOException Unable to read or bad format
+     */
+    private CatalogEntry read() throws IOException
+    {
+        String str;
+        while((str = reader.readLine()) != null)
+        {
+            if(str.startsWith("~")) // directory line
+            {
+                directoryLine = str;
+                directory = prefix + CatalogEntry.getDirectory(str);
+            }
+            else if(!str.isEmpty())
+            {
+                if(directory == null)
+                {
+                    throw new IOException("Bad format found");
+                }
+                CatalogEntry entry = parseFile(str, directory, null);
+                Hashtable<String, long[]> changes = log.getChanges(directoryLine);
+                if(changes == null || !changes.containsKey(entry.getFileID()))
+                {
+                    return entry;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param line File line ("crc \"name\"" optionally followed by " size modified")
+     * @param directory Directory of file relative to root
+     * @param metadata [size, modified] if known apart from line, otherwise null
+     * @return Entry of file
+     */
+    private static CatalogEntry parseFile(String line, String directory, long[] metadata)
+    {
+        String[] splitStr = line.split(" ", 2); // [crc, "name" size modified]
+        int nameEnd = splitStr.length == 2 ? splitStr[1].lastIndexOf('"') : -1;
+        if(nameEnd < 1)
+        {
+            return new CatalogEntry(directory, line, "", -1, -1);
+        }
+        long size = metadata == null ? -1 : metadata[0];
+        long modified = metadata == null ? -1 : metadata[1];
+        String[] split = splitStr[1].substring(nameEnd + 1).trim().split(" ");
+        if(metadata == null && split.length == 2)
+        {
+            try
+            {
+                size = Long.parseLong(split[0]);
+                modified = Long.parseLong(split[1]);
+            }
+            catch (NumberFormatException e)
+            {
+                size = -1;
+                modified = -1;
+            }
+        }
+        return new CatalogEntry(directory, splitStr[1].substring(1, nameEnd), splitStr[0], size, modified);
+    }
+
+    /**
+     * @param checksumAlgorithm Algorithm the checksums are computed with
+     * @param root Location the idFile is written for
+     * @return First line of an idFile
+     */
+    public static String getHeader(ChecksumAlgorithm checksumAlgorithm, String root)
+    {
+        return "Synchive " + Globals.VERSION + CHECKSUM_HEADER_PREFIX + checksumAlgorithm + ROOT_HEADER_PREFIX + root;
+    }
+
+    /**
+     * Reads the checksum algorithm from an idFile header. Headers written before it was recorded use CRC32.
+     *
+     * @param header First line of an idFile
+     * @return Algorithm of the checksums in the idFile
+     */
+    public static ChecksumAlgorithm getChecksum(String header)
+    {
+        int index = header.indexOf(CHECKSUM_HEADER_PREFIX);
+        int end = header.indexOf(ROOT_HEADER_PREFIX);
+        if(index < 0 || end < index)
+        {
+            return ChecksumAlgorithm.CRC32;
+        }
+        return ChecksumAlgorithm.fromName(header.substring(index + CHECKSUM_HEADER_PREFIX.length(), end));
+    }
+
+    /**
+     * Close the idFile being streamed.
+     */
+    public void close()
+    {
+        if(shard != null)
+        {
+            shard.close();
+        }
+        if(reader != null)
+        {
+            try
+            {
+                reader.close();
+            }
+            catch (IOException e)
+            {
+                // nothing left to read
+            }
+        }
+    }
+
+    // ~~~~~ Getters & Setters ~~~~~ //
+    /**
+     * @return Algorithm the checksums were computed with
+     */
+    public ChecksumAlgorithm getChecksumAlgorithm()
+    {
+        return checksumAlgorithm;
+    }
+
+    /**
+     * @return Root recorded in the idFile header, empty if unknown
+     */
+    public String getRoot()
+    {
+        return root;
+    }
+}
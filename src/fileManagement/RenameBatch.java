@@ -0,0 +1,356 @@
+package fileManagement;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import support.Utilities;
+
+/**
+ * Renames adding the CRC to filenames, collected while a location is read and performed once every file has
+ * been read, so renaming does not interleave with reading files. Directories are renamed in parallel, the files
+ * of a directory one after another. Every rename is appended to an undo journal in the root before any is
+ * performed, so the renames of past runs can be reverted (see undo).
+ *
+ * @author Tony Hsu
+ * @structure Each line of the undo journal is "[op]\t[DirectoryID]\t[original FileID]\t[renamed FileID]\t[size] [modified]".
+ *             op: '+' file to be renamed (written before renaming), '-' file could not be renamed.
+ */
+public class RenameBatch
+{
+    /**
+     * Prefix of a rename record
+     */
+    private static final char RENAME_RECORD = '+';
+    /**
+     * Prefix of a failed rename record
+     */
+    private static final char FAILED_RECORD = '-';
+    /**
+     * Separator between fields of a record
+     */
+    private static final String DELIMITER = "\t";
+    /**
+     * Number of directories renamed at once, renaming is mostly waiting on the file system
+     */
+    private static final int THREADS = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+
+    /**
+     * Root of the location, files are found relative to it
+     */
+    private File root;
+    /**
+     * Location of the undo journal
+     */
+    private File journalFile;
+    /**
+     * Lookup table of "DirectoryID" -> [original, renamed] of renames to perform
+     */
+    private Hashtable<String, ArrayList<SynchiveFile[]>> renames;
+    /**
+     * Number of renames to perform
+     */
+    private int count;
+
+    /**
+     * @param root Root of the location, holds the undo journal
+     */
+    public RenameBatch(File root)
+    {
+        this.root = root;
+        journalFile = new File(root, Utilities.RENAME_UNDO_FILE_NAME);
+        renames = new Hashtable<String, ArrayList<SynchiveFile[]>>();
+        count = 0;
+    }
+
+    /**
+     * Add a rename to perform.
+     *
+     * @param directoryID UniqueID of the directory of the file
+     * @param original File as named on disk
+     * @param renamed File with the CRC in its name
+     */
+    public void add(String directoryID, SynchiveFile original, SynchiveFile renamed)
+    {
+        ArrayList<SynchiveFile[]> list = renames.get(directoryID);
+        if(list == null)
+        {
+            list = new ArrayList<SynchiveFile[]>();
+            renames.put(directoryID, list);
+        }
+        list.add(new SynchiveFile[] {original, renamed});
+        count++;
+    }
+
+    /**
+     * Journal then perform every rename, blocking until done. A file is not renamed over an existing file.
+     * Nothing is renamed if the journal cannot be written.
+     *
+     * @return Lookup table of "DirectoryID" -> [original, renamed] of renames that failed
+     * @throws IOException Unable to write undo journal, the renames are kept
+     */
+    public Hashtable<String, ArrayList<SynchiveFile[]>> execute() throws IOException
+    {
+        Hashtable<String, ArrayList<SynchiveFile[]>> failed = new Hashtable<String, ArrayList<SynchiveFile[]>>();
+        if(count == 0)
+        {
+            return failed;
+        }
+        writeToJournal(RENAME_RECORD, renames);
+
+        ArrayList<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for(Entry<String, ArrayList<SynchiveFile[]>> entry : renames.entrySet())
+        {
+            tasks.add(() -> {
+                ArrayList<SynchiveFile[]> list = new ArrayList<SynchiveFile[]>();
+                for(SynchiveFile[] rename : entry.getValue())
+                {
+                    if(!rename(rename[0], rename[1]))
+                    {
+                        list.add(rename);
+                    }
+                }
+                if(!list.isEmpty())
+                {
+                    failed.put(entry.getKey(), list);
+                }
+                return null;
+            });
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(THREADS, tasks.size()));
+        try
+        {
+            pool.invokeAll(tasks);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        finally
+        {
+            pool.shutdownNow();
+        }
+        clear();
+        if(!failed.isEmpty())
+        {
+            try
+            {
+                writeToJournal(FAILED_RECORD, failed);
+            }
+            catch (IOException e)
+            {
+                // undo leaves a file it cannot rename back as is
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * Forget every rename without performing it.
+     *
+     * @return Lookup table of "DirectoryID" -> [original, renamed] of renames forgotten
+     */
+    public Hashtable<String, ArrayList<SynchiveFile[]>> clear()
+    {
+        Hashtable<String, ArrayList<SynchiveFile[]>> cleared = renames;
+        renames = new Hashtable<String, ArrayList<SynchiveFile[]>>();
+        count = 0;
+        return cleared;
+    }
+
+    /**
+     * Append a record of every rename to the undo journal and flush it to disk.
+     *
+     * @param op Prefix of the records
+     * @param list Lookup table of "DirectoryID" -> [original, renamed] of renames to record
+     * @throws IOException Unable to write undo journal
+     */
+    private void writeToJournal(char op, Hashtable<String, ArrayList<SynchiveFile[]>> list) throws IOException
+    {
+        FileOutputStream outputStream = new FileOutputStream(journalFile, true);
+        BufferedWriter output = new BufferedWriter(new OutputStreamWriter(outputStream, Charset.forName("UTF-8").newEncoder()));
+        try
+        {
+            for(Entry<String, ArrayList<SynchiveFile[]>> entry : list.entrySet())
+            {
+                for(SynchiveFile[] rename : entry.getValue())
+                {
+                    output.write(op + DELIMITER + entry.getKey() + DELIMITER + rename[0].getUniqueID() + DELIMITER + rename[1].getUniqueID() +
+                        DELIMITER + rename[0].getSize() + " " + rename[0].getModified());
+                    output.newLine();
+                }
+            }
+            output.flush();
+            outputStream.getChannel().force(false);
+        }
+        finally
+        {
+            output.close();
+        }
+    }
+
+    /**
+     * @param from File to rename
+     * @param to New name of file
+     * @return True if renamed
+     */
+    private static boolean rename(File from, File to)
+    {
+        try
+        {
+            return !to.exists() && from.renameTo(to);
+        }
+        catch (SecurityException e)
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Revert the renames recorded in the undo journal, latest first, except those that failed. A rename is reverted only if the renamed
+     * file is still there and nothing took its original name. The journal is removed once read, records of
+     * renamed files that could not be reverted are kept in it.
+     *
+     * @return Records reverted, each [DirectoryID, original FileID, renamed FileID, size, modified]
+     * @throws IOException Unable to read or rewrite undo journal
+     */
+    public ArrayList<String[]> undo() throws IOException
+    {
+        ArrayList<String[]> reverted = new ArrayList<String[]>();
+        if(!journalFile.exists())
+        {
+            return reverted;
+        }
+        ArrayList<String> records = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(journalFile), "UTF8"));
+        try
+        {
+            String str;
+            while((str = reader.readLine()) != null)
+            {
+                records.add(str);
+            }
+        }
+        finally
+        {
+            reader.close();
+        }
+
+        ArrayList<String> remaining = new ArrayList<String>();
+        Hashtable<String, Integer> failed = new Hashtable<String, Integer>(); // "record" -> times failed
+        for(int i = records.size() - 1; i >= 0; i--)
+        {
+            String str = records.get(i);
+            if(str.length() < 2 || (str.charAt(0) != RENAME_RECORD && str.charAt(0) != FAILED_RECORD))
+            {
+                continue;
+            }
+            String record = str.substring(2);
+            Integer times = failed.get(record);
+            if(str.charAt(0) == FAILED_RECORD)
+            {
+                failed.put(record, times == null ? 1 : times + 1);
+                continue;
+            }
+            if(times != null) // never renamed
+            {
+                if(times == 1)
+                {
+                    failed.remove(record);
+                }
+                else
+                {
+                    failed.put(record, times - 1);
+                }
+                continue;
+            }
+            
+            String[] split = record.split(DELIMITER, 4); // [directoryID, original, renamed, size modified]
+            String[] metadata = split.length == 4 ? split[3].split(" ") : new String[0];
+            if(metadata.length != 2 || split[1].indexOf('"') == split[1].lastIndexOf('"') ||
+                split[2].indexOf('"') == split[2].lastIndexOf('"')) // partially written from power loss
+            {
+                continue;
+            }
+            try
+            {
+                Long.parseLong(metadata[0]);
+                Long.parseLong(metadata[1]);
+            }
+            catch (NumberFormatException e)
+            {
+                continue;
+            }
+            String directory = Utilities.getPath(root) + CatalogEntry.getDirectory(split[0]) + File.separator;
+            File original = new File(directory + getName(split[1]));
+            File renamed = new File(directory + getName(split[2]));
+            if(rename(renamed, original))
+            {
+                reverted.add(new String[] {split[0], split[1], split[2], metadata[0], metadata[1]});
+            }
+            else if(renamed.exists()) // name taken, or renamed back outside of Synchive
+            {
+                remaining.add(0, str);
+            }
+        }
+
+        if(remaining.isEmpty())
+        {
+            journalFile.delete();
+            return reverted;
+        }
+        BufferedWriter output = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(journalFile),
+            Charset.forName("UTF-8").newEncoder()));
+        try
+        {
+            for(String str : remaining)
+            {
+                output.write(str);
+                output.newLine();
+            }
+        }
+        finally
+        {
+            output.close();
+        }
+        return reverted;
+    }
+
+    /**
+     * @param fileID UniqueID of a file ("crc \"name\"")
+     * @return Name of the file
+     */
+    private static String getName(String fileID)
+    {
+        return fileID.substring(fileID.indexOf('"') + 1, fileID.lastIndexOf('"'));
+    }
+
+    // ~~~~~ Getters & Setters ~~~~~ //
+    /**
+     * @return Number of renames to perform
+     */
+    public int size()
+    {
+        return count;
+    }
+
+    /**
+     * @return True if the location has renames that can be reverted
+     */
+    public boolean hasUndo()
+    {
+        return journalFile.exists();
+    }
+}
@@ -0,0 +1,170 @@
+package fileManagement;
+
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Mapping of "DirectoryID" -> "SynchiveDirectory" where the directories of a shard (see CatalogManifest) are only
+ * read in when first looked up. Going through every directory (ie. values, entrySet) reads in every pending shard.
+ *
+ * @author Tony Hsu
+ */
+public class ShardedDirectoryTable extends Hashtable<String, SynchiveDirectory>
+{
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Reads the directories of a shard into the table
+     */
+    public interface ShardLoader
+    {
+        /**
+         * @param shard Shard to read in
+         */
+        public void load(CatalogManifest.Shard shard);
+    }
+
+    /**
+     * Reads in pending shards
+     */
+    private ShardLoader loader;
+    /**
+     * Lookup table of "DirectoryID of shard" -> shard not read in yet
+     */
+    private Hashtable<String, CatalogManifest.Shard> pending;
+    /**
+     * Depth of the directories owning a shard
+     */
+    private int depth;
+
+    /**
+     * @param loader Reads in pending shards
+     */
+    public ShardedDirectoryTable(ShardLoader loader)
+    {
+        this.loader = loader;
+        pending = new Hashtable<String, CatalogManifest.Shard>();
+    }
+
+    /**
+     * Add a shard to read in when one of its directories is looked up
+     *
+     * @param shard Shard of the manifest
+     * @param depth Depth of the directories owning a shard
+     */
+    public synchronized void addPending(CatalogManifest.Shard shard, int depth)
+    {
+        this.depth = depth;
+        pending.put(shard.getDirectoryID(), shard);
+    }
+
+    /**
+     * @param key DirectoryID looked up
+     */
+    private void load(Object key)
+    {
+        if(key instanceof String && !pending.isEmpty())
+        {
+            String shardID = CatalogManifest.getShardID((String)key, depth);
+            CatalogManifest.Shard shard = shardID == null ? null : pending.remove(shardID);
+            if(shard != null)
+            {
+                loader.load(shard);
+            }
+        }
+    }
+
+    /**
+     * Read in every pending shard
+     */
+    public synchronized void loadAll()
+    {
+        while(!pending.isEmpty())
+        {
+            String shardID = pending.keys().nextElement();
+            loader.load(pending.remove(shardID));
+        }
+    }
+
+    /**
+     * @return Directories read in so far, without reading pending shards
+     */
+    public synchronized Collection<SynchiveDirectory> getLoaded()
+    {
+        return super.values();
+    }
+
+    /**
+     * @return True if a shard has not been read in yet
+     */
+    public synchronized boolean hasPending()
+    {
+        return !pending.isEmpty();
+    }
+
+    @Override
+    public synchronized SynchiveDirectory get(Object key)
+    {
+        load(key);
+        return super.get(key);
+    }
+
+    @Override
+    public synchronized boolean containsKey(Object key)
+    {
+        load(key);
+        return super.containsKey(key);
+    }
+
+    @Override
+    public synchronized int size()
+    {
+        loadAll();
+        return super.size();
+    }
+
+    @Override
+    public synchronized boolean isEmpty()
+    {
+        loadAll();
+        return super.isEmpty();
+    }
+
+    @Override
+    public synchronized Enumeration<String> keys()
+    {
+        loadAll();
+        return super.keys();
+    }
+
+    @Override
+    public synchronized Enumeration<SynchiveDirectory> elements()
+    {
+        loadAll();
+        return super.elements();
+    }
+
+    @Override
+    public Set<String> keySet()
+    {
+        loadAll();
+        return super.keySet();
+    }
+
+    @Override
+    public Collection<SynchiveDirectory> values()
+    {
+        loadAll();
+        return super.values();
+    }
+
+    @Override
+    public Set<Map.Entry<String, SynchiveDirectory>> entrySet()
+    {
+        loadAll();
+        return super.entrySet();
+    }
+}
@@ -0,0 +1,459 @@
+package fileManagement;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.Set;
+
+import support.Utilities;
+
+/**
+ * Append-only journal kept in the destination while a sync is running.
+ * Records fully scanned directories and files known to be in destination (scanned or copied),
+ * so an interrupted run can pick up where it left off instead of rehashing everything.
+ * Files about to be updated in place are recorded as well, so the next run can roll back an interrupted update.
+ * The journal is deleted once a run completes and the idFile has been written.
+ *
+ * @author Tony Hsu
+ * @structure Each line is "[op][location]\t[DirectoryID]\t[FileID]".
+ *             op: '+' file recorded, '#' directory fully scanned (no FileID),
+ *             '~' file update in place started (DirectoryID field holds the path relative to destination, no FileID).
+ *             location: 's' source, 'd' destination.
+ */
+public class SyncJournal
+{
+    /**
+     * Which location a record belongs to
+     */
+    public static enum Location
+    {
+        SOURCE('s'), DESTINATION('d');
+
+        /**
+         * Character written into the journal
+         */
+        private final char tag;
+
+        private Location(char tag)
+        {
+            this.tag = tag;
+        }
+
+        /**
+         * @param tag Character read from the journal
+         * @return Location for tag, null if unknown
+         */
+        private static Location fromTag(char tag)
+        {
+            for(Location loc : values())
+            {
+                if(loc.tag == tag)
+                {
+                    return loc;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Prefix of a file record
+     */
+    private static final char FILE_RECORD = '+';
+    /**
+     * Prefix of a directory completed record
+     */
+    private static final char SCANNED_RECORD = '#';
+    /**
+     * Prefix of an update in place started record
+     */
+    private static final char UPDATE_RECORD = '~';
+    /**
+     * Separator between fields of a record
+     */
+    private static final String DELIMITER = "\t";
+    /**
+     * Number of records written before forcing a checkpoint
+     */
+    private static final int CHECKPOINT_RECORDS = 64;
+    /**
+     * Time between forced checkpoints (in miliseconds)
+     */
+    private static final long CHECKPOINT_INTERVAL = 5000;
+
+    /**
+     * Location of the journal file
+     */
+    private File journalFile;
+    /**
+     * Lookup table of "Location" -> "DirectoryID" -> "FileIDs"
+     */
+    private Hashtable<Location, Hashtable<String, ArrayList<String>>> files;
+    /**
+     * Lookup table of "Location" -> "DirectoryIDs fully scanned"
+     */
+    private Hashtable<Location, HashSet<String>> scannedDirectories;
+    /**
+     * Paths (relative to destination) of files whose update in place was started
+     */
+    private HashSet<String> updates;
+    /**
+     * Stream used to append records. Lazy-loaded on first record
+     */
+    private FileOutputStream outputStream;
+    /**
+     * Writer wrapping outputStream
+     */
+    private BufferedWriter output;
+    /**
+     * Records written since the last checkpoint
+     */
+    private int pendingRecords;
+    /**
+     * Time of last checkpoint
+     */
+    private long lastCheckpoint;
+
+    /**
+     * Opens the journal within a destination directory, reading in any records left by an interrupted run.
+     *
+     * @param directory Destination directory
+     */
+    public SyncJournal(File directory)
+    {
+        journalFile = new File(directory.getPath() + File.separator + Utilities.JOURNAL_FILE_NAME);
+        files = new Hashtable<Location, Hashtable<String, ArrayList<String>>>();
+        scannedDirectories = new Hashtable<Location, HashSet<String>>();
+        updates = new HashSet<String>();
+        for(Location loc : Location.values())
+        {
+            files.put(loc, new Hashtable<String, ArrayList<String>>());
+            scannedDirectories.put(loc, new HashSet<String>());
+        }
+        pendingRecords = 0;
+        lastCheckpoint = System.currentTimeMillis();
+
+        if(journalFile.exists())
+        {
+            try
+            {
+                readFromJournal();
+            }
+            catch (IOException e)
+            {
+                // unreadable journal, continue as if no progress was saved
+            }
+        }
+    }
+
+    /**
+     * Reads in the records of the journal. Malformed lines (ie. partially written from power loss) are skipped.
+     *
+     * @throws IOException Unable to read journal
+     */
+    private void readFromJournal() throws IOException
+    {
+        BufferedReader reader = new BufferedReader(
+            new InputStreamReader(new FileInputStream(journalFile), "UTF8"));
+        String str;
+        while((str = reader.readLine()) != null)
+        {
+            String[] split = str.split(DELIMITER, 3); // [op + location, directoryID, fileID]
+            if(split.length < 2 || split[0].length() != 2)
+            {
+                continue;
+            }
+            Location loc = Location.fromTag(split[0].charAt(1));
+            if(loc == null)
+            {
+                continue;
+            }
+
+            if(split[0].charAt(0) == FILE_RECORD && split.length == 3)
+            {
+                addFile(loc, split[1], split[2]);
+            }
+            else if(split[0].charAt(0) == SCANNED_RECORD)
+            {
+                scannedDirectories.get(loc).add(split[1]);
+            }
+            else if(split[0].charAt(0) == UPDATE_RECORD)
+            {
+                updates.add(split[1]);
+            }
+        }
+        reader.close();
+    }
+
+    /**
+     * Stores a file record in memory
+     *
+     * @param loc Location of record
+     * @param dirID DirectoryID of file
+     * @param fileID UniqueID of file
+     */
+    private void addFile(Location loc, String dirID, String fileID)
+    {
+        ArrayList<String> list = files.get(loc).get(dirID);
+        if(list == null)
+        {
+            list = new ArrayList<String>();
+            files.get(loc).put(dirID, list);
+        }
+        list.add(fileID);
+    }
+
+    /**
+     * Record a file as present. (ie. copied into destination)
+     *
+     * @param loc Location of file
+     * @param dirID DirectoryID of file
+     * @param fileID UniqueID of file
+     * @throws IOException Unable to write to journal
+     */
+    public synchronized void recordFile(Location loc, String dirID, String fileID) throws IOException
+    {
+        addFile(loc, dirID, fileID);
+        write(FILE_RECORD, loc, dirID + DELIMITER + fileID);
+        checkpointIfNeeded();
+    }
+
+    /**
+     * Record a directory as fully scanned along with each file found within it.
+     * The directory record is written last so a partially written directory is never treated as scanned.
+     *
+     * @param loc Location of directory
+     * @param dirID DirectoryID of directory
+     * @param fileIDs UniqueID of each file in directory
+     * @throws IOException Unable to write to journal
+     */
+    public synchronized void recordScannedDirectory(Location loc, String dirID, Collection<String> fileIDs) throws IOException
+    {
+        for(String fileID : fileIDs)
+        {
+            addFile(loc, dirID, fileID);
+            write(FILE_RECORD, loc, dirID + DELIMITER + fileID);
+        }
+        scannedDirectories.get(loc).add(dirID);
+        write(SCANNED_RECORD, loc, dirID);
+        checkpointIfNeeded();
+    }
+
+    /**
+     * Record a file in destination about to be updated in place. Written to disk at once,
+     * as the file is only consistent again once the update completes or is rolled back.
+     *
+     * @param relativePath Path of file relative to destination
+     * @throws IOException Unable to write to journal
+     */
+    public synchronized void recordUpdate(String relativePath) throws IOException
+    {
+        updates.add(relativePath);
+        write(UPDATE_RECORD, Location.DESTINATION, relativePath);
+        checkpoint();
+    }
+
+    /**
+     * Write out a record
+     *
+     * @param op Type of record
+     * @param loc Location of record
+     * @param data Remaining fields of record
+     * @throws IOException Unable to write to journal
+     */
+    private void write(char op, Location loc, String data) throws IOException
+    {
+        if(output == null)
+        {
+            outputStream = new FileOutputStream(journalFile, true);
+            output = new BufferedWriter(new OutputStreamWriter(outputStream, Charset.forName("UTF-8").newEncoder()));
+        }
+        output.write(op);
+        output.write(loc.tag);
+        output.write(DELIMITER + data);
+        output.newLine();
+        pendingRecords++;
+    }
+
+    /**
+     * Checkpoint if enough records have been written or enough time has passed
+     *
+     * @throws IOException Unable to write to journal
+     */
+    private void checkpointIfNeeded() throws IOException
+    {
+        if(pendingRecords >= CHECKPOINT_RECORDS || System.currentTimeMillis() - lastCheckpoint >= CHECKPOINT_INTERVAL)
+        {
+            checkpoint();
+        }
+    }
+
+    /**
+     * Flush any buffered records to disk.
+     *
+     * @throws IOException Unable to write to journal
+     */
+    public synchronized void checkpoint() throws IOException
+    {
+        if(output != null && pendingRecords > 0)
+        {
+            output.flush();
+            outputStream.getChannel().force(false);
+        }
+        pendingRecords = 0;
+        lastCheckpoint = System.currentTimeMillis();
+    }
+
+    /**
+     * Remove all records of a location. Used when the records have been persisted elsewhere (ie. the idFile).
+     *
+     * @param loc Location to remove
+     * @throws IOException Unable to rewrite the journal
+     */
+    public synchronized void clear(Location loc) throws IOException
+    {
+        files.get(loc).clear();
+        scannedDirectories.get(loc).clear();
+        if(loc == Location.DESTINATION) // updates started before are rolled back when destination is read
+        {
+            updates.clear();
+        }
+        close();
+
+        boolean hasRecords = !updates.isEmpty();
+        for(Location other : Location.values())
+        {
+            hasRecords |= !files.get(other).isEmpty() || !scannedDirectories.get(other).isEmpty();
+        }
+        journalFile.delete();
+        if(!hasRecords)
+        {
+            return;
+        }
+
+        // rewrite remaining records
+        for(Location other : Location.values())
+        {
+            for(String dirID : files.get(other).keySet())
+            {
+                for(String fileID : files.get(other).get(dirID))
+                {
+                    write(FILE_RECORD, other, dirID + DELIMITER + fileID);
+                }
+            }
+            for(String dirID : scannedDirectories.get(other))
+            {
+                write(SCANNED_RECORD, other, dirID);
+            }
+        }
+        for(String relativePath : updates)
+        {
+            write(UPDATE_RECORD, Location.DESTINATION, relativePath);
+        }
+        checkpoint();
+    }
+
+    /**
+     * Checkpoint and close the journal. Records are kept for the next run.
+     */
+    public synchronized void close()
+    {
+        if(output == null)
+        {
+            return;
+        }
+        try
+        {
+            checkpoint();
+            output.close();
+        }
+        catch (IOException e)
+        {
+            // nothing more can be saved
+        }
+        output = null;
+        outputStream = null;
+    }
+
+    /**
+     * Close and remove the journal. Used once a run completes.
+     */
+    public synchronized void delete()
+    {
+        close();
+        files.get(Location.SOURCE).clear();
+        files.get(Location.DESTINATION).clear();
+        scannedDirectories.get(Location.SOURCE).clear();
+        scannedDirectories.get(Location.DESTINATION).clear();
+        updates.clear();
+        journalFile.delete();
+    }
+
+    // ~~~~~ Getters & Setters ~~~~~~ //
+    /**
+     * @param loc Location of directory
+     * @param dirID DirectoryID of directory
+     * @return True if directory was fully scanned by a previous run
+     */
+    public synchronized boolean isDirectoryScanned(Location loc, String dirID)
+    {
+        return scannedDirectories.get(loc).contains(dirID);
+    }
+
+    /**
+     * @param loc Location of directory
+     * @param dirID DirectoryID of directory
+     * @return UniqueID of each file recorded within directory. Empty if none
+     */
+    public synchronized ArrayList<String> getFiles(Location loc, String dirID)
+    {
+        ArrayList<String> list = files.get(loc).get(dirID);
+        return list == null ? new ArrayList<String>() : new ArrayList<String>(list);
+    }
+
+    /**
+     * @param loc Location of directories
+     * @return DirectoryID of each directory with recorded files
+     */
+    public synchronized Set<String> getDirectories(Location loc)
+    {
+        return new HashSet<String>(files.get(loc).keySet());
+    }
+
+    /**
+     * @return Path (relative to destination) of each file whose update in place was started
+     */
+    public synchronized Set<String> getUpdates()
+    {
+        return new HashSet<String>(updates);
+    }
+
+    /**
+     * @return True if journal contains records from an interrupted run
+     */
+    public synchronized boolean hasRecords()
+    {
+        if(!updates.isEmpty())
+        {
+            return true;
+        }
+        for(Location loc : Location.values())
+        {
+            if(!files.get(loc).isEmpty() || !scannedDirectories.get(loc).isEmpty())
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -45,6 +45,14 @@ public class SynchiveDirectory
      * Lookup table of "FileName" to "if file exist"
      */
     private Hashtable<String, FileFlag> files;
+    /**
+     * Lookup table of "FileName" to [size, last modified] when known, used to quick compare
+     */
+    private Hashtable<String, long[]> metadata;
+    /**
+     * Lookup table of "FileName" to true if added or false if removed since the directory was last saved
+     */
+    private Hashtable<String, Boolean> changes;
     /**
      * Unique name to identify directory.
      */
@@ -63,6 +71,8 @@ public class SynchiveDirectory
     {
         this.uniqueID = uniqueID;
         files = new Hashtable<String, FileFlag>();
+        metadata = new Hashtable<String, long[]>();
+        changes = new Hashtable<String, Boolean>();
         
         String[] splitStr = uniqueID.split(" ", 2); // [level, path]
         if(splitStr.length == 1) // if root directory
@@ -88,6 +98,37 @@ public class SynchiveDirectory
     public void addFile(String fileName, FileFlag FILE_FLAG)
     {
         files.put(fileName, FILE_FLAG);
+        changes.put(fileName, true);
+    }
+
+    /**
+     * Remove file from directory.
+     * 
+     * @param fileName UniqueID of file
+     */
+    public void removeFile(String fileName)
+    {
+        files.remove(fileName);
+        metadata.remove(fileName);
+        changes.put(fileName, false);
+    }
+
+    /**
+     * Forget the change to fileName, as it matches what was saved. (ie. read from the idFile)
+     * 
+     * @param fileName UniqueID of file
+     */
+    public void markSaved(String fileName)
+    {
+        changes.remove(fileName);
+    }
+
+    /**
+     * Forget every change, as the directory has been saved.
+     */
+    public void clearChanges()
+    {
+        changes.clear();
     }
 
     /**
@@ -119,6 +160,50 @@ public class SynchiveDirectory
         return false;
     }
     
+    /**
+     * Record size and last modified time of a file.
+     * 
+     * @param fileName UniqueID of file
+     * @param size Size in bytes
+     * @param modified Last modified time in milliseconds
+     */
+    public void setMetadata(String fileName, long size, long modified)
+    {
+        metadata.put(fileName, new long[] {size, modified});
+        if(files.containsKey(fileName))
+        {
+            changes.put(fileName, true);
+        }
+    }
+    
+    /**
+     * @param fileName UniqueID of file
+     * @return [size, last modified] of file, null if unknown
+     */
+    public long[] getMetadata(String fileName)
+    {
+        return metadata.get(fileName);
+    }
+    
+    /**
+     * Finds a file with the same name but different content (ie. an older version).
+     * 
+     * @param fileName UniqueID of file
+     * @return UniqueID of another file with the same name, null if none
+     */
+    public String findOtherVersion(String fileName)
+    {
+        String name = fileName.substring(fileName.indexOf('"'));
+        for(String key : files.keySet())
+        {
+            if(key.endsWith(name) && !key.equals(fileName) && key.indexOf('"') == key.length() - name.length())
+            {
+                return key;
+            }
+        }
+        return null;
+    }
+    
     // Dumps a sorted list of files with flag value
     public String toString()
     {
@@ -173,4 +258,12 @@ public class SynchiveDirectory
     {
         return files;
     }
+
+    /**
+     * @return Lookup table of "fileUID" to true if added or false if removed since the directory was last saved
+     */
+    public Hashtable<String, Boolean> getChanges()
+    {
+        return changes;
+    }
 }
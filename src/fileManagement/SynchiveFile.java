@@ -3,12 +3,14 @@ package fileManagement;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Formatter;
+import java.util.Collections;
+import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import support.Utilities;
 import support.Utilities.ChecksumException;
+import synchive.RunConfig;
 import org.apache.commons.io.*;
 
 /**
@@ -20,11 +22,6 @@ import org.apache.commons.io.*;
 @SuppressWarnings("serial")
 public class SynchiveFile extends File
 {
-    /**
-     * Special characters to sanitize if in input
-     */
-    private static final String SPECIAL_CHARACTERS = "[]{}()+\\^&.$?*|:<>=!";
-
     /**
      * Unique Name to identify file. Property is lazy-loaded
      */
@@ -34,9 +31,13 @@ public class SynchiveFile extends File
      */
     private int level;
     /**
-     * CRC32 representation in 8 hexadecimal
+     * Checksum in hexadecimal, computed with the algorithm set in Settings (CRC32 by default)
      */
     private String crc;
+    /**
+     * CRC32 representation in 8 hexadecimal, used for CRC in filename. Null if not calculated
+     */
+    private String crc32;
     /**
      * Flag to determine if copying allowed
      */
@@ -45,6 +46,14 @@ public class SynchiveFile extends File
      * Possible CRC32 in filename. Property is lazy-loaded
      */
     private String[] possibleCRCInFilename; 
+    /**
+     * Size of file in bytes. Property is lazy-loaded
+     */
+    private long size;
+    /**
+     * Last modified time (in milliseconds) when the file was read, -1 if unknown
+     */
+    private long modified;
 
     /**
      * Constructs file with default properties.
@@ -83,6 +92,8 @@ public class SynchiveFile extends File
         this.level = level;
         copyAllowed = true;
         this.crc = crc;
+        size = -1;
+        modified = -1;
     }
 
     /**
@@ -106,6 +117,17 @@ public class SynchiveFile extends File
         return copyAllowed;
     }
 
+    /**
+     * Determine if copying is allowed by checking the extensions skipped in a run
+     * @param config Settings of the run
+     * @return Copy allowed if extension not skipped
+     */
+    public boolean determineProcessingAllowed(RunConfig config)
+    {
+        copyAllowed = !config.isExtensionSkipped(Utilities.getExtensionType(getName()));
+        return copyAllowed;
+    }
+
     /**
      * Determine if copying is allowed by finding CRC32 value in fileName.
      * If it cannot find CRC32 in fileName, assume none provided and skip comparison with calculated CRC32.
@@ -115,10 +137,23 @@ public class SynchiveFile extends File
      * @throws ChecksumException CRC32 from filename and calculated CRC32 mismatch. Possible corrupted file
      */
     public boolean determineCopyingAllowed(String delimiter) throws ChecksumException
+    {
+        return determineCopyingAllowed(compileCRCPatterns(delimiter));
+    }
+
+    /**
+     * Determine if copying is allowed by finding CRC32 value in fileName.
+     * If it cannot find CRC32 in fileName, assume none provided and skip comparison with calculated CRC32.
+     * 
+     * @param patterns Patterns from compileCRCPatterns
+     * @return true if CRC not found or CRC match.
+     * @throws ChecksumException CRC32 from filename and calculated CRC32 mismatch. Possible corrupted file
+     */
+    public boolean determineCopyingAllowed(List<Pattern> patterns) throws ChecksumException
     {
         if(possibleCRCInFilename == null)
         {
-           possibleCRCInFilename = findCRCInFilename(delimiter);
+           possibleCRCInFilename = findCRCInFilename(patterns);
         }
         
         if(possibleCRCInFilename.length == 0) // no crc32 in fileName found
@@ -130,7 +165,7 @@ public class SynchiveFile extends File
             copyAllowed = false;
             for(String possible : possibleCRCInFilename) // only set copyAllowed if matching crc
             {
-                if(crc.compareToIgnoreCase(possible) == 0)
+                if(crc32 != null && crc32.compareToIgnoreCase(possible) == 0)
                 {
                     copyAllowed = true;
                     return true;
@@ -142,13 +177,14 @@ public class SynchiveFile extends File
     }
 
     /**
-     * Find CRC32 value from filename.
-     * @param delimiter Constraints to find CRC32 value. Can be empty
-     * @return A list of possible CRC32
+     * Compile the patterns finding a CRC32 value in a filename, once for every file of a run.
+     * @param delimiter Delimiters separated by comma, each is the leading then trailing half (ie. "[], {}").
+     *                  Empty to find any CRC32
+     * @return Patterns with the CRC32 as group 1
      */
-    private String[] findCRCInFilename(String delimiter)
+    public static List<Pattern> compileCRCPatterns(String delimiter)
     {
-        ArrayList<String> possibleCRC = new ArrayList<String>();
+        ArrayList<Pattern> patterns = new ArrayList<Pattern>();
         String[] splitDelim = delimiter.split(",");
         boolean emptyDelim = delimiter.isEmpty();
         
@@ -160,56 +196,35 @@ public class SynchiveFile extends File
             // only handle even number, doesn't make sense having mismatching lengths
             if((emptyDelim || trimmed.length() > 0) && trimmed.length() % 2 == 0)
             {
-                String leading = trimmed.substring(0, delim.length() / 2); // first half is left side
-                String trailing = trimmed.substring(delim.length() / 2); // last half is right side
-                String sanitizedLeading = "";
-                String sanitizedTrailing = "";
-
-                // sanitized the strings in case of special characters used in pattern matching
-                for(int i = 0; i < leading.length(); i++)
-                {
-                    char left = leading.charAt(i);
-                    char right = trailing.charAt(i);
-
-                    sanitizedLeading += charContains(left, SPECIAL_CHARACTERS) ? (File.separator + left) : left;
-                    sanitizedTrailing += charContains(right, SPECIAL_CHARACTERS) ? (File.separator + right) : right;
-                }
-
-                // String pattern matching using delimiters and set formatting for CRC32 in hex
-                Formatter regx = new Formatter(new StringBuilder(
-                        sanitizedLeading + "[a-fA-F0-9]{" + Utilities.CRC32_LENGTH + "}+" + sanitizedTrailing));
-                Matcher m = Pattern.compile(regx.toString()).matcher(getName());
-
-                // go through matcher and to list all possible CRC values
-                while(m.find())
-                {
-                    String str = m.group(0);
-                    //strip out delimiters
-                    possibleCRC.add(str.substring(leading.length(), str.length() - trailing.length()));
-                }
-                regx.close();
+                String leading = trimmed.substring(0, trimmed.length() / 2); // first half is left side
+                String trailing = trimmed.substring(trimmed.length() / 2); // last half is right side
+                
+                // quote the delimiters in case of special characters used in pattern matching
+                patterns.add(Pattern.compile((leading.isEmpty() ? "" : Pattern.quote(leading)) +
+                    "([a-fA-F0-9]{" + Utilities.CRC32_LENGTH + "}+)" + (trailing.isEmpty() ? "" : Pattern.quote(trailing))));
             }
         }
-        return (String[])possibleCRC.toArray(new String[0]);
+        return Collections.unmodifiableList(patterns);
     }
 
     /**
-     * Checks if a character is in string
-     * 
-     * @param c Character to check
-     * @param pattern String to find character in
-     * @return Character found in pattern
+     * Find CRC32 value from filename.
+     * @param patterns Patterns from compileCRCPatterns
+     * @return A list of possible CRC32
      */
-    private boolean charContains(char c, String pattern)
+    private String[] findCRCInFilename(List<Pattern> patterns)
     {
-        for(char p : pattern.toCharArray())
+        ArrayList<String> possibleCRC = new ArrayList<String>();
+        for(Pattern pattern : patterns)
         {
-            if(c == p)
+            // go through matcher and to list all possible CRC values
+            Matcher m = pattern.matcher(getName());
+            while(m.find())
             {
-                return true;
+                possibleCRC.add(m.group(1));
             }
         }
-        return false;
+        return (String[])possibleCRC.toArray(new String[0]);
     }
     
     // Uses apache.org.commons getName for name consistency on Windows and Unix
@@ -247,7 +262,7 @@ public class SynchiveFile extends File
     }
 
     /**
-     * @return CRC32 value in 8 hexadecimal
+     * @return Checksum value in hexadecimal
      */
     public String getCRC()
     {
@@ -255,24 +270,89 @@ public class SynchiveFile extends File
     }
 
     /**
-     * Set the crc value of the file
-     * @param crc CRC32 value in 8 hexadecimal
+     * Set the checksum value of the file
+     * @param crc Checksum value in hexadecimal
      */
     public void setCRC(String crc)
     {
         this.crc = crc;
     }
     
+    /**
+     * @return CRC32 value in 8 hexadecimal, null if not calculated
+     */
+    public String getCRC32()
+    {
+        return crc32;
+    }
+    
+    /**
+     * Set the CRC32 value of the file, used for CRC in filename
+     * @param crc32 CRC32 value in 8 hexadecimal
+     */
+    public void setCRC32(String crc32)
+    {
+        this.crc32 = crc32;
+    }
+    
+    /**
+     * @return Size of file in bytes
+     */
+    public long getSize()
+    {
+        if(size < 0)
+        {
+            size = length();
+        }
+        return size;
+    }
+    
+    /**
+     * Set the size of the file. Used when file is not at its path yet (ie. pending rename)
+     * @param size Size of file in bytes
+     */
+    public void setSize(long size)
+    {
+        this.size = size;
+    }
+
+    /**
+     * @return Last modified time (in milliseconds) when the file was read, -1 if unknown
+     */
+    public long getModified()
+    {
+        return modified;
+    }
+
+    /**
+     * Record the last modified time of the file when read. Does not change the file
+     * @param modified Last modified time in milliseconds
+     */
+    public void setModified(long modified)
+    {
+        this.modified = modified;
+    }
+    
     /**
      * Check if CRC exist in filename
      * @param delimiters Delimiters to check CRC in, can be empty
      * @return True of CRC found, false if not found in filename
      */
     public boolean getHasCRCInFilename(String delimiters)
+    {
+        return getHasCRCInFilename(compileCRCPatterns(delimiters));
+    }
+    
+    /**
+     * Check if CRC exist in filename
+     * @param patterns Patterns from compileCRCPatterns
+     * @return True of CRC found, false if not found in filename
+     */
+    public boolean getHasCRCInFilename(List<Pattern> patterns)
     {
         if(possibleCRCInFilename == null)
         {
-            possibleCRCInFilename = findCRCInFilename(delimiters);
+            possibleCRCInFilename = findCRCInFilename(patterns);
         }
         return possibleCRCInFilename.length > 0;
     }
@@ -6,9 +6,14 @@ import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.Hashtable;
 
+import fileManagement.CatalogEntry;
 import fileManagement.SynchiveDirectory;
 import fileManagement.SynchiveFile;
+import fileManagement.SyncJournal;
+import support.BloomFilter;
 import synchive.EventCenter;
+import synchive.RunConfig;
+import synchive.RunControl;
 import synchive.EventCenter.Events;
 
 /**
@@ -19,19 +24,88 @@ import synchive.EventCenter.Events;
  */
 public class DestinationFileProcessor extends FileProcessorBase
 {    
+    /**
+     * Chance the filter answers maybe for a file not in destination
+     */
+    private static final double FILTER_FALSE_POSITIVE_RATE = 0.01;
+    /**
+     * Filter of every file in destination, to skip looking up files definitely not there. Null if not built
+     */
+    private BloomFilter filter;
+    
     /**
      * Processes directory location into a lookup table of files to folders.
      * @param directory Destination Directory
      */
     public DestinationFileProcessor(File directory)
     {
-        super(directory);
+        this(directory, new RunControl(), null);
+    }
+    
+    /**
+     * Processes directory location into a lookup table of files to folders. 
+     * Scanned directories are checkpointed into the journal and progress from an interrupted run is restored.
+     * @param directory Destination Directory
+     * @param control Pause and stop state to honor while processing
+     * @param journal Journal to checkpoint to, null to disable checkpointing
+     */
+    public DestinationFileProcessor(File directory, RunControl control, SyncJournal journal)
+    {
+        this(directory, control, journal, false);
+    }
+    
+    /**
+     * Processes directory location into a lookup table of files to folders.
+     * @param directory Destination Directory
+     * @param control Pause and stop state to honor while processing
+     * @param journal Journal to checkpoint to, null to disable checkpointing
+     * @param dryRun True to leave disk untouched (no idFile written, renames only recorded)
+     */
+    public DestinationFileProcessor(File directory, RunControl control, SyncJournal journal, boolean dryRun)
+    {
+        this(directory, control, journal, dryRun, RunConfig.fromSettings());
+    }
+    
+    /**
+     * Processes directory location into a lookup table of files to folders.
+     * @param directory Destination Directory
+     * @param control Pause and stop state to honor while processing
+     * @param journal Journal to checkpoint to, null to disable checkpointing
+     * @param dryRun True to leave disk untouched (no idFile written, renames only recorded)
+     * @param config Settings of the run
+     */
+    public DestinationFileProcessor(File directory, RunControl control, SyncJournal journal, boolean dryRun,
+        RunConfig config)
+    {
+        super(directory, control, config);
+        setJournal(journal, SyncJournal.Location.DESTINATION);
+        setDryRun(dryRun);
+        setLazyShards(true); // shards read in as the sync reaches them
         EventCenter.getInstance().postEvent(Events.Status, "Processing Destination ...");
         readinIDs();
         
+        if(wasStopped()) // partial mapping, keep progress in journal instead of idFile
+        {
+            EventCenter.getInstance().postEvent(Events.Status, "Stopped Processing Destination");
+            return;
+        }
+        if(!hasPendingShards()) // files of shards not read in would be missing from it
+        {
+            buildFilter();
+        }
+        if(dryRun)
+        {
+            EventCenter.getInstance().postEvent(Events.Status, "Finished Processing Destination");
+            return;
+        }
+        
         try
         {
             writeToFile(false); // write to file in-case source and destination is same location
+            if(journal != null)
+            {
+                journal.clear(SyncJournal.Location.DESTINATION); // progress now stored in idFile
+            }
         }
         catch (IOException e)
         {
@@ -40,6 +114,42 @@ public class DestinationFileProcessor extends FileProcessorBase
         EventCenter.getInstance().postEvent(Events.Status, "Finished Processing Destination");
     }
     
+    /**
+     * Add every file in destination to the filter.
+     */
+    private void buildFilter()
+    {
+        long files = 0;
+        for(SynchiveDirectory dir : getStructuredMapping().values())
+        {
+            files += dir.getLookupTable().size();
+        }
+        filter = new BloomFilter(files, FILTER_FALSE_POSITIVE_RATE);
+        for(SynchiveDirectory dir : getStructuredMapping().values())
+        {
+            String directory = CatalogEntry.getDirectory(dir.getUniqueID());
+            for(String fileID : dir.getLookupTable().keySet())
+            {
+                String[] splitStr = fileID.split(" ", 2); // [crc, "name"]
+                if(splitStr.length == 2)
+                {
+                    filter.add(getFilterKey(directory + File.separator +
+                        splitStr[1].substring(1, splitStr[1].length() - 1), splitStr[0]));
+                }
+            }
+        }
+    }
+    
+    /**
+     * @param relativePath Path of file relative to root
+     * @param crc Checksum of file
+     * @return Key of file in the filter
+     */
+    public static String getFilterKey(String relativePath, String crc)
+    {
+        return crc + " " + relativePath;
+    }
+    
     // Dumps the lookup table sorted of DirectoryID including what's in each directory 
     public String toString()
     {
@@ -71,6 +181,14 @@ public class DestinationFileProcessor extends FileProcessorBase
         return getStructuredMapping();
     }
     
+    /**
+     * @return Filter of every file in destination as read in, null if shards were left to read in later
+     */
+    public BloomFilter getFilter()
+    {
+        return filter;
+    }
+    
     // ~~~~~ Required override methods ~~~~~~ //
     @Override
     public void didProcessFile(SynchiveFile file, SynchiveDirectory dir)
@@ -83,4 +201,10 @@ public class DestinationFileProcessor extends FileProcessorBase
     {  
         // unused
     }
+    
+    @Override
+    public void didFailRename(SynchiveFile original, SynchiveFile renamed)
+    {
+        // unused
+    }
 }
@@ -11,18 +11,38 @@ import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.nio.charset.Charset;
 import java.nio.charset.CharsetEncoder;
-import java.util.Enumeration;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.Hashtable;
+import java.util.Map.Entry;
 import java.util.Stack;
 
+import fileManagement.CatalogEntry;
+import fileManagement.CatalogIndex;
+import fileManagement.CatalogLog;
+import fileManagement.CatalogManifest;
+import fileManagement.CatalogReader;
+import fileManagement.RenameBatch;
+import fileManagement.ShardedDirectoryTable;
 import fileManagement.SynchiveDirectory;
 import fileManagement.SynchiveFile;
+import fileManagement.SyncJournal;
 import fileManagement.SynchiveDirectory.FileFlag;
+import support.DiskOrder;
+import support.Tracer;
 import support.Utilities;
 import support.Utilities.ChecksumException;
+import support.checksum.ChecksumAlgorithm;
+import support.jfr.FlightRecorder;
+import support.jfr.FlightRecorder.EventType;
 import synchive.EventCenter;
-import synchive.Globals;
-import synchive.Settings;
+import synchive.RunConfig;
+import synchive.RunControl;
 import synchive.EventCenter.Events;
 import synchive.EventCenter.RunningStatusEvents;
 
@@ -38,6 +58,14 @@ public abstract class FileProcessorBase
      * Prefix to determine if read from file line is a directory
      */
     private final String DIR_LINE_PREFIX = "~";
+    /**
+     * Fewest records the change log may hold before the idFile is compacted
+     */
+    private static final int MIN_COMPACT_RECORDS = 1024;
+    /**
+     * Change log may hold up to (files in idFile / COMPACT_RATIO) records before the idFile is compacted
+     */
+    private static final int COMPACT_RATIO = 4;
     /**
      * Location of directory
      */
@@ -48,9 +76,9 @@ public abstract class FileProcessorBase
     private Stack<SynchiveFile> directoriesToProcess;
     
     /**
-     * Structured mapping of "DirectoryID" -> "SynchiveDirectory"
+     * Structured mapping of "DirectoryID" -> "SynchiveDirectory", shards are read in when first looked up
      */
-    private Hashtable<String, SynchiveDirectory> directoryList;
+    private ShardedDirectoryTable directoryList;
     
     /**
      * Flag to determine if reading from idFile or not
@@ -62,6 +90,64 @@ public abstract class FileProcessorBase
      */
     private boolean hasDoneRenaming;
     
+    /**
+     * Pause and stop state of the run
+     */
+    private RunControl control;
+    /**
+     * Flag to determine if processing was stopped before every directory was read
+     */
+    private boolean wasStopped;
+    /**
+     * Journal to checkpoint scanned directories to. Null if not checkpointing
+     */
+    private SyncJournal journal;
+    /**
+     * Location of this directory within the journal
+     */
+    private SyncJournal.Location journalLocation;
+    /**
+     * Flag to determine if disk should be left untouched (renames are only recorded)
+     */
+    private boolean dryRun;
+    /**
+     * Lookup table of "original file" -> "renamed file" for renames not performed in a dry run
+     */
+    private Hashtable<File, File> pendingRenames;
+    /**
+     * Renames adding the CRC to filenames, performed once files have been read
+     */
+    private RenameBatch renameBatch;
+    /**
+     * Algorithm file checksums are computed with. IdFiles using another algorithm are ignored
+     */
+    private ChecksumAlgorithm checksumAlgorithm;
+    /**
+     * Settings of the run, captured when it started
+     */
+    private RunConfig config;
+    /**
+     * Mapping (ie. of destination) to quick compare against. A file with the same name, size and last modified time
+     * is given the checksum recorded there without being read. Null to read every file
+     */
+    private Hashtable<String, SynchiveDirectory> reference;
+    /**
+     * Change log of the root idFile, changes are appended to it until compacted. Null until an idFile is read or written
+     */
+    private CatalogLog changeLog;
+    /**
+     * Directories with their own idFile (shards), null if the location keeps a single idFile
+     */
+    private CatalogManifest manifest;
+    /**
+     * Flag to determine if shards are only read in when one of their directories is looked up
+     */
+    private boolean lazyShards;
+    /**
+     * Off-heap index kept in step with the idFile, null if none
+     */
+    private CatalogIndex index;
+    
     /**
      * Initializes a directory to be parsed and processed.
      * 
@@ -69,6 +155,31 @@ public abstract class FileProcessorBase
      * @throws Throws folder not a directory
      */
     public FileProcessorBase(File directory) throws Error
+    {
+        this(directory, new RunControl());
+    }
+    
+    /**
+     * Initializes a directory to be parsed and processed.
+     * 
+     * @param directory Directory to process
+     * @param control Pause and stop state to honor while processing
+     * @throws Throws folder not a directory
+     */
+    public FileProcessorBase(File directory, RunControl control) throws Error
+    {
+        this(directory, control, RunConfig.fromSettings());
+    }
+    
+    /**
+     * Initializes a directory to be parsed and processed.
+     * 
+     * @param directory Directory to process
+     * @param control Pause and stop state to honor while processing
+     * @param config Settings of the run
+     * @throws Throws folder not a directory
+     */
+    public FileProcessorBase(File directory, RunControl control, RunConfig config) throws Error
     {
         if(!directory.isDirectory()) // break if not a folder
         {
@@ -81,11 +192,19 @@ public abstract class FileProcessorBase
         
         doesRootIDFileExist = false;
         hasDoneRenaming = false;
+        wasStopped = false;
+        dryRun = false;
+        pendingRenames = new Hashtable<File, File>();
+        renameBatch = new RenameBatch(directory);
+        checksumAlgorithm = config.getChecksumAlgorithm();
         this.root = directory;
+        this.control = control;
+        this.config = config;
         
         directoriesToProcess = new Stack<SynchiveFile>(); // used to recurse through all folders
         directoriesToProcess.add(new SynchiveFile(directory)); // adds root dir
-        directoryList = new Hashtable<String, SynchiveDirectory>(); // parser uses structural mapping
+        directoryList = new ShardedDirectoryTable(shard -> loadShard(shard)); // parser uses structural mapping
+        manifest = CatalogManifest.read(directory);
     }
     
     /**
@@ -95,6 +214,11 @@ public abstract class FileProcessorBase
     {
         while(!directoriesToProcess.isEmpty())
         {
+            if(!control.checkpoint())
+            {
+                wasStopped = true;
+                break;
+            }
             SynchiveFile file = directoriesToProcess.pop();
             File[] idFiles = file.listFiles(new FileFilter() // filter out every file except idFile
             {
@@ -105,13 +229,34 @@ public abstract class FileProcessorBase
                 }
             });
 
+            if(idFiles.length > 0 && getIDFileChecksum(idFiles[0]) != checksumAlgorithm)
+            {
+                postEvent(Events.Status, "IDFile for \"" + Utilities.getName(file) + "\" uses another checksum, rereading files");
+                idFiles = new File[0];
+            }
+
             // if idFile not found, process each file within directory
             if(idFiles.length == 0)
             {
                String dirID = SynchiveDirectory.getDirectoryUniqueID(Utilities.getPath(file),
                     file.getDepth(), Utilities.getPath(root));
                 processingDirectory(new SynchiveDirectory(dirID)); // internally store info & abstract method
-                readFilesWithinDirectory(file);
+                
+                if(journal != null && journal.isDirectoryScanned(journalLocation, dirID))
+                {
+                    // scanned by an interrupted run, skip rehashing
+                    postEvent(Events.Status, "Restoring \"" + Utilities.getName(file) + "\" from journal");
+                    readFilesFromJournal(file, directoryList.get(dirID));
+                }
+                else if(readFilesWithinDirectory(file))
+                {
+                    checkpointDirectory(directoryList.get(dirID));
+                }
+                else
+                {
+                    wasStopped = true;
+                    break;
+                }
             }
             else
             {
@@ -122,14 +267,23 @@ public abstract class FileProcessorBase
                     {
                         doesRootIDFileExist = true;
                     }
-                    else
-                    {
-                        // if current file is a subIDFile
-                        //TODO Delete subIDFile sometime later? or update it?
-                    }
+                    // otherwise a subIDFile, shards of the root idFile (see CatalogManifest) are rewritten with it
                     
                     postEvent(Events.Status, "Reading in fileIDs for \"" + Utilities.getName(idFiles[0].getParentFile()) + "\"");
-                    readFromIDFile(idFiles[0], file.getDepth());
+                    long span = Tracer.begin();
+                    Object event = FlightRecorder.begin(EventType.CATALOG_LOADED);
+                    CatalogLog log = new CatalogLog(idFiles[0]);
+                    readFromIDFile(idFiles[0], file.getDepth(), log);
+                    Tracer.end("load idFile", span, idFiles[0].getPath());
+                    commitCatalogLoaded(event, idFiles[0], false);
+                    if(file.getPath().equals(Utilities.getPath(root))) // only the root idFile is written to
+                    {
+                        changeLog = log;
+                        for(CatalogManifest.Shard shard : manifest == null ? new ArrayList<CatalogManifest.Shard>() : manifest.getShards())
+                        {
+                            directoryList.addPending(shard, manifest.getDepth());
+                        }
+                    }
                 }
                 catch (IOException e)
                 {
@@ -137,81 +291,287 @@ public abstract class FileProcessorBase
                 } //catch bad fileFormat and readFilesWithin instead
             }
         }
+        
+        performRenames(); // files read so far are cataloged under their new name
+        if(wasStopped)
+        {
+            return;
+        }
+        if(!lazyShards)
+        {
+            directoryList.loadAll();
+        }
+        if(journal != null && journalLocation == SyncJournal.Location.DESTINATION)
+        {
+            mergeJournalFiles();
+        }
+    }
+    
+    /**
+     * Read in the directories of a shard. A shard changed outside of Synchive is still read, but reported.
+     * @param shard Shard of the manifest
+     */
+    private void loadShard(CatalogManifest.Shard shard)
+    {
+        File idFile = manifest.getIDFile(shard);
+        try
+        {
+            if(!shard.getChecksum().equalsIgnoreCase(Utilities.calculateCRC32(idFile)))
+            {
+                postEvent(Events.ErrorOccurred, "IDFile for \"" + Utilities.getName(idFile.getParentFile()) + "\" does not match manifest");
+            }
+            long span = Tracer.begin();
+            Object event = FlightRecorder.begin(EventType.CATALOG_LOADED);
+            readFromIDFile(idFile, manifest.getDepth(), new CatalogLog(idFile));
+            Tracer.end("load idFile", span, idFile.getPath());
+            commitCatalogLoaded(event, idFile, true);
+            performRenames();
+        }
+        catch (IOException | ChecksumException e)
+        {
+            postEvent(Events.ErrorOccurred, "Unable to read IDFile for \"" + Utilities.getName(idFile.getParentFile()) + "\"");
+        }
+    }
+    
+    /**
+     * Record an idFile read in with Flight Recorder.
+     * @param event Event begun before reading
+     * @param idFile IdFile read
+     * @param shard True if a shard of the root idFile
+     */
+    private static void commitCatalogLoaded(Object event, File idFile, boolean shard)
+    {
+        if(FlightRecorder.end(event))
+        {
+            FlightRecorder.commitCatalogLoaded(event, idFile.getPath(),
+                idFile.length() + new File(idFile.getParentFile(), Utilities.ID_LOG_FILE_NAME).length(), shard);
+        }
+    }
+    
+    /**
+     * Add files recorded in the journal (ie. copied by an interrupted run) that are missing from the mapping.
+     */
+    private void mergeJournalFiles()
+    {
+        for(String dirID : journal.getDirectories(journalLocation))
+        {
+            if(!directoryList.containsKey(dirID))
+            {
+                processingDirectory(new SynchiveDirectory(dirID));
+            }
+            SynchiveDirectory dir = directoryList.get(dirID);
+            for(String fileID : journal.getFiles(journalLocation, dirID))
+            {
+                if(dir.getValueForKey(fileID) == null)
+                {
+                    dir.addFile(fileID, FileFlag.FILE_NOT_EXIST);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Record a fully read directory into the journal.
+     * @param dir Directory read
+     */
+    private void checkpointDirectory(SynchiveDirectory dir)
+    {
+        if(journal == null)
+        {
+            return;
+        }
+        try
+        {
+            journal.recordScannedDirectory(journalLocation, dir.getUniqueID(), dir.getLookupTable().keySet());
+        }
+        catch (IOException e)
+        {
+            postEvent(Events.ErrorOccurred, "Unable to write to journal.");
+        }
+    }
+    
+    /**
+     * Restore a directory scanned by an interrupted run. Sub-directories are still added to the stack to be processed.
+     * @param file Directory to restore
+     * @param dir Directory mapping to restore into
+     */
+    private void readFilesFromJournal(SynchiveFile file, SynchiveDirectory dir)
+    {
+        for(File fileEntry : file.listFiles())
+        {
+            if(isDirectoryToProcess(fileEntry))
+            {
+                directoriesToProcess.push(new SynchiveFile(fileEntry, file.getDepth() + 1));
+            }
+        }
+        
+        for(String fileID : journal.getFiles(journalLocation, dir.getUniqueID()))
+        {
+            String[] splitStr = fileID.split(" ", 2); // [crc, name]
+            if(splitStr.length != 2)
+            {
+                continue;
+            }
+            SynchiveFile info = new SynchiveFile(new File(file.getPath() + File.separator + 
+                splitStr[1].substring(1, splitStr[1].length() - 1)), file.getDepth(), splitStr[0]);
+            fileProcessed(info, dir);
+        }
+    }
+    
+    /**
+     * @param fileEntry File within a directory
+     * @return True if fileEntry is a sub-directory that should be read
+     */
+    private boolean isDirectoryToProcess(File fileEntry)
+    {
+        return fileEntry.isDirectory() && 
+            !Utilities.getName(fileEntry).equals(Utilities.LEFTOVER_FOLDER) &&
+            !config.isFolderSkipped(Utilities.getName(fileEntry));
     }
     
     /**
      * Read in the directory and add sub-directories to the stack to be processed.
      * Each file within the directory will be processed.
      * @param file Directory to process
+     * @return False if stopped before every file was processed
      */
-    private void readFilesWithinDirectory(SynchiveFile file)
+    private boolean readFilesWithinDirectory(SynchiveFile file)
     {
-        for(File fileEntry : file.listFiles()) // go through each file in directory
+        String dirID = SynchiveDirectory.getDirectoryUniqueID(Utilities.getPath(file), file.getDepth(), Utilities.getPath(root));
+        Hashtable<String, String> referenceFiles = getReferenceFiles(dirID);
+        Object event = FlightRecorder.begin(EventType.DIRECTORY_SCANNED);
+        int filesHashed = 0;
+        long bytesHashed = 0;
+        long span = Tracer.begin();
+        File[] entries = file.listFiles();
+        if(config.getDiskOrderFlag()) // read in the order files are on disk, not listing order
         {
-            if(fileEntry.isDirectory() && 
-                !Utilities.getName(fileEntry).equals(Utilities.LEFTOVER_FOLDER) &&
-                !Settings.getInstance().getSkipFoldersName().contains(Utilities.getName(fileEntry))) // add child folders to read as well
+            DiskOrder.sort(entries);
+        }
+        Tracer.end("list directory", span, file.getPath());
+        for(File fileEntry : entries) // go through each file in directory
+        {
+            if(!control.checkpoint())
+            {
+                commitDirectoryScanned(event, file, entries.length, filesHashed, bytesHashed, false);
+                return false;
+            }
+            if(isDirectoryToProcess(fileEntry)) // add child folders to read as well
             {
                 directoriesToProcess.push(new SynchiveFile(fileEntry, file.getDepth() + 1));
             }
-            else
+            else if(!fileEntry.isDirectory()) // skipped directories (ie. leftovers) are not files
             {
                 // create new file entry
                 SynchiveFile temp = new SynchiveFile(fileEntry, file.getDepth());
+                temp.setSize(fileEntry.length());
+                temp.setModified(fileEntry.lastModified());
                     
                 // skip over generated files or extension type not needing to be copied
-                if(!temp.getName().equals(Utilities.ID_FILE_NAME) && 
-                 !temp.getName().equals(Utilities.AUDIT_FILE_NAME) &&
-                 temp.determineProcessingAllowed(Settings.getInstance().getSkipExtensionTypesText()))
+                if(!Utilities.isGeneratedFile(temp.getName()) && temp.determineProcessingAllowed(config))
                 {
-                    postEvent(Events.ProcessingFile, "Reading file... " + Utilities.getName(temp));
-                    
-                    try
+                    String knownCRC = quickCompare(temp, referenceFiles);
+                    if(knownCRC != null) // unchanged, checksum taken from reference
                     {
-                        String val = Utilities.calculateCRC32(fileEntry); // get crc value
-                        temp.setCRC(val);
+                        temp.setCRC(knownCRC);
+                        if(checksumAlgorithm == ChecksumAlgorithm.CRC32)
+                        {
+                            temp.setCRC32(knownCRC);
+                        }
                     }
-                    catch (ChecksumException e1) // catch file checksum mismatch
+                    else
                     {
-                        temp.setCRC("");
-                        postEvent(Events.ErrorOccurred, e1.getMessage());
-                    } 
+                        postEvent(Events.ProcessingFile, "Reading file... " + Utilities.getName(temp));
+                        calculateChecksums(temp);
+                        filesHashed++;
+                        bytesHashed += temp.getSize();
+                    }
                     
-                    temp = addCRCToFilename(temp); //add CRC to filename if conditions met
+                    temp = addCRCToFilename(temp, dirID); //add CRC to filename if conditions met
                     
                     // do a checksum check if flag enabled
-                    if(Settings.getInstance().getCrcCheckFlag())
+                    if(config.getCrcCheckFlag())
                     {
                         try
                         {
                             // either scan without delimiters or with delimiters based on flag
-                            temp.determineCopyingAllowed(getCRCDelimiters());
+                            temp.determineCopyingAllowed(config.getCrcPatterns());
                         }
                         catch (ChecksumException e) // catch file checksum mismatch
                         {
                             postEvent(Events.ErrorOccurred, 
                                 "Checksum mismatch for: \"" + Utilities.getName(temp) + "\"\n  " +
-                                    "- Calculated: [" + temp.getCRC().toUpperCase() + "] Found: " + e.getMessage());
+                                    "- Calculated: [" + temp.getCRC32().toUpperCase() + "] Found: " + e.getMessage());
                         }
                     }
                     
                     if(temp.copyAllowed())
                     {
-                        String dirID = SynchiveDirectory.getDirectoryUniqueID(Utilities.getPath(file), file.getDepth(), Utilities.getPath(root));
                         fileProcessed(temp, new SynchiveDirectory(dirID)); // internally store info & abstract method
                     }
                 }
             }
         }
+        commitDirectoryScanned(event, file, entries.length, filesHashed, bytesHashed, true);
+        return true;
     }
     
     /**
-     * Process directory and sub-directories through idFile.
+     * Record a directory read file by file with Flight Recorder.
+     * @param event Event begun before listing the directory
+     * @param file Directory read
+     * @param entries Entries listed in the directory
+     * @param filesHashed Files read to compute their checksums
+     * @param bytesHashed Bytes of the files read
+     * @param completed False if stopped before every file was read
+     */
+    private static void commitDirectoryScanned(Object event, SynchiveFile file, int entries, int filesHashed, long bytesHashed,
+        boolean completed)
+    {
+        if(FlightRecorder.end(event))
+        {
+            FlightRecorder.commitDirectoryScanned(event, file.getPath(), entries, filesHashed, bytesHashed, completed);
+        }
+    }
+    
+    /**
+     * Reads a file to set its checksum (and CRC32 when CRC in filename features need it).
+     * @param temp File to read
+     */
+    private void calculateChecksums(SynchiveFile temp)
+    {
+        long span = Tracer.begin();
+        try
+        {
+            // CRC32 is still needed for CRC in filename features, read file once for both
+            boolean needCRC32 = checksumAlgorithm != ChecksumAlgorithm.CRC32 &&
+                (config.getCrcInFilenameFlag() || config.getCrcCheckFlag());
+            String[] val = needCRC32 ?
+                ChecksumAlgorithm.calculate(temp, checksumAlgorithm, ChecksumAlgorithm.CRC32) :
+                ChecksumAlgorithm.calculate(temp, checksumAlgorithm);
+            temp.setCRC(val[0]);
+            if(needCRC32 || checksumAlgorithm == ChecksumAlgorithm.CRC32)
+            {
+                temp.setCRC32(val[val.length - 1]);
+            }
+        }
+        catch (ChecksumException e1) // catch file checksum mismatch
+        {
+            temp.setCRC("");
+            temp.setCRC32("");
+            postEvent(Events.ErrorOccurred, e1.getMessage());
+        }
+        Tracer.end("hash", span, temp.getPath());
+    }
+    
+    /**
+     * Process directory and sub-directories through idFile. Records of its change log supersede the lines of the idFile.
      * @param file Directory to process
      * @param baseDepth Depth level relative to root
+     * @param log Change log of the idFile
      * @throws IOException Throws error if unable to open file or bad data.
      */
-    private void readFromIDFile(File file, int baseDepth) throws IOException
+    private void readFromIDFile(File file, int baseDepth, CatalogLog log) throws IOException
     {
         BufferedReader sc = new BufferedReader(
             new InputStreamReader(
@@ -224,6 +584,7 @@ public abstract class FileProcessorBase
         }
         
         String locationDir = Utilities.getPath(file.getParentFile()); // directory of root        
+        HashSet<String> directoriesRead = new HashSet<String>();
         
         str = sc.readLine();
         //TODO: skip directory && extension types
@@ -235,116 +596,628 @@ public abstract class FileProcessorBase
                 sc.close();
                 throw new IOException("Bad format found");
             }
+            String dirLine = str;
             int newLevel = Integer.parseInt(String.valueOf(splitDir[0].charAt(1))) + baseDepth;
-            
-            String path = locationDir + splitDir[1];
-            String dirID = SynchiveDirectory.getDirectoryUniqueID(path, newLevel, Utilities.getPath(root));
-            SynchiveDirectory dir = new SynchiveDirectory(dirID);
-            
-            processingDirectory(dir); // internally store info & abstract method
+            SynchiveDirectory dir = readDirectory(locationDir + splitDir[1], newLevel);
+            Hashtable<String, long[]> changes = log.getChanges(dirLine);
+            directoriesRead.add(dirLine);
             
             str = sc.readLine();
             while(str != null && !str.startsWith(DIR_LINE_PREFIX)) // store files in folder
             {
-                String[] splitStr = str.split(" ", 2); // [crc, name]
-                if(splitStr.length != 2)
+                String[] splitStr = str.split(" ", 2); // [crc, "name" size modified]
+                int nameEnd = splitStr.length == 2 ? splitStr[1].lastIndexOf('"') : -1;
+                if(nameEnd < 1 || !splitStr[1].startsWith("\""))
                 {
                     sc.close();
                     throw new IOException("Bad format found");
                 }
+                if(changes != null && changes.containsKey(splitStr[0] + " " + splitStr[1].substring(0, nameEnd + 1)))
+                {
+                    str = sc.readLine(); // superseded by change log
+                    continue;
+                }
                 
-                // reconstruct file path (root path + directory path + fileName)
-                String fileLoc = locationDir + splitDir[1] + File.separator + 
-                    splitStr[1].substring(1, splitStr[1].length() - 1);
-                
-                // add crc to filename is flag checked 
-                // TODO improve efficiency by checking if file generated with Synchive Monitor)
-                SynchiveFile info = new SynchiveFile(
-                    new File(fileLoc), newLevel, splitStr[0]);
-                SynchiveFile temp = addCRCToFilename(info); // will return normal name if option not checked
-                
-                
-                fileProcessed(temp, dir); // internally store info & abstract method
+                long size = -1;
+                long modified = -1;
+                String[] metadata = splitStr[1].substring(nameEnd + 1).trim().split(" "); // [size, modified], absent in older idFiles
+                if(metadata.length == 2)
+                {
+                    try
+                    {
+                        size = Long.parseLong(metadata[0]);
+                        modified = Long.parseLong(metadata[1]);
+                    }
+                    catch (NumberFormatException e)
+                    {
+                        size = -1;
+                        modified = -1;
+                    }
+                }
+                readFile(dir, newLevel, locationDir + splitDir[1], splitStr[0], splitStr[1].substring(1, nameEnd), size, modified);
                 str = sc.readLine();
             }
+            readLoggedFiles(dir, newLevel, locationDir + splitDir[1], changes);
         }
         sc.close();
+        
+        for(Entry<String, Hashtable<String, long[]>> entry : log.getChanges().entrySet()) // directories only in log
+        {
+            String[] splitDir = entry.getKey().split(" ", 2); // [level, path]
+            if(!directoriesRead.contains(entry.getKey()) && splitDir.length == 2)
+            {
+                int newLevel = Integer.parseInt(String.valueOf(splitDir[0].charAt(1))) + baseDepth;
+                SynchiveDirectory dir = readDirectory(locationDir + splitDir[1], newLevel);
+                readLoggedFiles(dir, newLevel, locationDir + splitDir[1], entry.getValue());
+            }
+        }
+    }
+    
+    /**
+     * @param path Path of directory
+     * @param level Depth level relative to root
+     * @return Directory processed
+     */
+    private SynchiveDirectory readDirectory(String path, int level)
+    {
+        String dirID = SynchiveDirectory.getDirectoryUniqueID(path, level, Utilities.getPath(root));
+        SynchiveDirectory dir = new SynchiveDirectory(dirID);
+        
+        processingDirectory(dir); // internally store info & abstract method
+        return dir;
+    }
+    
+    /**
+     * Process the files a change log added to a directory.
+     * @param dir Directory of files
+     * @param level Depth level relative to root
+     * @param path Path of directory
+     * @param changes Lookup table of "FileID" -> [size, modified] if added or REMOVED, null if none
+     */
+    private void readLoggedFiles(SynchiveDirectory dir, int level, String path, Hashtable<String, long[]> changes)
+    {
+        if(changes == null)
+        {
+            return;
+        }
+        for(Entry<String, long[]> change : changes.entrySet())
+        {
+            String[] splitStr = change.getKey().split(" ", 2); // [crc, "name"]
+            if(change.getValue() != CatalogLog.REMOVED && splitStr.length == 2)
+            {
+                readFile(dir, level, path, splitStr[0], splitStr[1].substring(1, splitStr[1].length() - 1),
+                    change.getValue()[0], change.getValue()[1]);
+            }
+        }
     }
     
     /**
-     * Add CRC to filename if there is flag checked and no CRC already in filename
+     * Process a file listed in an idFile. It is not a change unless renamed to include its CRC.
+     * @param dir Directory of file
+     * @param level Depth level relative to root
+     * @param path Path of directory
+     * @param crc Checksum of file
+     * @param name Name of file
+     * @param size Size in bytes, -1 if unknown
+     * @param modified Last modified time in milliseconds, -1 if unknown
+     */
+    private void readFile(SynchiveDirectory dir, int level, String path, String crc, String name, long size, long modified)
+    {
+        // reconstruct file path (root path + directory path + fileName)
+        // add crc to filename is flag checked 
+        // TODO improve efficiency by checking if file generated with Synchive Monitor)
+        SynchiveFile info = new SynchiveFile(new File(path + File.separator + name), level, crc);
+        if(modified >= 0)
+        {
+            info.setSize(size);
+            info.setModified(modified);
+        }
+        if(checksumAlgorithm == ChecksumAlgorithm.CRC32)
+        {
+            info.setCRC32(crc);
+        }
+        SynchiveFile temp = addCRCToFilename(info, dir.getUniqueID()); // will return normal name if option not checked
+        
+        fileProcessed(temp, dir); // internally store info & abstract method
+        SynchiveDirectory stored = directoryList.get(dir.getUniqueID());
+        if(temp == info)
+        {
+            stored.markSaved(info.getUniqueID());
+        }
+        else // renamed, old name is no longer in directory
+        {
+            stored.removeFile(info.getUniqueID());
+        }
+    }
+    
+    /**
+     * Add CRC to filename if there is flag checked and no CRC already in filename.
+     * The rename is only recorded, it is performed with the others once files have been read (see performRenames).
      * @param temp File to add CRC to filename
-     * @return Original file if setting not enabled, or rename error. New file if rename successful.
+     * @param dirID UniqueID of the directory of the file
+     * @return Original file if setting not enabled. File with the CRC in its name otherwise.
      */
-    private SynchiveFile addCRCToFilename(SynchiveFile temp)
+    private SynchiveFile addCRCToFilename(SynchiveFile temp, String dirID)
     {
-        if(Settings.getInstance().getCrcInFilenameFlag() && !temp.getHasCRCInFilename(getCRCDelimiters()) &&
-            Settings.getInstance().isExtensionInAddCrcToExtension(Utilities.getExtensionType(temp.getName())))
+        if(config.getCrcInFilenameFlag() && !temp.getHasCRCInFilename(config.getCrcPatterns()) &&
+            config.isExtensionInAddCrcToExtension(Utilities.getExtensionType(temp.getName())))
         {
              postEvent(Events.ProcessingFile, "Adding CRC to filename... " + temp.getName());
-             String[] delimiter = {Settings.getInstance().getCrcDelimLeadingText(), 
-                 Settings.getInstance().getCrcDelimTrailingText()};
+             String[] delimiter = config.getCrcDelimiter();
              String path = temp.getParent() + File.separator + 
-                 Utilities.getFilenameWithCRC(temp.getName(), Utilities.getExtensionType(temp.getName()), temp.getCRC(), delimiter);
+                 Utilities.getFilenameWithCRC(temp.getName(), Utilities.getExtensionType(temp.getName()), getCRC32(temp), delimiter);
              File newFile = new File(path);
+             SynchiveFile renamed = new SynchiveFile(newFile, temp.getDepth(), temp.getCRC());
+             renamed.setSize(temp.getSize());
+             renamed.setModified(temp.getModified()); // renaming keeps last modified time
+             renamed.setCRC32(temp.getCRC32());
              
-             try
+             if(dryRun) // only record what would be renamed
              {
-                 if(temp.renameTo(newFile))
-                 {
-                     hasDoneRenaming = true;
-                     return new SynchiveFile(newFile, temp.getDepth(), temp.getCRC());
-                 }
-                 else
-                 {
-                     postEvent(Events.ErrorOccurred, "Unable to add CRC to filename... " + temp.getName());
-                     return temp;
-                 }
+                 pendingRenames.put(temp, newFile);
              }
-             catch(SecurityException e)
+             else
              {
-                 postEvent(Events.ErrorOccurred, "Unable to add CRC to filename... " + temp.getName());
-                 return temp;
+                 renameBatch.add(dirID, temp, renamed);
              }
+             return renamed;
         }
         return temp;
     }
     
     /**
-     * Write-out the structural mapping for storage.
-     * @param checkExist If true, skip files with FILE_NOT_EXIST flag. If false, include every file.
+     * Perform the renames recorded while reading, directories in parallel. Files already have their new name in the
+     * mapping, so the idFile picks the renames up on its next write. A rename that fails puts back the original file.
+     */
+    private void performRenames()
+    {
+        int renames = renameBatch.size();
+        if(renames == 0)
+        {
+            return;
+        }
+        postEvent(Events.Status, "Adding CRC to " + renames + " filenames in \"" + Utilities.getName(root) + "\"");
+        long span = Tracer.begin();
+        Hashtable<String, ArrayList<SynchiveFile[]>> failed;
+        try
+        {
+            failed = renameBatch.execute();
+        }
+        catch (IOException e)
+        {
+            postEvent(Events.ErrorOccurred, "Unable to write to rename journal, filenames left unchanged.");
+            failed = renameBatch.clear();
+        }
+        Tracer.end("rename", span, root.getPath());
+        
+        for(Entry<String, ArrayList<SynchiveFile[]>> entry : failed.entrySet())
+        {
+            SynchiveDirectory stored = directoryList.get(entry.getKey());
+            for(SynchiveFile[] rename : entry.getValue()) // [original, renamed]
+            {
+                postEvent(Events.ErrorOccurred, "Unable to add CRC to filename... " + rename[0].getName());
+                boolean wasSaved = Boolean.FALSE.equals(stored.getChanges().get(rename[0].getUniqueID())); // read from idFile
+                stored.removeFile(rename[1].getUniqueID());
+                stored.markSaved(rename[1].getUniqueID()); // never saved under its new name
+                stored.addFile(rename[0].getUniqueID(), FileFlag.FILE_NOT_EXIST);
+                if(rename[0].getModified() >= 0)
+                {
+                    stored.setMetadata(rename[0].getUniqueID(), rename[0].getSize(), rename[0].getModified());
+                }
+                if(wasSaved)
+                {
+                    stored.markSaved(rename[0].getUniqueID());
+                }
+                didFailRename(rename[0], rename[1]);
+                renames--;
+            }
+        }
+        hasDoneRenaming = hasDoneRenaming || renames > 0;
+    }
+    
+    /**
+     * Revert the renames adding the CRC to filenames recorded in the root's rename journal (of this and past runs),
+     * and the mapping with them. The idFile is written if any file was renamed back.
+     * Files are renamed again on the next run unless adding the CRC to filenames is disabled.
+     * @return Number of files renamed back
+     * @throws IOException Unable to read rename journal or write idFile
+     */
+    public int undoRenames() throws IOException
+    {
+        ArrayList<String[]> reverted = renameBatch.undo();
+        for(String[] record : reverted) // [directoryID, original, renamed, size, modified]
+        {
+            SynchiveDirectory stored = directoryList.get(record[0]);
+            if(stored == null) // directory not read (ie. skipped)
+            {
+                continue;
+            }
+            stored.removeFile(record[2]);
+            stored.addFile(record[1], FileFlag.FILE_NOT_EXIST);
+            long modified = Long.parseLong(record[4]);
+            if(modified >= 0)
+            {
+                stored.setMetadata(record[1], Long.parseLong(record[3]), modified);
+            }
+        }
+        if(!reverted.isEmpty())
+        {
+            writeToFile(false);
+        }
+        return reverted.size();
+    }
+    
+    /**
+     * Returns the CRC32 of a file for CRC in filename features. Calculated if the file was identified with another algorithm.
+     * @param file File to get CRC32 of
+     * @return CRC32 value in 8 hexadecimal, empty if unable to read file
+     */
+    private String getCRC32(SynchiveFile file)
+    {
+        if(file.getCRC32() == null)
+        {
+            try
+            {
+                file.setCRC32(Utilities.calculateCRC32(file));
+            }
+            catch (ChecksumException e)
+            {
+                file.setCRC32("");
+                postEvent(Events.ErrorOccurred, e.getMessage());
+            }
+        }
+        return file.getCRC32();
+    }
+    
+    /**
+     * @param dirID DirectoryID of directory being read
+     * @return Lookup table of "\"name\" size modified" -> checksum of files in the same directory of reference
+     *          with a known size and last modified time. Null if not quick comparing
+     */
+    private Hashtable<String, String> getReferenceFiles(String dirID)
+    {
+        SynchiveDirectory dir = reference == null || config.getCrcCheckFlag() ? // CRC check must read each file
+            null : reference.get(dirID);
+        if(dir == null)
+        {
+            return null;
+        }
+        Hashtable<String, String> files = new Hashtable<String, String>();
+        for(String fileID : dir.getLookupTable().keySet())
+        {
+            long[] metadata = dir.getMetadata(fileID);
+            if(metadata != null)
+            {
+                String[] splitStr = fileID.split(" ", 2); // [crc, name]
+                files.put(splitStr[1] + " " + metadata[0] + " " + metadata[1], splitStr[0]);
+            }
+        }
+        return files;
+    }
+    
+    /**
+     * @param file File read from disk with size and last modified time
+     * @param referenceFiles Files in reference directory (see getReferenceFiles), null if none
+     * @return Checksum recorded in reference for a file with the same name, size and last modified time. Null if not found
+     */
+    private String quickCompare(SynchiveFile file, Hashtable<String, String> referenceFiles)
+    {
+        return referenceFiles == null ? null :
+            referenceFiles.get("\"" + file.getName() + "\" " + file.getSize() + " " + file.getModified());
+    }
+    
+    /**
+     * Reads the checksum algorithm from the header of an idFile. IdFiles written before the header included it use CRC32.
+     * @param idFile IdFile to read
+     * @return Algorithm of the checksums in idFile, null if unable to read
+     */
+    private static ChecksumAlgorithm getIDFileChecksum(File idFile)
+    {
+        try
+        {
+            BufferedReader sc = new BufferedReader(new InputStreamReader(new FileInputStream(idFile), "UTF8"));
+            String header = sc.readLine();
+            sc.close();
+            if(header == null)
+            {
+                return null;
+            }
+            return CatalogReader.getChecksum(header);
+        }
+        catch (IOException e)
+        {
+            return null;
+        }
+    }
+    
+    /**
+     * Write-out the structural mapping for storage. Once the idFile has been read or written, only the changes since are
+     * appended to its change log, until the log grows large enough that the idFile is compacted (rewritten).
+     * Directories at the shard depth (see Settings) are written to their own idFile instead, rewritten only if changed.
+     * Shards never read in are left as is.
+     * @param checkExist If true, skip files with FILE_NOT_EXIST flag (always rewrites). If false, include every file.
      * @throws IOException Exceptions thrown from BufferWriter
      */
     public void writeToFile(boolean checkExist) throws IOException
     {
-        CharsetEncoder encoder = Charset.forName("UTF-8").newEncoder();
-        BufferedWriter output = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(new File(getRoot().getPath() + File.separator + Utilities.ID_FILE_NAME)), encoder));
-        output.write("Synchive " + Globals.VERSION + " - root=" + getRoot().getPath());
-        output.newLine();
+        long span = Tracer.begin();
+        Object event = FlightRecorder.begin(EventType.CATALOG_WRITTEN);
+        if(index != null)
+        {
+            index.update(directoryList.getLoaded()); // before changes are cleared by writing
+        }
+        writeCatalog(checkExist);
+        if(index != null)
+        {
+            index.stamp();
+        }
+        Tracer.end("write idFile", span, root.getPath());
+        if(FlightRecorder.end(event))
+        {
+            FlightRecorder.commitCatalogWritten(event, root.getPath(),
+                new File(root, Utilities.ID_FILE_NAME).length() + new File(root, Utilities.ID_LOG_FILE_NAME).length(),
+                directoryList.getLoaded().size());
+        }
+    }
+    
+    /**
+     * Write the shards then the root idFile, see writeToFile.
+     * @param checkExist If true, skip files with FILE_NOT_EXIST flag (always rewrites). If false, include every file.
+     * @throws IOException Exceptions thrown from BufferWriter
+     */
+    private void writeCatalog(boolean checkExist) throws IOException
+    {
+        int shardDepth = config.getCatalogShardDepth();
+        boolean relayout = manifest == null ? shardDepth > 0 : manifest.getDepth() != shardDepth;
+        if(relayout) // every directory moves to the new layout
+        {
+            directoryList.loadAll();
+        }
+        
+        ArrayList<SynchiveDirectory> rootDirectories = new ArrayList<SynchiveDirectory>();
+        Hashtable<String, ArrayList<SynchiveDirectory>> shards = new Hashtable<String, ArrayList<SynchiveDirectory>>();
+        for(SynchiveDirectory dir : directoryList.getLoaded())
+        {
+            String shardID = CatalogManifest.getShardID(dir.getUniqueID(), shardDepth);
+            if(shardID == null)
+            {
+                rootDirectories.add(dir);
+                continue;
+            }
+            if(!shards.containsKey(shardID))
+            {
+                shards.put(shardID, new ArrayList<SynchiveDirectory>());
+            }
+            shards.get(shardID).add(dir);
+        }
+        if(manifest != null || shardDepth > 0)
+        {
+            writeShards(shards, shardDepth, checkExist, relayout);
+        }
+        
+        int changes = 0;
+        int files = 0;
+        for(SynchiveDirectory dir : rootDirectories)
+        {
+            changes += dir.getChanges().size();
+            files += dir.getLookupTable().size();
+        }
+        if(!checkExist && !relayout && changeLog != null &&
+            changeLog.getRecords() + changes <= Math.max(MIN_COMPACT_RECORDS, files / COMPACT_RATIO))
+        {
+            if(changes > 0)
+            {
+                changeLog.append(rootDirectories);
+                postEvent(Events.Status, "Finished writting " + changes + " changes to IDFile");
+            }
+            return;
+        }
+        writeSnapshot(rootDirectories, checkExist);
+    }
+    
+    /**
+     * Rewrite the idFile with every file, folding its change log in.
+     * @throws IOException Exceptions thrown from BufferWriter
+     */
+    public void compact() throws IOException
+    {
+        ArrayList<SynchiveDirectory> rootDirectories = new ArrayList<SynchiveDirectory>();
+        int shardDepth = manifest == null ? 0 : manifest.getDepth();
+        for(SynchiveDirectory dir : directoryList.getLoaded())
+        {
+            if(CatalogManifest.getShardID(dir.getUniqueID(), shardDepth) == null)
+            {
+                rootDirectories.add(dir);
+            }
+        }
+        if(index != null)
+        {
+            index.update(rootDirectories);
+        }
+        writeSnapshot(rootDirectories, false);
+        if(index != null)
+        {
+            index.stamp();
+        }
+    }
+    
+    /**
+     * Write the idFile of each shard with a changed directory, then the manifest listing them.
+     * @param shards Lookup table of "DirectoryID of shard" -> directories read in belonging to it
+     * @param shardDepth Depth of the directories owning a shard
+     * @param checkExist If true, skip files with FILE_NOT_EXIST flag (always rewrites). If false, include every file.
+     * @param relayout True if the shard depth changed, every shard is rewritten and the old ones removed
+     * @throws IOException Exceptions thrown from BufferWriter
+     */
+    private void writeShards(Hashtable<String, ArrayList<SynchiveDirectory>> shards, int shardDepth,
+        boolean checkExist, boolean relayout) throws IOException
+    {
+        CatalogManifest previous = relayout ? manifest : null;
+        if(manifest == null || relayout)
+        {
+            manifest = new CatalogManifest(root, shardDepth);
+        }
+        
+        int written = 0;
+        boolean removed = false;
+        for(Entry<String, ArrayList<SynchiveDirectory>> entry : shards.entrySet())
+        {
+            File directory = new File(getRoot().getPath() + CatalogEntry.getDirectory(entry.getKey()));
+            boolean changed = checkExist || manifest.get(entry.getKey()) == null;
+            for(SynchiveDirectory dir : entry.getValue())
+            {
+                changed = changed || !dir.getChanges().isEmpty();
+            }
+            if(!directory.isDirectory()) // removed from disk
+            {
+                removed = removed || manifest.get(entry.getKey()) != null;
+                manifest.remove(entry.getKey());
+            }
+            else if(changed)
+            {
+                File idFile = new File(directory, Utilities.ID_FILE_NAME);
+                long files = writeIDFile(idFile, directory.getPath(), entry.getValue(), checkExist,
+                    CatalogEntry.getDirectory(entry.getKey()), shardDepth);
+                try
+                {
+                    manifest.put(new CatalogManifest.Shard(entry.getKey(), Utilities.calculateCRC32(idFile), files));
+                }
+                catch (ChecksumException e)
+                {
+                    throw new IOException(e.getMessage());
+                }
+                for(SynchiveDirectory dir : entry.getValue())
+                {
+                    dir.clearChanges();
+                }
+                written++;
+            }
+        }
         
-        Enumeration<String> keys = directoryList.keys();
-        while(keys.hasMoreElements())
+        if(previous != null) // remove shards of the old layout
+        {
+            for(CatalogManifest.Shard shard : previous.getShards())
+            {
+                if(manifest.get(shard.getDirectoryID()) == null)
+                {
+                    previous.getIDFile(shard).delete();
+                }
+            }
+        }
+        if(written > 0 || removed || previous != null) // left as is otherwise, so the index stamp still matches
+        {
+            manifest.write();
+        }
+        if(shardDepth == 0)
         {
-            String key = keys.nextElement();
-            SynchiveDirectory dir = directoryList.get(key);
-            output.write(dir.getUniqueID());
+            manifest = null; // back to a single idFile, manifest removed by write
+        }
+        if(written > 0)
+        {
+            postEvent(Events.Status, "Finished writting " + written + " IDFile shards");
+        }
+    }
+    
+    /**
+     * Write a new idFile aside and swap it in, so a crash never leaves a partial idFile. The change log is then removed.
+     * @param directories Directories of the root idFile
+     * @param checkExist If true, skip files with FILE_NOT_EXIST flag. If false, include every file.
+     * @throws IOException Exceptions thrown from BufferWriter
+     */
+    private void writeSnapshot(ArrayList<SynchiveDirectory> directories, boolean checkExist) throws IOException
+    {
+        File idFile = new File(getRoot().getPath() + File.separator + Utilities.ID_FILE_NAME);
+        writeIDFile(idFile, getRoot().getPath(), directories, checkExist, "", 0);
+        
+        if(changeLog == null)
+        {
+            changeLog = new CatalogLog(idFile);
+        }
+        changeLog.delete(); // records now in idFile
+        for(SynchiveDirectory dir : directories)
+        {
+            dir.clearChanges();
+        }
+        postEvent(Events.Status, "Finished writting to IDFile");
+    }
+    
+    /**
+     * Write an idFile aside and swap it in, so a crash never leaves a partial idFile.
+     * @param idFile IdFile to write
+     * @param location Path the idFile is the root of
+     * @param directories Directories to write
+     * @param checkExist If true, skip files with FILE_NOT_EXIST flag. If false, include every file.
+     * @param prefix Directory of idFile relative to root, stripped from each directory written
+     * @param baseDepth Depth level of idFile relative to root, subtracted from each directory written
+     * @return Number of files written
+     * @throws IOException Exceptions thrown from BufferWriter
+     */
+    private long writeIDFile(File idFile, String location, ArrayList<SynchiveDirectory> directories, boolean checkExist,
+        String prefix, int baseDepth) throws IOException
+    {
+        long count = 0;
+        File tempFile = new File(idFile.getParentFile(), Utilities.ID_TEMP_FILE_NAME);
+        CharsetEncoder encoder = Charset.forName("UTF-8").newEncoder();
+        FileOutputStream outputStream = new FileOutputStream(tempFile);
+        BufferedWriter output = new BufferedWriter(new OutputStreamWriter(outputStream, encoder));
+        try
+        {
+            output.write(CatalogReader.getHeader(checksumAlgorithm, location));
             output.newLine();
             
-            Hashtable<String, FileFlag> file = dir.getLookupTable();
-            Enumeration<String> fileEnum = file.keys();
-            while(fileEnum.hasMoreElements())
+            // sorted by directory then name so the idFile can be merge-joined (see CatalogReader)
+            SynchiveDirectory[] sorted = directories.toArray(new SynchiveDirectory[0]);
+            Arrays.sort(sorted, new Comparator<SynchiveDirectory>()
             {
-                String fileID = fileEnum.nextElement();
-                if(checkExist && file.get(fileID) != FileFlag.FILE_EXIST)
+                @Override
+                public int compare(SynchiveDirectory a, SynchiveDirectory b)
                 {
-                    continue;
+                    return CatalogEntry.compareDirectories(CatalogEntry.getDirectory(a.getUniqueID()),
+                        CatalogEntry.getDirectory(b.getUniqueID()));
                 }
-                output.write(fileID);
+            });
+            for(SynchiveDirectory dir : sorted)
+            {
+                String dirID = dir.getUniqueID();
+                Hashtable<String, FileFlag> file = dir.getLookupTable();
+                if(file.isEmpty() && !new File(getRoot().getPath() + CatalogEntry.getDirectory(dirID)).isDirectory())
+                {
+                    continue; // removed (ie. emptied into leftovers)
+                }
+                int level = Integer.parseInt(dirID.substring(1, dirID.indexOf(':'))) - baseDepth;
+                output.write(DIR_LINE_PREFIX + level + ": " + CatalogEntry.getDirectory(dirID).substring(prefix.length()));
                 output.newLine();
+                
+                String[] fileIDs = file.keySet().toArray(new String[0]);
+                Arrays.sort(fileIDs, CatalogEntry.FILE_ID_ORDER);
+                for(String fileID : fileIDs)
+                {
+                    if(checkExist && file.get(fileID) != FileFlag.FILE_EXIST)
+                    {
+                        continue;
+                    }
+                    long[] metadata = dir.getMetadata(fileID);
+                    output.write(metadata == null ? fileID : fileID + " " + metadata[0] + " " + metadata[1]);
+                    output.newLine();
+                    count++;
+                }
             }
+            output.flush();
+            outputStream.getChannel().force(false);
         }
-        output.close();
-        postEvent(Events.Status, "Finished writting to IDFile");
+        finally
+        {
+            output.close();
+        }
+        try
+        {
+            Files.move(tempFile.toPath(), idFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (AtomicMoveNotSupportedException e)
+        {
+            Files.move(tempFile.toPath(), idFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        return count;
     }
     
     /**
@@ -356,7 +1229,12 @@ public abstract class FileProcessorBase
     private void fileProcessed(SynchiveFile file, SynchiveDirectory dir)
     {
         // Stores the file within it's directory 
-        directoryList.get(dir.getUniqueID()).addFile(file.getUniqueID(), FileFlag.FILE_NOT_EXIST);
+        SynchiveDirectory stored = directoryList.get(dir.getUniqueID());
+        stored.addFile(file.getUniqueID(), FileFlag.FILE_NOT_EXIST);
+        if(file.getModified() >= 0)
+        {
+            stored.setMetadata(file.getUniqueID(), file.getSize(), file.getModified());
+        }
         didProcessFile(file, dir);
     }
     
@@ -383,15 +1261,6 @@ public abstract class FileProcessorBase
     }
     
     // ~~~~~ Getters & Setters ~~~~~~ //
-    /**
-     * Handles delimiters to use for CRC in filename.
-     * @return Delimiters or empty string if ScanWithoutDelimFlag checked
-     */
-    private String getCRCDelimiters()
-    {
-        return Settings.getInstance().getScanWithoutDelimFlag() ? "" : Settings.getInstance().getCrcDelimiterText();
-    }
-    
     /**
      * @return Root file (location origin)
      */
@@ -408,6 +1277,77 @@ public abstract class FileProcessorBase
         return doesRootIDFileExist;
     }
     
+    /**
+     * @return True if processing was stopped before every directory was read
+     */
+    public boolean wasStopped()
+    {
+        return wasStopped;
+    }
+    
+    /**
+     * Checkpoint scanned directories and restore directories scanned by an interrupted run.
+     * @param journal Journal to use
+     * @param location Location of this directory within the journal
+     */
+    protected void setJournal(SyncJournal journal, SyncJournal.Location location)
+    {
+        this.journal = journal;
+        this.journalLocation = location;
+    }
+    
+    /**
+     * Quick compare against a mapping read beforehand (ie. destination) instead of reading every file.
+     * @param reference Mapping to compare against, null to read every file
+     */
+    protected void setReference(Hashtable<String, SynchiveDirectory> reference)
+    {
+        this.reference = reference;
+    }
+    
+    /**
+     * Keep an index in step with the idFile. Changes are applied to it each time the idFile is written.
+     * @param index Index of this location, null for none
+     */
+    public void setIndex(CatalogIndex index)
+    {
+        this.index = index;
+    }
+    
+    /**
+     * Read in shards only when one of their directories is looked up, instead of with the root idFile.
+     * @param lazyShards True to read in shards when first needed
+     */
+    protected void setLazyShards(boolean lazyShards)
+    {
+        this.lazyShards = lazyShards;
+    }
+    
+    /**
+     * Leave disk untouched while processing. Renames are recorded instead of performed.
+     * @param dryRun True to leave disk untouched
+     */
+    protected void setDryRun(boolean dryRun)
+    {
+        this.dryRun = dryRun;
+    }
+    
+    /**
+     * @return True if disk is left untouched while processing
+     */
+    public boolean isDryRun()
+    {
+        return dryRun;
+    }
+    
+    /**
+     * @return Lookup table of "original file" -> "renamed file" of renames recorded during a dry run
+     */
+    public Hashtable<File, File> getPendingRenames()
+    {
+        return pendingRenames;
+    }
+    
     /**
      * @return True if any file has been renamed
      */
@@ -423,6 +1363,14 @@ public abstract class FileProcessorBase
     {
         return directoryList;
     }
+    
+    /**
+     * @return True if a shard has not been read in yet (see setLazyShards)
+     */
+    protected boolean hasPendingShards()
+    {
+        return directoryList.hasPending();
+    }
     // ~~~~~ Required override methods ~~~~~~ //
     /**
      * Method gets called for each file (non directory) processed
@@ -436,4 +1384,11 @@ public abstract class FileProcessorBase
      * @param dir Directory to be processed
      */
     public abstract void willProcessDirectory(SynchiveDirectory dir);
+    
+    /**
+     * Method gets called for each file that could not be renamed to add its CRC, after it was processed under its new name
+     * @param original File as named on disk
+     * @param renamed File as it was processed
+     */
+    public abstract void didFailRename(SynchiveFile original, SynchiveFile renamed);
 }
@@ -3,10 +3,14 @@ package fileManagement.fileProcessor;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Hashtable;
 
 import fileManagement.SynchiveDirectory;
 import fileManagement.SynchiveFile;
+import fileManagement.SyncJournal;
 import synchive.EventCenter;
+import synchive.RunConfig;
+import synchive.RunControl;
 import synchive.EventCenter.Events;
 
 /**
@@ -27,11 +31,74 @@ public class SourceFileProcessor extends FileProcessorBase
      */
     public SourceFileProcessor(File directory)
     {
-        super(directory);
+        this(directory, new RunControl(), null);
+    }
+    
+    /**
+     * Processes source location into a list of files.
+     * Scanned directories are checkpointed into the journal and progress from an interrupted run is restored.
+     * @param directory Source Directory
+     * @param control Pause and stop state to honor while processing
+     * @param journal Journal to checkpoint to, null to disable checkpointing
+     */
+    public SourceFileProcessor(File directory, RunControl control, SyncJournal journal)
+    {
+        this(directory, control, journal, false);
+    }
+    
+    /**
+     * Processes source location into a list of files.
+     * @param directory Source Directory
+     * @param control Pause and stop state to honor while processing
+     * @param journal Journal to checkpoint to, null to disable checkpointing
+     * @param dryRun True to leave disk untouched (no idFile written, renames only recorded)
+     */
+    public SourceFileProcessor(File directory, RunControl control, SyncJournal journal, boolean dryRun)
+    {
+        this(directory, control, journal, dryRun, null);
+    }
+    
+    /**
+     * Processes source location into a list of files. 
+     * Files with the same name, size and last modified time as in reference are not read.
+     * @param directory Source Directory
+     * @param control Pause and stop state to honor while processing
+     * @param journal Journal to checkpoint to, null to disable checkpointing
+     * @param dryRun True to leave disk untouched (no idFile written, renames only recorded)
+     * @param reference Mapping of destination to quick compare against, null to read every file
+     */
+    public SourceFileProcessor(File directory, RunControl control, SyncJournal journal, boolean dryRun,
+        Hashtable<String, SynchiveDirectory> reference)
+    {
+        this(directory, control, journal, dryRun, reference, RunConfig.fromSettings());
+    }
+    
+    /**
+     * Processes source location into a list of files. 
+     * Files with the same name, size and last modified time as in reference are not read.
+     * @param directory Source Directory
+     * @param control Pause and stop state to honor while processing
+     * @param journal Journal to checkpoint to, null to disable checkpointing
+     * @param dryRun True to leave disk untouched (no idFile written, renames only recorded)
+     * @param reference Mapping of destination to quick compare against, null to read every file
+     * @param config Settings of the run
+     */
+    public SourceFileProcessor(File directory, RunControl control, SyncJournal journal, boolean dryRun,
+        Hashtable<String, SynchiveDirectory> reference, RunConfig config)
+    {
+        super(directory, control, config);
+        setJournal(journal, SyncJournal.Location.SOURCE);
+        setDryRun(dryRun);
+        setReference(reference);
         fileList = new ArrayList<SynchiveFile>(); // source uses flat mapping
         EventCenter.getInstance().postEvent(Events.Status, "Processing Source ...");
         readinIDs();
-        if(doesRootIDFileExist() && hasDoneFileRenaming())
+        if(wasStopped())
+        {
+            EventCenter.getInstance().postEvent(Events.Status, "Stopped Processing Source");
+            return;
+        }
+        if(!dryRun && doesRootIDFileExist() && hasDoneFileRenaming())
         {
             try
             {
@@ -81,4 +148,14 @@ public class SourceFileProcessor extends FileProcessorBase
     {
         // unused
     }
+    
+    @Override
+    public void didFailRename(SynchiveFile original, SynchiveFile renamed)
+    {
+        int index = fileList.indexOf(renamed);
+        if(index >= 0)
+        {
+            fileList.set(index, original);
+        }
+    }
 }
@@ -5,6 +5,7 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.ArrayList;
 
 import javax.swing.JTextField;
 import javax.swing.UIManager;
@@ -41,6 +42,10 @@ public class SummaryController implements SummaryViewDelegate, StopWatchDelegate
      * Keeps track of running time
      */
     private StopWatch watch;
+    /**
+     * Current or last run of the diff, null if never ran
+     */
+    private SynchiveDiff diff;
 
     /**
      * Initializes the GUI
@@ -67,7 +72,9 @@ public class SummaryController implements SummaryViewDelegate, StopWatchDelegate
                     EventCenter.getInstance().postEvent(Events.ErrorOccurred, "Unable to execute Completion Option");
                 }
             }
-            else if(((Object[])arr)[0] == EventCenter.RunningStatusEvents.Error)
+            else if(((Object[])arr)[0] == EventCenter.RunningStatusEvents.Error ||
+                ((Object[])arr)[0] == EventCenter.RunningStatusEvents.Paused ||
+                ((Object[])arr)[0] == EventCenter.RunningStatusEvents.Stopped)
             {
                 watch.stop();
             }
@@ -104,7 +111,7 @@ public class SummaryController implements SummaryViewDelegate, StopWatchDelegate
     {
 //        SynchiveDiff diff = new SynchiveDiff(new File("E:\\TestA"), new File("E:\\TestB"));
         File src = new File(Settings.getInstance().getSourcePath());
-        File des = new File(Settings.getInstance().getDestinationPath());
+        ArrayList<File> des = Settings.getInstance().getDestinations(); // several separated by File.pathSeparator
         
         EventCenter.getInstance().postEvent(Events.RunningStatus, 
             new Object[] {EventCenter.RunningStatusEvents.Running, "Running"});
@@ -113,7 +120,6 @@ public class SummaryController implements SummaryViewDelegate, StopWatchDelegate
         tabController.clearLogs(); // clear previous logs
         watch.restart(); // starts running time
         
-        SynchiveDiff diff;
         try
         {
             diff = new SynchiveDiff(src, des);
@@ -129,6 +135,40 @@ public class SummaryController implements SummaryViewDelegate, StopWatchDelegate
         
     }
     
+    /**
+     * Pause the running synchronization
+     */
+    public void pauseSynchiveDiffer()
+    {
+        if(diff != null)
+        {
+            diff.pause();
+        }
+    }
+    
+    /**
+     * Resume the paused synchronization
+     */
+    public void resumeSynchiveDiffer()
+    {
+        if(diff != null)
+        {
+            watch.start();
+            diff.resume();
+        }
+    }
+    
+    /**
+     * Stop the running synchronization, progress is saved for the next run
+     */
+    public void stopSynchiveDiffer()
+    {
+        if(diff != null)
+        {
+            diff.stop();
+        }
+    }
+    
     /**
      * Handles what to do after completion. Will write to errors to "output.txt" for close and shutdown option.
      * @throws IOException Unable to write to file
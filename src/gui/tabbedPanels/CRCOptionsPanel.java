@@ -4,21 +4,20 @@ import java.awt.Color;
 import java.awt.Insets;
 import java.awt.event.ItemEvent;
 import java.awt.event.ItemListener;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
 import java.io.File;
-import java.util.Set;
 
 import javax.swing.Box;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JRadioButton;
 import javax.swing.JTextField;
-import javax.swing.SwingUtilities;
 import javax.swing.border.LineBorder;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
 
 import support.FileDrop;
-import support.Utilities;
 import synchive.Settings;
 
 /**
@@ -83,6 +82,10 @@ public class CRCOptionsPanel extends JPanel
      * Add CRC to Extension Type's textField
      */
     private JTextField extensionTypeTextField;
+    /**
+     * Finds extensions of files dropped onto extensionTypeTextField, null if none dropped
+     */
+    private ExtensionDiscoveryWorker extensionTypeWorker;
     /**
      * Leading delimiter for adding CRC to filename's textField
      */
@@ -217,24 +220,26 @@ public class CRCOptionsPanel extends JPanel
             @Override
             public void filesDropped(File[] files)
             {
-                SwingUtilities.invokeLater(new Runnable()
+                // walk the dropped folders in the background, the document listener saves each extension added
+                if(extensionTypeWorker != null)
                 {
-                    @Override
-                    public void run()
-                    {
-                        String extensions = Utilities.addSeparator(extensionTypeTextField.getText(), ",", true);
-                        Set<String> extenSet = Utilities.getExtensionsForFiles(files);
-                        
-                        for(String str : extenSet)
-                        {
-                            extensions += str + ", ";
-                        }
-                        extensionTypeTextField.setText(extensions);
-                        delegate.crcForExtensionTypeTextChanged(extensionTypeTextField, extensions);
-                    }
-                });
+                    extensionTypeWorker.cancel(true);
+                }
+                extensionTypeWorker = new ExtensionDiscoveryWorker(extensionTypeTextField, files);
+                extensionTypeWorker.execute();
             } // end filesDropped
         }); // end FileDrop.Listener
+        extensionTypeTextField.addKeyListener(new KeyAdapter()
+        {
+            @Override
+            public void keyPressed(KeyEvent e)
+            {
+                if(e.getKeyCode() == KeyEvent.VK_ESCAPE && extensionTypeWorker != null) // stop finding extensions
+                {
+                    extensionTypeWorker.cancel(true);
+                }
+            }
+        });
         
         JLabel crcDelimiterLeadingLabel = new JLabel("CRC Delimiter - Leading");
         crcDelimiterLeadingLabel.setBounds(7, 139, 143, 14);
@@ -0,0 +1,98 @@
+package gui.tabbedPanels;
+
+import java.io.File;
+import java.util.List;
+
+import javax.swing.JTextField;
+import javax.swing.SwingWorker;
+
+import support.ExtensionScanner;
+import support.ExtensionScanner.ExtensionScannerDelegate;
+import support.Utilities;
+import synchive.EventCenter;
+import synchive.EventCenter.Events;
+
+/**
+ * Finds the extensions of files dropped onto a text field without blocking the Event Dispatch Thread.
+ * Extensions are added to the text field as they are found, and the number of files and bytes of each
+ * extension are shown as the text field's tool tip. Cancel to stop the walk (ie. another drop, escape key).
+ *
+ * @author Tony Hsu
+ */
+public class ExtensionDiscoveryWorker extends SwingWorker<Boolean, String> implements ExtensionScannerDelegate
+{
+    /**
+     * Text field to add the extensions to, its document listener saves the text
+     */
+    private JTextField textField;
+    /**
+     * Files or directories dropped
+     */
+    private File[] files;
+    /**
+     * Walks the dropped files in the background
+     */
+    private ExtensionScanner scanner;
+
+    /**
+     * @param textField Text field to add the extensions to
+     * @param files Files or directories dropped
+     */
+    public ExtensionDiscoveryWorker(JTextField textField, File[] files)
+    {
+        this.textField = textField;
+        this.files = files;
+        scanner = new ExtensionScanner(this);
+    }
+
+    @Override
+    protected Boolean doInBackground()
+    {
+        return scanner.scan(files);
+    }
+
+    @Override
+    public void extensionFound(String extension)
+    {
+        publish(extension);
+    }
+
+    @Override
+    protected void process(List<String> extensions)
+    {
+        if(isCancelled())
+        {
+            return;
+        }
+        String text = Utilities.addSeparator(textField.getText(), ",", true);
+        for(String str : extensions)
+        {
+            if(!(", " + text).contains(", " + str + ", ")) // skip if already listed
+            {
+                text += str + ", ";
+            }
+        }
+        if(!text.equals(textField.getText()))
+        {
+            textField.setText(text);
+        }
+        textField.setToolTipText(getSummary("Finding extensions..."));
+    }
+
+    @Override
+    protected void done()
+    {
+        String title = isCancelled() ? "Stopped finding extensions" : "Extensions found";
+        textField.setToolTipText(getSummary(title));
+        EventCenter.getInstance().postEvent(Events.Status, title + " in dropped files: " + scanner.getExtensions().size());
+    }
+
+    /**
+     * @param title First line
+     * @return Html of the number of files and bytes of each extension found so far
+     */
+    private String getSummary(String title)
+    {
+        return "<html>" + title + "<br>" + scanner.toString().replace("\n", "<br>") + "</html>";
+    }
+}
@@ -5,10 +5,11 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.ItemEvent;
 import java.awt.event.ItemListener;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.io.File;
-import java.util.Set;
 
 import javax.swing.Box;
 import javax.swing.JButton;
@@ -21,7 +22,9 @@ import javax.swing.event.DocumentListener;
 
 import support.FileDrop;
 import support.Utilities;
+import synchive.EventCenter.RunningStatusEvents;
 import synchive.Settings;
+import synchive.Settings.CompletionOptions;
 
 import javax.swing.JTextField;
 import javax.swing.SwingUtilities;
@@ -33,11 +36,6 @@ import javax.swing.SwingUtilities;
 @SuppressWarnings("serial")
 public class FlagPanel extends JPanel
 {
-    /**
-     * Options when completed
-     */
-    public static enum CompletionOptions { doNothing, close, standBy, shutdown }
-    
     /**
      * Delegate methods for FlagPanelDelegate
      */
@@ -65,6 +63,21 @@ public class FlagPanel extends JPanel
          * @param button JRadioButton of button pressed
          */
         public void runNuttySync(JButton button);
+        /**
+         * Event notifier if button pressed for pausing a running operation
+         * @param button JButton of button pressed
+         */
+        public void pauseNuttySync(JButton button);
+        /**
+         * Event notifier if button pressed for resuming a paused operation
+         * @param button JButton of button pressed
+         */
+        public void resumeNuttySync(JButton button);
+        /**
+         * Event notifier if button pressed for stopping a running operation
+         * @param button JButton of button pressed
+         */
+        public void stopNuttySync(JButton button);
         /**
          * Event notifier if text changed for skip processing folder
          * @param textField JTextFeild of text changed
@@ -85,9 +98,17 @@ public class FlagPanel extends JPanel
     private FlagPanelDelegate delegate;
     
     /**
-     * Start comparison button
+     * Start comparison button. Doubles as pause and resume while running
      */
     private JButton runButton;
+    /**
+     * Stop comparison button
+     */
+    private JButton stopButton;
+    /**
+     * Current state of the operation, determines what runButton does
+     */
+    private RunningStatusEvents runState;
     /**
      * State of selected After Completion option used to stay selected
      */
@@ -125,6 +146,10 @@ public class FlagPanel extends JPanel
      * Skip processing extension type textField
      */
     private JTextField skipExtensionTextField;
+    /**
+     * Finds extensions of files dropped onto skipExtensionTextField, null if none dropped
+     */
+    private ExtensionDiscoveryWorker skipExtensionWorker;
 
     /**
      * Initialize the view
@@ -166,13 +191,38 @@ public class FlagPanel extends JPanel
             }
         });
         
+        runState = RunningStatusEvents.Waiting;
         runButton = new JButton("Run");
         runButton.setFocusPainted(false);
-        runButton.setBounds(244, 7, 240, 50);
+        runButton.setBounds(244, 7, 160, 50);
         add(runButton);
         runButton.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent e) {
-                delegate.runNuttySync(runButton);
+                switch(runState)
+                {
+                    case Running:
+                        delegate.pauseNuttySync(runButton);
+                        break;
+                    case Paused:
+                        delegate.resumeNuttySync(runButton);
+                        break;
+                    default:
+                        delegate.runNuttySync(runButton);
+                        break;
+                }
+            }
+        });
+        
+        stopButton = new JButton("Stop");
+        stopButton.setFocusPainted(false);
+        stopButton.setBounds(408, 7, 76, 50);
+        stopButton.setEnabled(false);
+        stopButton.setToolTipText("Stop and save progress, the next run will resume");
+        add(stopButton);
+        stopButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                stopButton.setEnabled(false);
+                delegate.stopNuttySync(stopButton);
             }
         });
         
@@ -266,24 +316,26 @@ public class FlagPanel extends JPanel
             @Override
             public void filesDropped(File[] files)
             {
-                SwingUtilities.invokeLater(new Runnable()
+                // walk the dropped folders in the background, the document listener saves each extension added
+                if(skipExtensionWorker != null)
                 {
-                    @Override
-                    public void run()
-                    {
-                        String extensions = Utilities.addSeparator(skipExtensionTextField.getText(), ",", true);
-                        Set<String> extenSet = Utilities.getExtensionsForFiles(files);
-                        
-                        for(String str : extenSet)
-                        {
-                            extensions += str + ", ";
-                        }
-                        skipExtensionTextField.setText(extensions);
-                        delegate.skipExtensionTextChanged(skipExtensionTextField, extensions);
-                    }
-                });
+                    skipExtensionWorker.cancel(true);
+                }
+                skipExtensionWorker = new ExtensionDiscoveryWorker(skipExtensionTextField, files);
+                skipExtensionWorker.execute();
             } // end filesDropped
         }); // end FileDrop.Listener
+        skipExtensionTextField.addKeyListener(new KeyAdapter()
+        {
+            @Override
+            public void keyPressed(KeyEvent e)
+            {
+                if(e.getKeyCode() == KeyEvent.VK_ESCAPE && skipExtensionWorker != null) // stop finding extensions
+                {
+                    skipExtensionWorker.cancel(true);
+                }
+            }
+        });
         
         Box horizontalBox_1 = Box.createHorizontalBox();
         horizontalBox_1.setBorder(new LineBorder(Color.LIGHT_GRAY));
@@ -398,4 +450,35 @@ public class FlagPanel extends JPanel
     {
         return runButton;
     }
+    
+    /**
+     * Update the run and stop buttons for the state of the operation
+     * @param state Current state of the operation
+     */
+    public void setRunState(RunningStatusEvents state)
+    {
+        SwingUtilities.invokeLater(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                runState = state;
+                switch(state)
+                {
+                    case Running:
+                        runButton.setText("Pause");
+                        stopButton.setEnabled(true);
+                        break;
+                    case Paused:
+                        runButton.setText("Resume");
+                        stopButton.setEnabled(true);
+                        break;
+                    default:
+                        runButton.setText("Run");
+                        stopButton.setEnabled(false);
+                        break;
+                }
+            }
+        });
+    }
 }
@@ -10,6 +10,7 @@ import javax.swing.event.ChangeListener;
 
 import gui.tabbedPanels.CRCOptionsPanel.CRCOptionsPanelDelegate;
 import gui.tabbedPanels.FlagPanel.FlagPanelDelegate;
+import gui.tabbedPanels.ThrottlePanel.ThrottlePanelDelegate;
 
 /**
  * JTabbedPane to handle all the different views
@@ -38,11 +39,15 @@ public class TabbedContainerPaneView extends JTabbedPane
      */
     private JPanel crcOptionPanel;
     /**
-     * Third tabbed Panel (Audit Log)
+     * Third tabbed Panel (Throttle)
+     */
+    private JPanel throttlePanel;
+    /**
+     * Fourth tabbed Panel (Audit Log)
      */
     private JPanel auditPanel;
     /**
-     * Fourth tabbed Panel (Error Log)
+     * Fifth tabbed Panel (Error Log)
      */
     private JPanel errorLogsPanel;
     
@@ -72,6 +77,9 @@ public class TabbedContainerPaneView extends JTabbedPane
         crcOptionPanel = new CRCOptionsPanel((CRCOptionsPanelDelegate)delegate);
         addTab("CRC Options", null, crcOptionPanel, null);
         
+        throttlePanel = new ThrottlePanel((ThrottlePanelDelegate)delegate);
+        addTab("Throttle", null, throttlePanel, null);
+        
         auditPanel = new AuditPanel();
         addTab("Audit (Logs)", null, auditPanel, null);
         
@@ -122,6 +130,14 @@ public class TabbedContainerPaneView extends JTabbedPane
         return crcOptionPanel;
     }
     
+    /**
+     * @return Throttle Panel within the tabbed Container
+     */
+    public JPanel getThrottlePanel()
+    {
+        return throttlePanel;
+    }
+    
     /**
      * @return Audit Panel within the tabbed Container
      */
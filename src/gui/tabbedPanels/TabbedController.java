@@ -11,19 +11,21 @@ import javax.swing.JTextField;
 
 import gui.SummaryController;
 import gui.tabbedPanels.CRCOptionsPanel.CRCOptionsPanelDelegate;
-import gui.tabbedPanels.FlagPanel.CompletionOptions;
 import gui.tabbedPanels.FlagPanel.FlagPanelDelegate;
 import gui.tabbedPanels.TabbedContainerPaneView.TabbedContainerPaneViewDelegate;
+import gui.tabbedPanels.ThrottlePanel.ThrottlePanelDelegate;
 import support.BlinkTab;
 import synchive.EventCenter;
 import synchive.Settings;
+import synchive.Settings.CompletionOptions;
 import synchive.EventCenter.Events;
 
 /**
  * Controller class to manage the tabbedViews
  * @author Tony Hsu
  */
-public class TabbedController implements FlagPanelDelegate, CRCOptionsPanelDelegate, TabbedContainerPaneViewDelegate
+public class TabbedController implements FlagPanelDelegate, CRCOptionsPanelDelegate, ThrottlePanelDelegate,
+    TabbedContainerPaneViewDelegate
 {
     /**
      * View containing all the tabs
@@ -45,7 +47,7 @@ public class TabbedController implements FlagPanelDelegate, CRCOptionsPanelDeleg
     /**
      * Error tab index
      */
-    private final int ERROR_TAB_INDEX = 3;
+    private final int ERROR_TAB_INDEX = 4;
     
     /**
      * Initializes the inner components of the GUI (tabs)
@@ -74,6 +76,14 @@ public class TabbedController implements FlagPanelDelegate, CRCOptionsPanelDeleg
             s.getCrcDelimLeadingText(), 
             s.getCrcDelimTrailingText());
         
+        ((ThrottlePanel)tabView.getThrottlePanel()).loadSettings(
+            s.getThrottleReadRateText(), 
+            s.getThrottleWriteRateText(), 
+            s.getThrottleReadIopsText(), 
+            s.getThrottleWriteIopsText(), 
+            s.getThrottleScheduleText(), 
+            s.getThrottleControlFile());
+        
         subscribeToReqiuiredNotifications();
         subscribeToAuditNotifications();
     }
@@ -88,17 +98,9 @@ public class TabbedController implements FlagPanelDelegate, CRCOptionsPanelDeleg
             ((ErrorPanel)tabView.getErrorLogsPanel()).print((String)text);
             errorTabBlinker.startBlinking(); //blink tab indicating something outputted
         });
-        // set the state of the "Run" button
+        // set the state of the "Run" and "Stop" buttons
         EventCenter.getInstance().subscribeEvent(Events.RunningStatus, id, (arr) -> {
-            if(((Object[])arr)[0] == EventCenter.RunningStatusEvents.Completed ||
-                ((Object[])arr)[0] == EventCenter.RunningStatusEvents.Error) 
-            {
-                ((FlagPanel)tabView.getFlagPanel()).getRunButton().setEnabled(true);
-            }
-            else
-            {
-                ((FlagPanel)tabView.getFlagPanel()).getRunButton().setEnabled(false);
-            }
+            ((FlagPanel)tabView.getFlagPanel()).setRunState((EventCenter.RunningStatusEvents)((Object[])arr)[0]);
         }); 
     }
     
@@ -145,6 +147,24 @@ public class TabbedController implements FlagPanelDelegate, CRCOptionsPanelDeleg
         summaryVC.runSynchiveDiffer();
     }
     
+    @Override
+    public void pauseNuttySync(JButton button)
+    {
+        summaryVC.pauseSynchiveDiffer();
+    }
+    
+    @Override
+    public void resumeNuttySync(JButton button)
+    {
+        summaryVC.resumeSynchiveDiffer();
+    }
+    
+    @Override
+    public void stopNuttySync(JButton button)
+    {
+        summaryVC.stopSynchiveDiffer();
+    }
+    
     @Override
     public void auditTrailStateChange(JRadioButton button, int state)
     {
@@ -212,6 +232,43 @@ public class TabbedController implements FlagPanelDelegate, CRCOptionsPanelDeleg
         Settings.getInstance().setAddCrcToExtensionTypeText(str);
     }
     
+    /* ThrottlePanelDelegate */
+    @Override
+    public void readRateTextChanged(JTextField field, String str)
+    {
+        Settings.getInstance().setThrottleReadRateText(str);
+    }
+
+    @Override
+    public void writeRateTextChanged(JTextField field, String str)
+    {
+        Settings.getInstance().setThrottleWriteRateText(str);
+    }
+
+    @Override
+    public void readIopsTextChanged(JTextField field, String str)
+    {
+        Settings.getInstance().setThrottleReadIopsText(str);
+    }
+
+    @Override
+    public void writeIopsTextChanged(JTextField field, String str)
+    {
+        Settings.getInstance().setThrottleWriteIopsText(str);
+    }
+
+    @Override
+    public void throttleScheduleTextChanged(JTextField field, String str)
+    {
+        Settings.getInstance().setThrottleScheduleText(str);
+    }
+
+    @Override
+    public void throttleControlFileTextChanged(JTextField field, String str)
+    {
+        Settings.getInstance().setThrottleControlFile(str);
+    }
+    
     /* TabbedContainerPaneViewDelegate */
     @Override
     public void tabChangedIndex(int index)
@@ -0,0 +1,244 @@
+package gui.tabbedPanels;
+
+import java.awt.Color;
+import java.awt.Insets;
+import java.io.File;
+import java.util.function.Consumer;
+
+import javax.swing.Box;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JTextField;
+import javax.swing.SwingUtilities;
+import javax.swing.border.LineBorder;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+
+import support.FileDrop;
+import synchive.Settings;
+
+/**
+ * JPanel to handle bandwidth and IOPS limits. Changes apply to a running operation on its next read or write.
+ * @author Tony Hsu
+ */
+@SuppressWarnings("serial")
+public class ThrottlePanel extends JPanel
+{
+    /**
+     * Delegate methods for ThrottlePanel
+     */
+    public interface ThrottlePanelDelegate {
+        /**
+         * Event notifier if text changed for most bytes read per second
+         * @param field JTextField of text changed
+         * @param str New text
+         */
+        public void readRateTextChanged(JTextField field, String str);
+        /**
+         * Event notifier if text changed for most bytes written per second
+         * @param field JTextField of text changed
+         * @param str New text
+         */
+        public void writeRateTextChanged(JTextField field, String str);
+        /**
+         * Event notifier if text changed for most reads per second
+         * @param field JTextField of text changed
+         * @param str New text
+         */
+        public void readIopsTextChanged(JTextField field, String str);
+        /**
+         * Event notifier if text changed for most writes per second
+         * @param field JTextField of text changed
+         * @param str New text
+         */
+        public void writeIopsTextChanged(JTextField field, String str);
+        /**
+         * Event notifier if text changed for the hours limits apply in
+         * @param field JTextField of text changed
+         * @param str New text
+         */
+        public void throttleScheduleTextChanged(JTextField field, String str);
+        /**
+         * Event notifier if text changed for the control file of limits
+         * @param field JTextField of text changed
+         * @param str New text
+         */
+        public void throttleControlFileTextChanged(JTextField field, String str);
+    }
+
+    /**
+     * Common methods for controller to implement to handle events
+     */
+    private ThrottlePanelDelegate delegate;
+    /**
+     * Most bytes read per second's textField
+     */
+    private JTextField readRateTextField;
+    /**
+     * Most bytes written per second's textField
+     */
+    private JTextField writeRateTextField;
+    /**
+     * Most reads per second's textField
+     */
+    private JTextField readIopsTextField;
+    /**
+     * Most writes per second's textField
+     */
+    private JTextField writeIopsTextField;
+    /**
+     * Hours limits apply in's textField
+     */
+    private JTextField scheduleTextField;
+    /**
+     * Control file of limits' textField
+     */
+    private JTextField controlFileTextField;
+
+    /**
+     * Initialize the view.
+     * @param delegate Controller to handle events
+     */
+    public ThrottlePanel(ThrottlePanelDelegate delegate)
+    {
+        super();
+        this.delegate = delegate;
+        initialize();
+    }
+
+    /**
+     * Initialize the contents of the view.
+     */
+    private void initialize()
+    {
+        setLayout(null);
+        Settings s = Settings.getInstance();
+
+        JLabel titleLabel = new JLabel("Limit reading and writing files, leave empty for no limit");
+        titleLabel.setBounds(7, 7, 479, 14);
+        add(titleLabel);
+
+        JLabel readRateLabel = new JLabel("Read (bytes/s)");
+        readRateLabel.setBounds(7, 29, 90, 14);
+        add(readRateLabel);
+        readRateTextField = addTextField(100, 25, 120, s.getThrottleReadRateText(), "Example: 50M, 512K",
+            (str) -> delegate.readRateTextChanged(readRateTextField, str));
+
+        JLabel writeRateLabel = new JLabel("Write (bytes/s)");
+        writeRateLabel.setBounds(268, 29, 90, 14);
+        add(writeRateLabel);
+        writeRateTextField = addTextField(363, 25, 120, s.getThrottleWriteRateText(), "Example: 50M, 512K",
+            (str) -> delegate.writeRateTextChanged(writeRateTextField, str));
+
+        JLabel readIopsLabel = new JLabel("Read IOPS");
+        readIopsLabel.setBounds(7, 57, 90, 14);
+        add(readIopsLabel);
+        readIopsTextField = addTextField(100, 53, 120, s.getThrottleReadIopsText(), "Reads per second (ie. 200)",
+            (str) -> delegate.readIopsTextChanged(readIopsTextField, str));
+
+        JLabel writeIopsLabel = new JLabel("Write IOPS");
+        writeIopsLabel.setBounds(268, 57, 90, 14);
+        add(writeIopsLabel);
+        writeIopsTextField = addTextField(363, 53, 120, s.getThrottleWriteIopsText(), "Writes per second (ie. 200)",
+            (str) -> delegate.writeIopsTextChanged(writeIopsTextField, str));
+
+        Box horizontalBox = Box.createHorizontalBox();
+        horizontalBox.setBounds(7, 83, 476, 2);
+        horizontalBox.setBorder(new LineBorder(Color.LIGHT_GRAY));
+        add(horizontalBox);
+
+        JLabel scheduleLabel = new JLabel("Limit during");
+        scheduleLabel.setBounds(7, 95, 90, 14);
+        add(scheduleLabel);
+        scheduleTextField = addTextField(100, 91, 383, s.getThrottleScheduleText(),
+            "Example: 09:00-18:00, full speed outside these hours. Empty to always limit",
+            (str) -> delegate.throttleScheduleTextChanged(scheduleTextField, str));
+
+        JLabel controlFileLabel = new JLabel("Control file");
+        controlFileLabel.setBounds(7, 123, 90, 14);
+        add(controlFileLabel);
+        controlFileTextField = addTextField(100, 119, 383, s.getThrottleControlFile(),
+            "File of \"readRate=\", \"writeRate=\", \"readIops=\", \"writeIops=\", \"schedule=\" lines, re-read when changed",
+            (str) -> delegate.throttleControlFileTextChanged(controlFileTextField, str));
+        new FileDrop(controlFileTextField, new FileDrop.Listener()
+        {
+            @Override
+            public void filesDropped(File[] files)
+            {
+                SwingUtilities.invokeLater(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        if(files.length > 0 && files[0].isFile())
+                        {
+                            controlFileTextField.setText(files[0].getPath()); // document listener saves it
+                        }
+                    }
+                });
+            } // end filesDropped
+        }); // end FileDrop.Listener
+    }
+
+    /**
+     * Add a textField reporting every change of its text.
+     * @param x Left of the textField
+     * @param y Top of the textField
+     * @param width Width of the textField
+     * @param text Initial text
+     * @param toolTip Tool tip of the textField
+     * @param changed Called with the new text
+     * @return TextField added
+     */
+    private JTextField addTextField(int x, int y, int width, String text, String toolTip, Consumer<String> changed)
+    {
+        JTextField textField = new JTextField();
+        textField.setMargin(new Insets(1, 2, 3, 2));
+        textField.setBounds(x, y, width, 22);
+        textField.setText(text);
+        textField.setToolTipText(toolTip);
+        add(textField);
+        textField.setColumns(10);
+        textField.getDocument().addDocumentListener(new DocumentListener()
+        {
+            @Override
+            public void removeUpdate(DocumentEvent e)
+            {
+                changed.accept(textField.getText());
+            }
+
+            @Override
+            public void insertUpdate(DocumentEvent e)
+            {
+                changed.accept(textField.getText());
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e)
+            {
+            }
+        });
+        return textField;
+    }
+
+    // ~~~~~ Getters & Setters ~~~~~~ //
+    /**
+     * Set the different options in the view
+     * @param readRate Most bytes read per second
+     * @param writeRate Most bytes written per second
+     * @param readIops Most reads per second
+     * @param writeIops Most writes per second
+     * @param schedule Hours limits apply in
+     * @param controlFile Control file of limits
+     */
+    public void loadSettings(String readRate, String writeRate, String readIops, String writeIops,
+        String schedule, String controlFile)
+    {
+        readRateTextField.setText(readRate);
+        writeRateTextField.setText(writeRate);
+        readIopsTextField.setText(readIops);
+        writeIopsTextField.setText(writeIops);
+        scheduleTextField.setText(schedule);
+        controlFileTextField.setText(controlFile);
+    }
+}
@@ -0,0 +1,142 @@
+package support;
+
+/**
+ * Bloom filter of strings, answering "definitely not added" without holding the strings.
+ * Keeps counters of lookups so its hit rate can be reported.
+ *
+ * @author Tony Hsu
+ * @structure Bit array of m bits, each key sets k bits picked by double hashing one 64 bit hash.
+ */
+public class BloomFilter
+{
+    /**
+     * Bits of the filter
+     */
+    private long[] bits;
+    /**
+     * Number of bits
+     */
+    private long size;
+    /**
+     * Number of bits set per key
+     */
+    private int hashes;
+    /**
+     * Number of lookups
+     */
+    private long lookups;
+    /**
+     * Number of lookups answered as definitely not added
+     */
+    private long misses;
+    /**
+     * Number of lookups answered as maybe added that were not
+     */
+    private long falsePositives;
+
+    /**
+     * Creates an empty filter.
+     *
+     * @param expected Number of keys expected to be added
+     * @param falsePositiveRate Chance a key not added is answered as maybe added, once every expected key is added
+     */
+    public BloomFilter(long expected, double falsePositiveRate)
+    {
+        expected = Math.max(expected, 1);
+        size = Math.max(64, (long)Math.ceil(-expected * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2))));
+        hashes = Math.max(1, (int)Math.round((double)size / expected * Math.log(2)));
+        bits = new long[(int)((size + 63) >>> 6)];
+    }
+
+    /**
+     * @param key Key to add
+     */
+    public void add(String key)
+    {
+        long hash = hash(key);
+        long h1 = hash;
+        long h2 = (hash >>> 32) | 1;
+        for(int i = 0; i < hashes; i++)
+        {
+            long bit = ((h1 + i * h2) & Long.MAX_VALUE) % size;
+            bits[(int)(bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    /**
+     * @param key Key to look up
+     * @return False if key was definitely not added, true if it may have been
+     */
+    public boolean mightContain(String key)
+    {
+        lookups++;
+        long hash = hash(key);
+        long h1 = hash;
+        long h2 = (hash >>> 32) | 1;
+        for(int i = 0; i < hashes; i++)
+        {
+            long bit = ((h1 + i * h2) & Long.MAX_VALUE) % size;
+            if((bits[(int)(bit >>> 6)] & (1L << bit)) == 0)
+            {
+                misses++;
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Count a lookup answered as maybe added that turned out not to be.
+     */
+    public void countFalsePositive()
+    {
+        falsePositives++;
+    }
+
+    /**
+     * @param key String to hash
+     * @return 64 bit FNV-1a hash of key, mixed so both halves are usable
+     */
+    private static long hash(String key)
+    {
+        long hash = 0xcbf29ce484222325L;
+        for(int i = 0; i < key.length(); i++)
+        {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    // Summary of the counters
+    public String toString()
+    {
+        return "Bloom filter skipped " + misses + " of " + lookups + " lookups (" +
+            (lookups == 0 ? 0 : misses * 100 / lookups) + "%), " + falsePositives + " false positives";
+    }
+
+    // ~~~~~ Getters & Setters ~~~~~ //
+    public long getLookups()
+    {
+        return lookups;
+    }
+
+    /**
+     * @return Number of lookups answered as definitely not added
+     */
+    public long getMisses()
+    {
+        return misses;
+    }
+
+    /**
+     * @return Number of lookups answered as maybe added that were not
+     */
+    public long getFalsePositives()
+    {
+        return falsePositives;
+    }
+}
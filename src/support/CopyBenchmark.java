@@ -0,0 +1,110 @@
+package support;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Random;
+
+import support.checksum.ChecksumAlgorithm;
+
+/**
+ * Compares Files.copy against CopyEngine (kernel transfer, and direct buffer with checksum in flight).
+ * Run with "ant benchmark".
+ *
+ * <p>Usage: CopyBenchmark [work directory] [large file megabytes]. Creates small (1000 x 4 KB),
+ * medium (8 x 16 MB) and large (1 x 2048 MB by default) files in the work directory and copies each set.
+ * The source is copied once before timing so each method reads from the page cache.</p>
+ *
+ * @author Tony Hsu
+ */
+public class CopyBenchmark
+{
+    public static void main(String[] args) throws IOException
+    {
+        File work = new File(args.length > 0 ? args[0] : System.getProperty("java.io.tmpdir"), "~copyBenchmark");
+        long largeMB = args.length > 1 ? Long.parseLong(args[1]) : 2048;
+        work.mkdirs();
+        try
+        {
+            run(work, "small", 1000, 4 * 1024);
+            run(work, "medium", 8, 16L * 1024 * 1024);
+            run(work, "large", 1, largeMB * 1024 * 1024);
+        }
+        finally
+        {
+            for(File file : work.listFiles())
+            {
+                file.delete();
+            }
+            work.delete();
+        }
+    }
+
+    /**
+     * Create a set of files and time copying them with each method.
+     *
+     * @param work Directory to create files in
+     * @param label Name of the set
+     * @param count Number of files
+     * @param size Size of each file in bytes
+     * @throws IOException Unable to create or copy files
+     */
+    private static void run(File work, String label, int count, long size) throws IOException
+    {
+        File[] sources = new File[count];
+        byte[] block = new byte[(int)Math.min(size, 1024 * 1024)];
+        new Random(17).nextBytes(block);
+        for(int i = 0; i < count; i++)
+        {
+            sources[i] = new File(work, label + i + ".src");
+            OutputStream out = new FileOutputStream(sources[i]);
+            for(long written = 0; written < size; written += block.length)
+            {
+                out.write(block, 0, (int)Math.min(block.length, size - written));
+            }
+            out.close();
+        }
+        System.out.println(label + ": " + count + " x " + Utilities.formatBytes(size));
+
+        CopyEngine engine = new CopyEngine();
+        for(int method = 0; method < 3; method++)
+        {
+            for(int pass = 0; pass < 2; pass++) // first pass warms up the page cache and JIT
+            {
+                long start = System.nanoTime();
+                for(File source : sources)
+                {
+                    File destination = new File(work, source.getName() + ".des");
+                    switch(method)
+                    {
+                        case 0:
+                            Files.copy(source.toPath(), destination.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                            break;
+                        case 1:
+                            engine.copy(source, destination);
+                            break;
+                        default:
+                            engine.copy(source, destination, ChecksumAlgorithm.CRC32);
+                            break;
+                    }
+                }
+                if(pass == 1)
+                {
+                    double seconds = (System.nanoTime() - start) / 1e9;
+                    System.out.println(String.format("  %-22s %9.1f MB/s  %6.3f s",
+                        method == 0 ? "Files.copy" : method == 1 ? "transferTo" : "direct buffer + CRC32",
+                        count * size / 1048576.0 / seconds, seconds));
+                }
+            }
+        }
+
+        for(File source : sources)
+        {
+            source.delete();
+            new File(work, source.getName() + ".des").delete();
+        }
+    }
+}
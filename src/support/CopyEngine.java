@@ -0,0 +1,334 @@
+package support;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import support.checksum.ChecksumAlgorithm;
+import support.checksum.ChecksumProvider;
+
+/**
+ * Copies files through FileChannels. The destination is preallocated to the source length before writing.
+ * Without a checksum, data is moved by the kernel (transferTo), otherwise through a large direct buffer
+ * that is checksummed in flight so the copy does not need to be read back.
+ *
+ * <p>An existing destination is deleted first rather than overwritten so hardlinked copies are left intact.
+ * The last modified time of source is kept on each copy. Reads and writes are paced by Throttle.</p>
+ *
+ * @author Tony Hsu
+ */
+public class CopyEngine
+{
+    /**
+     * Default size of the direct buffer used when checksumming in flight
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+    /**
+     * Most bytes handed to one transferTo call. Some platforms cap a single transfer
+     */
+    private static final long TRANSFER_CHUNK = 64L * 1024 * 1024;
+
+    /**
+     * Buffer reused across copies when checksumming in flight. Lazy-loaded
+     */
+    private ByteBuffer buffer;
+    /**
+     * Size of buffer
+     */
+    private int bufferSize;
+    /**
+     * Threads writing to each destination when copying to several at once. Lazy-loaded
+     */
+    private ExecutorService writers;
+
+    public CopyEngine()
+    {
+        this(DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param bufferSize Size of the direct buffer used when checksumming in flight
+     */
+    public CopyEngine(int bufferSize)
+    {
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Copies a file with kernel-side transfers.
+     *
+     * @param source File to copy
+     * @param destination File to create, replaced if exists
+     * @return Number of bytes copied
+     * @throws IOException Unable to read source or write destination
+     */
+    public long copy(File source, File destination) throws IOException
+    {
+        FileChannel in = FileChannel.open(source.toPath(), StandardOpenOption.READ);
+        try
+        {
+            long size = in.size();
+            RandomAccessFile out = openDestination(destination, size);
+            long position = 0;
+            try
+            {
+                FileChannel channel = out.getChannel();
+                Throttle throttle = Throttle.getInstance();
+                long chunk = throttle.isLimiting() ? bufferSize : TRANSFER_CHUNK; // small enough to pace evenly
+                while(position < size)
+                {
+                    long count = in.transferTo(position, Math.min(size - position, chunk), channel);
+                    if(count <= 0) // source shrank while copying
+                    {
+                        break;
+                    }
+                    throttle.acquireRead(count);
+                    throttle.acquireWrite(count);
+                    position += count;
+                }
+                if(position < size)
+                {
+                    channel.truncate(position);
+                }
+            }
+            finally
+            {
+                out.close();
+            }
+            destination.setLastModified(source.lastModified());
+            return position;
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * Copies a file through a direct buffer, computing the checksum of the bytes written.
+     *
+     * @param source File to copy
+     * @param destination File to create, replaced if exists
+     * @param algorithm Algorithm to checksum with
+     * @return Checksum of the bytes written in lowercase hexadecimal
+     * @throws IOException Unable to read source or write destination
+     */
+    public String copy(File source, File destination, ChecksumAlgorithm algorithm) throws IOException
+    {
+        if(buffer == null)
+        {
+            buffer = ByteBuffer.allocateDirect(bufferSize);
+        }
+        ChecksumProvider checksum = algorithm.newProvider();
+        Buffer view = buffer; // Buffer methods keep Java 8 compatibility
+
+        FileChannel in = FileChannel.open(source.toPath(), StandardOpenOption.READ);
+        try
+        {
+            RandomAccessFile out = openDestination(destination, in.size());
+            try
+            {
+                FileChannel channel = out.getChannel();
+                Throttle throttle = Throttle.getInstance();
+                long position = 0;
+                view.clear();
+                while(in.read(buffer) >= 0)
+                {
+                    view.flip();
+                    int limit = view.limit();
+                    throttle.acquireRead(limit);
+                    throttle.acquireWrite(limit);
+                    while(view.hasRemaining())
+                    {
+                        channel.write(buffer);
+                    }
+                    view.position(0);
+                    checksum.update(buffer);
+                    position += limit;
+                    view.clear();
+                }
+                if(position != channel.size()) // source changed size while copying
+                {
+                    channel.truncate(position);
+                }
+            }
+            finally
+            {
+                out.close();
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+        destination.setLastModified(source.lastModified());
+        return checksum.getHexValue();
+    }
+
+    /**
+     * Copies a file to several destinations while reading it once. Each chunk read is written to every
+     * destination in parallel and checksummed meanwhile. A destination that fails is dropped, the rest continue.
+     *
+     * @param source File to copy
+     * @param destinations Files to create, replaced if exist
+     * @param algorithm Algorithm to checksum with, null to copy without checksumming
+     * @param errors Filled in with the error of each destination that failed (same order), null for success
+     * @return Checksum of the bytes read in lowercase hexadecimal, null if not checksummed
+     * @throws IOException Unable to read source
+     */
+    public String copy(File source, File[] destinations, ChecksumAlgorithm algorithm, IOException[] errors) throws IOException
+    {
+        if(buffer == null)
+        {
+            buffer = ByteBuffer.allocateDirect(bufferSize);
+        }
+        if(writers == null)
+        {
+            writers = Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "CopyEngine writer");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        ChecksumProvider checksum = algorithm == null ? null : algorithm.newProvider();
+        Buffer view = buffer; // Buffer methods keep Java 8 compatibility
+        RandomAccessFile[] outs = new RandomAccessFile[destinations.length];
+
+        FileChannel in = FileChannel.open(source.toPath(), StandardOpenOption.READ);
+        try
+        {
+            long size = in.size();
+            for(int i = 0; i < destinations.length; i++)
+            {
+                try
+                {
+                    outs[i] = openDestination(destinations[i], size);
+                }
+                catch (IOException e)
+                {
+                    errors[i] = e;
+                }
+            }
+
+            long position = 0;
+            view.clear();
+            while(in.read(buffer) >= 0)
+            {
+                view.flip();
+                Throttle.getInstance().acquireRead(view.remaining());
+                ArrayList<Future<Void>> pending = new ArrayList<Future<Void>>();
+                for(int i = 0; i < outs.length; i++)
+                {
+                    pending.add(errors[i] == null ? writers.submit(writeTask(buffer.duplicate(), outs[i].getChannel())) : null);
+                }
+                position += view.remaining();
+                if(checksum != null)
+                {
+                    checksum.update(buffer); // buffer is only read by writers, hash while they write
+                }
+                for(int i = 0; i < outs.length; i++)
+                {
+                    if(pending.get(i) == null)
+                    {
+                        continue;
+                    }
+                    try
+                    {
+                        pending.get(i).get();
+                    }
+                    catch (ExecutionException e)
+                    {
+                        errors[i] = e.getCause() instanceof IOException ? (IOException)e.getCause() : new IOException(e.getCause());
+                    }
+                    catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Interrupted while copying");
+                    }
+                }
+                view.clear();
+            }
+
+            for(int i = 0; i < outs.length; i++)
+            {
+                if(errors[i] == null && position != outs[i].length()) // source changed size while copying
+                {
+                    outs[i].setLength(position);
+                }
+            }
+        }
+        finally
+        {
+            in.close();
+            for(RandomAccessFile out : outs)
+            {
+                if(out != null)
+                {
+                    out.close();
+                }
+            }
+        }
+        long modified = source.lastModified();
+        for(int i = 0; i < destinations.length; i++)
+        {
+            if(errors[i] == null)
+            {
+                destinations[i].setLastModified(modified);
+            }
+        }
+        return checksum == null ? null : checksum.getHexValue();
+    }
+
+    /**
+     * @param chunk Data to write, a view of the shared buffer
+     * @param channel Channel to write to
+     * @return Task writing every byte of chunk
+     */
+    private static Callable<Void> writeTask(ByteBuffer chunk, FileChannel channel)
+    {
+        return () -> {
+            Throttle.getInstance().acquireWrite(chunk.remaining());
+            while(chunk.hasRemaining())
+            {
+                channel.write(chunk);
+            }
+            return null;
+        };
+    }
+
+    /**
+     * Creates the destination and preallocates its length. On NTFS this reserves the clusters up front,
+     * on most Unix file systems it only sets the length and blocks are allocated as written.
+     *
+     * @param destination File to create, deleted first if exists
+     * @param size Length to preallocate
+     * @return Destination opened for writing at position 0
+     * @throws IOException Unable to create destination
+     */
+    private RandomAccessFile openDestination(File destination, long size) throws IOException
+    {
+        Files.deleteIfExists(destination.toPath()); // never write through a hardlink
+        RandomAccessFile out = new RandomAccessFile(destination, "rw");
+        try
+        {
+            out.setLength(size);
+        }
+        catch (IOException e)
+        {
+            out.close();
+            throw e;
+        }
+        return out;
+    }
+}
@@ -0,0 +1,368 @@
+package support;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+import support.checksum.ChecksumAlgorithm;
+import support.checksum.ChecksumProvider;
+
+/**
+ * Updates an existing copy of a file to match its source by rewriting only the blocks that differ,
+ * cutting write volume for large files changed in place (VM images, mailboxes, databases).
+ * The last modified time of source is kept.
+ *
+ * <p>The original bytes of every changed block are saved to an undo file next to the destination
+ * and flushed before the destination is touched. If an update is interrupted, the next run restores the
+ * original with rollback before reading destination (the update is recorded in the journal, see SyncJournal),
+ * and the next update of the same file does so first as well. The undo file is deleted once the destination is flushed.
+ * Reads and writes are paced by Throttle, restoring an interrupted update is not.</p>
+ *
+ * @author Tony Hsu
+ * @structure Undo file: original length (long), then per block: offset (long), length (int), original bytes
+ */
+public class DeltaEngine
+{
+    /**
+     * Default size of each block compared
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+    /**
+     * Most blocks (as a fraction of all blocks) that may differ for an update to be worth it.
+     * Above this a plain copy writes about as much and reads less
+     */
+    private static final double MAX_CHANGED_RATIO = 0.5;
+
+    /**
+     * Size of each block compared
+     */
+    private int blockSize;
+    /**
+     * Block read from source, reused across updates. Lazy-loaded
+     */
+    private ByteBuffer sourceBlock;
+    /**
+     * Block read from destination, reused across updates. Lazy-loaded
+     */
+    private ByteBuffer destinationBlock;
+    /**
+     * Bytes written to destination by the last update
+     */
+    private long bytesWritten;
+    /**
+     * True to leave a destination whose link count is unknown (ie. NTFS) for a full copy, as it may be hardlinked
+     */
+    private boolean assumeHardlinked;
+
+    public DeltaEngine()
+    {
+        this(DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * @param blockSize Size of each block compared
+     */
+    public DeltaEngine(int blockSize)
+    {
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Rewrites the blocks of destination that differ from source. Nothing is written if destination is missing,
+     * hardlinked (other links would change too), possibly hardlinked (see setAssumeHardlinked) or too many blocks differ.
+     *
+     * @param source File to update from
+     * @param destination Older version of source, updated in place
+     * @param algorithm Algorithm to checksum source with
+     * @return Checksum of source in lowercase hexadecimal, null if destination was left for a full copy
+     * @throws IOException Unable to read source or update destination. Destination is restored when possible
+     */
+    public String update(File source, File destination, ChecksumAlgorithm algorithm) throws IOException
+    {
+        bytesWritten = 0;
+        Path undo = getUndoFile(destination);
+        if(Files.exists(undo)) // interrupted update
+        {
+            rollback(destination);
+        }
+        int links = getLinkCount(destination);
+        if(!destination.isFile() || links > 1 || (links < 0 && assumeHardlinked))
+        {
+            return null;
+        }
+        if(sourceBlock == null)
+        {
+            sourceBlock = ByteBuffer.allocateDirect(blockSize);
+            destinationBlock = ByteBuffer.allocateDirect(blockSize);
+        }
+
+        ChecksumProvider checksum = algorithm.newProvider();
+        FileChannel in = FileChannel.open(source.toPath(), StandardOpenOption.READ);
+        try
+        {
+            FileChannel out = FileChannel.open(destination.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try
+            {
+                long size = in.size();
+                long originalSize = out.size();
+
+                // compare every block, nothing is written yet
+                ArrayList<Long> changed = new ArrayList<Long>();
+                long blocks = 0;
+                for(long position = 0; position < size; position += blockSize)
+                {
+                    read(in, sourceBlock, position);
+                    read(out, destinationBlock, position);
+                    if(!sourceBlock.equals(destinationBlock)) // compares the bytes read, shorter block differs
+                    {
+                        changed.add(position);
+                    }
+                    checksum.update(sourceBlock);
+                    blocks++;
+                }
+                if(changed.size() > blocks * MAX_CHANGED_RATIO)
+                {
+                    return null;
+                }
+
+                writeUndo(undo, out, size, originalSize, changed);
+                try
+                {
+                    for(long position : changed)
+                    {
+                        read(in, sourceBlock, position);
+                        Throttle.getInstance().acquireWrite(sourceBlock.remaining());
+                        while(sourceBlock.hasRemaining())
+                        {
+                            bytesWritten += out.write(sourceBlock, position + sourceBlock.position());
+                        }
+                    }
+                    if(size < originalSize)
+                    {
+                        out.truncate(size);
+                    }
+                    out.force(true);
+                }
+                catch (IOException e)
+                {
+                    out.close();
+                    rollback(destination);
+                    throw e;
+                }
+            }
+            finally
+            {
+                out.close();
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+        Files.deleteIfExists(undo);
+        destination.setLastModified(source.lastModified());
+        return checksum.getHexValue();
+    }
+
+    /**
+     * Saves the original bytes of each block about to change and flushes them to disk.
+     *
+     * @param undo Undo file to create
+     * @param out Destination
+     * @param size Length of destination after updating, anything past it is saved as well
+     * @param originalSize Length of destination before updating
+     * @param changed Offset of each block about to change
+     * @throws IOException Unable to write undo file
+     */
+    private void writeUndo(Path undo, FileChannel out, long size, long originalSize, ArrayList<Long> changed) throws IOException
+    {
+        FileChannel undoChannel = FileChannel.open(undo, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        try
+        {
+            ByteBuffer header = ByteBuffer.allocate(12);
+            header.putLong(originalSize);
+            writeFully(undoChannel, header, 8);
+            ArrayList<Long> saved = new ArrayList<Long>(changed);
+            for(long position = size; position < originalSize; position += blockSize) // truncated away
+            {
+                saved.add(position);
+            }
+            for(long position : saved)
+            {
+                if(position >= originalSize) // block did not exist, removed by restoring the length
+                {
+                    continue;
+                }
+                read(out, destinationBlock, position);
+                ((Buffer)header).clear();
+                header.putLong(position);
+                header.putInt(destinationBlock.remaining());
+                writeFully(undoChannel, header, 12);
+                Throttle.getInstance().acquireWrite(12 + destinationBlock.remaining());
+                while(destinationBlock.hasRemaining())
+                {
+                    undoChannel.write(destinationBlock);
+                }
+            }
+            undoChannel.force(true);
+        }
+        finally
+        {
+            undoChannel.close();
+        }
+    }
+
+    /**
+     * Restores a file from the undo file of an interrupted update, then deletes the undo file.
+     * A block only partly saved was never overwritten, so it is skipped.
+     *
+     * @param destination File being updated
+     * @throws IOException Unable to restore destination
+     */
+    public void rollback(File destination) throws IOException
+    {
+        Path undo = getUndoFile(destination);
+        FileChannel undoChannel = FileChannel.open(undo, StandardOpenOption.READ);
+        try
+        {
+            if(destination.isFile() && undoChannel.size() >= 8)
+            {
+                FileChannel out = FileChannel.open(destination.toPath(), StandardOpenOption.WRITE);
+                try
+                {
+                    ByteBuffer header = ByteBuffer.allocate(12);
+                    ((Buffer)header).limit(8);
+                    undoChannel.read(header, 0);
+                    long originalSize = header.getLong(0);
+                    long position = 8;
+                    while(position + 12 <= undoChannel.size())
+                    {
+                        ((Buffer)header).clear();
+                        undoChannel.read(header, position);
+                        long offset = header.getLong(0);
+                        int length = header.getInt(8);
+                        if(position + 12 + length > undoChannel.size())
+                        {
+                            break;
+                        }
+                        ByteBuffer block = ByteBuffer.allocate(length);
+                        while(block.hasRemaining())
+                        {
+                            undoChannel.read(block, position + 12 + block.position());
+                        }
+                        ((Buffer)block).flip();
+                        while(block.hasRemaining())
+                        {
+                            out.write(block, offset + block.position());
+                        }
+                        position += 12 + length;
+                    }
+                    if(out.size() > originalSize)
+                    {
+                        out.truncate(originalSize);
+                    }
+                    out.force(true);
+                }
+                finally
+                {
+                    out.close();
+                }
+            }
+        }
+        finally
+        {
+            undoChannel.close();
+        }
+        Files.delete(undo);
+    }
+
+    /**
+     * Reads a block at position, fewer bytes only at end of file.
+     *
+     * @param channel Channel to read
+     * @param block Buffer to read into, flipped for reading afterwards
+     * @param position Offset of the block
+     * @throws IOException Unable to read
+     */
+    private static void read(FileChannel channel, ByteBuffer block, long position) throws IOException
+    {
+        Buffer view = block; // Buffer methods keep Java 8 compatibility
+        view.clear();
+        while(block.hasRemaining())
+        {
+            if(channel.read(block, position + block.position()) < 0)
+            {
+                break;
+            }
+        }
+        view.flip();
+        Throttle.getInstance().acquireRead(block.remaining());
+    }
+
+    /**
+     * @param channel Channel to write at its position
+     * @param buffer Buffer holding length bytes from 0
+     * @param length Number of bytes to write
+     * @throws IOException Unable to write
+     */
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, int length) throws IOException
+    {
+        ((Buffer)buffer).position(0);
+        ((Buffer)buffer).limit(length);
+        while(buffer.hasRemaining())
+        {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * @param file File to check
+     * @return Number of hardlinks of file, -1 where the link count is not available (ie. Windows)
+     */
+    private static int getLinkCount(File file)
+    {
+        try
+        {
+            Object links = Files.getAttribute(file.toPath(), "unix:nlink");
+            return links instanceof Integer ? (Integer)links : -1;
+        }
+        catch (IOException | UnsupportedOperationException | IllegalArgumentException | SecurityException e)
+        {
+            return -1;
+        }
+    }
+
+    /**
+     * @param destination File being updated
+     * @return Undo file kept next to destination while updating
+     */
+    public static Path getUndoFile(File destination)
+    {
+        return Paths.get(destination.getPath() + Utilities.UNDO_FILE_SUFFIX);
+    }
+
+    // ~~~~~ Getters & Setters ~~~~~ //
+    /**
+     * @return Bytes written to destination by the last update
+     */
+    public long getBytesWritten()
+    {
+        return bytesWritten;
+    }
+
+    /**
+     * @param assumeHardlinked True to leave a destination whose link count is unknown (ie. NTFS) for a full copy,
+     *            set when duplicates may have been hardlinked
+     */
+    public void setAssumeHardlinked(boolean assumeHardlinked)
+    {
+        this.assumeHardlinked = assumeHardlinked;
+    }
+}
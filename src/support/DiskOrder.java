@@ -0,0 +1,103 @@
+package support;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Orders files by where they likely are on disk, to cut down seeking on spinning disks. The inode number is
+ * used as a proxy for on-disk location: file systems (ie. ext4, XFS, HFS+) allocate the inodes of a directory
+ * near each other and near their data, so reading in inode order sweeps the platter in one direction
+ * instead of jumping back and forth as listing order (hashed or by name) does. Files sharing a position
+ * are read smallest first. Where inodes are unavailable (ie. Windows) files are ordered by size alone.
+ *
+ * @author Tony Hsu
+ */
+public class DiskOrder
+{
+    /**
+     * Key of a file without an inode
+     */
+    public static final long UNKNOWN = Long.MAX_VALUE;
+
+    /**
+     * @param file File to locate
+     * @return Inode number of the file, UNKNOWN if not supported or unreadable
+     */
+    public static long getFileKey(File file)
+    {
+        try
+        {
+            Object ino = Files.getAttribute(file.toPath(), "unix:ino", LinkOption.NOFOLLOW_LINKS);
+            return ino instanceof Long ? (Long)ino : UNKNOWN;
+        }
+        catch (IOException | UnsupportedOperationException | IllegalArgumentException | SecurityException e)
+        {
+            return UNKNOWN;
+        }
+    }
+
+    /**
+     * Sort files into disk order. Each file is located once.
+     *
+     * @param files Files to sort
+     */
+    public static void sort(File[] files)
+    {
+        List<File> list = Arrays.asList(files); // writes through to the array
+        sort(list, file -> file);
+    }
+
+    /**
+     * Sort items into the disk order of their files. Each file is located once.
+     *
+     * @param items Items to sort
+     * @param fileOf File of an item
+     */
+    public static <T> void sort(List<T> items, Function<T, File> fileOf)
+    {
+        ArrayList<Located<T>> located = new ArrayList<Located<T>>(items.size());
+        for(T item : items)
+        {
+            File file = fileOf.apply(item);
+            located.add(new Located<T>(item, getFileKey(file), file.length()));
+        }
+        Collections.sort(located, new Comparator<Located<T>>()
+        {
+            @Override
+            public int compare(Located<T> a, Located<T> b)
+            {
+                int result = Long.compare(a.key, b.key);
+                return result != 0 ? result : Long.compare(a.size, b.size);
+            }
+        });
+        for(int i = 0; i < located.size(); i++)
+        {
+            items.set(i, located.get(i).item);
+        }
+    }
+
+    /**
+     * Item with the position and size of its file
+     */
+    private static class Located<T>
+    {
+        private T item;
+        private long key;
+        private long size;
+
+        private Located(T item, long key, long size)
+        {
+            this.item = item;
+            this.key = key;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package support;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Hashtable;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import support.Utilities.ChecksumException;
+
+/**
+ * Compares reading the files of a directory in listing order (the order a sync read them in before disk order)
+ * against disk order (see DiskOrder). Run with "ant benchmark".
+ * Where "filefrag" is available (Linux), the distance the disk head would travel in each order is reported as
+ * well, which does not depend on the device the benchmark runs on.
+ *
+ * <p>Usage: DiskOrderBenchmark [work directory] [files] [KB per file] [runs]. Creates the files (2000 x 64 KB
+ * by default) in random name order, then reads and checksums them in each order, emptying the page cache
+ * before every pass so files are read from the device. Emptying the page cache requires root, without it
+ * the passes read from memory and the comparison is reported as not meaningful.</p>
+ *
+ * <p>Seeking only costs time on a spinning disk, or a device made to behave like one. A throttled loopback
+ * device can stand in for one (as root, "slow" adds 8 ms to every request, as a seek would):</p>
+ * <pre>
+ * truncate -s 1G /tmp/disk.img
+ * losetup /dev/loop7 /tmp/disk.img
+ * dmsetup create slow --table "0 $(blockdev --getsz /dev/loop7) delay /dev/loop7 0 8"
+ * mkfs.ext4 -q /dev/mapper/slow &amp;&amp; mkdir -p /mnt/slow &amp;&amp; mount /dev/mapper/slow /mnt/slow
+ * ant benchmark -Ddiskorder.benchmark.args="/mnt/slow"
+ * </pre>
+ * <p>A delay (or "blkio.throttle.read_iops_device" limit) is paid per request wherever it lands, so such a
+ * device shows the cost of requests more than of seeking. On a spinning disk the time saved follows the
+ * head travel.</p>
+ *
+ * @author Tony Hsu
+ */
+public class DiskOrderBenchmark
+{
+    /**
+     * Writing to it empties the page cache (Linux, root only)
+     */
+    private static final File DROP_CACHES = new File("/proc/sys/vm/drop_caches");
+
+    public static void main(String[] args) throws IOException, InterruptedException
+    {
+        File work = new File(args.length > 0 ? args[0] : System.getProperty("java.io.tmpdir"), "~diskOrderBenchmark");
+        int count = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        long size = (args.length > 2 ? Long.parseLong(args[2]) : 64) * 1024;
+        int runs = args.length > 3 ? Integer.parseInt(args[3]) : 3;
+        work.mkdirs();
+        try
+        {
+            createFiles(work, count, size);
+            File[] listed = work.listFiles();
+            File[] sorted = listed.clone();
+            DiskOrder.sort(sorted);
+            boolean cold = dropCaches();
+            System.out.println("disk order: " + count + " x " + Utilities.formatBytes(size) + ", " +
+                (cold ? "read from device" : "page cache could not be emptied (not root?), read from memory"));
+
+            long[] listedBest = {Long.MAX_VALUE};
+            long[] sortedBest = {Long.MAX_VALUE};
+            for(int run = 0; run < runs; run++) // alternate which order goes first
+            {
+                if(run % 2 == 0)
+                {
+                    time(listed, listedBest);
+                    time(sorted, sortedBest);
+                }
+                else
+                {
+                    time(sorted, sortedBest);
+                    time(listed, listedBest);
+                }
+            }
+            Hashtable<String, Long> blocks = getPhysicalBlocks(listed);
+            report("listing order", listedBest[0], count * size, getTravel(listed, blocks));
+            report("disk order", sortedBest[0], count * size, getTravel(sorted, blocks));
+            if(!cold)
+            {
+                System.out.println("  (read from memory, not meaningful)");
+            }
+        }
+        finally
+        {
+            for(File file : work.listFiles())
+            {
+                file.delete();
+            }
+            work.delete();
+        }
+    }
+
+    /**
+     * Create files one after another (so their inodes and data are allocated in that order) under names in
+     * random order, so listing order does not follow creation order.
+     *
+     * @param work Directory to create files in
+     * @param count Number of files
+     * @param size Size of each file in bytes
+     * @throws IOException Unable to create files
+     */
+    private static void createFiles(File work, int count, long size) throws IOException
+    {
+        ArrayList<Integer> names = new ArrayList<Integer>();
+        for(int i = 0; i < count; i++)
+        {
+            names.add(i);
+        }
+        Random random = new Random(17);
+        Collections.shuffle(names, random);
+        byte[] block = new byte[(int)Math.min(size, 1024 * 1024)];
+        random.nextBytes(block);
+        for(int name : names)
+        {
+            OutputStream out = new FileOutputStream(new File(work, "file" + name + ".bin"));
+            for(long written = 0; written < size; written += block.length)
+            {
+                out.write(block, 0, (int)Math.min(block.length, size - written));
+            }
+            out.close();
+        }
+    }
+
+    /**
+     * Read and checksum every file in order with an empty page cache.
+     *
+     * @param files Files in the order to read
+     * @param best Fastest time so far in nanoseconds, updated
+     * @throws IOException Unable to read a file
+     * @throws InterruptedException Interrupted while emptying the page cache
+     */
+    private static void time(File[] files, long[] best) throws IOException, InterruptedException
+    {
+        dropCaches();
+        long start = System.nanoTime();
+        for(File file : files)
+        {
+            try
+            {
+                Utilities.calculateCRC32(file);
+            }
+            catch (ChecksumException e)
+            {
+                throw new IOException("Unable to read " + file.getName());
+            }
+        }
+        best[0] = Math.min(best[0], System.nanoTime() - start);
+    }
+
+    /**
+     * Flush written files then empty the page cache.
+     *
+     * @return True if emptied
+     * @throws InterruptedException Interrupted while flushing
+     */
+    private static boolean dropCaches() throws InterruptedException
+    {
+        try
+        {
+            new ProcessBuilder("sync").inheritIO().start().waitFor();
+            FileWriter writer = new FileWriter(DROP_CACHES);
+            try
+            {
+                writer.write("1");
+            }
+            finally
+            {
+                writer.close();
+            }
+            return true;
+        }
+        catch (IOException | SecurityException e)
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Find where each file starts on the device with "filefrag".
+     *
+     * @param files Files to locate
+     * @return Lookup table of "path" -> first physical block (4 KB), empty if filefrag is unavailable
+     * @throws InterruptedException Interrupted while waiting for filefrag
+     */
+    private static Hashtable<String, Long> getPhysicalBlocks(File[] files) throws InterruptedException
+    {
+        Hashtable<String, Long> blocks = new Hashtable<String, Long>();
+        Pattern header = Pattern.compile("^File size of (.+) is ");
+        Pattern extent = Pattern.compile("^\\s*0:\\s*\\d+\\.\\.\\s*\\d+:\\s*(\\d+)\\.\\.");
+        for(int start = 0; start < files.length; start += 500)
+        {
+            ArrayList<String> command = new ArrayList<String>();
+            command.add("filefrag");
+            command.add("-v");
+            command.add("-b4096");
+            for(int i = start; i < Math.min(files.length, start + 500); i++)
+            {
+                command.add(files[i].getPath());
+            }
+            try
+            {
+                Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+                BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+                String path = null;
+                String str;
+                while((str = reader.readLine()) != null)
+                {
+                    Matcher matcher = header.matcher(str);
+                    if(matcher.find())
+                    {
+                        path = matcher.group(1);
+                        continue;
+                    }
+                    matcher = extent.matcher(str);
+                    if(path != null && matcher.find())
+                    {
+                        blocks.put(path, Long.parseLong(matcher.group(1)));
+                        path = null;
+                    }
+                }
+                process.waitFor();
+            }
+            catch (IOException e)
+            {
+                return new Hashtable<String, Long>(); // filefrag not installed
+            }
+        }
+        return blocks;
+    }
+
+    /**
+     * @param files Files in the order to read
+     * @param blocks Lookup table of "path" -> first physical block
+     * @return Bytes the head travels between files read in order, -1 if a file was not located
+     */
+    private static long getTravel(File[] files, Hashtable<String, Long> blocks)
+    {
+        long travel = 0;
+        Long previous = null;
+        for(File file : files)
+        {
+            Long block = blocks.get(file.getPath());
+            if(block == null)
+            {
+                return -1;
+            }
+            if(previous != null)
+            {
+                travel += Math.abs(block - previous) * 4096;
+            }
+            previous = block + (file.length() + 4095) / 4096; // head ends past the file
+        }
+        return travel;
+    }
+
+    /**
+     * @param label Name of the order
+     * @param nanos Fastest time
+     * @param bytes Bytes read
+     * @param travel Bytes the head travels, -1 if unknown
+     */
+    private static void report(String label, long nanos, long bytes, long travel)
+    {
+        System.out.println("  " + label + ": " + nanos / 1000000 + " ms, " +
+            Utilities.formatBytes((long)(bytes / (nanos / 1e9))) + "/s" +
+            (travel >= 0 ? ", head travel " + Utilities.formatBytes(travel) : ""));
+    }
+}
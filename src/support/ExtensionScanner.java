@@ -0,0 +1,193 @@
+package support;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Hashtable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Finds the extensions of files in dropped files and directories, walking sub-directories in parallel.
+ * Each extension is reported as soon as it is first found, and the number of files and bytes of each
+ * extension are kept. The walk ends early once the delegate is cancelled.
+ *
+ * @author Tony Hsu
+ * @structure Each directory is a fork join task. Lookup table of "extension" -> [files, bytes]
+ */
+public class ExtensionScanner
+{
+    /**
+     * Delegate methods for ExtensionScannerDelegate
+     */
+    public interface ExtensionScannerDelegate {
+        /**
+         * Event notifier if an extension is found for the first time. Called from the walking threads
+         * @param extension Extension including the '.'
+         */
+        public void extensionFound(String extension);
+        /**
+         * @return True to end the walk early
+         */
+        public boolean isCancelled();
+    }
+
+    /**
+     * Number of threads walking, reading directories is mostly waiting on disk
+     */
+    private static final int THREADS = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+
+    /**
+     * Lookup table of "extension" -> [files, bytes]
+     */
+    private ConcurrentHashMap<String, long[]> extensions;
+    /**
+     * Common methods for controller to implement to handle events
+     */
+    private ExtensionScannerDelegate delegate;
+
+    /**
+     * @param delegate Controller to handle events
+     */
+    public ExtensionScanner(ExtensionScannerDelegate delegate)
+    {
+        this.delegate = delegate;
+        extensions = new ConcurrentHashMap<String, long[]>();
+    }
+
+    /**
+     * Walk the files and directories, blocking until done or cancelled.
+     *
+     * @param files Files or directories to search through
+     * @return False if cancelled before every file was found
+     */
+    public boolean scan(File[] files)
+    {
+        if(files == null)
+        {
+            return true;
+        }
+        ForkJoinPool pool = new ForkJoinPool(THREADS);
+        try
+        {
+            pool.invoke(new DirectoryTask(files));
+        }
+        finally
+        {
+            pool.shutdownNow();
+        }
+        return !delegate.isCancelled();
+    }
+
+    /**
+     * Reads the files of a directory, each sub-directory is forked into its own task
+     */
+    @SuppressWarnings("serial")
+    private class DirectoryTask extends RecursiveAction
+    {
+        /**
+         * Files within the directory
+         */
+        private File[] files;
+
+        private DirectoryTask(File[] files)
+        {
+            this.files = files;
+        }
+
+        @Override
+        protected void compute()
+        {
+            ArrayList<DirectoryTask> subDirectories = new ArrayList<DirectoryTask>();
+            for(File f : files)
+            {
+                if(delegate.isCancelled())
+                {
+                    break;
+                }
+                if(f.isDirectory())
+                {
+                    File[] list = f.listFiles();
+                    if(list != null) // unreadable directory
+                    {
+                        DirectoryTask task = new DirectoryTask(list);
+                        task.fork();
+                        subDirectories.add(task);
+                    }
+                }
+                else
+                {
+                    found(Utilities.getExtensionType(f.getName()), f.length());
+                }
+            }
+            for(DirectoryTask task : subDirectories)
+            {
+                task.join();
+            }
+        }
+    }
+
+    /**
+     * Count a file, reporting its extension if first found.
+     *
+     * @param extension Extension of the file including the '.', empty if none
+     * @param size Size of the file in bytes
+     */
+    private void found(String extension, long size)
+    {
+        if(extension.length() == 0)
+        {
+            return;
+        }
+        long[] totals = extensions.get(extension);
+        if(totals == null)
+        {
+            long[] created = new long[2];
+            totals = extensions.putIfAbsent(extension, created);
+            if(totals == null) // first found
+            {
+                totals = created;
+                delegate.extensionFound(extension);
+            }
+        }
+        synchronized(totals)
+        {
+            totals[0]++;
+            totals[1] += size;
+        }
+    }
+
+    // Extensions with their number of files and bytes, one per line
+    public String toString()
+    {
+        Hashtable<String, long[]> totals = getExtensions();
+        ArrayList<String> sorted = new ArrayList<String>(totals.keySet());
+        Collections.sort(sorted);
+        StringBuilder str = new StringBuilder();
+        for(String extension : sorted)
+        {
+            long[] value = totals.get(extension);
+            str.append(extension + ": " + value[0] + " files, " + Utilities.formatBytes(value[1]) + "\n");
+        }
+        return str.toString();
+    }
+
+    // ~~~~~ Getters & Setters ~~~~~ //
+    /**
+     * @return Lookup table of "extension" -> [files, bytes] found so far
+     */
+    public Hashtable<String, long[]> getExtensions()
+    {
+        Hashtable<String, long[]> copy = new Hashtable<String, long[]>();
+        for(String extension : extensions.keySet())
+        {
+            long[] totals = extensions.get(extension);
+            synchronized(totals)
+            {
+                copy.put(extension, new long[] {totals[0], totals[1]});
+            }
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,248 @@
+package support;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Hashtable;
+
+import org.apache.commons.io.FileUtils;
+
+import synchive.EventCenter;
+import synchive.EventCenter.Events;
+import synchive.EventCenter.RunningStatusEvents;
+import synchive.Settings;
+import synchive.SynchiveDiff;
+
+/**
+ * Runs full syncs of generated trees (see TreeGenerator) of growing size and reports the wall time, peak heap
+ * and bytes read and written of each. Run with "ant benchmark".
+ *
+ * <p>Usage: ScaleBenchmark [work directory] [file counts] [max heap]. For each file count (comma separated,
+ * "10000,100000,1000000" by default) a source tree is generated with its idFile (log-normal sizes around 1 KB,
+ * at most 1 MB, 4 levels of 6 sub-directories, 10% duplicates, 10% with CRC in filename), then synced three
+ * times: into an empty destination, again with nothing changed, and again with "-quick". Each sync runs in a
+ * new JVM (with -Xmx of max heap if given), so the peak heap and bytes counted are of the sync alone.</p>
+ *
+ * <p>Bytes read and written are those of the read and write calls ("rchar", "wchar"), and in brackets those
+ * that reached the device ("read_bytes", "write_bytes"), both from /proc/self/io (Linux). Elsewhere they
+ * are reported as unknown. The million file tree takes about 3 GB for each of source and destination.</p>
+ *
+ * @author Tony Hsu
+ */
+public class ScaleBenchmark
+{
+    /**
+     * Argument running a single sync in the child JVM
+     */
+    private static final String SYNC = "-sync";
+    /**
+     * Start of the line printed by the child JVM with its measures
+     */
+    private static final String RESULT = "ScaleBenchmark result:";
+    /**
+     * Counters of the current process (Linux)
+     */
+    private static final File PROC_IO = new File("/proc/self/io");
+
+    public static void main(String[] args) throws IOException, InterruptedException
+    {
+        if(args.length >= 3 && args[0].equals(SYNC))
+        {
+            sync(new File(args[1]), new File(args[2]), args.length > 3);
+            return;
+        }
+        File work = new File(args.length > 0 ? args[0] : System.getProperty("java.io.tmpdir"), "~scaleBenchmark");
+        String[] counts = (args.length > 1 ? args[1] : "10000,100000,1000000").split(",");
+        String maxHeap = args.length > 2 ? args[2] : null;
+        try
+        {
+            for(String count : counts)
+            {
+                run(work, Integer.parseInt(count.trim()), maxHeap);
+            }
+        }
+        finally
+        {
+            FileUtils.deleteQuietly(work);
+        }
+    }
+
+    /**
+     * Generate a tree then time syncing it in a new JVM for every pass.
+     *
+     * @param work Directory to create the trees in
+     * @param count Number of files
+     * @param maxHeap Max heap of the child JVM (ie. "2g"), null for the default
+     * @throws IOException Unable to create the tree or start the child JVM
+     * @throws InterruptedException Interrupted while waiting for the child JVM
+     */
+    private static void run(File work, int count, String maxHeap) throws IOException, InterruptedException
+    {
+        FileUtils.deleteQuietly(work);
+        File src = new File(work, "src");
+        File des = new File(work, "des");
+        TreeGenerator generator = new TreeGenerator(count);
+        generator.setFiles(count);
+        generator.setSizes(TreeGenerator.SizeDistribution.LOG_NORMAL, 0, 1024, 1024 * 1024);
+        generator.setShape(4, 6);
+        long start = System.nanoTime();
+        generator.generate(src);
+        System.out.println("scale: " + count + " files (" + generator.getDuplicatesGenerated() + " duplicates) in " +
+            generator.getDirectoriesGenerated() + " directories, " + Utilities.formatBytes(generator.getBytesGenerated()) +
+            ", generated in " + (System.nanoTime() - start) / 1000000 + " ms");
+
+        ArrayList<String> line = new ArrayList<String>();
+        line.add(new File(System.getProperty("java.home"), "bin" + File.separator + "java").getPath());
+        if(maxHeap != null)
+        {
+            line.add("-Xmx" + maxHeap);
+        }
+        line.add("-cp");
+        ArrayList<String> classPath = new ArrayList<String>();
+        for(String path : System.getProperty("java.class.path").split(File.pathSeparator)) // child runs in work
+        {
+            classPath.add(new File(path).getAbsolutePath());
+        }
+        line.add(String.join(File.pathSeparator, classPath));
+        line.add("support.ScaleBenchmark");
+        line.add(SYNC);
+        line.add(src.getAbsolutePath());
+        line.add(des.getAbsolutePath());
+
+        time(work, "initial sync", line);
+        time(work, "no changes", line);
+        line.add("-quick");
+        time(work, "no changes, -quick", line);
+    }
+
+    /**
+     * Run a sync in a new JVM and print its measures.
+     *
+     * @param work Working directory of the child JVM
+     * @param label Name of the pass
+     * @param line Command of the child JVM
+     * @throws IOException Unable to start the child JVM
+     * @throws InterruptedException Interrupted while waiting for the child JVM
+     */
+    private static void time(File work, String label, ArrayList<String> line) throws IOException, InterruptedException
+    {
+        File errors = new File(work, "errors.txt");
+        Process process = new ProcessBuilder(line).directory(work).redirectError(errors).start();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+        String result = null;
+        String str;
+        while((str = reader.readLine()) != null)
+        {
+            if(str.startsWith(RESULT))
+            {
+                result = str.substring(RESULT.length()).trim();
+            }
+        }
+        int exit = process.waitFor();
+        if(exit != 0 || result == null)
+        {
+            String error = errors.isFile() && errors.length() > 0 ? Files.readAllLines(errors.toPath()).get(0) : "exit " + exit;
+            System.out.println("  " + label + ": failed (" + error + ")");
+            return;
+        }
+        String[] values = result.split(" "); // [state, errors, nanos, peak heap, rchar, wchar, read_bytes, write_bytes]
+        System.out.println("  " + label + ": " + Long.parseLong(values[2]) / 1000000 + " ms, peak heap " +
+            Utilities.formatBytes(Long.parseLong(values[3])) + ", read " + formatIO(values[4], values[6]) +
+            ", written " + formatIO(values[5], values[7]) +
+            (values[0].equals(RunningStatusEvents.Completed.toString()) ? "" : ", " + values[0]) +
+            (values[1].equals("0") ? "" : ", " + values[1] + " errors"));
+    }
+
+    /**
+     * @param bytes Bytes of the calls, -1 if unknown
+     * @param device Bytes that reached the device, -1 if unknown
+     * @return Bytes for display
+     */
+    private static String formatIO(String bytes, String device)
+    {
+        if(bytes.equals("-1"))
+        {
+            return "unknown";
+        }
+        return Utilities.formatBytes(Long.parseLong(bytes)) + " (" + Utilities.formatBytes(Long.parseLong(device)) + ")";
+    }
+
+    /**
+     * Sync with default settings and print the measures on a single line starting with RESULT.
+     *
+     * @param src Location to sync from
+     * @param des Location to sync to
+     * @param quick True to compare by size and last modified time before reading
+     * @throws IOException Unable to make destination folder
+     */
+    private static void sync(File src, File des, boolean quick) throws IOException
+    {
+        Settings.getInstance().resetToDefaults();
+        Settings.getInstance().setQuickCompareFlag(quick);
+        Object id = new Object();
+        RunningStatusEvents[] state = {RunningStatusEvents.Running};
+        int[] errors = {0};
+        EventCenter.getInstance().subscribeEvent(Events.RunningStatus, id, (arr) -> {
+            state[0] = (RunningStatusEvents)((Object[])arr)[0];
+        });
+        EventCenter.getInstance().subscribeEvent(Events.ErrorOccurred, id, (str) -> {
+            errors[0]++;
+        });
+
+        for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) // leave out starting the JVM
+        {
+            pool.resetPeakUsage();
+        }
+        Hashtable<String, Long> before = readProcIO();
+        long start = System.nanoTime();
+        new SynchiveDiff(src, des).syncLocations();
+        long elapsed = System.nanoTime() - start;
+        Hashtable<String, Long> after = readProcIO();
+
+        long peakHeap = 0;
+        for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+        {
+            if(pool.getType() == MemoryType.HEAP)
+            {
+                peakHeap += pool.getPeakUsage().getUsed();
+            }
+        }
+        StringBuilder result = new StringBuilder(RESULT);
+        result.append(" ").append(state[0]).append(" ").append(errors[0]).append(" ").append(elapsed).append(" ").append(peakHeap);
+        for(String key : new String[] {"rchar", "wchar", "read_bytes", "write_bytes"})
+        {
+            result.append(" ").append(before.containsKey(key) && after.containsKey(key) ? after.get(key) - before.get(key) : -1);
+        }
+        System.out.println(result);
+    }
+
+    /**
+     * @return Lookup table of counter -> value from /proc/self/io, empty if unavailable
+     */
+    private static Hashtable<String, Long> readProcIO()
+    {
+        Hashtable<String, Long> counters = new Hashtable<String, Long>();
+        try
+        {
+            for(String str : Files.readAllLines(PROC_IO.toPath()))
+            {
+                String[] splitStr = str.split(":\\s*", 2); // [counter, value]
+                if(splitStr.length == 2)
+                {
+                    counters.put(splitStr[0], Long.parseLong(splitStr[1].trim()));
+                }
+            }
+        }
+        catch (IOException | NumberFormatException | SecurityException e)
+        {
+            return new Hashtable<String, Long>();
+        }
+        return counters;
+    }
+}
@@ -0,0 +1,155 @@
+package support;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+
+import org.apache.commons.io.FileUtils;
+
+import gui.SummaryController;
+import synchive.SynchiveDiff;
+
+/**
+ * Compares starting a "-nogui" sync the way it used to (through SummaryController, which builds the Swing views
+ * before running) against the headless runner. Run with "ant benchmark".
+ *
+ * <p>Usage: StartupBenchmark [work directory] [runs]. Syncs a tree of 20 small files into an empty destination
+ * in a new JVM for every run, and reports the wall time until the JVM exits and the classes it loaded.
+ * Without a display the SummaryController path fails, which is reported instead of its time.</p>
+ *
+ * @author Tony Hsu
+ */
+public class StartupBenchmark
+{
+    /**
+     * Argument running the SummaryController path in the child JVM
+     */
+    private static final String SUMMARY_CONTROLLER = "-summaryController";
+    /**
+     * Start of the line printed by the child JVM when it fails
+     */
+    private static final String UNCAUGHT = "Exception in thread \"main\" ";
+
+    public static void main(String[] args) throws IOException, InterruptedException
+    {
+        if(args.length == 3 && args[0].equals(SUMMARY_CONTROLLER))
+        {
+            runSummaryController(new File(args[1]), new File(args[2]));
+            return;
+        }
+        File work = new File(args.length > 0 ? args[0] : System.getProperty("java.io.tmpdir"), "~startupBenchmark");
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        File src = new File(work, "src");
+        File des = new File(work, "des");
+        src.mkdirs();
+        for(int i = 0; i < 20; i++)
+        {
+            FileWriter writer = new FileWriter(new File(src, "file" + i + ".txt"));
+            writer.write("file " + i);
+            writer.close();
+        }
+        try
+        {
+            run(work, "SummaryController", runs, "support.StartupBenchmark", SUMMARY_CONTROLLER, src.getPath(), des.getPath());
+            run(work, "HeadlessRunner", runs, "synchive.Synchive", "-nogui", src.getPath(), des.getPath());
+        }
+        finally
+        {
+            FileUtils.deleteQuietly(work);
+        }
+    }
+
+    /**
+     * Start a sync the way "-nogui" did before the headless runner, then exit.
+     *
+     * @param src Location to sync from
+     * @param des Location to sync to
+     */
+    private static void runSummaryController(File src, File des) throws IOException
+    {
+        new SummaryController(); // builds the views, timers and tab blinker
+        new SynchiveDiff(src, des).syncLocations();
+        System.exit(0);
+    }
+
+    /**
+     * Time a path in a new JVM for every run, the destination is emptied before each run.
+     *
+     * @param work Working directory of the child JVM
+     * @param label Name of the path
+     * @param runs Number of runs
+     * @param command Main class and arguments of the child JVM
+     * @throws IOException Unable to start the child JVM
+     * @throws InterruptedException Interrupted while waiting for the child JVM
+     */
+    private static void run(File work, String label, int runs, String... command) throws IOException, InterruptedException
+    {
+        ArrayList<String> line = new ArrayList<String>();
+        line.add(new File(System.getProperty("java.home"), "bin" + File.separator + "java").getPath());
+        line.add("-verbose:class");
+        line.add("-cp");
+        ArrayList<String> classPath = new ArrayList<String>();
+        for(String path : System.getProperty("java.class.path").split(File.pathSeparator)) // child runs in work
+        {
+            classPath.add(new File(path).getAbsolutePath());
+        }
+        line.add(String.join(File.pathSeparator, classPath));
+        for(String str : command)
+        {
+            line.add(str);
+        }
+        File des = new File(command[command.length - 1]);
+        File errors = new File(work, "errors.txt");
+
+        long best = Long.MAX_VALUE;
+        long total = 0;
+        int classes = 0;
+        int guiClasses = 0;
+        for(int i = 0; i < runs; i++)
+        {
+            FileUtils.deleteQuietly(des);
+            long start = System.nanoTime();
+            Process process = new ProcessBuilder(line).directory(work).redirectError(errors).start();
+            classes = 0;
+            guiClasses = 0;
+            BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+            String str;
+            while((str = reader.readLine()) != null)
+            {
+                if(str.startsWith("[Loaded ") || str.contains("[class,load]"))
+                {
+                    classes++;
+                    if(str.contains(" java.awt.") || str.contains(" javax.swing.") || str.contains(" sun.awt."))
+                    {
+                        guiClasses++;
+                    }
+                }
+            }
+            int exit = process.waitFor();
+            long elapsed = System.nanoTime() - start;
+            String failure = null;
+            for(String error : Files.readAllLines(errors.toPath()))
+            {
+                if(error.startsWith(UNCAUGHT))
+                {
+                    failure = error.substring(UNCAUGHT.length()).split(":")[0];
+                    break;
+                }
+            }
+            if(exit != 0 || failure != null)
+            {
+                System.out.println(label + ": failed (" + (failure != null ? failure : "exit " + exit) + ") after " +
+                    elapsed / 1000000 + " ms, " + classes + " classes loaded, " + guiClasses + " AWT/Swing");
+                return;
+            }
+            best = Math.min(best, elapsed);
+            total += elapsed;
+        }
+        System.out.println(label + ": best " + best / 1000000 + " ms, average " + total / runs / 1000000 + " ms over " +
+            runs + " runs, " + classes + " classes loaded, " + guiClasses + " AWT/Swing");
+    }
+}
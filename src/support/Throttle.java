@@ -0,0 +1,506 @@
+package support;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.time.LocalTime;
+import java.util.Scanner;
+
+/**
+ * Limits the bandwidth (bytes per second) and IOPS (read or write calls per second) of reading and writing
+ * files, so a sync overlapping working hours does not starve other services sharing the disks. Every thread
+ * hashing or copying draws from the same token buckets, each holding up to a second of its rate.
+ *
+ * <p>Limits can be changed while running (ie. from the GUI or a control file) and apply to the next read or
+ * write, the latest change wins. With a schedule, limits apply only within its windows of the day and files
+ * are read and written at full speed outside of them.</p>
+ *
+ * @author Tony Hsu
+ * @structure Control file lines are "key=value": readRate, writeRate (bytes/s, K/M/G suffix), readIops,
+ *             writeIops (0 or empty for no limit) and schedule ("HH:mm-HH:mm", comma separated, empty for always).
+ *             Keys left out keep their current value.
+ */
+public class Throttle
+{
+    /**
+     * Singleton Initialization
+     */
+    private static Throttle self = new Throttle();
+
+    /**
+     * Longest sleep between checks for changed limits, in milliseconds
+     */
+    private static final long SLICE = 100;
+    /**
+     * Time between checks of the schedule and control file, in nanoseconds
+     */
+    private static final long POLL_INTERVAL = 1000000000L;
+
+    /**
+     * Bytes read per second
+     */
+    private TokenBucket readBytes;
+    /**
+     * Bytes written per second
+     */
+    private TokenBucket writeBytes;
+    /**
+     * Read calls per second
+     */
+    private TokenBucket readOps;
+    /**
+     * Write calls per second
+     */
+    private TokenBucket writeOps;
+    /**
+     * Windows of the day limits apply in, each [start, end] in minutes of the day. Null for always
+     */
+    private int[][] schedule;
+    /**
+     * File polled for limits, null for none
+     */
+    private File controlFile;
+    /**
+     * Last modified time of controlFile when last read
+     */
+    private long controlModified;
+    /**
+     * Time (System.nanoTime) of the last check of the schedule and control file
+     */
+    private long polled;
+    /**
+     * True if a limit applies now
+     */
+    private boolean limiting;
+    /**
+     * True if there is a limit or a control file, otherwise reads and writes are not counted at all
+     */
+    private volatile boolean enabled;
+
+    /**
+     * Private constructor to prevent instantiating multiple instances.
+     *  Use getInstance() to get singleton.
+     */
+    private Throttle()
+    {
+        readBytes = new TokenBucket();
+        writeBytes = new TokenBucket();
+        readOps = new TokenBucket();
+        writeOps = new TokenBucket();
+    }
+
+    /**
+     * @return Singleton of Throttle
+     */
+    public static Throttle getInstance()
+    {
+        return self;
+    }
+
+    /**
+     * Wait until a read may proceed.
+     *
+     * @param bytes Number of bytes read
+     */
+    public void acquireRead(long bytes)
+    {
+        if(enabled)
+        {
+            acquire(readBytes, readOps, bytes);
+        }
+    }
+
+    /**
+     * Wait until a write may proceed.
+     *
+     * @param bytes Number of bytes written
+     */
+    public void acquireWrite(long bytes)
+    {
+        if(enabled)
+        {
+            acquire(writeBytes, writeOps, bytes);
+        }
+    }
+
+    /**
+     * Take tokens for one call then wait until both buckets are out of debt. Waits in slices so a limit
+     * lifted meanwhile (ie. leaving the schedule) lets the call proceed right away. Returns early if interrupted.
+     *
+     * @param bytes Bucket of bytes
+     * @param ops Bucket of calls
+     * @param count Number of bytes
+     */
+    private void acquire(TokenBucket bytes, TokenBucket ops, long count)
+    {
+        long wait;
+        synchronized(this)
+        {
+            long now = System.nanoTime();
+            poll(now);
+            if(!limiting)
+            {
+                return;
+            }
+            bytes.take(count, now);
+            ops.take(1, now);
+            wait = Math.max(bytes.getWait(now), ops.getWait(now));
+        }
+        while(wait > 0)
+        {
+            try
+            {
+                Thread.sleep(Math.max(1, Math.min(SLICE, wait / 1000000)));
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            synchronized(this)
+            {
+                long now = System.nanoTime();
+                poll(now);
+                wait = limiting ? Math.max(bytes.getWait(now), ops.getWait(now)) : 0;
+            }
+        }
+    }
+
+    /**
+     * Re-read the control file if changed and check the schedule, at most once every POLL_INTERVAL.
+     *
+     * @param now Current time (System.nanoTime)
+     */
+    private void poll(long now)
+    {
+        if(now - polled < POLL_INTERVAL && polled != 0)
+        {
+            return;
+        }
+        polled = now;
+        if(controlFile != null && controlFile.lastModified() != controlModified)
+        {
+            controlModified = controlFile.lastModified();
+            readControlFile();
+        }
+        boolean active = hasLimit() && isScheduled(LocalTime.now());
+        if(active && !limiting) // entering a window starts with a full second of burst
+        {
+            resetBuckets();
+        }
+        limiting = active;
+    }
+
+    /**
+     * Apply the limits of the control file. Lines that cannot be parsed are skipped.
+     */
+    private void readControlFile()
+    {
+        Scanner sc;
+        try
+        {
+            sc = new Scanner(controlFile, "UTF-8");
+        }
+        catch (FileNotFoundException e)
+        {
+            return; // removed, keep current limits
+        }
+        try
+        {
+            while(sc.hasNextLine())
+            {
+                String[] splitLine = sc.nextLine().split("=", 2); // parse to [key, value]
+                String value = splitLine.length > 1 ? splitLine[1] : "";
+                try
+                {
+                    switch (splitLine[0].trim())
+                    {
+                        case "readRate":
+                            readBytes.setRate(parseRate(value));
+                            break;
+                        case "writeRate":
+                            writeBytes.setRate(parseRate(value));
+                            break;
+                        case "readIops":
+                            readOps.setRate(parseRate(value));
+                            break;
+                        case "writeIops":
+                            writeOps.setRate(parseRate(value));
+                            break;
+                        case "schedule":
+                            schedule = parseSchedule(value);
+                            break;
+                    }
+                }
+                catch (IllegalArgumentException e)
+                {
+                    // keep current value
+                }
+            }
+        }
+        finally
+        {
+            sc.close();
+        }
+        enabled = hasLimit() || controlFile != null;
+    }
+
+    /**
+     * Refill every bucket to a second of its rate
+     */
+    private void resetBuckets()
+    {
+        long now = System.nanoTime();
+        readBytes.reset(now);
+        writeBytes.reset(now);
+        readOps.reset(now);
+        writeOps.reset(now);
+    }
+
+    /**
+     * @return True if any rate is limited
+     */
+    private boolean hasLimit()
+    {
+        return readBytes.rate > 0 || writeBytes.rate > 0 || readOps.rate > 0 || writeOps.rate > 0;
+    }
+
+    /**
+     * @param text Rate per second with an optional K, M or G suffix (ie. "512K", "1.5M"), empty for no limit
+     * @return Rate per second, 0 for no limit
+     * @throws NumberFormatException Text is not a rate
+     */
+    public static long parseRate(String text) throws NumberFormatException
+    {
+        String str = text.trim().toUpperCase();
+        if(str.endsWith("B"))
+        {
+            str = str.substring(0, str.length() - 1);
+        }
+        if(str.isEmpty())
+        {
+            return 0;
+        }
+        long unit = 1;
+        switch(str.charAt(str.length() - 1))
+        {
+            case 'K':
+                unit = 1024L;
+                break;
+            case 'M':
+                unit = 1024L * 1024;
+                break;
+            case 'G':
+                unit = 1024L * 1024 * 1024;
+                break;
+        }
+        double value = Double.parseDouble(unit == 1 ? str : str.substring(0, str.length() - 1).trim());
+        if(value < 0 || Double.isNaN(value) || Double.isInfinite(value))
+        {
+            throw new NumberFormatException("Invalid rate: " + text);
+        }
+        return (long)(value * unit);
+    }
+
+    /**
+     * @param text Windows of the day, "HH:mm-HH:mm" comma separated (ie. "09:00-12:00, 13:00-18:00"). A window
+     *             ending before it starts runs past midnight, one starting and ending at the same time is all day
+     * @return Each window [start, end] in minutes of the day, null if text is empty (always)
+     * @throws IllegalArgumentException Text is not a schedule
+     */
+    public static int[][] parseSchedule(String text) throws IllegalArgumentException
+    {
+        if(text.trim().isEmpty())
+        {
+            return null;
+        }
+        String[] windows = text.split(",");
+        int[][] schedule = new int[windows.length][];
+        for(int i = 0; i < windows.length; i++)
+        {
+            String[] times = windows[i].split("-");
+            if(times.length != 2)
+            {
+                throw new IllegalArgumentException("Invalid schedule: " + windows[i].trim());
+            }
+            schedule[i] = new int[] {parseTime(times[0]), parseTime(times[1])};
+        }
+        return schedule;
+    }
+
+    /**
+     * @param text Time of day "HH:mm"
+     * @return Minutes of the day
+     * @throws IllegalArgumentException Text is not a time of day
+     */
+    private static int parseTime(String text) throws IllegalArgumentException
+    {
+        String[] split = text.trim().split(":");
+        int hours = Integer.parseInt(split[0].trim());
+        int minutes = split.length > 1 ? Integer.parseInt(split[1].trim()) : 0;
+        if(split.length > 2 || hours < 0 || hours > 24 || minutes < 0 || minutes > 59 || hours * 60 + minutes > 24 * 60)
+        {
+            throw new IllegalArgumentException("Invalid time: " + text.trim());
+        }
+        return hours * 60 + minutes;
+    }
+
+    /**
+     * @param time Time of day
+     * @return True if limits apply at time
+     */
+    public synchronized boolean isScheduled(LocalTime time)
+    {
+        if(schedule == null)
+        {
+            return true;
+        }
+        int minute = time.getHour() * 60 + time.getMinute();
+        for(int[] window : schedule)
+        {
+            boolean within = window[0] == window[1] ||
+                (window[0] < window[1] ? minute >= window[0] && minute < window[1] : minute >= window[0] || minute < window[1]);
+            if(within)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Bucket of tokens refilled at a rate, holding up to a second of it. Taking more than there is goes into
+     * debt, which is paid off by waiting, so a large read is allowed but delays the ones after it.
+     */
+    private static class TokenBucket
+    {
+        /**
+         * Tokens per second, 0 for no limit
+         */
+        private long rate;
+        /**
+         * Tokens available, negative when in debt
+         */
+        private double tokens;
+        /**
+         * Time (System.nanoTime) of the last refill
+         */
+        private long refilled;
+
+        /**
+         * @param rate Tokens per second, 0 for no limit
+         */
+        private void setRate(long rate)
+        {
+            if(rate != this.rate)
+            {
+                this.rate = rate;
+                reset(System.nanoTime());
+            }
+        }
+
+        /**
+         * @param now Current time (System.nanoTime)
+         */
+        private void reset(long now)
+        {
+            tokens = rate;
+            refilled = now;
+        }
+
+        /**
+         * @param count Tokens to take
+         * @param now Current time (System.nanoTime)
+         */
+        private void take(long count, long now)
+        {
+            if(rate > 0)
+            {
+                refill(now);
+                tokens -= count;
+            }
+        }
+
+        /**
+         * @param now Current time (System.nanoTime)
+         * @return Nanoseconds until out of debt, 0 if not in debt
+         */
+        private long getWait(long now)
+        {
+            if(rate <= 0)
+            {
+                return 0;
+            }
+            refill(now);
+            return tokens >= 0 ? 0 : (long)Math.ceil(-tokens * 1e9 / rate);
+        }
+
+        /**
+         * @param now Current time (System.nanoTime)
+         */
+        private void refill(long now)
+        {
+            tokens = Math.min(rate, tokens + (now - refilled) * (double)rate / 1e9);
+            refilled = now;
+        }
+    }
+
+    // ~~~~~ Getters & Setters ~~~~~ //
+    /**
+     * Limits apply to the next read or write.
+     *
+     * @param readRate Bytes read per second, 0 for no limit
+     * @param writeRate Bytes written per second, 0 for no limit
+     * @param readIops Read calls per second, 0 for no limit
+     * @param writeIops Write calls per second, 0 for no limit
+     */
+    public synchronized void setLimits(long readRate, long writeRate, long readIops, long writeIops)
+    {
+        readBytes.setRate(Math.max(0, readRate));
+        writeBytes.setRate(Math.max(0, writeRate));
+        readOps.setRate(Math.max(0, readIops));
+        writeOps.setRate(Math.max(0, writeIops));
+        enabled = hasLimit() || controlFile != null;
+        polled = 0; // check schedule on next read or write
+    }
+
+    /**
+     * @return [read bytes/s, write bytes/s, read IOPS, write IOPS], 0 for no limit
+     */
+    public synchronized long[] getLimits()
+    {
+        return new long[] {readBytes.rate, writeBytes.rate, readOps.rate, writeOps.rate};
+    }
+
+    /**
+     * @param schedule Windows of the day limits apply in (see parseSchedule), null for always
+     */
+    public synchronized void setSchedule(int[][] schedule)
+    {
+        this.schedule = schedule;
+        polled = 0;
+    }
+
+    /**
+     * @param file File polled for limits while reading or writing, null for none. Read on the next read or write
+     */
+    public synchronized void setControlFile(File file)
+    {
+        if(file == null ? controlFile == null : file.equals(controlFile))
+        {
+            return;
+        }
+        controlFile = file;
+        controlModified = 0;
+        enabled = hasLimit() || controlFile != null;
+        polled = 0;
+    }
+
+    /**
+     * @return True if reads and writes are limited now
+     */
+    public synchronized boolean isLimiting()
+    {
+        poll(System.nanoTime());
+        return limiting;
+    }
+}
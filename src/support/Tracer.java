@@ -0,0 +1,278 @@
+package support;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Records how long each phase of a run took (ie. listing a directory, hashing or copying a file) and writes them
+ * as a Chrome trace (trace-event JSON), to open in a trace viewer (ie. chrome://tracing, Perfetto).
+ * Each thread records into its own buffer, so recording takes no lock shared between threads. While not
+ * started, begin and end only check a flag.
+ *
+ * <pre>
+ * long span = Tracer.begin();
+ * ...
+ * Tracer.end("hash", span, path);
+ * </pre>
+ *
+ * @author Tony Hsu
+ * @structure {"traceEvents":[{"name","cat","ph":"X","ts","dur","pid","tid","args":{"path"}}, ...]} with ts and dur
+ *             in microseconds since start, plus a "thread_name" ("ph":"M") event for each thread.
+ */
+public class Tracer
+{
+    /**
+     * Name of the trace written at the end of a run
+     */
+    public static final String TRACE_FILE_NAME = "~synchiveTrace.json";
+    /**
+     * Most spans kept per thread, later spans are counted as dropped
+     */
+    private static final int MAX_SPANS = 1 << 20;
+
+    /**
+     * True while recording
+     */
+    private static volatile boolean enabled;
+    /**
+     * Incremented on each start, buffers of an earlier start are replaced
+     */
+    private static volatile int generation;
+    /**
+     * Time (System.nanoTime) of start, spans are written relative to it
+     */
+    private static long origin;
+    /**
+     * Buffer of every thread that recorded since start
+     */
+    private static ArrayList<SpanBuffer> buffers = new ArrayList<SpanBuffer>();
+    /**
+     * Buffer of the current thread
+     */
+    private static final ThreadLocal<SpanBuffer> local = new ThreadLocal<SpanBuffer>();
+
+    /**
+     * Discard spans recorded so far and start recording.
+     */
+    public static synchronized void start()
+    {
+        buffers = new ArrayList<SpanBuffer>();
+        generation++;
+        origin = System.nanoTime();
+        enabled = true;
+    }
+
+    /**
+     * @return Start of a span to pass to end, 0 if not recording
+     */
+    public static long begin()
+    {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Record a span ending now.
+     *
+     * @param name Phase of the span (ie. "hash")
+     * @param begin Value returned by begin
+     */
+    public static void end(String name, long begin)
+    {
+        end(name, begin, null);
+    }
+
+    /**
+     * Record a span ending now.
+     *
+     * @param name Phase of the span (ie. "hash")
+     * @param begin Value returned by begin
+     * @param path File or directory of the span, null for none
+     */
+    public static void end(String name, long begin, String path)
+    {
+        if(begin == 0 || !enabled)
+        {
+            return;
+        }
+        long now = System.nanoTime();
+        SpanBuffer buffer = local.get();
+        if(buffer == null || buffer.generation != generation)
+        {
+            buffer = register();
+        }
+        buffer.add(name, path, begin, now);
+    }
+
+    /**
+     * @return New buffer for the current thread
+     */
+    private static synchronized SpanBuffer register()
+    {
+        Thread thread = Thread.currentThread();
+        SpanBuffer buffer = new SpanBuffer(generation, thread.getId(), thread.getName());
+        buffers.add(buffer);
+        local.set(buffer);
+        return buffer;
+    }
+
+    /**
+     * Stop recording and write every span recorded since start.
+     *
+     * @param file File to write the trace to
+     * @return Number of spans written
+     * @throws IOException Unable to write file
+     */
+    public static synchronized int stop(File file) throws IOException
+    {
+        enabled = false;
+        int count = 0;
+        BufferedWriter output = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file),
+            Charset.forName("UTF-8").newEncoder()));
+        try
+        {
+            output.write("{\"traceEvents\":[");
+            boolean first = true;
+            for(SpanBuffer buffer : buffers)
+            {
+                synchronized(buffer)
+                {
+                    output.write((first ? "" : ",") + "\n{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":" + buffer.threadID +
+                        ",\"args\":{\"name\":" + quote(buffer.threadName + (buffer.dropped > 0 ? " (" + buffer.dropped + " spans dropped)" : "")) + "}}");
+                    first = false;
+                    for(int i = 0; i < buffer.count; i++)
+                    {
+                        output.write(",\n{\"name\":" + quote(buffer.names[i]) + ",\"cat\":\"synchive\",\"ph\":\"X\",\"ts\":" +
+                            toMicros(buffer.starts[i] - origin) + ",\"dur\":" + toMicros(buffer.ends[i] - buffer.starts[i]) +
+                            ",\"pid\":1,\"tid\":" + buffer.threadID +
+                            (buffer.paths[i] == null ? "" : ",\"args\":{\"path\":" + quote(buffer.paths[i]) + "}") + "}");
+                    }
+                    count += buffer.count;
+                }
+            }
+            output.write("\n],\"displayTimeUnit\":\"ms\"}");
+            output.newLine();
+        }
+        finally
+        {
+            output.close();
+        }
+        buffers = new ArrayList<SpanBuffer>();
+        return count;
+    }
+
+    /**
+     * @param nanos Nanoseconds
+     * @return Microseconds with 3 decimals
+     */
+    private static String toMicros(long nanos)
+    {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1000.0);
+    }
+
+    /**
+     * @param str Text
+     * @return Text as a JSON string
+     */
+    private static String quote(String str)
+    {
+        StringBuilder quoted = new StringBuilder(str.length() + 2);
+        quoted.append('"');
+        for(int i = 0; i < str.length(); i++)
+        {
+            char c = str.charAt(i);
+            switch(c)
+            {
+                case '"':
+                    quoted.append("\\\"");
+                    break;
+                case '\\':
+                    quoted.append("\\\\");
+                    break;
+                case '\n':
+                    quoted.append("\\n");
+                    break;
+                case '\r':
+                    quoted.append("\\r");
+                    break;
+                case '\t':
+                    quoted.append("\\t");
+                    break;
+                default:
+                    if(c < 0x20)
+                    {
+                        quoted.append(String.format("\\u%04x", (int)c));
+                    }
+                    else
+                    {
+                        quoted.append(c);
+                    }
+                    break;
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    /**
+     * Spans recorded by one thread, grown as needed
+     */
+    private static class SpanBuffer
+    {
+        private int generation;
+        private long threadID;
+        private String threadName;
+        private String[] names = new String[256];
+        private String[] paths = new String[256];
+        private long[] starts = new long[256];
+        private long[] ends = new long[256];
+        private int count;
+        private long dropped;
+
+        private SpanBuffer(int generation, long threadID, String threadName)
+        {
+            this.generation = generation;
+            this.threadID = threadID;
+            this.threadName = threadName;
+        }
+
+        /**
+         * Only the owning thread adds, the lock is contended only while the trace is written.
+         */
+        private synchronized void add(String name, String path, long start, long end)
+        {
+            if(count == MAX_SPANS)
+            {
+                dropped++;
+                return;
+            }
+            if(count == names.length)
+            {
+                int length = Math.min(MAX_SPANS, count * 2);
+                names = Arrays.copyOf(names, length);
+                paths = Arrays.copyOf(paths, length);
+                starts = Arrays.copyOf(starts, length);
+                ends = Arrays.copyOf(ends, length);
+            }
+            names[count] = name;
+            paths[count] = path;
+            starts[count] = start;
+            ends[count] = end;
+            count++;
+        }
+    }
+
+    // ~~~~~ Getters & Setters ~~~~~ //
+    /**
+     * @return True while recording
+     */
+    public static boolean isEnabled()
+    {
+        return enabled;
+    }
+}
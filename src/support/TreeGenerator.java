@@ -0,0 +1,448 @@
+package support;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import fileManagement.CatalogEntry;
+import fileManagement.CatalogReader;
+import support.checksum.ChecksumAlgorithm;
+
+/**
+ * Creates a synthetic tree of files for tests and benchmarks, with the idFile a sync would write for it.
+ * The same seed and options always create the same names, contents and last modified times, so a tree can
+ * be recreated instead of kept.
+ *
+ * <pre>
+ * TreeGenerator generator = new TreeGenerator(42);
+ * generator.setFiles(100000);
+ * generator.setDuplicateRatio(0.2);
+ * generator.generate(new File("/tmp/src"));
+ * </pre>
+ *
+ * <p>Directories form a full tree of depth levels below root, each directory having fanOut sub-directories
+ * ("dir0", "dir1", ...). Files ("file0.bin", "file1.txt", ...) are spread evenly over every directory,
+ * root included. A duplicate has the content (and size) of an earlier file under another name, a file with
+ * its CRC in name is named as "add CRC to filename" would ("file7 [1A2B3C4D].txt").</p>
+ *
+ * @author Tony Hsu
+ * @structure idFile: same as written by a sync with CRC32, each file line with its size and last modified time
+ */
+public class TreeGenerator
+{
+    /**
+     * How sizes of files are drawn
+     */
+    public static enum SizeDistribution
+    {
+        /**
+         * Every file of median size
+         */
+        FIXED,
+        /**
+         * Evenly between smallest and largest size
+         */
+        UNIFORM,
+        /**
+         * Log-normal around median size (many small files, few large), kept between smallest and largest size
+         */
+        LOG_NORMAL
+    }
+
+    /**
+     * Deepest level allowed, levels are read back from the idFile as a single digit
+     */
+    public static final int MAX_DEPTH = 9;
+    /**
+     * Extensions given to files, in turn
+     */
+    private static final String[] EXTENSIONS = {".bin", ".txt", ".jpg", ".mkv"};
+    /**
+     * Encasement of a CRC in filename
+     */
+    private static final String[] CRC_ENCASEMENT = {"[", "]"};
+    /**
+     * Last modified time of the first file, each next file is a second later
+     */
+    private static final long BASE_MODIFIED = 1500000000000L;
+    /**
+     * Spread of LOG_NORMAL sizes (standard deviation of the natural log of size)
+     */
+    private static final double LOG_NORMAL_SIGMA = 1.5;
+
+    /**
+     * Seed of every name, size and content
+     */
+    private long seed;
+    /**
+     * Number of files to create
+     */
+    private int files;
+    /**
+     * How sizes of files are drawn
+     */
+    private SizeDistribution distribution;
+    /**
+     * Smallest size of a file in bytes
+     */
+    private long minSize;
+    /**
+     * Median size of a file in bytes
+     */
+    private long medianSize;
+    /**
+     * Largest size of a file in bytes
+     */
+    private long maxSize;
+    /**
+     * Levels of directories below root
+     */
+    private int depth;
+    /**
+     * Sub-directories of each directory above the deepest level
+     */
+    private int fanOut;
+    /**
+     * Share of files duplicating the content of an earlier file, 0 to 1
+     */
+    private double duplicateRatio;
+    /**
+     * Share of files with their CRC in filename, 0 to 1
+     */
+    private double crcNameRatio;
+    /**
+     * True to write the idFile of the tree
+     */
+    private boolean idFileFlag;
+
+    /**
+     * Directories created by the last generate, root included
+     */
+    private int directoriesGenerated;
+    /**
+     * Files created by the last generate
+     */
+    private int filesGenerated;
+    /**
+     * Duplicates created by the last generate
+     */
+    private int duplicatesGenerated;
+    /**
+     * Bytes written to files by the last generate
+     */
+    private long bytesGenerated;
+
+    /**
+     * Generator of 1000 files (log-normal around 4 KB, at most 16 MB) in 3 levels of 4 sub-directories,
+     * 10% duplicates and 10% with CRC in filename, with an idFile.
+     *
+     * @param seed Seed of every name, size and content
+     */
+    public TreeGenerator(long seed)
+    {
+        this.seed = seed;
+        files = 1000;
+        distribution = SizeDistribution.LOG_NORMAL;
+        minSize = 0;
+        medianSize = 4 * 1024;
+        maxSize = 16L * 1024 * 1024;
+        depth = 3;
+        fanOut = 4;
+        duplicateRatio = 0.1;
+        crcNameRatio = 0.1;
+        idFileFlag = true;
+    }
+
+    /**
+     * Create the tree under root, files already there with the same names are overwritten.
+     *
+     * @param root Directory to create the tree in, created if missing
+     * @throws IOException Unable to create a directory or write a file
+     */
+    public void generate(File root) throws IOException
+    {
+        ArrayList<String> directories = new ArrayList<String>();
+        addDirectories(directories, "", 0);
+        Collections.sort(directories, new Comparator<String>() // order of the idFile
+        {
+            @Override
+            public int compare(String a, String b)
+            {
+                return CatalogEntry.compareDirectories(a, b);
+            }
+        });
+
+        Random random = new Random(seed);
+        long[] originalSizes = new long[files];
+        int originals = 0;
+        byte[] buffer = new byte[64 * 1024];
+        directoriesGenerated = 0;
+        filesGenerated = 0;
+        duplicatesGenerated = 0;
+        bytesGenerated = 0;
+
+        BufferedWriter output = null;
+        if(idFileFlag)
+        {
+            root.mkdirs();
+            output = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(new File(root, Utilities.ID_FILE_NAME)),
+                Charset.forName("UTF-8").newEncoder()));
+            output.write(CatalogReader.getHeader(ChecksumAlgorithm.CRC32, root.getPath()));
+            output.newLine();
+        }
+        try
+        {
+            for(int i = 0; i < directories.size(); i++)
+            {
+                String relative = directories.get(i);
+                File directory = new File(root.getPath() + relative);
+                if(!directory.isDirectory() && !directory.mkdirs())
+                {
+                    throw new IOException("Unable to create directory: " + directory.getPath());
+                }
+                directoriesGenerated++;
+
+                int count = files / directories.size() + (i < files % directories.size() ? 1 : 0);
+                String[] fileIDs = new String[count];
+                for(int j = 0; j < count; j++)
+                {
+                    int number = filesGenerated;
+                    long size;
+                    int content; // files of the same content share its index
+                    if(originals > 0 && random.nextDouble() < duplicateRatio)
+                    {
+                        content = random.nextInt(originals);
+                        size = originalSizes[content];
+                        duplicatesGenerated++;
+                    }
+                    else
+                    {
+                        content = originals;
+                        size = nextSize(random);
+                        originalSizes[originals++] = size;
+                    }
+                    String extension = EXTENSIONS[number % EXTENSIONS.length];
+                    boolean crcInName = random.nextDouble() < crcNameRatio;
+
+                    String name = "file" + number + extension;
+                    File file = new File(directory, crcInName ? "~generating" + extension : name);
+                    String crc = writeContent(file, content, size, buffer);
+                    if(crcInName) // name known once the content is written
+                    {
+                        name = Utilities.getFilenameWithCRC(name, extension, crc, CRC_ENCASEMENT);
+                        File renamed = new File(directory, name);
+                        renamed.delete();
+                        if(!file.renameTo(renamed))
+                        {
+                            throw new IOException("Unable to create file: " + renamed.getPath());
+                        }
+                        file = renamed;
+                    }
+                    file.setLastModified(BASE_MODIFIED + number * 1000L);
+                    fileIDs[j] = crc + " \"" + name + "\" " + size + " " + file.lastModified();
+                    filesGenerated++;
+                    bytesGenerated += size;
+                }
+
+                if(output != null)
+                {
+                    output.write("~" + (relative.length() - relative.replace(File.separator, "").length()) + ": " + relative);
+                    output.newLine();
+                    Arrays.sort(fileIDs, CatalogEntry.FILE_ID_ORDER);
+                    for(String fileID : fileIDs)
+                    {
+                        output.write(fileID);
+                        output.newLine();
+                    }
+                }
+            }
+        }
+        finally
+        {
+            if(output != null)
+            {
+                output.close();
+            }
+        }
+    }
+
+    /**
+     * Add a directory and every directory below it.
+     *
+     * @param directories Directories relative to root, added to
+     * @param relative Directory relative to root, empty for root
+     * @param level Depth level of the directory
+     */
+    private void addDirectories(ArrayList<String> directories, String relative, int level)
+    {
+        directories.add(relative);
+        if(level == depth)
+        {
+            return;
+        }
+        for(int i = 0; i < fanOut; i++)
+        {
+            addDirectories(directories, relative + File.separator + "dir" + i, level + 1);
+        }
+    }
+
+    /**
+     * @param random Random of the tree
+     * @return Size of the next file in bytes
+     */
+    private long nextSize(Random random)
+    {
+        double size;
+        switch(distribution)
+        {
+            case FIXED:
+                return medianSize;
+            case UNIFORM:
+                size = minSize + random.nextDouble() * (maxSize - minSize);
+                break;
+            default:
+                size = Math.exp(Math.log(Math.max(1, medianSize)) + random.nextGaussian() * LOG_NORMAL_SIGMA);
+                break;
+        }
+        return Math.max(minSize, Math.min(maxSize, (long)size));
+    }
+
+    /**
+     * Write the content of a file, the same index always writes the same bytes.
+     *
+     * @param file File to write
+     * @param content Index of the content
+     * @param size Size of file in bytes
+     * @param buffer Buffer to fill with content
+     * @return CRC32 value of the content in 8 hexadecimal, lowercase
+     * @throws IOException Unable to write file
+     */
+    private String writeContent(File file, int content, long size, byte[] buffer) throws IOException
+    {
+        Random random = new Random(seed * 31 + content);
+        CRC32 crc = new CRC32();
+        OutputStream out = new FileOutputStream(file);
+        try
+        {
+            for(long written = 0; written < size; written += buffer.length)
+            {
+                int length = (int)Math.min(buffer.length, size - written);
+                random.nextBytes(buffer);
+                crc.update(buffer, 0, length);
+                out.write(buffer, 0, length);
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+        return String.format("%08x", crc.getValue());
+    }
+
+    // ~~~~~ Getters & Setters ~~~~~ //
+    /**
+     * @param files Number of files to create
+     */
+    public void setFiles(int files)
+    {
+        this.files = files;
+    }
+
+    /**
+     * @param distribution How sizes of files are drawn
+     * @param minSize Smallest size of a file in bytes
+     * @param medianSize Median size of a file in bytes, the size of every file for FIXED
+     * @param maxSize Largest size of a file in bytes
+     */
+    public void setSizes(SizeDistribution distribution, long minSize, long medianSize, long maxSize)
+    {
+        if(minSize < 0 || minSize > medianSize || medianSize > maxSize)
+        {
+            throw new IllegalArgumentException("Sizes must be 0 <= smallest <= median <= largest");
+        }
+        this.distribution = distribution;
+        this.minSize = minSize;
+        this.medianSize = medianSize;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @param depth Levels of directories below root, at most MAX_DEPTH
+     * @param fanOut Sub-directories of each directory above the deepest level
+     */
+    public void setShape(int depth, int fanOut)
+    {
+        if(depth < 0 || depth > MAX_DEPTH || fanOut < 1)
+        {
+            throw new IllegalArgumentException("Depth must be 0 to " + MAX_DEPTH + " and fan-out at least 1");
+        }
+        this.depth = depth;
+        this.fanOut = fanOut;
+    }
+
+    /**
+     * @param duplicateRatio Share of files duplicating the content of an earlier file, 0 to 1
+     */
+    public void setDuplicateRatio(double duplicateRatio)
+    {
+        this.duplicateRatio = duplicateRatio;
+    }
+
+    /**
+     * @param crcNameRatio Share of files with their CRC in filename, 0 to 1
+     */
+    public void setCrcNameRatio(double crcNameRatio)
+    {
+        this.crcNameRatio = crcNameRatio;
+    }
+
+    /**
+     * @param idFileFlag True to write the idFile of the tree
+     */
+    public void setIDFileFlag(boolean idFileFlag)
+    {
+        this.idFileFlag = idFileFlag;
+    }
+
+    /**
+     * @return Directories created by the last generate, root included
+     */
+    public int getDirectoriesGenerated()
+    {
+        return directoriesGenerated;
+    }
+
+    /**
+     * @return Files created by the last generate
+     */
+    public int getFilesGenerated()
+    {
+        return filesGenerated;
+    }
+
+    /**
+     * @return Duplicates created by the last generate
+     */
+    public int getDuplicatesGenerated()
+    {
+        return duplicatesGenerated;
+    }
+
+    /**
+     * @return Bytes written to files by the last generate
+     */
+    public long getBytesGenerated()
+    {
+        return bytesGenerated;
+    }
+}
@@ -10,6 +10,9 @@ import java.util.zip.CheckedInputStream;
 
 import org.apache.commons.io.FilenameUtils;
 
+import support.jfr.FlightRecorder;
+import support.jfr.FlightRecorder.EventType;
+
 
 /**
  * Static Methods Class containing useful helper methods.
@@ -25,15 +28,60 @@ public final class Utilities
      * Generated ID filename of the contents of the folder
      */
     public static final String ID_FILE_NAME = "~listOfFilesInCRC.txt";
+    /**
+     * Change log appended to the idFile between compactions
+     */
+    public static final String ID_LOG_FILE_NAME = "~listOfFilesInCRC.log";
+    /**
+     * New idFile being written, renamed over the idFile once complete
+     */
+    public static final String ID_TEMP_FILE_NAME = "~listOfFilesInCRC.tmp";
+    /**
+     * Lists the directories with their own idFile (shards) and the checksum of each
+     */
+    public static final String MANIFEST_FILE_NAME = "~catalogManifest.txt";
+    /**
+     * Memory-mapped hash index of the idFile (see CatalogIndex)
+     */
+    public static final String INDEX_FILE_NAME = "~catalogIndex.bin";
     /**
      * Filename of audit logs
      */
     public static final String AUDIT_FILE_NAME = "~auditTrail.txt";
+    /**
+     * Filename of the checkpoint journal kept in destination while a sync is running
+     */
+    public static final String JOURNAL_FILE_NAME = "~syncJournal.txt";
+    /**
+     * Suffix of the undo file kept next to a file while it is updated block by block
+     */
+    public static final String UNDO_FILE_SUFFIX = ".~undo";
+    /**
+     * Filename of the journal of renames adding the CRC to filenames, kept in root to revert them
+     */
+    public static final String RENAME_UNDO_FILE_NAME = "~renameUndo.txt";
     /**
      * Count of CRC32 value represented in hexadecimal
      */
     public static final int CRC32_LENGTH = 8;
     
+    /**
+     * @param filename Name of a file
+     * @return True if the file is one Synchive keeps next to the files it syncs (ie. idFile, journal)
+     */
+    public static boolean isGeneratedFile(String filename)
+    {
+        return filename.equals(ID_FILE_NAME) ||
+            filename.equals(ID_LOG_FILE_NAME) ||
+            filename.equals(ID_TEMP_FILE_NAME) ||
+            filename.startsWith(MANIFEST_FILE_NAME) ||
+            filename.startsWith(INDEX_FILE_NAME) ||
+            filename.equals(AUDIT_FILE_NAME) ||
+            filename.equals(JOURNAL_FILE_NAME) ||
+            filename.equals(RENAME_UNDO_FILE_NAME) ||
+            filename.endsWith(UNDO_FILE_SUFFIX);
+    }
+    
     /**
      * Parse and return the extension type
      * 
@@ -194,11 +242,22 @@ public final class Utilities
         String hex = "";
         try
         {
+            Object event = FlightRecorder.begin(EventType.FILE_HASHED);
+            long bytes = 0;
             CheckedInputStream cis = new CheckedInputStream(new FileInputStream(file), new CRC32());
             byte[] buf = new byte[10240]; // 10mb
+            Throttle throttle = Throttle.getInstance();
+            int read;
 
-            while(cis.read(buf) >= 0)
-                ;
+            while((read = cis.read(buf)) >= 0)
+            {
+                throttle.acquireRead(read);
+                bytes += read;
+            }
+            if(FlightRecorder.end(event))
+            {
+                FlightRecorder.commitFileHashed(event, file.getPath(), bytes, "CRC32");
+            }
 
             hex = Long.toHexString(cis.getChecksum().getValue());
             cis.close();
@@ -214,6 +273,25 @@ public final class Utilities
         return hex;
     }
     
+    /**
+     * Formats a byte count for display.
+     * 
+     * @param bytes Number of bytes
+     * @return Bytes in largest unit with one decimal (ie. "1.5 GB")
+     */
+    public static String formatBytes(long bytes)
+    {
+        final String[] units = {"B", "KB", "MB", "GB", "TB", "PB"};
+        double value = bytes;
+        int unit = 0;
+        while(value >= 1024 && unit < units.length - 1)
+        {
+            value /= 1024;
+            unit++;
+        }
+        return unit == 0 ? bytes + " B" : String.format("%.1f %s", value, units[unit]);
+    }
+    
     public static String getPath(File f)
     {
         return FilenameUtils.getFullPath(f.getAbsolutePath()) + FilenameUtils.getName(f.getName());
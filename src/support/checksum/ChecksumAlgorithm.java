@@ -0,0 +1,375 @@
+package support.checksum;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+
+import support.Throttle;
+import support.Utilities.ChecksumException;
+import support.jfr.FlightRecorder;
+import support.jfr.FlightRecorder.EventType;
+
+/**
+ * Checksum algorithms usable to identify file content. The algorithm in use is recorded in the idFile header,
+ * CRC-in-filename features always use CRC32.
+ *
+ * @author Tony Hsu
+ */
+public enum ChecksumAlgorithm
+{
+    /**
+     * CRC32 (java.util.zip), the original algorithm
+     */
+    CRC32(8),
+    /**
+     * CRC32C (Castagnoli), hardware accelerated by java.util.zip.CRC32C on Java 9+
+     */
+    CRC32C(8),
+    /**
+     * xxHash64, fast non-cryptographic 64 bit hash
+     */
+    XXHASH64(16),
+    /**
+     * SHA-256, slow but collisions are not a concern
+     */
+    SHA256(64);
+
+    /**
+     * Size of the buffer files are read with
+     */
+    private static final int BUFFER_SIZE = 65536;
+
+    /**
+     * Count of hexadecimal characters in a value
+     */
+    private final int length;
+
+    private ChecksumAlgorithm(int length)
+    {
+        this.length = length;
+    }
+
+    /**
+     * @return New provider computing this algorithm
+     */
+    public ChecksumProvider newProvider()
+    {
+        switch(this)
+        {
+            case CRC32C:
+                return new ZipChecksum(newCRC32C(), length);
+            case XXHASH64:
+                return new XXHash64();
+            case SHA256:
+                return new DigestChecksum("SHA-256");
+            default:
+                return new ZipChecksum(new CRC32(), length);
+        }
+    }
+
+    /**
+     * Calculates the checksum of a file.
+     *
+     * @param file File to compute the checksum
+     * @return Checksum in lowercase hexadecimal
+     * @throws ChecksumException Unable to read file
+     */
+    public String calculate(File file) throws ChecksumException
+    {
+        return calculate(file, this)[0];
+    }
+
+    /**
+     * Calculates several checksums of a file while reading it once.
+     *
+     * @param file File to compute the checksums
+     * @param algorithms Algorithms to compute
+     * @return Checksum for each algorithm (same order) in lowercase hexadecimal
+     * @throws ChecksumException Unable to read file
+     */
+    public static String[] calculate(File file, ChecksumAlgorithm... algorithms) throws ChecksumException
+    {
+        ChecksumProvider[] providers = new ChecksumProvider[algorithms.length];
+        for(int i = 0; i < algorithms.length; i++)
+        {
+            providers[i] = algorithms[i].newProvider();
+        }
+        Object event = FlightRecorder.begin(EventType.FILE_HASHED);
+        long bytes = 0;
+        try
+        {
+            InputStream input = new FileInputStream(file);
+            try
+            {
+                byte[] buf = new byte[BUFFER_SIZE];
+                Throttle throttle = Throttle.getInstance();
+                int read;
+                while((read = input.read(buf)) >= 0)
+                {
+                    throttle.acquireRead(read);
+                    bytes += read;
+                    for(ChecksumProvider provider : providers)
+                    {
+                        provider.update(buf, 0, read);
+                    }
+                }
+            }
+            finally
+            {
+                input.close();
+            }
+        }
+        catch (IOException | NullPointerException e)
+        {
+            throw new ChecksumException("Unable to determine checksum value for file: " + file.getName());
+        }
+        if(FlightRecorder.end(event))
+        {
+            FlightRecorder.commitFileHashed(event, file.getPath(), bytes, Arrays.toString(algorithms));
+        }
+
+        String[] values = new String[providers.length];
+        for(int i = 0; i < providers.length; i++)
+        {
+            values[i] = providers[i].getHexValue();
+        }
+        return values;
+    }
+
+    /**
+     * @param name Name of algorithm (ie. "XXHASH64"), case insensitive
+     * @return Algorithm with name, CRC32 if unknown or empty
+     */
+    public static ChecksumAlgorithm fromName(String name)
+    {
+        for(ChecksumAlgorithm algorithm : values())
+        {
+            if(algorithm.name().equalsIgnoreCase(name == null ? "" : name.trim()))
+            {
+                return algorithm;
+            }
+        }
+        return CRC32;
+    }
+
+    /**
+     * @return Count of hexadecimal characters in a value
+     */
+    public int getLength()
+    {
+        return length;
+    }
+
+    /**
+     * java.util.zip.CRC32C only exists on Java 9+, load it by name to keep running on Java 8.
+     *
+     * @return Intrinsic CRC32C if available, otherwise a table based implementation
+     */
+    private static Checksum newCRC32C()
+    {
+        try
+        {
+            return (Checksum)Class.forName("java.util.zip.CRC32C").getDeclaredConstructor().newInstance();
+        }
+        catch (ReflectiveOperationException | ClassCastException e)
+        {
+            return new TableCRC32C();
+        }
+    }
+
+    /**
+     * Wraps a java.util.zip.Checksum
+     */
+    private static class ZipChecksum implements ChecksumProvider
+    {
+        /**
+         * Checksum.update(ByteBuffer), added in Java 9 and overridden by java.util.zip checksums (ie. CRC32C) to read
+         * direct buffers in place. Null on Java 8
+         */
+        private static final MethodHandle UPDATE_BUFFER = findUpdateBuffer();
+
+        private Checksum checksum;
+        private int length;
+
+        private ZipChecksum(Checksum checksum, int length)
+        {
+            this.checksum = checksum;
+            this.length = length;
+        }
+
+        @Override
+        public void update(byte[] b, int off, int len)
+        {
+            checksum.update(b, off, len);
+        }
+
+        @Override
+        public void update(ByteBuffer buffer)
+        {
+            if(checksum instanceof CRC32 && !buffer.hasArray()) // CRC32 reads direct buffers in place since Java 8
+            {
+                ((CRC32)checksum).update(buffer);
+            }
+            else if(UPDATE_BUFFER != null && !buffer.hasArray() && !(checksum instanceof TableCRC32C))
+            {
+                try
+                {
+                    UPDATE_BUFFER.invokeExact(checksum, buffer);
+                }
+                catch (RuntimeException | Error e)
+                {
+                    throw e;
+                }
+                catch (Throwable e)
+                {
+                    throw new IllegalStateException(e);
+                }
+            }
+            else
+            {
+                ChecksumProvider.super.update(buffer);
+            }
+        }
+
+        /**
+         * @return Handle of Checksum.update(ByteBuffer), null if not available (Java 8)
+         */
+        private static MethodHandle findUpdateBuffer()
+        {
+            try
+            {
+                return MethodHandles.publicLookup().findVirtual(Checksum.class, "update",
+                    MethodType.methodType(void.class, ByteBuffer.class));
+            }
+            catch (ReflectiveOperationException | SecurityException e)
+            {
+                return null;
+            }
+        }
+
+        @Override
+        public String getHexValue()
+        {
+            String hex = Long.toHexString(checksum.getValue());
+            while(hex.length() < length)
+            {
+                hex = "0" + hex;
+            }
+            return hex;
+        }
+
+        @Override
+        public void reset()
+        {
+            checksum.reset();
+        }
+    }
+
+    /**
+     * Wraps a java.security.MessageDigest
+     */
+    private static class DigestChecksum implements ChecksumProvider
+    {
+        private MessageDigest digest;
+
+        private DigestChecksum(String name)
+        {
+            try
+            {
+                digest = MessageDigest.getInstance(name);
+            }
+            catch (NoSuchAlgorithmException e)
+            {
+                throw new IllegalStateException(name + " not supported", e); // every JVM must support SHA-256
+            }
+        }
+
+        @Override
+        public void update(byte[] b, int off, int len)
+        {
+            digest.update(b, off, len);
+        }
+
+        @Override
+        public void update(ByteBuffer buffer)
+        {
+            digest.update(buffer);
+        }
+
+        @Override
+        public String getHexValue()
+        {
+            StringBuilder hex = new StringBuilder();
+            for(byte b : digest.digest())
+            {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        }
+
+        @Override
+        public void reset()
+        {
+            digest.reset();
+        }
+    }
+
+    /**
+     * CRC32C for JVMs without java.util.zip.CRC32C
+     */
+    private static class TableCRC32C implements Checksum
+    {
+        private static final int[] TABLE = new int[256];
+        static
+        {
+            for(int n = 0; n < 256; n++)
+            {
+                int c = n;
+                for(int k = 0; k < 8; k++)
+                {
+                    c = (c & 1) != 0 ? (c >>> 1) ^ 0x82F63B78 : c >>> 1;
+                }
+                TABLE[n] = c;
+            }
+        }
+
+        private int crc = 0xFFFFFFFF;
+
+        @Override
+        public void update(int b)
+        {
+            crc = (crc >>> 8) ^ TABLE[(crc ^ b) & 0xFF];
+        }
+
+        @Override
+        public void update(byte[] b, int off, int len)
+        {
+            for(int i = off; i < off + len; i++)
+            {
+                crc = (crc >>> 8) ^ TABLE[(crc ^ b[i]) & 0xFF];
+            }
+        }
+
+        @Override
+        public long getValue()
+        {
+            return ~crc & 0xFFFFFFFFL;
+        }
+
+        @Override
+        public void reset()
+        {
+            crc = 0xFFFFFFFF;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package support.checksum;
+
+import java.io.File;
+import java.util.Random;
+
+import support.Utilities;
+import support.Utilities.ChecksumException;
+
+/**
+ * Compares the throughput of each ChecksumAlgorithm. Run with "ant benchmark".
+ *
+ * <p>Usage: ChecksumBenchmark [megabytes] [files...]. Hashes an in-memory buffer of random data
+ * (default 256 MB) so disk speed is left out, then each file given (from disk, includes read time).</p>
+ *
+ * @author Tony Hsu
+ */
+public class ChecksumBenchmark
+{
+    /**
+     * Size of each chunk fed to a provider, same as reading files
+     */
+    private static final int CHUNK_SIZE = 65536;
+
+    public static void main(String[] args) throws ChecksumException
+    {
+        int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 256;
+        byte[] data = new byte[megabytes * 1024 * 1024];
+        new Random(17).nextBytes(data);
+
+        System.out.println("In-memory " + Utilities.formatBytes(data.length) + ":");
+        for(ChecksumAlgorithm algorithm : ChecksumAlgorithm.values())
+        {
+            hashBuffer(algorithm, data); // warm up
+            long start = System.nanoTime();
+            String value = hashBuffer(algorithm, data);
+            print(algorithm, data.length, System.nanoTime() - start, value);
+        }
+
+        for(int i = 1; i < args.length; i++)
+        {
+            File file = new File(args[i]);
+            System.out.println(file.getName() + " " + Utilities.formatBytes(file.length()) + ":");
+            for(ChecksumAlgorithm algorithm : ChecksumAlgorithm.values())
+            {
+                long start = System.nanoTime();
+                String value = algorithm.calculate(file);
+                print(algorithm, file.length(), System.nanoTime() - start, value);
+            }
+        }
+    }
+
+    /**
+     * @param algorithm Algorithm to use
+     * @param data Data to hash
+     * @return Checksum of data
+     */
+    private static String hashBuffer(ChecksumAlgorithm algorithm, byte[] data)
+    {
+        ChecksumProvider provider = algorithm.newProvider();
+        for(int off = 0; off < data.length; off += CHUNK_SIZE)
+        {
+            provider.update(data, off, Math.min(CHUNK_SIZE, data.length - off));
+        }
+        return provider.getHexValue();
+    }
+
+    private static void print(ChecksumAlgorithm algorithm, long bytes, long nanos, String value)
+    {
+        double seconds = nanos / 1e9;
+        System.out.println(String.format("  %-9s %9.1f MB/s  %6.3f s  %s",
+            algorithm, bytes / 1048576.0 / seconds, seconds, value));
+    }
+}
@@ -0,0 +1,52 @@
+package support.checksum;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+
+/**
+ * Computes a checksum over data fed in chunks. Obtain one from ChecksumAlgorithm.newProvider().
+ *
+ * @author Tony Hsu
+ */
+public interface ChecksumProvider
+{
+    /**
+     * Feed data into the checksum.
+     * @param b Data
+     * @param off Start offset in data
+     * @param len Number of bytes to use
+     */
+    public void update(byte[] b, int off, int len);
+
+    /**
+     * Feed the remaining bytes of a buffer into the checksum. Providers that can read a direct buffer
+     * in place override this, otherwise the bytes are copied out in chunks.
+     * @param buffer Data from position to limit, position is moved to limit
+     */
+    public default void update(ByteBuffer buffer)
+    {
+        if(buffer.hasArray())
+        {
+            update(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            ((Buffer)buffer).position(buffer.limit()); // Buffer cast keeps Java 8 compatibility
+            return;
+        }
+        byte[] chunk = new byte[Math.min(buffer.remaining(), 65536)];
+        while(buffer.hasRemaining())
+        {
+            int len = Math.min(chunk.length, buffer.remaining());
+            buffer.get(chunk, 0, len);
+            update(chunk, 0, len);
+        }
+    }
+
+    /**
+     * @return Checksum of data fed so far, in lowercase hexadecimal padded to the algorithm's length
+     */
+    public String getHexValue();
+
+    /**
+     * Reset to the initial state to reuse for another file.
+     */
+    public void reset();
+}
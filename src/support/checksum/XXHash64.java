@@ -0,0 +1,209 @@
+package support.checksum;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Streaming xxHash64 (seed 0). Pure Java so it runs on any JVM.
+ *
+ * @author Tony Hsu
+ * @structure Accumulates 32 byte stripes into four lanes, keeps the unfinished stripe in a buffer
+ */
+public class XXHash64 implements ChecksumProvider
+{
+    private static final long PRIME1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME3 = 0x165667B19E3779F9L;
+    private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME5 = 0x27D4EB2F165667C5L;
+
+    /**
+     * Lanes of the stripes processed so far
+     */
+    private long v1, v2, v3, v4;
+    /**
+     * Bytes of an unfinished stripe
+     */
+    private byte[] buffer;
+    /**
+     * Number of bytes in buffer
+     */
+    private int bufferSize;
+    /**
+     * Number of bytes fed so far
+     */
+    private long totalLength;
+
+    public XXHash64()
+    {
+        buffer = new byte[32];
+        reset();
+    }
+
+    @Override
+    public void reset()
+    {
+        v1 = PRIME1 + PRIME2;
+        v2 = PRIME2;
+        v3 = 0;
+        v4 = -PRIME1;
+        bufferSize = 0;
+        totalLength = 0;
+    }
+
+    @Override
+    public void update(byte[] b, int off, int len)
+    {
+        totalLength += len;
+        if(bufferSize + len < 32) // not enough for a stripe yet
+        {
+            System.arraycopy(b, off, buffer, bufferSize, len);
+            bufferSize += len;
+            return;
+        }
+        if(bufferSize > 0) // finish the buffered stripe
+        {
+            int fill = 32 - bufferSize;
+            System.arraycopy(b, off, buffer, bufferSize, fill);
+            processStripe(buffer, 0);
+            off += fill;
+            len -= fill;
+            bufferSize = 0;
+        }
+        int end = off + len;
+        for(; off + 32 <= end; off += 32)
+        {
+            processStripe(b, off);
+        }
+        bufferSize = end - off;
+        System.arraycopy(b, off, buffer, 0, bufferSize);
+    }
+
+    @Override
+    public void update(ByteBuffer b)
+    {
+        ByteOrder order = b.order();
+        b.order(ByteOrder.LITTLE_ENDIAN);
+        if(bufferSize > 0) // finish the buffered stripe
+        {
+            int fill = Math.min(32 - bufferSize, b.remaining());
+            b.get(buffer, bufferSize, fill);
+            bufferSize += fill;
+            totalLength += fill;
+            if(bufferSize < 32)
+            {
+                b.order(order);
+                return;
+            }
+            processStripe(buffer, 0);
+            bufferSize = 0;
+        }
+        while(b.remaining() >= 32) // read stripes in place
+        {
+            v1 = round(v1, b.getLong());
+            v2 = round(v2, b.getLong());
+            v3 = round(v3, b.getLong());
+            v4 = round(v4, b.getLong());
+            totalLength += 32;
+        }
+        bufferSize = b.remaining();
+        totalLength += bufferSize;
+        b.get(buffer, 0, bufferSize);
+        b.order(order);
+    }
+
+    /**
+     * @return Hash of the data fed so far
+     */
+    public long getValue()
+    {
+        long h;
+        if(totalLength >= 32)
+        {
+            h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            h = merge(h, v1);
+            h = merge(h, v2);
+            h = merge(h, v3);
+            h = merge(h, v4);
+        }
+        else
+        {
+            h = PRIME5;
+        }
+        h += totalLength;
+
+        int i = 0;
+        for(; i + 8 <= bufferSize; i += 8)
+        {
+            h ^= round(0, readLong(buffer, i));
+            h = Long.rotateLeft(h, 27) * PRIME1 + PRIME4;
+        }
+        if(i + 4 <= bufferSize)
+        {
+            h ^= (readInt(buffer, i) & 0xFFFFFFFFL) * PRIME1;
+            h = Long.rotateLeft(h, 23) * PRIME2 + PRIME3;
+            i += 4;
+        }
+        for(; i < bufferSize; i++)
+        {
+            h ^= (buffer[i] & 0xFF) * PRIME5;
+            h = Long.rotateLeft(h, 11) * PRIME1;
+        }
+
+        // avalanche
+        h ^= h >>> 33;
+        h *= PRIME2;
+        h ^= h >>> 29;
+        h *= PRIME3;
+        h ^= h >>> 32;
+        return h;
+    }
+
+    @Override
+    public String getHexValue()
+    {
+        String hex = Long.toHexString(getValue());
+        while(hex.length() < 16)
+        {
+            hex = "0" + hex;
+        }
+        return hex;
+    }
+
+    /**
+     * @param b Data
+     * @param off Start of a 32 byte stripe
+     */
+    private void processStripe(byte[] b, int off)
+    {
+        v1 = round(v1, readLong(b, off));
+        v2 = round(v2, readLong(b, off + 8));
+        v3 = round(v3, readLong(b, off + 16));
+        v4 = round(v4, readLong(b, off + 24));
+    }
+
+    private static long round(long acc, long input)
+    {
+        acc += input * PRIME2;
+        acc = Long.rotateLeft(acc, 31);
+        return acc * PRIME1;
+    }
+
+    private static long merge(long acc, long lane)
+    {
+        acc ^= round(0, lane);
+        return acc * PRIME1 + PRIME4;
+    }
+
+    // little-endian reads
+    private static long readLong(byte[] b, int i)
+    {
+        return (b[i] & 0xFFL) | (b[i + 1] & 0xFFL) << 8 | (b[i + 2] & 0xFFL) << 16 | (b[i + 3] & 0xFFL) << 24 |
+            (b[i + 4] & 0xFFL) << 32 | (b[i + 5] & 0xFFL) << 40 | (b[i + 6] & 0xFFL) << 48 | (b[i + 7] & 0xFFL) << 56;
+    }
+
+    private static int readInt(byte[] b, int i)
+    {
+        return (b[i] & 0xFF) | (b[i + 1] & 0xFF) << 8 | (b[i + 2] & 0xFF) << 16 | (b[i + 3] & 0xFF) << 24;
+    }
+}
@@ -0,0 +1,29 @@
+package support.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event of an idFile (or shard of one) read in.
+ * @author Tony Hsu
+ */
+@Name("synchive.CatalogLoaded")
+@Label("Catalog Loaded")
+@Category("Synchive")
+@Description("IdFile or shard read in with its change log")
+public class CatalogLoadedEvent extends jdk.jfr.Event
+{
+    @Label("Path")
+    public String path;
+
+    @Label("Bytes")
+    @Description("Size of the idFile and its change log")
+    @DataAmount
+    public long bytes;
+
+    @Label("Shard")
+    public boolean shard;
+}
@@ -0,0 +1,30 @@
+package support.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event of the catalog of a location written out.
+ * @author Tony Hsu
+ */
+@Name("synchive.CatalogWritten")
+@Label("Catalog Written")
+@Category("Synchive")
+@Description("IdFile compacted, or changes appended to its change log, with its shards and index")
+public class CatalogWrittenEvent extends jdk.jfr.Event
+{
+    @Label("Path")
+    public String path;
+
+    @Label("Bytes")
+    @Description("Size of the root idFile and its change log after writing")
+    @DataAmount
+    public long bytes;
+
+    @Label("Directories")
+    @Description("Directories in memory, shards never read in are not counted")
+    public int directories;
+}
@@ -0,0 +1,34 @@
+package support.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event of a directory without an idFile read file by file.
+ * @author Tony Hsu
+ */
+@Name("synchive.DirectoryScanned")
+@Label("Directory Scanned")
+@Category("Synchive")
+@Description("Directory without an idFile listed and each of its files read")
+public class DirectoryScannedEvent extends jdk.jfr.Event
+{
+    @Label("Path")
+    public String path;
+
+    @Label("Entries")
+    public int entries;
+
+    @Label("Files Hashed")
+    public int filesHashed;
+
+    @Label("Bytes Hashed")
+    @DataAmount
+    public long bytesHashed;
+
+    @Label("Completed")
+    public boolean completed;
+}
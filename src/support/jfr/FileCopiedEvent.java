@@ -0,0 +1,37 @@
+package support.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event of a file copied to one or more destinations.
+ * @author Tony Hsu
+ */
+@Name("synchive.FileCopied")
+@Label("File Copied")
+@Category("Synchive")
+@Description("File copied to one or more destinations, checksummed in flight when verified")
+public class FileCopiedEvent extends jdk.jfr.Event
+{
+    @Label("Source")
+    public String source;
+
+    @Label("Destination")
+    public String destination;
+
+    @Label("Destinations")
+    public int destinations;
+
+    @Label("Bytes")
+    @DataAmount
+    public long bytes;
+
+    @Label("Verified")
+    public boolean verified;
+
+    @Label("Succeeded")
+    public boolean succeeded;
+}
@@ -0,0 +1,28 @@
+package support.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event of a file read to compute its checksums.
+ * @author Tony Hsu
+ */
+@Name("synchive.FileHashed")
+@Label("File Hashed")
+@Category("Synchive")
+@Description("File read to compute its checksums")
+public class FileHashedEvent extends jdk.jfr.Event
+{
+    @Label("Path")
+    public String path;
+
+    @Label("Bytes")
+    @DataAmount
+    public long bytes;
+
+    @Label("Algorithms")
+    public String algorithms;
+}
@@ -0,0 +1,162 @@
+package support.jfr;
+
+/**
+ * Records Synchive's events with Flight Recorder when the JVM has it (jdk.jfr, Java 11 and later). Otherwise
+ * every call does nothing, and the event classes (which extend jdk.jfr.Event) are never loaded. They are only
+ * reached through JfrRecorder, which is loaded by name, so the build leaves them out where jdk.jfr is missing.
+ *
+ * <pre>
+ * Object event = FlightRecorder.begin(EventType.FILE_HASHED);
+ * ...
+ * if(FlightRecorder.end(event))
+ * {
+ *     FlightRecorder.commitFileHashed(event, path, bytes, "CRC32");
+ * }
+ * </pre>
+ *
+ * @author Tony Hsu
+ */
+public class FlightRecorder
+{
+    /**
+     * Events that can be recorded
+     */
+    public static enum EventType
+    {
+        /**
+         * IdFile (or shard of one) read in, see CatalogLoadedEvent
+         */
+        CATALOG_LOADED,
+        /**
+         * Catalog of a location written out, see CatalogWrittenEvent
+         */
+        CATALOG_WRITTEN,
+        /**
+         * Directory without an idFile read file by file, see DirectoryScannedEvent
+         */
+        DIRECTORY_SCANNED,
+        /**
+         * File copied to one or more destinations, see FileCopiedEvent
+         */
+        FILE_COPIED,
+        /**
+         * File read to compute its checksums, see FileHashedEvent
+         */
+        FILE_HASHED
+    }
+
+    /**
+     * Name of the recorder built with the event classes
+     */
+    private static final String RECORDER_CLASS_NAME = "support.jfr.JfrRecorder";
+    /**
+     * Recorder of the events, null if Flight Recorder is unavailable
+     */
+    private static final Recorder recorder = loadRecorder();
+
+    /**
+     * @return Recorder of the events, null if jdk.jfr or the event classes are missing
+     */
+    private static Recorder loadRecorder()
+    {
+        try
+        {
+            Class.forName("jdk.jfr.Event");
+            return (Recorder)Class.forName(RECORDER_CLASS_NAME).getDeclaredConstructor().newInstance();
+        }
+        catch (ReflectiveOperationException | LinkageError | ClassCastException | SecurityException e)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * @return True if events are recorded with Flight Recorder
+     */
+    public static boolean isAvailable()
+    {
+        return recorder != null;
+    }
+
+    /**
+     * @param type Event to begin
+     * @return Event begun now to pass to end, null if Flight Recorder is unavailable
+     */
+    public static Object begin(EventType type)
+    {
+        return recorder == null ? null : recorder.begin(type);
+    }
+
+    /**
+     * End an event, its values are only needed if it is to be committed.
+     *
+     * @param event Value returned by begin
+     * @return True if the event is to be committed (enabled and over its threshold)
+     */
+    public static boolean end(Object event)
+    {
+        return event != null && recorder.end(event);
+    }
+
+    /**
+     * @param event Event ended with end returning true
+     * @param path IdFile read
+     * @param bytes Size of the idFile and its change log
+     * @param shard True if a shard of the root idFile
+     */
+    public static void commitCatalogLoaded(Object event, String path, long bytes, boolean shard)
+    {
+        recorder.commitCatalogLoaded(event, path, bytes, shard);
+    }
+
+    /**
+     * @param event Event ended with end returning true
+     * @param path Location written
+     * @param bytes Size of the root idFile and its change log after writing
+     * @param directories Directories in memory
+     */
+    public static void commitCatalogWritten(Object event, String path, long bytes, int directories)
+    {
+        recorder.commitCatalogWritten(event, path, bytes, directories);
+    }
+
+    /**
+     * @param event Event ended with end returning true
+     * @param path Directory read
+     * @param entries Entries listed in the directory
+     * @param filesHashed Files read to compute their checksums
+     * @param bytesHashed Bytes of the files read
+     * @param completed False if stopped before every file was read
+     */
+    public static void commitDirectoryScanned(Object event, String path, int entries, int filesHashed, long bytesHashed,
+        boolean completed)
+    {
+        recorder.commitDirectoryScanned(event, path, entries, filesHashed, bytesHashed, completed);
+    }
+
+    /**
+     * @param event Event ended with end returning true
+     * @param source File copied
+     * @param destination First destination written
+     * @param destinations Number of destinations written
+     * @param bytes Size of the file
+     * @param verified True if checksummed in flight
+     * @param succeeded True if every destination was written
+     */
+    public static void commitFileCopied(Object event, String source, String destination, int destinations, long bytes,
+        boolean verified, boolean succeeded)
+    {
+        recorder.commitFileCopied(event, source, destination, destinations, bytes, verified, succeeded);
+    }
+
+    /**
+     * @param event Event ended with end returning true
+     * @param path File read
+     * @param bytes Bytes read
+     * @param algorithms Algorithms computed
+     */
+    public static void commitFileHashed(Object event, String path, long bytes, String algorithms)
+    {
+        recorder.commitFileHashed(event, path, bytes, algorithms);
+    }
+}
@@ -0,0 +1,101 @@
+package support.jfr;
+
+import support.jfr.FlightRecorder.EventType;
+
+/**
+ * Records events with Flight Recorder. Only loaded (by FlightRecorder) once jdk.jfr is known to be available,
+ * and left out of the build where it is not.
+ *
+ * @author Tony Hsu
+ */
+class JfrRecorder implements Recorder
+{
+    @Override
+    public Object begin(EventType type)
+    {
+        jdk.jfr.Event event;
+        switch(type)
+        {
+            case CATALOG_LOADED:
+                event = new CatalogLoadedEvent();
+                break;
+            case CATALOG_WRITTEN:
+                event = new CatalogWrittenEvent();
+                break;
+            case DIRECTORY_SCANNED:
+                event = new DirectoryScannedEvent();
+                break;
+            case FILE_COPIED:
+                event = new FileCopiedEvent();
+                break;
+            default:
+                event = new FileHashedEvent();
+                break;
+        }
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public boolean end(Object event)
+    {
+        ((jdk.jfr.Event)event).end();
+        return ((jdk.jfr.Event)event).shouldCommit();
+    }
+
+    @Override
+    public void commitCatalogLoaded(Object event, String path, long bytes, boolean shard)
+    {
+        CatalogLoadedEvent loaded = (CatalogLoadedEvent)event;
+        loaded.path = path;
+        loaded.bytes = bytes;
+        loaded.shard = shard;
+        loaded.commit();
+    }
+
+    @Override
+    public void commitCatalogWritten(Object event, String path, long bytes, int directories)
+    {
+        CatalogWrittenEvent written = (CatalogWrittenEvent)event;
+        written.path = path;
+        written.bytes = bytes;
+        written.directories = directories;
+        written.commit();
+    }
+
+    @Override
+    public void commitDirectoryScanned(Object event, String path, int entries, int filesHashed, long bytesHashed, boolean completed)
+    {
+        DirectoryScannedEvent scanned = (DirectoryScannedEvent)event;
+        scanned.path = path;
+        scanned.entries = entries;
+        scanned.filesHashed = filesHashed;
+        scanned.bytesHashed = bytesHashed;
+        scanned.completed = completed;
+        scanned.commit();
+    }
+
+    @Override
+    public void commitFileCopied(Object event, String source, String destination, int destinations, long bytes,
+        boolean verified, boolean succeeded)
+    {
+        FileCopiedEvent copied = (FileCopiedEvent)event;
+        copied.source = source;
+        copied.destination = destination;
+        copied.destinations = destinations;
+        copied.bytes = bytes;
+        copied.verified = verified;
+        copied.succeeded = succeeded;
+        copied.commit();
+    }
+
+    @Override
+    public void commitFileHashed(Object event, String path, long bytes, String algorithms)
+    {
+        FileHashedEvent hashed = (FileHashedEvent)event;
+        hashed.path = path;
+        hashed.bytes = bytes;
+        hashed.algorithms = algorithms;
+        hashed.commit();
+    }
+}
@@ -0,0 +1,27 @@
+package support.jfr;
+
+import support.jfr.FlightRecorder.EventType;
+
+/**
+ * Records events for FlightRecorder, implemented by JfrRecorder where jdk.jfr is available.
+ * Each method matches the one of FlightRecorder.
+ *
+ * @author Tony Hsu
+ */
+interface Recorder
+{
+    Object begin(EventType type);
+
+    boolean end(Object event);
+
+    void commitCatalogLoaded(Object event, String path, long bytes, boolean shard);
+
+    void commitCatalogWritten(Object event, String path, long bytes, int directories);
+
+    void commitDirectoryScanned(Object event, String path, int entries, int filesHashed, long bytesHashed, boolean completed);
+
+    void commitFileCopied(Object event, String source, String destination, int destinations, long bytes,
+        boolean verified, boolean succeeded);
+
+    void commitFileHashed(Object event, String path, long bytes, String algorithms);
+}
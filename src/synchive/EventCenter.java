@@ -68,6 +68,14 @@ public class EventCenter
          * Program has received an error and has stopped.
          */
         Error,
+        /**
+         * Program is waiting for user to resume.
+         */
+        Paused,
+        /**
+         * Program was stopped by user, progress saved for next run.
+         */
+        Stopped,
     };
 
     /**
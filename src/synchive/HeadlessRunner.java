@@ -0,0 +1,216 @@
+package synchive;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+
+import support.PowerOptions;
+import synchive.EventCenter.Events;
+import synchive.EventCenter.RunningStatusEvents;
+
+/**
+ * Runs a sync from the command line without the GUI. Only console and file output is used, so no AWT or Swing
+ * class is loaded and the run works on machines without a display (ie. from cron).
+ * Status is printed with the running time, errors are printed at the end and kept for the completion option.
+ *
+ * @author Tony Hsu
+ */
+public class HeadlessRunner
+{
+    /**
+     * Where status is printed
+     */
+    private PrintStream out;
+    /**
+     * Where errors are printed at the end of the run
+     */
+    private PrintStream err;
+    /**
+     * Errors posted during the run
+     */
+    private StringBuilder errorLogs;
+    /**
+     * Last overall status posted
+     */
+    private RunningStatusEvents state;
+    /**
+     * System.nanoTime() the run started at
+     */
+    private long startTime;
+
+    /**
+     * @param out Where status is printed, errors are printed to System.err
+     */
+    public HeadlessRunner(PrintStream out)
+    {
+        this(out, System.err);
+    }
+
+    /**
+     * @param out Where status is printed
+     * @param err Where errors are printed at the end of the run
+     */
+    public HeadlessRunner(PrintStream out, PrintStream err)
+    {
+        this.out = out;
+        this.err = err;
+        errorLogs = new StringBuilder();
+        state = RunningStatusEvents.Waiting;
+    }
+
+    /**
+     * Sync source to destinations on the calling thread, then act on the completion option of Settings.
+     *
+     * @param src Location to sync from
+     * @param des Locations to sync to
+     * @return True if the sync completed without errors (ie. failed copies, CRC mismatches)
+     */
+    public boolean run(File src, ArrayList<File> des)
+    {
+        subscribe();
+        startTime = System.nanoTime();
+        try
+        {
+            state = RunningStatusEvents.Running;
+            new SynchiveDiff(src, des).syncLocations();
+        }
+        catch (IOException e)
+        {
+            state = RunningStatusEvents.Error;
+            EventCenter.getInstance().postEvent(Events.ErrorOccurred, "Unable to make destination folder.");
+        }
+        finally
+        {
+            EventCenter.getInstance().unsubscribeAllEvents(this.hashCode());
+        }
+        if(state == RunningStatusEvents.Running) // ended without posting why
+        {
+            state = RunningStatusEvents.Error;
+        }
+        out.println(state + " in: " + getRunningTime());
+        String errors = getErrorLogs();
+        if(!errors.isEmpty()) // unattended runs (ie. cron) only see what reaches the console
+        {
+            err.print("Errors:" + System.lineSeparator() + errors);
+            err.flush();
+        }
+        if(state == RunningStatusEvents.Completed)
+        {
+            try
+            {
+                completionHandler();
+            }
+            catch (IOException | RuntimeException e)
+            {
+                out.println("Unable to execute Completion Option: " + e.getMessage());
+            }
+        }
+        return state == RunningStatusEvents.Completed && errors.isEmpty();
+    }
+
+    /**
+     * Print status and keep errors and the overall status of the run.
+     * Errors and overall status are already printed by EventCenter.
+     */
+    private void subscribe()
+    {
+        EventCenter.getInstance().subscribeEvent(Events.Status, this.hashCode(), (str) -> {
+            out.println("[" + getRunningTime() + "] " + str);
+        });
+        EventCenter.getInstance().subscribeEvent(Events.ErrorOccurred, this.hashCode(), (str) -> {
+            synchronized(errorLogs)
+            {
+                errorLogs.append(str).append(System.lineSeparator());
+            }
+        });
+        EventCenter.getInstance().subscribeEvent(Events.RunningStatus, this.hashCode(), (arr) -> {
+            state = (RunningStatusEvents)((Object[])arr)[0];
+        });
+    }
+
+    /**
+     * Handles what to do after completion, same as the GUI. Will write errors to "output.txt" for close and shutdown option.
+     *
+     * @throws IOException Unable to write to file
+     */
+    private void completionHandler() throws IOException
+    {
+        switch(Settings.getInstance().getCompletionFlag())
+        {
+            case doNothing:
+                break;
+            case close: // the program exits once the run returns
+                writeOutput();
+                break;
+            case standBy:
+                PowerOptions.sleep();
+                break;
+            case shutdown:
+                writeOutput();
+                PowerOptions.shutdown();
+                break;
+        }
+    }
+
+    /**
+     * Write errors and running time to "output.txt"
+     *
+     * @throws IOException Unable to write to file
+     */
+    private void writeOutput() throws IOException
+    {
+        BufferedWriter output = new BufferedWriter(new FileWriter("output.txt"));
+        try
+        {
+            output.write(getErrorLogs());
+            output.newLine();
+            output.write("Completed in: " + getRunningTime());
+        }
+        finally
+        {
+            output.close();
+        }
+    }
+
+    // ~~~~~ Getters & Setters ~~~~~ //
+    /**
+     * @return Running time since the run started in MM:SS or HH:MM:SS
+     */
+    public String getRunningTime()
+    {
+        long totalInSeconds = (System.nanoTime() - startTime) / 1000000000L;
+        long seconds = totalInSeconds % 60;
+        long minutes = (totalInSeconds / 60) % 60;
+        long hours = totalInSeconds / 60 / 60;
+        if(hours > 0)
+        {
+            return String.format("%02d:%02d:%02d", hours, minutes, seconds);
+        }
+        else
+        {
+            return String.format("%02d:%02d", minutes, seconds);
+        }
+    }
+
+    /**
+     * @return Errors posted during the run
+     */
+    public String getErrorLogs()
+    {
+        synchronized(errorLogs)
+        {
+            return errorLogs.toString();
+        }
+    }
+
+    /**
+     * @return Last overall status posted
+     */
+    public RunningStatusEvents getState()
+    {
+        return state;
+    }
+}
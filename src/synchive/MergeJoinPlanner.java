@@ -0,0 +1,156 @@
+package synchive;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import fileManagement.CatalogEntry;
+import fileManagement.CatalogReader;
+import fileManagement.SynchiveFile;
+import support.Utilities;
+import synchive.EventCenter.Events;
+import synchive.SyncPlan.Action;
+import synchive.SyncPlan.ActionType;
+
+/**
+ * Decides what is needed to make destination the same as source by walking both catalogs sorted by path
+ * side by side, without a lookup table of either. Reading from sorted idFiles, memory does not depend on
+ * the size of the catalogs, only on the actions planned.
+ *
+ * @author Tony Hsu
+ */
+public class MergeJoinPlanner
+{
+    /**
+     * Folder name of extra files in destination
+     */
+    private String LEFTOVER_FOLDER = Utilities.LEFTOVER_FOLDER;
+    /**
+     * Source location directory
+     */
+    private File srcLoc;
+    /**
+     * Destination location directory
+     */
+    private File desLoc;
+    /**
+     * Settings of the run
+     */
+    private RunConfig config;
+
+    /**
+     * Initializes the planner.
+     *
+     * @param srcLoc Source location
+     * @param desLoc Destination location
+     */
+    public MergeJoinPlanner(File srcLoc, File desLoc)
+    {
+        this(srcLoc, desLoc, RunConfig.fromSettings());
+    }
+
+    /**
+     * Initializes the planner.
+     *
+     * @param srcLoc Source location
+     * @param desLoc Destination location
+     * @param config Settings of the run
+     */
+    public MergeJoinPlanner(File srcLoc, File desLoc, RunConfig config)
+    {
+        this.srcLoc = srcLoc;
+        this.desLoc = desLoc;
+        this.config = config;
+    }
+
+    /**
+     * Plans a sync from the files read in source.
+     *
+     * @param sourceList Each file in source
+     * @param destination Catalog of destination
+     * @param control Pause and stop state to honor while planning
+     * @return Plan of actions, null if stopped
+     * @throws IOException Unable to read destination catalog
+     */
+    public SyncPlan plan(ArrayList<SynchiveFile> sourceList, CatalogReader destination, RunControl control) throws IOException
+    {
+        ArrayList<CatalogEntry> entries = new ArrayList<CatalogEntry>();
+        for(SynchiveFile temp : sourceList)
+        {
+            if(!temp.copyAllowed()) // if file determined to be bad, skip file
+            {
+                postEvent(Events.ErrorOccurred, "Did not copy \"" + temp.getName() + "\" due to CRC mismatch.");
+                continue;
+            }
+            entries.add(new CatalogEntry(temp.getParent().substring(srcLoc.getPath().length()), temp.getName(),
+                temp.getCRC(), temp.getSize(), temp.getModified()));
+        }
+        return plan(new CatalogReader(entries, config.getChecksumAlgorithm()), destination, control);
+    }
+
+    /**
+     * Walks both catalogs in order. A file only in source is copied, a file only in destination is moved to
+     * the leftover folder, a file at the same path with the same checksum is kept. A file at the same path
+     * with a different checksum is both moved away and copied again, the move is executed first.
+     *
+     * @param source Catalog of source
+     * @param destination Catalog of destination
+     * @param control Pause and stop state to honor while planning
+     * @return Plan of actions, null if stopped
+     * @throws IOException Unable to read a catalog, or a catalog is not sorted
+     */
+    public SyncPlan plan(CatalogReader source, CatalogReader destination, RunControl control) throws IOException
+    {
+        SyncPlan plan = new SyncPlan(srcLoc, desLoc, config.getChecksumAlgorithm());
+        if(!desLoc.exists())
+        {
+            plan.add(new Action(ActionType.MKDIR, "", "", "", 0, ""));
+        }
+
+        CatalogEntry src = source.next();
+        CatalogEntry des = destination.next();
+        while(src != null || des != null)
+        {
+            if(!control.checkpoint())
+            {
+                return null;
+            }
+            int result = src == null ? 1 : des == null ? -1 : src.comparePath(des);
+            if(result == 0)
+            {
+                result = src.getCRC().compareToIgnoreCase(des.getCRC());
+                if(result == 0) // same file, keep it
+                {
+                    plan.countSkip();
+                    src = source.next();
+                    des = destination.next();
+                    continue;
+                }
+            }
+
+            if(result < 0) // only in source
+            {
+                plan.add(new Action(ActionType.COPY, src.getRelativePath(), src.getRelativePath(), src.getCRC(),
+                    Math.max(src.getSize(), 0), src.getDirectoryID()));
+                src = source.next();
+            }
+            else // only in destination
+            {
+                plan.add(new Action(ActionType.MOVE_TO_LEFTOVERS, des.getRelativePath(),
+                    File.separator + LEFTOVER_FOLDER + des.getRelativePath(), des.getCRC(), 0, des.getDirectoryID()));
+                des = destination.next();
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * Short handed method
+     * @param e Events
+     * @param obj Any data
+     */
+    private void postEvent(Events e, Object obj)
+    {
+        EventCenter.getInstance().postEvent(e, obj);
+    }
+}
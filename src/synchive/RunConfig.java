@@ -0,0 +1,263 @@
+package synchive;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import fileManagement.SynchiveFile;
+import support.checksum.ChecksumAlgorithm;
+
+/**
+ * Settings of a single run, captured from Settings when the run starts. Lists typed as text (ie. extensions,
+ * folders, delimiters) are parsed once into sets and compiled patterns, so files are matched without re-parsing.
+ * Nothing changes after capture: changes made in the GUI during a run apply to the next run, and the same
+ * instance is safely shared by every thread of the run.
+ *
+ * @author Tony Hsu
+ */
+public final class RunConfig
+{
+    /**
+     * Shard depth used with an index when none is set. The index only saves memory if directories
+     * are left unread, which only shards allow (a single idFile is read in whole)
+     */
+    public static final int INDEX_SHARD_DEPTH = 1;
+
+    /**
+     * Names of folders not read
+     */
+    private final Set<String> skipFolders;
+    /**
+     * Extensions (lowercase, with the '.') of files not processed
+     */
+    private final Set<String> skipExtensions;
+    /**
+     * True if the CRC32 found in a filename is checked against the file
+     */
+    private final boolean crcCheck;
+    /**
+     * True if the CRC32 is added to filenames without one
+     */
+    private final boolean crcInFilename;
+    /**
+     * Extensions (lowercase, with the '.') of files to add the CRC32 to
+     */
+    private final Set<String> addCrcExtensions;
+    /**
+     * Patterns finding a CRC32 in a filename, see SynchiveFile.compileCRCPatterns
+     */
+    private final List<Pattern> crcPatterns;
+    /**
+     * Leading text of the CRC32 added to filenames
+     */
+    private final String crcDelimLeading;
+    /**
+     * Trailing text of the CRC32 added to filenames
+     */
+    private final String crcDelimTrailing;
+    /**
+     * True if duplicate content is hardlinked instead of copied
+     */
+    private final boolean dedup;
+    /**
+     * True if a duplicate is confirmed with SHA-256 before hardlinking
+     */
+    private final boolean dedupVerify;
+    /**
+     * Algorithm used to identify file content
+     */
+    private final ChecksumAlgorithm checksumAlgorithm;
+    /**
+     * True if copies are checksummed in flight
+     */
+    private final boolean verifyCopy;
+    /**
+     * Smallest file updated block by block in place of a copy, -1 if disabled
+     */
+    private final long deltaMinSize;
+    /**
+     * True if files with the same name, size and last modified time as in destination are not read
+     */
+    private final boolean quickCompare;
+    /**
+     * True if catalogs are merge-joined instead of looked up per file
+     */
+    private final boolean mergeJoin;
+    /**
+     * Depth of the directories that each get their own idFile, 0 to keep one idFile.
+     * At least INDEX_SHARD_DEPTH with an index
+     */
+    private final int catalogShardDepth;
+    /**
+     * True if destination files are looked up in a memory-mapped index
+     */
+    private final boolean diskIndex;
+    /**
+     * True if files are read and copied in their order on disk
+     */
+    private final boolean diskOrder;
+    /**
+     * True if the phases of the run are traced
+     */
+    private final boolean trace;
+
+    /**
+     * Captures the settings as they are now.
+     *
+     * @param s Settings to capture
+     */
+    private RunConfig(Settings s)
+    {
+        skipFolders = toSet(Settings.normalizedSeperatorList(s.getSkipFoldersName(), "", false));
+        skipExtensions = toSet(Settings.normalizedSeperatorList(s.getSkipExtensionTypesText(), ".", true));
+        crcCheck = s.getCrcCheckFlag();
+        crcInFilename = s.getCrcInFilenameFlag();
+        addCrcExtensions = toSet(s.getAddCRCToExtensionTypes());
+        crcPatterns = SynchiveFile.compileCRCPatterns(s.getScanWithoutDelimFlag() ? "" : s.getCrcDelimiterText());
+        crcDelimLeading = s.getCrcDelimLeadingText();
+        crcDelimTrailing = s.getCrcDelimTrailingText();
+        dedup = s.getDedupFlag();
+        dedupVerify = s.getDedupVerifyFlag();
+        checksumAlgorithm = s.getChecksumAlgorithm();
+        verifyCopy = s.getVerifyCopyFlag();
+        deltaMinSize = s.getDeltaFlag() ? s.getDeltaMinSize() : -1;
+        quickCompare = s.getQuickCompareFlag();
+        mergeJoin = s.getMergeJoinFlag();
+        diskIndex = s.getDiskIndexFlag();
+        catalogShardDepth = diskIndex && s.getCatalogShardDepth() == 0 ? INDEX_SHARD_DEPTH : s.getCatalogShardDepth();
+        diskOrder = s.getDiskOrderFlag();
+        trace = s.getTraceFlag();
+    }
+
+    /**
+     * @return Settings as they are now
+     */
+    public static RunConfig fromSettings()
+    {
+        return new RunConfig(Settings.getInstance());
+    }
+
+    /**
+     * @param values Values of the set
+     * @return Set that cannot be changed
+     */
+    private static Set<String> toSet(String[] values)
+    {
+        return Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(values)));
+    }
+
+    // ~~~~~ Getters & Setters ~~~~~ //
+    /**
+     * @param name Name of a folder
+     * @return True if the folder is not read
+     */
+    public boolean isFolderSkipped(String name)
+    {
+        return skipFolders.contains(name);
+    }
+
+    /**
+     * @param extension Extension of a file, including the '.'
+     * @return True if the file is not processed
+     */
+    public boolean isExtensionSkipped(String extension)
+    {
+        return skipExtensions.contains(extension.toLowerCase());
+    }
+
+    public boolean getCrcCheckFlag()
+    {
+        return crcCheck;
+    }
+
+    public boolean getCrcInFilenameFlag()
+    {
+        return crcInFilename;
+    }
+
+    /**
+     * @param extension Extension of a file, including the '.'
+     * @return True if the CRC32 is added to the name of the file
+     */
+    public boolean isExtensionInAddCrcToExtension(String extension)
+    {
+        return addCrcExtensions.contains(extension.toLowerCase());
+    }
+
+    /**
+     * @return Patterns finding a CRC32 in a filename
+     */
+    public List<Pattern> getCrcPatterns()
+    {
+        return crcPatterns;
+    }
+
+    /**
+     * @return [leading, trailing] text of the CRC32 added to filenames
+     */
+    public String[] getCrcDelimiter()
+    {
+        return new String[] {crcDelimLeading, crcDelimTrailing};
+    }
+
+    public boolean getDedupFlag()
+    {
+        return dedup;
+    }
+
+    public boolean getDedupVerifyFlag()
+    {
+        return dedupVerify;
+    }
+
+    public ChecksumAlgorithm getChecksumAlgorithm()
+    {
+        return checksumAlgorithm;
+    }
+
+    public boolean getVerifyCopyFlag()
+    {
+        return verifyCopy;
+    }
+
+    /**
+     * @return Smallest file size (in bytes) updated block by block, -1 if delta updates are disabled
+     */
+    public long getDeltaMinSize()
+    {
+        return deltaMinSize;
+    }
+
+    public boolean getQuickCompareFlag()
+    {
+        return quickCompare;
+    }
+
+    public boolean getMergeJoinFlag()
+    {
+        return mergeJoin;
+    }
+
+    public int getCatalogShardDepth()
+    {
+        return catalogShardDepth;
+    }
+
+    public boolean getDiskIndexFlag()
+    {
+        return diskIndex;
+    }
+
+    public boolean getDiskOrderFlag()
+    {
+        return diskOrder;
+    }
+
+    public boolean getTraceFlag()
+    {
+        return trace;
+    }
+}
@@ -0,0 +1,93 @@
+package synchive;
+
+/**
+ * Shared pause and stop state for a running sync.
+ * Worker threads call checkpoint() between units of work while the controller toggles the state.
+ *
+ * @author Tony Hsu
+ * @structure Two flags guarded by the object's monitor
+ */
+public class RunControl
+{
+    /**
+     * Flag to determine if work should wait
+     */
+    private boolean paused;
+    /**
+     * Flag to determine if work should end as soon as possible
+     */
+    private boolean stopped;
+
+    /**
+     * Initializes a running (not paused, not stopped) control
+     */
+    public RunControl()
+    {
+        paused = false;
+        stopped = false;
+    }
+
+    /**
+     * Pause work at the next checkpoint
+     */
+    public synchronized void pause()
+    {
+        paused = true;
+    }
+
+    /**
+     * Resume paused work
+     */
+    public synchronized void resume()
+    {
+        paused = false;
+        notifyAll();
+    }
+
+    /**
+     * Stop work at the next checkpoint. Will also release paused work.
+     */
+    public synchronized void stop()
+    {
+        stopped = true;
+        notifyAll();
+    }
+
+    /**
+     * Blocks while paused.
+     *
+     * @return False if work should stop, true to continue
+     */
+    public synchronized boolean checkpoint()
+    {
+        while(paused && !stopped)
+        {
+            try
+            {
+                wait();
+            }
+            catch (InterruptedException e)
+            {
+                stopped = true;
+            }
+        }
+        return !stopped;
+    }
+
+    // ~~~~~ Getters & Setters ~~~~~~ //
+    /**
+     * @return True if work is paused
+     */
+    public synchronized boolean isPaused()
+    {
+        return paused;
+    }
+
+    /**
+     * @return True if work has been requested to stop
+     */
+    public synchronized boolean isStopped()
+    {
+        return stopped;
+    }
+}
@@ -5,12 +5,14 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Scanner;
 import java.util.Set;
+import java.util.regex.Pattern;
 
-import gui.tabbedPanels.FlagPanel;
-import gui.tabbedPanels.FlagPanel.CompletionOptions;
+import support.Throttle;
+import support.checksum.ChecksumAlgorithm;
 import synchive.EventCenter.Events;
 
 
@@ -26,6 +28,11 @@ public class Settings
      */
     private static Settings self = new Settings();
 
+    /**
+     * Options when completed
+     */
+    public static enum CompletionOptions { doNothing, close, standBy, shutdown }
+
     // flags panel
     private String sourcePath;
     private String destinationPath;
@@ -43,6 +50,28 @@ public class Settings
     private String crcDelimLeadingText;
     private String crcDelimTrailingText;
 
+    // sync options
+    private boolean dedupFlag;
+    private boolean dedupVerifyFlag;
+    private ChecksumAlgorithm checksumAlgorithm;
+    private boolean verifyCopyFlag;
+    private boolean deltaFlag;
+    private long deltaMinSize;
+    private boolean quickCompareFlag;
+    private boolean mergeJoinFlag;
+    private int catalogShardDepth;
+    private boolean diskIndexFlag;
+    private boolean diskOrderFlag;
+    private boolean traceFlag;
+
+    // throttle panel
+    private String throttleReadRateText;
+    private String throttleWriteRateText;
+    private String throttleReadIopsText;
+    private String throttleWriteIopsText;
+    private String throttleScheduleText;
+    private String throttleControlFile;
+
     private final String name = "~synchiveSettings.txt"; //TODO store in /Synchive/settings.ini
     private File settingsFile;
     
@@ -60,6 +89,24 @@ public class Settings
     private final String addCrcToExtensionTypeTextKey = "addCrcToExtensionTypeText";
     private final String crcDelimLeadingTextKey = "crcDelimLeadingText";
     private final String crcDelimTrailingTextKey = "crcDelimTrailingText";
+    private final String dedupFlagKey = "dedupFlag";
+    private final String dedupVerifyFlagKey = "dedupVerifyFlag";
+    private final String checksumAlgorithmKey = "checksumAlgorithm";
+    private final String verifyCopyFlagKey = "verifyCopyFlag";
+    private final String deltaFlagKey = "deltaFlag";
+    private final String deltaMinSizeKey = "deltaMinSize";
+    private final String quickCompareFlagKey = "quickCompareFlag";
+    private final String mergeJoinFlagKey = "mergeJoinFlag";
+    private final String catalogShardDepthKey = "catalogShardDepth";
+    private final String diskIndexFlagKey = "diskIndexFlag";
+    private final String diskOrderFlagKey = "diskOrderFlag";
+    private final String traceFlagKey = "traceFlag";
+    private final String throttleReadRateTextKey = "throttleReadRateText";
+    private final String throttleWriteRateTextKey = "throttleWriteRateText";
+    private final String throttleReadIopsTextKey = "throttleReadIopsText";
+    private final String throttleWriteIopsTextKey = "throttleWriteIopsText";
+    private final String throttleScheduleTextKey = "throttleScheduleText";
+    private final String throttleControlFileKey = "throttleControlFile";
 
     /** 
      * Private constructor to prevent instantiating multiple instances.
@@ -72,6 +119,7 @@ public class Settings
         {
             resetToDefaults();
             loadSettings();
+            applyThrottle();
         }
         else
         {
@@ -160,6 +208,74 @@ public class Settings
                     case crcDelimTrailingTextKey:
                         crcDelimTrailingText = value;
                         break;
+                    case dedupFlagKey:
+                        dedupFlag = Boolean.valueOf(value);
+                        break;
+                    case dedupVerifyFlagKey:
+                        dedupVerifyFlag = Boolean.valueOf(value);
+                        break;
+                    case checksumAlgorithmKey:
+                        checksumAlgorithm = ChecksumAlgorithm.fromName(value);
+                        break;
+                    case verifyCopyFlagKey:
+                        verifyCopyFlag = Boolean.valueOf(value);
+                        break;
+                    case deltaFlagKey:
+                        deltaFlag = Boolean.valueOf(value);
+                        break;
+                    case deltaMinSizeKey:
+                        try
+                        {
+                            deltaMinSize = Long.parseLong(value.trim());
+                        }
+                        catch (NumberFormatException e)
+                        {
+                            // keep default
+                        }
+                        break;
+                    case quickCompareFlagKey:
+                        quickCompareFlag = Boolean.valueOf(value);
+                        break;
+                    case mergeJoinFlagKey:
+                        mergeJoinFlag = Boolean.valueOf(value);
+                        break;
+                    case catalogShardDepthKey:
+                        try
+                        {
+                            catalogShardDepth = Math.max(0, Integer.parseInt(value.trim()));
+                        }
+                        catch (NumberFormatException e)
+                        {
+                            // keep default
+                        }
+                        break;
+                    case diskIndexFlagKey:
+                        diskIndexFlag = Boolean.valueOf(value);
+                        break;
+                    case diskOrderFlagKey:
+                        diskOrderFlag = Boolean.valueOf(value);
+                        break;
+                    case traceFlagKey:
+                        traceFlag = Boolean.valueOf(value);
+                        break;
+                    case throttleReadRateTextKey:
+                        throttleReadRateText = value;
+                        break;
+                    case throttleWriteRateTextKey:
+                        throttleWriteRateText = value;
+                        break;
+                    case throttleReadIopsTextKey:
+                        throttleReadIopsText = value;
+                        break;
+                    case throttleWriteIopsTextKey:
+                        throttleWriteIopsText = value;
+                        break;
+                    case throttleScheduleTextKey:
+                        throttleScheduleText = value;
+                        break;
+                    case throttleControlFileKey:
+                        throttleControlFile = value;
+                        break;
                 }
 
             }
@@ -220,6 +336,42 @@ public class Settings
             output.newLine();
             output.write(crcDelimTrailingTextKey + "=" + crcDelimTrailingText);
             output.newLine();
+            output.write(dedupFlagKey + "=" + dedupFlag);
+            output.newLine();
+            output.write(dedupVerifyFlagKey + "=" + dedupVerifyFlag);
+            output.newLine();
+            output.write(checksumAlgorithmKey + "=" + checksumAlgorithm);
+            output.newLine();
+            output.write(verifyCopyFlagKey + "=" + verifyCopyFlag);
+            output.newLine();
+            output.write(deltaFlagKey + "=" + deltaFlag);
+            output.newLine();
+            output.write(deltaMinSizeKey + "=" + deltaMinSize);
+            output.newLine();
+            output.write(quickCompareFlagKey + "=" + quickCompareFlag);
+            output.newLine();
+            output.write(mergeJoinFlagKey + "=" + mergeJoinFlag);
+            output.newLine();
+            output.write(catalogShardDepthKey + "=" + catalogShardDepth);
+            output.newLine();
+            output.write(diskIndexFlagKey + "=" + diskIndexFlag);
+            output.newLine();
+            output.write(diskOrderFlagKey + "=" + diskOrderFlag);
+            output.newLine();
+            output.write(traceFlagKey + "=" + traceFlag);
+            output.newLine();
+            output.write(throttleReadRateTextKey + "=" + throttleReadRateText);
+            output.newLine();
+            output.write(throttleWriteRateTextKey + "=" + throttleWriteRateText);
+            output.newLine();
+            output.write(throttleReadIopsTextKey + "=" + throttleReadIopsText);
+            output.newLine();
+            output.write(throttleWriteIopsTextKey + "=" + throttleWriteIopsText);
+            output.newLine();
+            output.write(throttleScheduleTextKey + "=" + throttleScheduleText);
+            output.newLine();
+            output.write(throttleControlFileKey + "=" + throttleControlFile);
+            output.newLine();
 
             output.close();
         }
@@ -241,7 +393,7 @@ public class Settings
         crcCheckFlag = false;
         skipFoldersName = "";
         skipExtensionTypesText = "";
-        completionFlag = FlagPanel.CompletionOptions.doNothing;
+        completionFlag = CompletionOptions.doNothing;
 
         crcDelimiterText = "[], {}, (), __,";
         scanWithoutDelimFlag = false;
@@ -249,6 +401,54 @@ public class Settings
         addCrcToExtensionTypeText = "";
         crcDelimLeadingText = "[";
         crcDelimTrailingText = "]";
+
+        dedupFlag = false;
+        dedupVerifyFlag = false;
+        checksumAlgorithm = ChecksumAlgorithm.CRC32;
+        verifyCopyFlag = true;
+        deltaFlag = false;
+        deltaMinSize = 64L * 1024 * 1024;
+        quickCompareFlag = false;
+        mergeJoinFlag = false;
+        catalogShardDepth = 0;
+        diskIndexFlag = false;
+        diskOrderFlag = false;
+        traceFlag = false;
+
+        throttleReadRateText = "";
+        throttleWriteRateText = "";
+        throttleReadIopsText = "";
+        throttleWriteIopsText = "";
+        throttleScheduleText = "";
+        throttleControlFile = "";
+        applyThrottle();
+    }
+
+    /**
+     * Apply the throttle settings to the shared Throttle, taking effect on the next read or write.
+     * A limit or schedule that cannot be parsed keeps the one in effect until it can.
+     */
+    private void applyThrottle()
+    {
+        Throttle throttle = Throttle.getInstance();
+        try
+        {
+            throttle.setLimits(Throttle.parseRate(throttleReadRateText), Throttle.parseRate(throttleWriteRateText),
+                Throttle.parseRate(throttleReadIopsText), Throttle.parseRate(throttleWriteIopsText));
+        }
+        catch (NumberFormatException e)
+        {
+            // keep limits in effect
+        }
+        try
+        {
+            throttle.setSchedule(Throttle.parseSchedule(throttleScheduleText));
+        }
+        catch (IllegalArgumentException e)
+        {
+            // keep schedule in effect
+        }
+        throttle.setControlFile(throttleControlFile.trim().isEmpty() ? null : new File(throttleControlFile.trim()));
     }
     
     /**
@@ -271,20 +471,24 @@ public class Settings
     }
     
     /**
-     * Add prefixes to a given list of words (comma separated).
+     * Add prefixes to a given list of words (comma separated). Quotes around a word are removed.
      * 
-     * @param str Words separated by comma
+     * @param str Words separated by comma, each may be quoted (ie. "Folder One")
      * @param prefix Prefix to append to each word
      * @param toLowercase Should lowercase string?
      * @return List of each word including prefix
      */
-    private String[] normalizedSeperatorList(String str, String prefix, boolean toLowercase)
+    static String[] normalizedSeperatorList(String str, String prefix, boolean toLowercase)
     {
         String[] splitStr = str.split(",");
         Set<String> values = new HashSet<String>();
         for(String s : splitStr)
         {
             String trimmed = toLowercase ? s.trim().toLowerCase() : s.trim();
+            if(trimmed.length() >= 2 && trimmed.startsWith("\"") && trimmed.endsWith("\""))
+            {
+                trimmed = trimmed.substring(1, trimmed.length() - 1).trim();
+            }
             if(trimmed.length() > 0)
             {
                 if(!trimmed.startsWith(prefix))
@@ -330,6 +534,22 @@ public class Settings
         this.destinationPath = destinationPath;
     }
 
+    /**
+     * @return Each destination in destination path. Several destinations are separated by File.pathSeparator
+     */
+    public ArrayList<File> getDestinations()
+    {
+        ArrayList<File> destinations = new ArrayList<File>();
+        for(String path : destinationPath.split(Pattern.quote(File.pathSeparator)))
+        {
+            if(!path.trim().isEmpty())
+            {
+                destinations.add(new File(path.trim()));
+            }
+        }
+        return destinations;
+    }
+
     public boolean getAuditTrailFlag()
     {
         return auditTrailFlag;
@@ -466,4 +686,245 @@ public class Settings
     {
         this.crcDelimTrailingText = crcDelimTrailingText;
     }
+
+    // sync options //
+    /**
+     * @return True if duplicate content in source is hardlinked in destination instead of copied
+     */
+    public boolean getDedupFlag()
+    {
+        return dedupFlag;
+    }
+
+    public void setDedupFlag(boolean dedupFlag)
+    {
+        this.dedupFlag = dedupFlag;
+    }
+
+    /**
+     * @return True if a duplicate is confirmed with SHA-256 before hardlinking
+     */
+    public boolean getDedupVerifyFlag()
+    {
+        return dedupVerifyFlag;
+    }
+
+    public void setDedupVerifyFlag(boolean dedupVerifyFlag)
+    {
+        this.dedupVerifyFlag = dedupVerifyFlag;
+    }
+
+    /**
+     * @return Algorithm used to identify file content. CRC in filename always uses CRC32
+     */
+    public ChecksumAlgorithm getChecksumAlgorithm()
+    {
+        return checksumAlgorithm;
+    }
+
+    public void setChecksumAlgorithm(ChecksumAlgorithm checksumAlgorithm)
+    {
+        this.checksumAlgorithm = checksumAlgorithm;
+    }
+
+    /**
+     * @return True if copies are checksummed in flight, false to use kernel-side copying without checking
+     */
+    public boolean getVerifyCopyFlag()
+    {
+        return verifyCopyFlag;
+    }
+
+    public void setVerifyCopyFlag(boolean verifyCopyFlag)
+    {
+        this.verifyCopyFlag = verifyCopyFlag;
+    }
+
+    /**
+     * @return True if a large file changed in place is updated block by block instead of copied again
+     */
+    public boolean getDeltaFlag()
+    {
+        return deltaFlag;
+    }
+
+    public void setDeltaFlag(boolean deltaFlag)
+    {
+        this.deltaFlag = deltaFlag;
+    }
+
+    /**
+     * @return Smallest file size (in bytes) updated block by block, smaller files are copied again
+     */
+    public long getDeltaMinSize()
+    {
+        return deltaMinSize;
+    }
+
+    public void setDeltaMinSize(long deltaMinSize)
+    {
+        this.deltaMinSize = deltaMinSize;
+    }
+
+    /**
+     * @return True if a source file with the same name, size and last modified time as in destination is not read
+     */
+    public boolean getQuickCompareFlag()
+    {
+        return quickCompareFlag;
+    }
+
+    public void setQuickCompareFlag(boolean quickCompareFlag)
+    {
+        this.quickCompareFlag = quickCompareFlag;
+    }
+
+    /**
+     * @return True if source and destination catalogs are sorted and merge-joined instead of looked up per file
+     */
+    public boolean getMergeJoinFlag()
+    {
+        return mergeJoinFlag;
+    }
+
+    public void setMergeJoinFlag(boolean mergeJoinFlag)
+    {
+        this.mergeJoinFlag = mergeJoinFlag;
+    }
+
+    /**
+     * @return Depth of the directories that each get their own idFile (shard), 0 to keep one idFile
+     */
+    public int getCatalogShardDepth()
+    {
+        return catalogShardDepth;
+    }
+
+    public void setCatalogShardDepth(int catalogShardDepth)
+    {
+        this.catalogShardDepth = catalogShardDepth;
+    }
+
+    /**
+     * @return True if destination files are looked up in a memory-mapped index instead of the catalog in memory
+     */
+    public boolean getDiskIndexFlag()
+    {
+        return diskIndexFlag;
+    }
+
+    public void setDiskIndexFlag(boolean diskIndexFlag)
+    {
+        this.diskIndexFlag = diskIndexFlag;
+    }
+
+    /**
+     * @return True if the files of a directory are read in their order on disk (by inode) instead of listing order
+     */
+    public boolean getDiskOrderFlag()
+    {
+        return diskOrderFlag;
+    }
+
+    public void setDiskOrderFlag(boolean diskOrderFlag)
+    {
+        this.diskOrderFlag = diskOrderFlag;
+    }
+
+    /**
+     * @return True if the time of each phase of a run is written to a trace file at the end of the run (see Tracer)
+     */
+    public boolean getTraceFlag()
+    {
+        return traceFlag;
+    }
+
+    public void setTraceFlag(boolean traceFlag)
+    {
+        this.traceFlag = traceFlag;
+    }
+
+    /**
+     * @return Most bytes read per second (ie. "50M"), empty for no limit
+     */
+    public String getThrottleReadRateText()
+    {
+        return throttleReadRateText;
+    }
+
+    public void setThrottleReadRateText(String throttleReadRateText)
+    {
+        this.throttleReadRateText = throttleReadRateText;
+        applyThrottle();
+    }
+
+    /**
+     * @return Most bytes written per second (ie. "50M"), empty for no limit
+     */
+    public String getThrottleWriteRateText()
+    {
+        return throttleWriteRateText;
+    }
+
+    public void setThrottleWriteRateText(String throttleWriteRateText)
+    {
+        this.throttleWriteRateText = throttleWriteRateText;
+        applyThrottle();
+    }
+
+    /**
+     * @return Most read calls per second, empty for no limit
+     */
+    public String getThrottleReadIopsText()
+    {
+        return throttleReadIopsText;
+    }
+
+    public void setThrottleReadIopsText(String throttleReadIopsText)
+    {
+        this.throttleReadIopsText = throttleReadIopsText;
+        applyThrottle();
+    }
+
+    /**
+     * @return Most write calls per second, empty for no limit
+     */
+    public String getThrottleWriteIopsText()
+    {
+        return throttleWriteIopsText;
+    }
+
+    public void setThrottleWriteIopsText(String throttleWriteIopsText)
+    {
+        this.throttleWriteIopsText = throttleWriteIopsText;
+        applyThrottle();
+    }
+
+    /**
+     * @return Windows of the day the limits apply in (ie. "09:00-18:00"), empty for always
+     */
+    public String getThrottleScheduleText()
+    {
+        return throttleScheduleText;
+    }
+
+    public void setThrottleScheduleText(String throttleScheduleText)
+    {
+        this.throttleScheduleText = throttleScheduleText;
+        applyThrottle();
+    }
+
+    /**
+     * @return Path of the file polled for limits while running, empty for none
+     */
+    public String getThrottleControlFile()
+    {
+        return throttleControlFile;
+    }
+
+    public void setThrottleControlFile(String throttleControlFile)
+    {
+        this.throttleControlFile = throttleControlFile;
+        applyThrottle();
+    }
 }
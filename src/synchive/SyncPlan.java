@@ -0,0 +1,494 @@
+package synchive;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Hashtable;
+
+import support.DiskOrder;
+import support.checksum.ChecksumAlgorithm;
+
+/**
+ * List of actions needed to sync a destination to a source, computed without touching disk.
+ * A plan can be written to a file, reviewed and executed later by SyncPlanExecutor.
+ *
+ * @author Tony Hsu
+ * @structure List of actions with paths relative to the source or destination root.
+ *             Written one action per line: "[type]\t[size]\t[crc]\t[DirectoryID]\t[source]\t[destination]"
+ */
+public class SyncPlan
+{
+    /**
+     * Types of actions in order of execution
+     */
+    public static enum ActionType
+    {
+        /**
+         * Rename a file in source to include its CRC. (source = old path, destination = new path)
+         */
+        RENAME_SOURCE('R'),
+        /**
+         * Rename a file in destination to include its CRC. (source = old path, destination = new path)
+         */
+        RENAME_DESTINATION('r'),
+        /**
+         * Move a file in destination not found in source to the leftover folder. (source = path in destination)
+         */
+        MOVE_TO_LEFTOVERS('L'),
+        /**
+         * Create a directory in destination
+         */
+        MKDIR('D'),
+        /**
+         * Copy a file from source to destination
+         */
+        COPY('C'),
+        /**
+         * Update the older version of a large file in destination by rewriting only the blocks that changed
+         * (source = path in source, destination = path of the older version)
+         */
+        UPDATE('U'),
+        /**
+         * Hardlink a file in destination with the same content instead of copying it.
+         * (source = path in destination of the existing file, destination = new path)
+         */
+        LINK('H'),
+        /**
+         * Set the last modified time of a file in destination to its source's, so later runs can quick compare it
+         */
+        TOUCH('T'),
+        /**
+         * File in source does not need to be copied
+         */
+        SKIP('S');
+
+        /**
+         * Character written into the plan file
+         */
+        private final char tag;
+
+        private ActionType(char tag)
+        {
+            this.tag = tag;
+        }
+
+        /**
+         * @param tag Character read from the plan file
+         * @return ActionType for tag, null if unknown
+         */
+        private static ActionType fromTag(char tag)
+        {
+            for(ActionType type : values())
+            {
+                if(type.tag == tag)
+                {
+                    return type;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * A single step of the plan
+     */
+    public static class Action
+    {
+        /**
+         * Type of action
+         */
+        private ActionType type;
+        /**
+         * Path relative to root the action reads from
+         */
+        private String source;
+        /**
+         * Path relative to root the action writes to, empty if none
+         */
+        private String destination;
+        /**
+         * Checksum of the file, empty if not a file
+         */
+        private String crc;
+        /**
+         * Size of the file in bytes, 0 if not a file
+         */
+        private long size;
+        /**
+         * DirectoryID of the destination directory the file belongs to
+         */
+        private String directoryID;
+
+        /**
+         * @param type Type of action
+         * @param source Path relative to root the action reads from
+         * @param destination Path relative to root the action writes to, empty if none
+         * @param crc Checksum of the file, empty if not a file
+         * @param size Size of the file in bytes, 0 if not a file
+         * @param directoryID DirectoryID of the destination directory, empty if none
+         */
+        public Action(ActionType type, String source, String destination, String crc, long size, String directoryID)
+        {
+            this.type = type;
+            this.source = source;
+            this.destination = destination;
+            this.crc = crc;
+            this.size = size;
+            this.directoryID = directoryID;
+        }
+
+        /**
+         * @return UniqueID of the file acted on. (crc + name)
+         */
+        public String getFileID()
+        {
+            String path = type == ActionType.COPY || type == ActionType.UPDATE || type == ActionType.LINK ? destination : source;
+            return crc + " \"" + path.substring(path.lastIndexOf(File.separator) + 1) + "\"";
+        }
+
+        /**
+         * @return Parent directory of the destination path relative to root
+         */
+        public String getDestinationParent()
+        {
+            int index = destination.lastIndexOf(File.separator);
+            return index < 0 ? "" : destination.substring(0, index);
+        }
+
+        /**
+         * @return Parent directory of the source path relative to root
+         */
+        public String getSourceParent()
+        {
+            int index = source.lastIndexOf(File.separator);
+            return index < 0 ? "" : source.substring(0, index);
+        }
+
+        // Dumps the action in plan file format
+        public String toString()
+        {
+            return type.tag + DELIMITER + size + DELIMITER + crc + DELIMITER + directoryID + DELIMITER +
+                source + DELIMITER + destination;
+        }
+
+        // ~~~~~ Getters & Setters ~~~~~ //
+        public ActionType getType()
+        {
+            return type;
+        }
+
+        public String getSource()
+        {
+            return source;
+        }
+
+        public String getDestination()
+        {
+            return destination;
+        }
+
+        public String getCRC()
+        {
+            return crc;
+        }
+
+        public long getSize()
+        {
+            return size;
+        }
+
+        public String getDirectoryID()
+        {
+            return directoryID;
+        }
+    }
+
+    /**
+     * Separator between fields of an action
+     */
+    private static final String DELIMITER = "\t";
+    /**
+     * Header prefix of a plan file
+     */
+    private static final String HEADER = "Synchive " + Globals.VERSION + " plan";
+
+    /**
+     * Source location directory
+     */
+    private File source;
+    /**
+     * Destination location directory
+     */
+    private File destination;
+    /**
+     * Algorithm the checksums in the plan were computed with
+     */
+    private ChecksumAlgorithm checksumAlgorithm;
+    /**
+     * Each action in order planned
+     */
+    private ArrayList<Action> actions;
+    /**
+     * Lookup table of "ActionType" -> [count, bytes]
+     */
+    private Hashtable<ActionType, long[]> totals;
+
+    /**
+     * Creates an empty plan
+     *
+     * @param source Source location directory
+     * @param destination Destination location directory
+     * @param checksumAlgorithm Algorithm the files planned are identified with
+     */
+    public SyncPlan(File source, File destination, ChecksumAlgorithm checksumAlgorithm)
+    {
+        this.source = source;
+        this.destination = destination;
+        this.checksumAlgorithm = checksumAlgorithm;
+        actions = new ArrayList<Action>();
+        totals = new Hashtable<ActionType, long[]>();
+        for(ActionType type : ActionType.values())
+        {
+            totals.put(type, new long[2]);
+        }
+    }
+
+    /**
+     * Add an action to the plan
+     *
+     * @param action Action to add
+     */
+    public void add(Action action)
+    {
+        actions.add(action);
+        long[] total = totals.get(action.getType());
+        total[0]++;
+        total[1] += action.getSize();
+    }
+
+    /**
+     * Count a file that does not need to be copied without adding it, so the plan of a large unchanged tree stays small
+     */
+    public void countSkip()
+    {
+        totals.get(ActionType.SKIP)[0]++;
+    }
+
+    /**
+     * Returns actions in execution order. Renames first, then leftover moves (so a replaced file is moved
+     * before its new version is copied), directories parents first, then copies batched per directory with
+     * large files first, then updates. Hardlinks come after as they may point to a copied or updated file,
+     * then last modified times are set. Skips are left out.
+     *
+     * @return Actions to execute
+     */
+    public ArrayList<Action> getOrderedActions()
+    {
+        return getOrderedActions(false);
+    }
+
+    /**
+     * Returns actions in execution order, see getOrderedActions. In disk order, the copies of a directory are
+     * ordered by where their source files are on disk (see DiskOrder) instead of large files first.
+     *
+     * @param diskOrder True to order the copies of each directory by their source's position on disk
+     * @return Actions to execute
+     */
+    public ArrayList<Action> getOrderedActions(boolean diskOrder)
+    {
+        ArrayList<Action> ordered = new ArrayList<Action>();
+        for(Action action : actions)
+        {
+            if(action.getType() != ActionType.SKIP)
+            {
+                ordered.add(action);
+            }
+        }
+
+        Collections.sort(ordered, new Comparator<Action>()
+        {
+            @Override
+            public int compare(Action a, Action b)
+            {
+                int result = a.getType().compareTo(b.getType());
+                if(result != 0)
+                {
+                    return result;
+                }
+                switch(a.getType())
+                {
+                    case MKDIR:
+                        return a.getDestination().compareTo(b.getDestination()); // parents sort before children
+                    case COPY:
+                        result = a.getDestinationParent().compareTo(b.getDestinationParent()); // batch per directory
+                        return result != 0 ? result : Long.compare(b.getSize(), a.getSize()); // large files first
+                    case UPDATE:
+                    case LINK:
+                    case TOUCH:
+                        return a.getDestination().compareTo(b.getDestination());
+                    default:
+                        return a.getSource().compareTo(b.getSource());
+                }
+            }
+        });
+        if(diskOrder)
+        {
+            for(int start = 0; start < ordered.size(); )
+            {
+                int end = start + 1;
+                while(end < ordered.size() && ordered.get(start).getType() == ActionType.COPY &&
+                    ordered.get(end).getType() == ActionType.COPY &&
+                    ordered.get(end).getDestinationParent().equals(ordered.get(start).getDestinationParent()))
+                {
+                    end++;
+                }
+                if(end - start > 1)
+                {
+                    DiskOrder.sort(ordered.subList(start, end), action -> new File(source.getPath() + action.getSource()));
+                }
+                start = end;
+            }
+        }
+        return ordered;
+    }
+
+    /**
+     * Write out the plan.
+     *
+     * @param file File to write to
+     * @throws IOException Unable to write to file
+     */
+    public void writeToFile(File file) throws IOException
+    {
+        BufferedWriter output = new BufferedWriter(new OutputStreamWriter(
+            new FileOutputStream(file), Charset.forName("UTF-8").newEncoder()));
+        output.write(HEADER + DELIMITER + source.getPath() + DELIMITER + destination.getPath() +
+            DELIMITER + checksumAlgorithm);
+        output.newLine();
+        for(Action action : actions)
+        {
+            output.write(action.toString());
+            output.newLine();
+        }
+        output.close();
+    }
+
+    /**
+     * Read in a plan written by writeToFile.
+     *
+     * @param file File to read from
+     * @return Plan read in
+     * @throws IOException Unable to read file or bad format
+     */
+    public static SyncPlan readFromFile(File file) throws IOException
+    {
+        BufferedReader reader = new BufferedReader(
+            new InputStreamReader(new FileInputStream(file), "UTF8"));
+        try
+        {
+            String str = reader.readLine();
+            String[] header = str == null ? new String[0] : str.split(DELIMITER);
+            if(header.length < 3 || !header[0].startsWith("Synchive ") || !header[0].endsWith(" plan"))
+            {
+                throw new IOException("Bad format found");
+            }
+
+            SyncPlan plan = new SyncPlan(new File(header[1]), new File(header[2]),
+                header.length > 3 ? ChecksumAlgorithm.fromName(header[3]) : ChecksumAlgorithm.CRC32);
+            while((str = reader.readLine()) != null)
+            {
+                String[] split = str.split(DELIMITER, -1); // [type, size, crc, directoryID, source, destination]
+                ActionType type = split.length == 6 && split[0].length() == 1 ? ActionType.fromTag(split[0].charAt(0)) : null;
+                if(type == null)
+                {
+                    throw new IOException("Bad format found");
+                }
+                try
+                {
+                    plan.add(new Action(type, split[4], split[5], split[2], Long.parseLong(split[1]), split[3]));
+                }
+                catch (NumberFormatException e)
+                {
+                    throw new IOException("Bad format found");
+                }
+            }
+            return plan;
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+
+    // Summary of each action type
+    public String toString()
+    {
+        String str = "Plan for \"" + source.getPath() + "\" -> \"" + destination.getPath() + "\"";
+        for(ActionType type : ActionType.values())
+        {
+            str += "\n  " + type + ": " + getCount(type) +
+                (getBytes(type) > 0 ? " (" + getBytes(type) + " bytes)" : "");
+        }
+        return str;
+    }
+
+    // ~~~~~ Getters & Setters ~~~~~ //
+    /**
+     * @return Every action in order planned
+     */
+    public ArrayList<Action> getActions()
+    {
+        return actions;
+    }
+
+    /**
+     * @param type Type of action
+     * @return Number of actions of type
+     */
+    public long getCount(ActionType type)
+    {
+        return totals.get(type)[0];
+    }
+
+    /**
+     * @param type Type of action
+     * @return Total bytes of actions of type
+     */
+    public long getBytes(ActionType type)
+    {
+        return totals.get(type)[1];
+    }
+
+    /**
+     * @return Source location directory
+     */
+    public File getSource()
+    {
+        return source;
+    }
+
+    /**
+     * @return Algorithm the checksums in the plan were computed with
+     */
+    public ChecksumAlgorithm getChecksumAlgorithm()
+    {
+        return checksumAlgorithm;
+    }
+
+    /**
+     * @return Destination location directory
+     */
+    public File getDestination()
+    {
+        return destination;
+    }
+}
@@ -0,0 +1,810 @@
+package synchive;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import fileManagement.SynchiveDirectory;
+import fileManagement.SyncJournal;
+import support.CopyEngine;
+import support.DeltaEngine;
+import support.Tracer;
+import support.Utilities;
+import support.Utilities.ChecksumException;
+import support.checksum.ChecksumAlgorithm;
+import support.jfr.FlightRecorder;
+import support.jfr.FlightRecorder.EventType;
+import synchive.EventCenter.Events;
+import synchive.SyncPlan.Action;
+import synchive.SyncPlan.ActionType;
+
+/**
+ * Carries out a SyncPlan against disk, keeping the destination mapping and journal up to date.
+ *
+ * @author Tony Hsu
+ */
+public class SyncPlanExecutor
+{
+    /**
+     * Folder name of extra files in destination
+     */
+    private String LEFTOVER_FOLDER = Utilities.LEFTOVER_FOLDER;
+    /**
+     * Time between progress updates (in miliseconds)
+     */
+    private static final long PROGRESS_INTERVAL = 5000;
+    /**
+     * Source location directory
+     */
+    private File srcLoc;
+    /**
+     * Destination location directory
+     */
+    private File desLoc;
+    /**
+     * Mapping of each file in destination in directory format
+     */
+    private Hashtable<String, SynchiveDirectory> destinationList;
+    /**
+     * True if hardlinked duplicates are confirmed with SHA-256 first
+     */
+    private boolean verifyDuplicates;
+    /**
+     * Algorithm copies are verified with, same as the plan's checksums
+     */
+    private ChecksumAlgorithm checksumAlgorithm;
+    /**
+     * True if copies are checksummed in flight
+     */
+    private boolean verifyCopies;
+    /**
+     * True if the copies of a directory are read in their order on disk
+     */
+    private boolean diskOrder;
+    /**
+     * Copies files, reuses its buffer across copies
+     */
+    private CopyEngine copyEngine;
+    /**
+     * Updates large files block by block, reuses its buffers across updates
+     */
+    private DeltaEngine deltaEngine;
+    /**
+     * Pause and stop state of the run
+     */
+    private RunControl control;
+    /**
+     * Checkpoint of completed copies, null if not checkpointing
+     */
+    private SyncJournal journal;
+    /**
+     * Destination directories (relative) known to exist
+     */
+    private HashSet<String> existingDirectories;
+    /**
+     * Bytes copied so far
+     */
+    private long bytesCopied;
+    /**
+     * Bytes to copy in total
+     */
+    private long bytesToCopy;
+    /**
+     * Time copying started
+     */
+    private long copyStartTime;
+    /**
+     * Time of last progress update
+     */
+    private long lastProgress;
+
+    /**
+     * Initializes the executor.
+     *
+     * @param srcLoc Source location
+     * @param desLoc Destination location
+     * @param destinationList Mapping of each file in destination, updated as actions complete
+     * @param control Pause and stop state to honor between actions
+     * @param journal Journal to checkpoint copies to, null to disable checkpointing
+     */
+    public SyncPlanExecutor(File srcLoc, File desLoc, Hashtable<String, SynchiveDirectory> destinationList,
+        RunControl control, SyncJournal journal)
+    {
+        this(srcLoc, desLoc, destinationList, control, journal, RunConfig.fromSettings());
+    }
+
+    /**
+     * Initializes the executor.
+     *
+     * @param srcLoc Source location
+     * @param desLoc Destination location
+     * @param destinationList Mapping of each file in destination, updated as actions complete
+     * @param control Pause and stop state to honor between actions
+     * @param journal Journal to checkpoint copies to, null to disable checkpointing
+     * @param config Settings of the run
+     */
+    public SyncPlanExecutor(File srcLoc, File desLoc, Hashtable<String, SynchiveDirectory> destinationList,
+        RunControl control, SyncJournal journal, RunConfig config)
+    {
+        this.srcLoc = srcLoc;
+        this.desLoc = desLoc;
+        this.destinationList = destinationList;
+        this.control = control;
+        this.journal = journal;
+        existingDirectories = new HashSet<String>();
+        verifyDuplicates = config.getDedupVerifyFlag();
+        verifyCopies = config.getVerifyCopyFlag();
+        diskOrder = config.getDiskOrderFlag();
+        copyEngine = new CopyEngine();
+        deltaEngine = new DeltaEngine();
+        deltaEngine.setAssumeHardlinked(config.getDedupFlag() || verifyDuplicates); // links are not counted on NTFS
+    }
+
+    /**
+     * Execute each action of the plan in order. Leftover moves are done as a single batch (see cleanupDestination).
+     *
+     * @param plan Plan to execute
+     * @return False if stopped before every action was executed
+     */
+    public boolean execute(SyncPlan plan)
+    {
+        ArrayList<Action> ordered = start(plan);
+        return executeBeforeCopies(ordered) && executeCopies(ordered) && executeAfterCopies(ordered);
+    }
+
+    /**
+     * Prepare to execute a plan. Execute the returned actions with executeBeforeCopies, then the copies
+     * (executeCopies or prepareCopy/copyCompleted for each) and lastly executeAfterCopies.
+     *
+     * @param plan Plan to execute
+     * @return Actions in execution order
+     */
+    public ArrayList<Action> start(SyncPlan plan)
+    {
+        checksumAlgorithm = plan.getChecksumAlgorithm();
+        bytesToCopy = plan.getBytes(SyncPlan.ActionType.COPY) + plan.getBytes(SyncPlan.ActionType.UPDATE);
+        bytesCopied = 0;
+        copyStartTime = 0;
+        return plan.getOrderedActions(diskOrder);
+    }
+
+    /**
+     * Renames, moves files not in source to the leftover folder and creates new directories.
+     *
+     * @param ordered Actions in execution order
+     * @return False if stopped before every action was executed
+     */
+    public boolean executeBeforeCopies(ArrayList<Action> ordered)
+    {
+        return executeActions(ordered, ActionType.RENAME_SOURCE, ActionType.RENAME_DESTINATION) &&
+            cleanupDestination(ordered) && // moves are done as one batch before anything is added
+            executeActions(ordered, ActionType.MKDIR, ActionType.MKDIR);
+    }
+
+    /**
+     * @param ordered Actions in execution order
+     * @return False if stopped before every copy was executed
+     */
+    public boolean executeCopies(ArrayList<Action> ordered)
+    {
+        return executeActions(ordered, ActionType.COPY, ActionType.COPY);
+    }
+
+    /**
+     * Updates files block by block, then creates hardlinks, which may point to files copied or updated,
+     * then sets last modified times.
+     *
+     * @param ordered Actions in execution order
+     * @return False if stopped before every action was executed
+     */
+    public boolean executeAfterCopies(ArrayList<Action> ordered)
+    {
+        return executeActions(ordered, ActionType.UPDATE, ActionType.TOUCH);
+    }
+
+    /**
+     * Execute each action with a type from first to last (inclusive).
+     *
+     * @param ordered Actions in execution order
+     * @param first First type to execute
+     * @param last Last type to execute
+     * @return False if stopped before every action was executed
+     */
+    private boolean executeActions(ArrayList<Action> ordered, ActionType first, ActionType last)
+    {
+        for(Action action : ordered)
+        {
+            if(action.getType().compareTo(first) < 0 || action.getType().compareTo(last) > 0)
+            {
+                continue;
+            }
+            if(!control.checkpoint())
+            {
+                return false;
+            }
+            try
+            {
+                switch(action.getType())
+                {
+                    case RENAME_SOURCE:
+                        renameFile(srcLoc, action);
+                        break;
+                    case RENAME_DESTINATION:
+                        renameFile(desLoc, action);
+                        break;
+                    case MKDIR:
+                        createDirectory(action.getDestination());
+                        break;
+                    case COPY:
+                        copyFile(action);
+                        break;
+                    case UPDATE:
+                        updateFile(action);
+                        break;
+                    case LINK:
+                        linkFile(action);
+                        break;
+                    case TOUCH:
+                        touchFile(action);
+                        break;
+                    default:
+                        break;
+                }
+            }
+            catch (IOException e)
+            {
+                // error already posted, continue with next action
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Makes a directory in destination, including any missing parent directories.
+     *
+     * @param relativeDir Directory relative to destination
+     * @throws IOException Throws unable to make directory
+     */
+    private void createDirectory(String relativeDir) throws IOException
+    {
+        if(existingDirectories.contains(relativeDir))
+        {
+            return;
+        }
+        Path path = Paths.get(desLoc.getPath() + relativeDir);
+        if(!Files.isDirectory(path))
+        {
+            try
+            {
+                Files.createDirectories(path);
+                postEvent(Events.ProcessingFile, "Directory \"" + path.getFileName() + "\" Created");
+            }
+            catch (IOException | SecurityException e)
+            {
+                postEvent(Events.ErrorOccurred, "Unable to create directory \"" + relativeDir + "\"");
+                throw new IOException();
+            }
+        }
+        existingDirectories.add(relativeDir);
+    }
+
+    /**
+     * Renames a file to include its CRC.
+     *
+     * @param root Location of file
+     * @param action Rename action
+     * @throws IOException Throws unable to rename
+     */
+    private void renameFile(File root, Action action) throws IOException
+    {
+        File file = new File(root.getPath() + action.getSource());
+        postEvent(Events.ProcessingFile, "Adding CRC to filename... " + file.getName());
+        if(!file.renameTo(new File(root.getPath() + action.getDestination())))
+        {
+            postEvent(Events.ErrorOccurred, "Unable to add CRC to filename... " + file.getName());
+            throw new IOException();
+        }
+    }
+
+    /**
+     * Copies file from source to destination with same name and relative directory.
+     * Checks the CRC of the copy (unless disabled) and records it in the destination mapping and journal.
+     *
+     * @param action Copy action
+     * @throws IOException Throws unable to copy file
+     */
+    private void copyFile(Action action) throws IOException
+    {
+        File destination = prepareCopy(action);
+        File source = new File(srcLoc.getPath() + action.getSource());
+        String desCRC = null;
+        long span = Tracer.begin();
+        Object event = FlightRecorder.begin(EventType.FILE_COPIED);
+        boolean succeeded = false;
+        try
+        {
+            if(verifyCopies) // checksum the bytes as they are written instead of reading the copy back
+            {
+                desCRC = copyEngine.copy(source, destination, checksumAlgorithm);
+            }
+            else
+            {
+                copyEngine.copy(source, destination);
+            }
+            succeeded = true;
+        }
+        catch (IOException | SecurityException e)
+        {
+            copyFailed(action);
+            throw new IOException();
+        }
+        finally
+        {
+            Tracer.end(verifyCopies ? "copy and verify" : "copy", span, source.getPath());
+            if(FlightRecorder.end(event))
+            {
+                FlightRecorder.commitFileCopied(event, source.getPath(), destination.getPath(), 1, action.getSize(),
+                    verifyCopies, succeeded);
+            }
+        }
+        copyCompleted(action, desCRC);
+    }
+
+    /**
+     * Creates the directory a copy goes into.
+     *
+     * @param action Copy action
+     * @return File to copy to
+     * @throws IOException Throws unable to make directory
+     */
+    public File prepareCopy(Action action) throws IOException
+    {
+        createDirectory(action.getDestinationParent());
+        if(copyStartTime == 0)
+        {
+            copyStartTime = System.currentTimeMillis();
+            lastProgress = copyStartTime;
+        }
+        return new File(desLoc.getPath() + action.getDestination());
+    }
+
+    /**
+     * Checks the CRC of a finished copy and records it in the destination mapping and journal.
+     *
+     * @param action Copy action
+     * @param desCRC Checksum of the bytes written, null if not checked
+     * @throws IOException Throws unable to write to journal
+     */
+    public void copyCompleted(Action action, String desCRC) throws IOException
+    {
+        String name = action.getDestination().substring(action.getDestination().lastIndexOf(File.separator) + 1);
+        if(desCRC != null && action.getCRC().compareToIgnoreCase(desCRC) != 0)
+        {
+            postEvent(Events.ErrorOccurred, "Copy CRC MISMATCH for file: " + name +
+                " srcCRC: " + action.getCRC() + " desCRC: " + desCRC);
+        }
+
+        String relativeDir = action.getDestinationParent();
+        postEvent(Events.ProcessingFile, (action.getType() == ActionType.UPDATE ? "Updated \"" + name + "\" in \"" : "Added \"" + name + "\" to \"") +
+            (relativeDir.isEmpty() ? "root" : relativeDir) + "\"");
+        fileAdded(action);
+
+        bytesCopied += action.getSize();
+        postProgress();
+    }
+
+    /**
+     * @param action Copy action that could not be completed
+     */
+    public void copyFailed(Action action)
+    {
+        postEvent(Events.ErrorOccurred, "Unable to copy file " +
+            action.getDestination().substring(action.getDestination().lastIndexOf(File.separator) + 1));
+    }
+
+    /**
+     * Updates the older version of a file in destination by rewriting only the blocks that changed.
+     * Falls back to moving the older version to the leftover folder and copying, if the older version is missing,
+     * hardlinked or changed too much for an update to be worth it.
+     *
+     * @param action Update action
+     * @throws IOException Throws unable to update or copy file
+     */
+    private void updateFile(Action action) throws IOException
+    {
+        File destination = prepareCopy(action);
+        File source = new File(srcLoc.getPath() + action.getSource());
+        SynchiveDirectory dir = destinationList.get(action.getDirectoryID());
+        String olderVersion = dir == null ? null : dir.findOtherVersion(action.getFileID());
+        String desCRC;
+        long span = Tracer.begin();
+        try
+        {
+            if(journal != null) // rolled back by the next run if interrupted
+            {
+                journal.recordUpdate(action.getDestination());
+            }
+            desCRC = deltaEngine.update(source, destination, checksumAlgorithm);
+        }
+        catch (IOException | SecurityException e)
+        {
+            postEvent(Events.ErrorOccurred, "Unable to update file " + destination.getName());
+            throw new IOException();
+        }
+        finally
+        {
+            Tracer.end("update", span, source.getPath());
+        }
+
+        if(desCRC == null) // replace the older version as a normal sync would
+        {
+            if(olderVersion != null)
+            {
+                Path leftoverDir = Paths.get(desLoc.getPath() + File.separator + LEFTOVER_FOLDER + action.getDestinationParent());
+                try
+                {
+                    Files.createDirectories(leftoverDir);
+                }
+                catch (IOException | SecurityException e)
+                {
+                    postEvent(Events.ErrorOccurred, "Unable to create directory \"" + LEFTOVER_FOLDER + action.getDestinationParent() + "\"");
+                    throw new IOException();
+                }
+                moveFile(new Action(ActionType.MOVE_TO_LEFTOVERS, action.getDestination(), File.separator + LEFTOVER_FOLDER + action.getDestination(),
+                    olderVersion.split(" ", 2)[0], 0, action.getDirectoryID()), leftoverDir);
+            }
+            copyFile(new Action(ActionType.COPY, action.getSource(), action.getDestination(),
+                action.getCRC(), action.getSize(), action.getDirectoryID()));
+            return;
+        }
+
+        if(olderVersion != null)
+        {
+            dir.removeFile(olderVersion);
+        }
+        postEvent(Events.ProcessingFile, "Rewrote " + Utilities.formatBytes(deltaEngine.getBytesWritten()) + " of " +
+            Utilities.formatBytes(action.getSize()) + " of \"" + destination.getName() + "\"");
+        copyCompleted(action, desCRC);
+    }
+
+    /**
+     * Hardlinks a file already in destination with the same content. Falls back to copying from source
+     * if the content differs (when verifying) or the file system does not support hardlinks.
+     *
+     * @param action Link action
+     * @throws IOException Throws unable to copy file
+     */
+    private void linkFile(Action action) throws IOException
+    {
+        createDirectory(action.getDestinationParent());
+        Path target = Paths.get(desLoc.getPath() + action.getSource());
+        Path link = Paths.get(desLoc.getPath() + action.getDestination());
+        if(!verifyDuplicates || isSameContent(new File(srcLoc.getPath() + action.getDestination()), target.toFile()))
+        {
+            boolean linked = false;
+            try
+            {
+                Files.deleteIfExists(link);
+                Files.createLink(link, target);
+                linked = true;
+            }
+            catch (IOException | UnsupportedOperationException | SecurityException e)
+            {
+                // hardlinks not possible here, copy instead
+            }
+            if(linked)
+            {
+                postEvent(Events.ProcessingFile, "Linked \"" + link.getFileName() + "\" to \"" + action.getSource() + "\"");
+                fileAdded(action);
+                return;
+            }
+        }
+        bytesToCopy += action.getSize();
+        copyFile(new Action(ActionType.COPY, action.getDestination(), action.getDestination(),
+            action.getCRC(), action.getSize(), action.getDirectoryID()));
+    }
+
+    /**
+     * @param a File to compare
+     * @param b File to compare
+     * @return True if both files have the same SHA-256 value
+     */
+    private boolean isSameContent(File a, File b)
+    {
+        long span = Tracer.begin();
+        try
+        {
+            return a.length() == b.length() &&
+                ChecksumAlgorithm.SHA256.calculate(a).equals(ChecksumAlgorithm.SHA256.calculate(b));
+        }
+        catch (ChecksumException e)
+        {
+            postEvent(Events.ErrorOccurred, e.getMessage());
+            return false;
+        }
+        finally
+        {
+            Tracer.end("verify", span, a.getPath());
+        }
+    }
+
+    /**
+     * Records a file added to destination in the destination mapping and journal.
+     *
+     * @param action Copy or link action
+     * @throws IOException Throws unable to write to journal
+     */
+    private void fileAdded(Action action) throws IOException
+    {
+        SynchiveDirectory dir = destinationList.get(action.getDirectoryID());
+        if(dir == null)
+        {
+            dir = new SynchiveDirectory(action.getDirectoryID());
+            destinationList.put(dir.getUniqueID(), dir);
+        }
+        dir.addFile(action.getFileID(), SynchiveDirectory.FileFlag.FILE_EXIST);
+        recordMetadata(dir, action);
+        if(journal != null)
+        {
+            journal.recordFile(SyncJournal.Location.DESTINATION, dir.getUniqueID(), action.getFileID());
+        }
+    }
+
+    /**
+     * Records size and last modified time of a file in destination so later runs can quick compare it.
+     *
+     * @param dir Directory of file in destination mapping
+     * @param action Action on file
+     */
+    private void recordMetadata(SynchiveDirectory dir, Action action)
+    {
+        File file = new File(desLoc.getPath() + action.getDestination());
+        long modified = file.lastModified(); // as stored by the file system, which may round it
+        if(modified > 0)
+        {
+            dir.setMetadata(action.getFileID(), file.length(), modified);
+        }
+    }
+
+    /**
+     * Sets the last modified time of a file kept in destination to its source's.
+     *
+     * @param action Touch action
+     */
+    private void touchFile(Action action)
+    {
+        File source = new File(srcLoc.getPath() + action.getSource());
+        File destination = new File(desLoc.getPath() + action.getDestination());
+        SynchiveDirectory dir = destinationList.get(action.getDirectoryID());
+        if(dir != null && destination.setLastModified(source.lastModified()))
+        {
+            recordMetadata(dir, action);
+        }
+    }
+
+    /**
+     * Posts copy progress with an estimated time remaining, at most once per PROGRESS_INTERVAL.
+     */
+    private void postProgress()
+    {
+        long now = System.currentTimeMillis();
+        if(now - lastProgress < PROGRESS_INTERVAL || bytesCopied == 0)
+        {
+            return;
+        }
+        lastProgress = now;
+        long remaining = (long)((now - copyStartTime) * ((double)(bytesToCopy - bytesCopied) / bytesCopied)) / 1000;
+        postEvent(Events.Status, String.format("Copied %s of %s (%d%%), ETA %02d:%02d:%02d",
+            Utilities.formatBytes(bytesCopied), Utilities.formatBytes(bytesToCopy), bytesCopied * 100 / Math.max(bytesToCopy, 1),
+            remaining / 3600, (remaining / 60) % 60, remaining % 60));
+    }
+
+    /**
+     * Moves each file in destination not found in source to the leftovers folder, then removes directories left empty.
+     * Moves are grouped per directory so each leftovers directory is created once, and empty directories
+     * are pruned bottom-up in a single pass afterwards.
+     *
+     * @param ordered Actions in execution order
+     * @return False if stopped before every file was moved
+     */
+    private boolean cleanupDestination(ArrayList<Action> ordered)
+    {
+        long span = Tracer.begin();
+        TreeMap<String, ArrayList<Action>> moves = new TreeMap<String, ArrayList<Action>>(); // "relative directory" -> moves out of it
+        for(Action action : ordered)
+        {
+            if(action.getType() == ActionType.MOVE_TO_LEFTOVERS)
+            {
+                String relativeDir = action.getSourceParent();
+                ArrayList<Action> group = moves.get(relativeDir);
+                if(group == null)
+                {
+                    group = new ArrayList<Action>();
+                    moves.put(relativeDir, group);
+                }
+                group.add(action);
+            }
+        }
+
+        HashSet<String> movedFromDirectories = new HashSet<String>();
+        for(Entry<String, ArrayList<Action>> group : moves.entrySet())
+        {
+            String relativeDir = group.getKey();
+            Path leftoverDir = Paths.get(desLoc.getPath() + File.separator + LEFTOVER_FOLDER + relativeDir);
+            try
+            {
+                Files.createDirectories(leftoverDir);
+            }
+            catch (IOException | SecurityException e)
+            {
+                postEvent(Events.ErrorOccurred, "Unable to create directory \"" + LEFTOVER_FOLDER + relativeDir + "\"");
+                continue;
+            }
+
+            for(Action action : group.getValue())
+            {
+                if(!control.checkpoint())
+                {
+                    Tracer.end("cleanup", span, desLoc.getPath());
+                    return false;
+                }
+                if(moveFile(action, leftoverDir))
+                {
+                    movedFromDirectories.add(relativeDir);
+                }
+            }
+        }
+
+        pruneEmptyDirectories(movedFromDirectories);
+        Tracer.end("cleanup", span, desLoc.getPath());
+        return true;
+    }
+
+    /**
+     * Moves file from destination to leftovers folder. Will remove original file and its entry in the destination mapping.
+     *
+     * @param action Move action
+     * @param leftoverDir Leftovers directory the file is moved into, already created
+     * @return True if file was moved out of its directory by this call
+     */
+    private boolean moveFile(Action action, Path leftoverDir)
+    {
+        Path file = Paths.get(desLoc.getPath() + action.getSource());
+        Path leftover = leftoverDir.resolve(file.getFileName());
+        long span = Tracer.begin();
+        try
+        {
+            Files.move(file, leftover, StandardCopyOption.REPLACE_EXISTING);
+            Tracer.end("move to leftovers", span, file.toString());
+            postEvent(Events.ProcessingFile,
+                "File \"" + file.getFileName() + "\" in \"" + action.getSourceParent() +
+                "\" not found in source. Moved to \"" + LEFTOVER_FOLDER + "\"");
+        }
+        catch (NoSuchFileException e)
+        {
+            if(Files.exists(leftover)) // already moved by an interrupted run
+            {
+                removeFromMapping(action);
+            }
+            else
+            {
+                postEvent(Events.ErrorOccurred, "Unable to move file: " + file.getFileName() + " to \"" + LEFTOVER_FOLDER + "\"");
+            }
+            return false;
+        }
+        catch (IOException | SecurityException e)
+        {
+            postEvent(Events.ErrorOccurred, "Unable to move file: " + file.getFileName() + " to \"" + LEFTOVER_FOLDER + "\"");
+            return false;
+        }
+        removeFromMapping(action);
+        return true;
+    }
+
+    /**
+     * @param action Action of file no longer in destination
+     */
+    private void removeFromMapping(Action action)
+    {
+        SynchiveDirectory dir = destinationList.get(action.getDirectoryID());
+        if(dir != null)
+        {
+            dir.removeFile(action.getFileID());
+        }
+    }
+
+    /**
+     * Removes empty directories, deepest first. When a directory is removed its parent becomes a candidate,
+     * so every directory is tried at most once. Removing a non-empty directory simply fails.
+     *
+     * @param relativeDirs Directories (relative to destination) that had files moved out of them
+     */
+    private void pruneEmptyDirectories(Collection<String> relativeDirs)
+    {
+        TreeSet<String> candidates = new TreeSet<String>(new Comparator<String>()
+        {
+            @Override
+            public int compare(String a, String b)
+            {
+                int result = Integer.compare(getDepth(b), getDepth(a)); // deepest first
+                return result != 0 ? result : a.compareTo(b);
+            }
+        });
+        candidates.addAll(relativeDirs);
+
+        String relativeDir;
+        while((relativeDir = candidates.pollFirst()) != null)
+        {
+            if(relativeDir.isEmpty()) // never remove destination itself
+            {
+                continue;
+            }
+            File dir = new File(desLoc.getPath() + relativeDir);
+            if(dir.delete()) // only succeeds if empty
+            {
+                postEvent(Events.ProcessingFile, "Deleted empty directory \"" + dir.getName());
+                String dirID = SynchiveDirectory.getDirectoryUniqueID(relativeDir, getDepth(relativeDir), "");
+                SynchiveDirectory mapped = destinationList.get(dirID);
+                if(mapped != null && mapped.getLookupTable().isEmpty() && mapped.getChanges().isEmpty()) // else removals still to save
+                {
+                    destinationList.remove(dirID);
+                }
+                existingDirectories.remove(relativeDir);
+                candidates.add(relativeDir.substring(0, relativeDir.lastIndexOf(File.separator)));
+            }
+        }
+    }
+
+    /**
+     * @param relativeDir Directory relative to destination
+     * @return Depth of directory, 0 for destination itself
+     */
+    private static int getDepth(String relativeDir)
+    {
+        int depth = 0;
+        for(int i = relativeDir.indexOf(File.separator); i >= 0; i = relativeDir.indexOf(File.separator, i + 1))
+        {
+            depth++;
+        }
+        return depth;
+    }
+
+    // ~~~~~ Getters & Setters ~~~~~ //
+    /**
+     * @return Destination location
+     */
+    public File getDestination()
+    {
+        return desLoc;
+    }
+
+    /**
+     * @return Checksum algorithm of the plan being executed
+     */
+    public ChecksumAlgorithm getChecksumAlgorithm()
+    {
+        return checksumAlgorithm;
+    }
+
+    /**
+     * Short handed method
+     * @param e Events
+     * @param obj Any data
+     */
+    private void postEvent(Events e, Object obj)
+    {
+        EventCenter.getInstance().postEvent(e, obj);
+    }
+}
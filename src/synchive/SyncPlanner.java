@@ -0,0 +1,448 @@
+package synchive;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.Map.Entry;
+
+import fileManagement.CatalogEntry;
+import fileManagement.CatalogIndex;
+import fileManagement.CatalogReader;
+import fileManagement.SynchiveDirectory;
+import fileManagement.SynchiveFile;
+import fileManagement.fileProcessor.DestinationFileProcessor;
+import support.BloomFilter;
+import support.Utilities;
+import support.checksum.ChecksumAlgorithm;
+import synchive.EventCenter.Events;
+import synchive.SyncPlan.Action;
+import synchive.SyncPlan.ActionType;
+
+/**
+ * Decides what is needed to make destination the same as source without touching disk.
+ * Files found in destination are marked as existing in the destination mapping, everything else is left to the plan.
+ *
+ * @author Tony Hsu
+ */
+public class SyncPlanner
+{
+    /**
+     * Folder name of extra files in destination
+     */
+    private String LEFTOVER_FOLDER = Utilities.LEFTOVER_FOLDER;
+    /**
+     * Source location directory
+     */
+    private File srcLoc;
+    /**
+     * Destination location directory
+     */
+    private File desLoc;
+    /**
+     * Mapping of each file in destination in directory format
+     */
+    private Hashtable<String, SynchiveDirectory> destinationList;
+    /**
+     * DirectoryIDs of directories the plan will create
+     */
+    private HashSet<String> plannedDirectories;
+    /**
+     * True if duplicate content is hardlinked instead of copied
+     */
+    private boolean dedup;
+    /**
+     * Lookup table of "CRC" -> paths (relative) of files kept in destination. Built on first use
+     */
+    private Hashtable<String, ArrayList<String>> contentIndex;
+    /**
+     * Lookup table of "CRC size" -> path (relative) in destination with that content, after the plan is executed
+     */
+    private Hashtable<String, String> linkTargets;
+    /**
+     * Smallest file updated block by block in place of a copy, -1 if disabled
+     */
+    private long deltaMinSize;
+    /**
+     * UniqueIDs of older versions in destination planned to be updated, kept out of the leftover folder
+     */
+    private HashSet<String> updatedFiles;
+    /**
+     * True if files kept are given their source's last modified time so they can be quick compared
+     */
+    private boolean quickCompare;
+    /**
+     * Algorithm the files planned are identified with
+     */
+    private ChecksumAlgorithm checksumAlgorithm;
+    /**
+     * Off-heap index of destination consulted before destinationList, null if none
+     */
+    private CatalogIndex index;
+    /**
+     * Filter of every file in destination, files definitely not there skip the lookups. Null if none
+     */
+    private BloomFilter filter;
+
+    /**
+     * Initializes the planner.
+     *
+     * @param srcLoc Source location
+     * @param desLoc Destination location
+     * @param destinationList Mapping of each file in destination
+     */
+    public SyncPlanner(File srcLoc, File desLoc, Hashtable<String, SynchiveDirectory> destinationList)
+    {
+        this(srcLoc, desLoc, destinationList, RunConfig.fromSettings());
+    }
+
+    /**
+     * Initializes the planner.
+     *
+     * @param srcLoc Source location
+     * @param desLoc Destination location
+     * @param destinationList Mapping of each file in destination
+     * @param config Settings of the run
+     */
+    public SyncPlanner(File srcLoc, File desLoc, Hashtable<String, SynchiveDirectory> destinationList, RunConfig config)
+    {
+        this.srcLoc = srcLoc;
+        this.desLoc = desLoc;
+        this.destinationList = destinationList;
+        plannedDirectories = new HashSet<String>();
+        dedup = config.getDedupFlag();
+        linkTargets = new Hashtable<String, String>();
+        deltaMinSize = config.getDeltaMinSize();
+        updatedFiles = new HashSet<String>();
+        quickCompare = config.getQuickCompareFlag();
+        checksumAlgorithm = config.getChecksumAlgorithm();
+    }
+
+    /**
+     * Scan through sourceList and for each file in source, mark if found in destination, otherwise plan a copy.
+     * Afterwards, plan a move to the leftover folder for each file in destination that has not been marked.
+     * In dedup mode, a copy whose content (CRC and size) is already in destination becomes a hardlink.
+     * In delta mode, a large file with an older version at the same path in destination is updated in place.
+     * In quick compare mode, a file kept whose last modified time differs from source is given source's time.
+     * With an index, files found in it are kept without reading their directory into destinationList
+     * (directories of shards not read in yet, see RunConfig.INDEX_SHARD_DEPTH).
+     * With a filter, files definitely not in destination go straight to being copied.
+     *
+     * @param sourceList Each file in source
+     * @param control Pause and stop state to honor while planning
+     * @return Plan of actions, null if stopped
+     */
+    public SyncPlan plan(ArrayList<SynchiveFile> sourceList, RunControl control)
+    {
+        SyncPlan plan = new SyncPlan(srcLoc, desLoc, checksumAlgorithm);
+        ArrayList<Action> copies = new ArrayList<Action>();
+        if(!desLoc.exists())
+        {
+            plan.add(new Action(ActionType.MKDIR, "", "", "", 0, ""));
+        }
+
+        String lastParent = null;
+        String dirUID = null;
+        SynchiveDirectory dir = null;
+        boolean dirLookedUp = false;
+        for(int i = 0; i < sourceList.size(); i++)
+        {
+            if(!control.checkpoint())
+            {
+                return null;
+            }
+            SynchiveFile temp = sourceList.get(i); // file to parse through
+            String relativePath = temp.getPath().substring(srcLoc.getPath().length());
+
+            if(!temp.copyAllowed()) // if file determined to be bad, skip file
+            {
+                postEvent(Events.ErrorOccurred, "Did not copy \"" + temp.getName() + "\" due to CRC mismatch.");
+                plan.add(new Action(ActionType.SKIP, relativePath, "", temp.getCRC(), 0, ""));
+                continue;
+            }
+
+            if(!temp.getParent().equals(lastParent)) // files of a directory are consecutive, only look it up once
+            {
+                lastParent = temp.getParent();
+                dirUID = SynchiveDirectory.getDirectoryUniqueID(lastParent, temp.getDepth(), srcLoc.getPath());
+                dirLookedUp = false;
+            }
+            boolean absent = filter != null && // definitely not in destination
+                !filter.mightContain(DestinationFileProcessor.getFilterKey(relativePath, temp.getCRC()));
+            long[] indexed = absent || index == null ? null : index.mark(dirUID, temp.getUniqueID());
+            if(indexed != null) // file found in index, marked there
+            {
+                planKept(plan, temp, relativePath, dirUID, indexed);
+                continue;
+            }
+            if(!dirLookedUp)
+            {
+                dir = destinationList.get(dirUID);
+                dirLookedUp = true;
+            }
+
+            if(!absent && dir != null && dir.doesFileExist(temp.getUniqueID())) // file found, mark it
+            {
+                planKept(plan, temp, relativePath, dirUID, dir.getMetadata(temp.getUniqueID()));
+                continue;
+            }
+            if(!absent && filter != null)
+            {
+                filter.countFalsePositive();
+            }
+
+            // make new directory if not in destination
+            if(dir == null && temp.getDepth() > 0 && plannedDirectories.add(dirUID))
+            {
+                String relativeDir = temp.getParent().substring(srcLoc.getPath().length());
+                plan.add(new Action(ActionType.MKDIR, "", relativeDir, "", 0, dirUID));
+            }
+            if(dir != null && deltaMinSize >= 0 && temp.getSize() >= deltaMinSize)
+            {
+                String olderVersion = dir.findOtherVersion(temp.getUniqueID());
+                if(olderVersion != null && dir.getValueForKey(olderVersion) == SynchiveDirectory.FileFlag.FILE_NOT_EXIST)
+                {
+                    updatedFiles.add(dirUID + olderVersion);
+                    plan.add(new Action(ActionType.UPDATE, relativePath, relativePath, temp.getCRC(), temp.getSize(), dirUID));
+                    continue;
+                }
+            }
+            copies.add(new Action(ActionType.COPY, relativePath, relativePath, temp.getCRC(), temp.getSize(), dirUID));
+        }
+
+        // every file kept in destination is marked by now, so each can be a link target
+        for(Action copy : copies)
+        {
+            plan.add(dedup ? linkOrCopy(copy) : copy);
+        }
+
+        planCleanup(plan);
+        return plan;
+    }
+
+    /**
+     * Plan a file found in destination to be kept, given source's last modified time in quick compare mode.
+     *
+     * @param plan Plan to add to
+     * @param temp File in source
+     * @param relativePath Path of file relative to root
+     * @param dirUID DirectoryID of file
+     * @param metadata [size, modified] of file in destination, null if unknown
+     */
+    private void planKept(SyncPlan plan, SynchiveFile temp, String relativePath, String dirUID, long[] metadata)
+    {
+        plan.countSkip(); // only counted, so the plan of a large unchanged tree stays small
+        if(quickCompare && temp.getModified() >= 0 && (metadata == null || metadata[1] != temp.getModified()))
+        {
+            plan.add(new Action(ActionType.TOUCH, relativePath, relativePath, temp.getCRC(), 0, dirUID));
+        }
+    }
+
+    /**
+     * Returns a hardlink to a file with the same content in destination (kept or planned to be copied),
+     * otherwise returns the copy and remembers it as a target for later duplicates.
+     *
+     * @param copy Copy action
+     * @return LINK or COPY action
+     */
+    private Action linkOrCopy(Action copy)
+    {
+        if(copy.getSize() <= 0 || copy.getCRC().isEmpty())
+        {
+            return copy;
+        }
+        String key = copy.getCRC().toLowerCase() + " " + copy.getSize();
+        String target = linkTargets.get(key);
+        if(target == null)
+        {
+            ArrayList<String> paths = getContentIndex().get(copy.getCRC().toLowerCase());
+            if(paths != null)
+            {
+                for(String path : paths)
+                {
+                    if(new File(desLoc.getPath() + path).length() == copy.getSize()) // only stat on CRC match
+                    {
+                        target = path;
+                        break;
+                    }
+                }
+            }
+        }
+        if(target == null)
+        {
+            linkTargets.put(key, copy.getDestination());
+            return copy;
+        }
+        linkTargets.put(key, target);
+        return new Action(ActionType.LINK, target, copy.getDestination(), copy.getCRC(), copy.getSize(), copy.getDirectoryID());
+    }
+
+    /**
+     * @return Lookup table of "CRC" -> paths (relative) of files kept in destination
+     */
+    private Hashtable<String, ArrayList<String>> getContentIndex()
+    {
+        if(contentIndex == null)
+        {
+            contentIndex = new Hashtable<String, ArrayList<String>>();
+            for(SynchiveDirectory dir : destinationList.values())
+            {
+                for(Entry<String, SynchiveDirectory.FileFlag> entry : dir.getLookupTable().entrySet())
+                {
+                    if(entry.getValue() == SynchiveDirectory.FileFlag.FILE_EXIST)
+                    {
+                        String crc = entry.getKey().split(" ", 2)[0].toLowerCase();
+                        ArrayList<String> paths = contentIndex.get(crc);
+                        if(paths == null)
+                        {
+                            paths = new ArrayList<String>();
+                            contentIndex.put(crc, paths);
+                        }
+                        paths.add(getRelativePath(dir, entry.getKey()));
+                    }
+                }
+            }
+        }
+        return contentIndex;
+    }
+
+    /**
+     * Plan a move to the leftover folder for each file in destination not marked as existing.
+     *
+     * @param plan Plan to add to
+     */
+    private void planCleanup(SyncPlan plan)
+    {
+        if(index != null && planCleanupFromCatalog(plan))
+        {
+            return;
+        }
+        Enumeration<SynchiveDirectory> enu = destinationList.elements(); // gets each directory in destination
+        while(enu.hasMoreElements()) // go through each directory
+        {
+            SynchiveDirectory dir = enu.nextElement();
+            for(Entry<String, SynchiveDirectory.FileFlag> entry : dir.getLookupTable().entrySet())
+            {
+                if(entry.getValue() == SynchiveDirectory.FileFlag.FILE_NOT_EXIST &&
+                    !updatedFiles.contains(dir.getUniqueID() + entry.getKey()) &&
+                    (index == null || !index.isMarked(dir.getUniqueID(), entry.getKey())))
+                {
+                    String fileID = entry.getKey();
+                    String relativePath = getRelativePath(dir, fileID);
+                    plan.add(new Action(ActionType.MOVE_TO_LEFTOVERS, relativePath,
+                        File.separator + LEFTOVER_FOLDER + relativePath, fileID.split(" ", 2)[0], 0, dir.getUniqueID()));
+                }
+            }
+        }
+    }
+
+    /**
+     * Plan a move to the leftover folder for each file in the destination catalog marked neither in the index nor
+     * in destinationList. The catalog is streamed, so only directories with leftovers are read into destinationList.
+     *
+     * @param plan Plan to add to
+     * @return False if unable to read the catalog, nothing is added to plan
+     */
+    private boolean planCleanupFromCatalog(SyncPlan plan)
+    {
+        ArrayList<Action> moves = new ArrayList<Action>();
+        try
+        {
+            CatalogReader reader = CatalogReader.open(new File(desLoc, Utilities.ID_FILE_NAME));
+            try
+            {
+                CatalogEntry entry;
+                while((entry = reader.next()) != null)
+                {
+                    String dirID = entry.getDirectoryID();
+                    String fileID = entry.getFileID();
+                    if(index.isMarked(dirID, fileID) || updatedFiles.contains(dirID + fileID))
+                    {
+                        continue;
+                    }
+                    SynchiveDirectory dir = destinationList.get(dirID);
+                    if(dir == null || dir.getValueForKey(fileID) != SynchiveDirectory.FileFlag.FILE_EXIST)
+                    {
+                        moves.add(new Action(ActionType.MOVE_TO_LEFTOVERS, entry.getRelativePath(),
+                            File.separator + LEFTOVER_FOLDER + entry.getRelativePath(), entry.getCRC(), 0, dirID));
+                    }
+                }
+            }
+            finally
+            {
+                reader.close();
+            }
+        }
+        catch (IOException e)
+        {
+            return false;
+        }
+        for(Action move : moves)
+        {
+            plan.add(move);
+        }
+        return true;
+    }
+
+    /**
+     * Add a rename action for each rename recorded during a dry run.
+     *
+     * @param plan Plan to add to
+     * @param renames Lookup table of "original file" -> "renamed file"
+     * @param root Location the files are in
+     * @param type RENAME_SOURCE or RENAME_DESTINATION
+     */
+    public static void planRenames(SyncPlan plan, Hashtable<File, File> renames, File root, ActionType type)
+    {
+        for(Entry<File, File> entry : renames.entrySet())
+        {
+            plan.add(new Action(type, entry.getKey().getPath().substring(root.getPath().length()),
+                entry.getValue().getPath().substring(root.getPath().length()), "", 0, ""));
+        }
+    }
+
+    /**
+     * @param dir Directory of file
+     * @param fileID UniqueID of file
+     * @return Path of file relative to destination
+     */
+    private String getRelativePath(SynchiveDirectory dir, String fileID)
+    {
+        String[] splitDir = dir.getUniqueID().split(": ", 2);
+        String name = fileID.substring(fileID.indexOf('"') + 1, fileID.lastIndexOf('"'));
+        return (splitDir.length == 2 ? splitDir[1] : "") + File.separator + name;
+    }
+
+    // ~~~~~ Getters & Setters ~~~~~ //
+    /**
+     * Look up destination files in an index before destinationList.
+     *
+     * @param index Index of destination kept in step with its idFile, null for none
+     */
+    public void setIndex(CatalogIndex index)
+    {
+        this.index = index;
+    }
+
+    /**
+     * Skip looking up files the filter answers are definitely not in destination.
+     *
+     * @param filter Filter of every file in destinationList, null for none
+     */
+    public void setFilter(BloomFilter filter)
+    {
+        this.filter = filter;
+    }
+
+    /**
+     * Short handed method
+     * @param e Events
+     * @param obj Any data
+     */
+    private void postEvent(Events e, Object obj)
+    {
+        EventCenter.getInstance().postEvent(e, obj);
+    }
+}
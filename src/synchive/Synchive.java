@@ -1,6 +1,14 @@
 package synchive;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import fileManagement.CatalogDiff;
+import fileManagement.CatalogInventory;
+import fileManagement.fileProcessor.DestinationFileProcessor;
 import gui.SummaryController;
+import support.checksum.ChecksumAlgorithm;
 
 /**
  * <p>Used as a backup tool, Synchive will sync directory (source) to a backup location (destination). 
@@ -20,48 +28,301 @@ public class Synchive
 {   
     /**
      * Launch the application.
+     * 
+     * <p>Options: "-nogui" run immediately without GUI, "-default" load default settings,
+     * "-plan [file]" write the plan of a sync to file without touching disk,
+     * "-execute [file]" execute a plan written by "-plan", "-dedup" hardlink duplicate content instead of copying,
+     * "-dedupVerify" same as "-dedup" but confirms duplicates with SHA-256,
+     * "-checksum [CRC32|CRC32C|XXHASH64|SHA256]" algorithm to identify files with,
+     * "-noverify" copy with kernel-side transfers without checksumming each copy,
+     * "-delta" update large files changed in place block by block instead of copying them again,
+     * "-quick" skip reading source files with the same name, size and last modified time as in destination,
+     * "-mergejoin" plan by merge-joining the source and destination catalogs sorted by path,
+     * "-diff [old] [new]" report the differences between two idFiles (or directories holding one) without reading either tree,
+     * "-shard [depth]" give each directory at depth its own idFile, read only when the sync reaches it,
+     * "-index" look up destination files in a memory-mapped index kept next to the idFile, so shards holding no
+     * changes are never read in. Implies "-shard 1" unless a depth is given, as a single idFile is read in whole,
+     * "-diskorder" read and copy the files of each directory in their order on disk (for spinning disks),
+     * "-trace" write the time of each phase (listing, idFile load, hashing, copying...) to "~synchiveTrace.json"
+     * at the end of the run, to open in a trace viewer (ie. chrome://tracing),
+     * "-throttle [file]" limit bandwidth and IOPS with the limits in file, re-read whenever it changes (see Throttle),
+     * "-inventory [location] [csv]" report files and bytes by extension, top-level directory and size from the idFile
+     * (or by reading the tree if none), optionally written to a CSV file,
+     * "-undoRenames [location]" rename back the files the CRC was added to and update the idFile.
+     * With "-nogui" no AWT or Swing class is loaded, so it runs on machines without a display.
+     * Locations are [source] [destination] [more destinations...], each file is read once for every destination.</p>
      */
     public static void main(String[] args)
     {
         boolean showGUI = true;
-        String[] locations = {"", ""};
+        ArrayList<String> locations = new ArrayList<String>();
+        String planFile = null;
+        String executeFile = null;
+        String[] diffFiles = null;
+        String[] inventoryFiles = null;
+        String undoLocation = null;
+        ArrayList<Runnable> overrides = new ArrayList<Runnable>(); // one-off options, applied after settings are saved
         
         // parse arguments
-        if(args.length > 0)
+        for(int i = 0; i < args.length; i++)
         {
-            int index = 0;
-            for(String str : args)
+            String str = args[i];
+            switch (str.toLowerCase().trim())
             {
-                switch (str.toLowerCase().trim())
-                {
-                    case "-nogui": // don't show GUI and run program immediately
-                        showGUI = false;
-                        break;
-                    case "-default": // load default settings
-                        Settings.getInstance().resetToDefaults();
-                        break;
-                    default:
-                        if(!str.trim().startsWith("-") && index < locations.length)
+                case "-nogui": // don't show GUI and run program immediately
+                    showGUI = false;
+                    break;
+                case "-default": // load default settings
+                    Settings.getInstance().resetToDefaults();
+                    break;
+                case "-plan": // write plan to file and exit
+                    planFile = i + 1 < args.length ? args[++i] : "";
+                    break;
+                case "-execute": // execute plan from file and exit
+                    executeFile = i + 1 < args.length ? args[++i] : "";
+                    break;
+                case "-dedup": // hardlink duplicate content instead of copying
+                    overrides.add(() -> Settings.getInstance().setDedupFlag(true));
+                    break;
+                case "-dedupverify": // hardlink duplicates only if SHA-256 matches
+                    overrides.add(() -> Settings.getInstance().setDedupFlag(true));
+                    overrides.add(() -> Settings.getInstance().setDedupVerifyFlag(true));
+                    break;
+                case "-noverify": // copy without checksumming the copy
+                    overrides.add(() -> Settings.getInstance().setVerifyCopyFlag(false));
+                    break;
+                case "-delta": // rewrite only changed blocks of large files
+                    overrides.add(() -> Settings.getInstance().setDeltaFlag(true));
+                    break;
+                case "-quick": // compare by size and last modified time before reading
+                    overrides.add(() -> Settings.getInstance().setQuickCompareFlag(true));
+                    break;
+                case "-mergejoin": // plan with a single pass over sorted catalogs
+                    overrides.add(() -> Settings.getInstance().setMergeJoinFlag(true));
+                    break;
+                case "-index": // off-heap destination lookups
+                    overrides.add(() -> Settings.getInstance().setDiskIndexFlag(true));
+                    break;
+                case "-diskorder": // fewer seeks on spinning disks
+                    overrides.add(() -> Settings.getInstance().setDiskOrderFlag(true));
+                    break;
+                case "-trace": // time each phase of the run
+                    overrides.add(() -> Settings.getInstance().setTraceFlag(true));
+                    break;
+                case "-throttle": // limits read from a control file
+                    String controlFile = i + 1 < args.length ? args[++i] : "";
+                    overrides.add(() -> Settings.getInstance().setThrottleControlFile(controlFile));
+                    break;
+                case "-diff": // compare two idFiles and exit
+                    diffFiles = new String[] {i + 1 < args.length ? args[++i] : "", i + 1 < args.length ? args[++i] : ""};
+                    break;
+                case "-inventory": // report where the bytes are and exit
+                    inventoryFiles = new String[] {i + 1 < args.length ? args[++i] : "",
+                        i + 1 < args.length && !args[i + 1].startsWith("-") ? args[++i] : null};
+                    break;
+                case "-undorenames": // revert CRC added to filenames and exit
+                    undoLocation = i + 1 < args.length ? args[++i] : "";
+                    break;
+                case "-shard": // split idFile by directory
+                    String shardDepth = i + 1 < args.length ? args[++i] : "";
+                    overrides.add(() -> {
+                        try
+                        {
+                            Settings.getInstance().setCatalogShardDepth(Math.max(0, Integer.parseInt(shardDepth)));
+                        }
+                        catch (NumberFormatException e)
                         {
-                            locations[index] = str;
-                            index++;
+                            System.out.println("Invalid shard depth, keeping " + Settings.getInstance().getCatalogShardDepth());
                         }
-                        break;
-                }
+                    });
+                    break;
+                case "-checksum": // algorithm to identify files with
+                    String checksumName = i + 1 < args.length ? args[++i] : "";
+                    overrides.add(() -> Settings.getInstance().setChecksumAlgorithm(ChecksumAlgorithm.fromName(checksumName)));
+                    break;
+                default:
+                    if(!str.trim().startsWith("-"))
+                    {
+                        locations.add(str);
+                    }
+                    break;
             }
         }
         
-        SummaryController controller = new SummaryController();
+        if(showGUI || planFile != null || executeFile != null || diffFiles != null || inventoryFiles != null || undoLocation != null)
+        {
+            applyOverrides(overrides);
+        }
+        if(planFile != null)
+        {
+            writePlan(locations, planFile);
+            return;
+        }
+        if(executeFile != null)
+        {
+            executePlan(executeFile);
+            return;
+        }
+        if(diffFiles != null)
+        {
+            diffCatalogs(diffFiles[0], diffFiles[1]);
+            return;
+        }
+        if(inventoryFiles != null)
+        {
+            writeInventory(inventoryFiles[0], inventoryFiles[1]);
+            return;
+        }
+        if(undoLocation != null)
+        {
+            undoRenames(undoLocation);
+            return;
+        }
         
         if(showGUI)
         {
-            controller.run();
+            new SummaryController().run();
         }
         else
         {
-            Settings.getInstance().setSourcePath(locations[0]);
-            Settings.getInstance().setDestinationPath(locations[1]);
-            controller.runSynchiveDiffer();
+            if(!locations.isEmpty())
+            {
+                Settings.getInstance().setSourcePath(locations.get(0));
+                Settings.getInstance().setDestinationPath(
+                    String.join(File.pathSeparator, locations.subList(1, locations.size())));
+            }
+            if(!runHeadless(overrides))
+            {
+                System.exit(1);
+            }
+        }
+    }
+    
+    /**
+     * Apply one-off options given on the command line to settings.
+     * @param overrides Options in the order given
+     */
+    private static void applyOverrides(ArrayList<Runnable> overrides)
+    {
+        for(Runnable override : overrides)
+        {
+            override.run();
+        }
+    }
+    
+    /**
+     * Sync the saved source and destinations without loading the GUI, printing progress to the console.
+     * Source and destinations are saved, one-off options only apply to this run.
+     * @param overrides One-off options given on the command line
+     * @return True if the sync completed without errors
+     */
+    private static boolean runHeadless(ArrayList<Runnable> overrides)
+    {
+        System.setProperty("java.awt.headless", "true"); // fail fast instead of opening a display if AWT is reached
+        Settings.getInstance().saveSettings();
+        applyOverrides(overrides); // after saving, so they don't carry over to later runs
+        return new HeadlessRunner(System.out).run(
+            new File(Settings.getInstance().getSourcePath()), Settings.getInstance().getDestinations());
+    }
+    
+    /**
+     * Plan a sync without touching disk and write the plan to file.
+     * @param locations [source, destination], missing to use saved settings. Only the first destination is planned
+     * @param planFile File to write plan to
+     */
+    private static void writePlan(ArrayList<String> locations, String planFile)
+    {
+        String src = locations.size() > 0 ? locations.get(0) : Settings.getInstance().getSourcePath();
+        ArrayList<File> saved = Settings.getInstance().getDestinations();
+        File des = locations.size() > 1 ? new File(locations.get(1)) : saved.isEmpty() ? new File("") : saved.get(0);
+        try
+        {
+            SyncPlan plan = new SynchiveDiff(new File(src), des, true).planLocations();
+            if(plan != null)
+            {
+                plan.writeToFile(new File(planFile));
+                System.out.println(plan);
+            }
+        }
+        catch (IOException | Error e)
+        {
+            System.out.println("Unable to write plan: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Execute a plan written by writePlan.
+     * @param planFile File to read plan from
+     */
+    private static void executePlan(String planFile)
+    {
+        try
+        {
+            SyncPlan plan = SyncPlan.readFromFile(new File(planFile));
+            Settings.getInstance().setChecksumAlgorithm(plan.getChecksumAlgorithm()); // read destination the same way
+            System.out.println(plan);
+            new SynchiveDiff(plan.getSource(), plan.getDestination()).executePlan(plan);
+        }
+        catch (IOException | Error e)
+        {
+            System.out.println("Unable to execute plan: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Print the differences between two idFiles.
+     * @param oldCatalog IdFile, or directory holding one, to compare from
+     * @param newCatalog IdFile, or directory holding one, to compare to
+     */
+    private static void diffCatalogs(String oldCatalog, String newCatalog)
+    {
+        try
+        {
+            System.out.print(CatalogDiff.compare(new File(oldCatalog), new File(newCatalog)));
+        }
+        catch (IOException e)
+        {
+            System.out.println("Unable to compare catalogs: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Print the files and bytes of a location by extension, top-level directory and size.
+     * @param location Directory, or idFile of one
+     * @param csvFile File to also write the inventory to as CSV, null to only print
+     */
+    private static void writeInventory(String location, String csvFile)
+    {
+        try
+        {
+            CatalogInventory inventory = CatalogInventory.of(new File(location));
+            System.out.print(inventory);
+            if(csvFile != null)
+            {
+                inventory.writeToCSV(new File(csvFile));
+            }
+        }
+        catch (IOException e)
+        {
+            System.out.println("Unable to take inventory: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Rename back the files the CRC was added to, as recorded in the location's rename journal.
+     * @param location Directory the files were renamed in
+     */
+    private static void undoRenames(String location)
+    {
+        Settings.getInstance().setCrcInFilenameFlag(false); // not saved, only keeps the read from renaming
+        try
+        {
+            DestinationFileProcessor reader = new DestinationFileProcessor(new File(location));
+            System.out.println("Renamed back " + reader.undoRenames() + " files");
+        }
+        catch (IOException | Error e)
+        {
+            System.out.println("Unable to undo renames: " + e.getMessage());
         }
     }
 }
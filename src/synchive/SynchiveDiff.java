@@ -3,348 +3,744 @@ package synchive;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
-import java.util.Enumeration;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.List;
 
+import fileManagement.CatalogIndex;
+import fileManagement.CatalogReader;
 import fileManagement.SynchiveDirectory;
 import fileManagement.SynchiveFile;
+import fileManagement.SyncJournal;
 import fileManagement.fileProcessor.DestinationFileProcessor;
 import fileManagement.fileProcessor.SourceFileProcessor;
+import support.CopyEngine;
+import support.DeltaEngine;
+import support.Tracer;
 import support.Utilities;
-import support.Utilities.ChecksumException;
+import support.jfr.FlightRecorder;
+import support.jfr.FlightRecorder.EventType;
 import synchive.EventCenter.Events;
 import synchive.EventCenter.RunningStatusEvents;
+import synchive.SyncPlan.Action;
+import synchive.SyncPlan.ActionType;
 
 /**
  * Compares a source and destination location and syncs up destination to be exactly the same as source.
  * Files not found in source but exist in destination are moved into a separate directory.
- * 
+ *
+ * <p>A sync is done in two phases. SyncPlanner decides every action without touching disk
+ * and SyncPlanExecutor carries the actions out. A plan can also be created on its own (dry run),
+ * written to a file for review and executed later.</p>
+ *
+ * <p>Several destinations can be synced in one run. Source is scanned once and each file to copy
+ * is read once, then written to every destination needing it in parallel.</p>
+ *
  * @author Tony Hsu
  */
 public class SynchiveDiff implements Runnable
 {
     /**
-     * Folder name of extra files in destination
+     * State kept for each destination
      */
-    private String LEFTOVER_FOLDER = Utilities.LEFTOVER_FOLDER;
+    private static class Destination
+    {
+        /**
+         * Destination location directory
+         */
+        private File location;
+        /**
+         * File processor for destination
+         */
+        private DestinationFileProcessor reader;
+        /**
+         * Mapping of each file in directory format
+         */
+        private Hashtable<String, SynchiveDirectory> mapping;
+        /**
+         * Checkpoint of completed copies and scanned directories, kept in destination
+         */
+        private SyncJournal journal;
+        /**
+         * Off-heap index of destination files, null if not enabled in settings
+         */
+        private CatalogIndex index;
+        /**
+         * Plan to sync this destination
+         */
+        private SyncPlan plan;
+        /**
+         * Executor of plan
+         */
+        private SyncPlanExecutor executor;
+        /**
+         * Actions of plan in execution order
+         */
+        private ArrayList<Action> ordered;
+
+        private Destination(File location)
+        {
+            this.location = location.getAbsoluteFile();
+        }
+    }
+
     /**
      * Source location directory
      */
     private File srcLoc;
     /**
-     * Destination location directory
-     */
-    private File desLoc;
-    /**
-     * Mapping of each file in directory format
+     * Destination locations, the first one keeps the source scan checkpoints
      */
-    private Hashtable<String, SynchiveDirectory> destinationList;
+    private ArrayList<Destination> destinations;
     /**
      * List of all files in source location
      */
     private ArrayList<SynchiveFile> sourceList;
     /**
-     * File processor for destination
+     * File processor for source
+     */
+    private SourceFileProcessor srcReader;
+    /**
+     * Pause and stop state of the run
+     */
+    private RunControl control;
+    /**
+     * Settings of the run, captured when the sync was initialized
+     */
+    private RunConfig config;
+
+    /**
+     * Initializes the sync.
+     *
+     * @param curDir Source location
+     * @param backupDir Destination location
+     * @throws IOException
      */
-    private DestinationFileProcessor desReader;
-    
+    public SynchiveDiff(File curDir, File backupDir) throws Error, IOException
+    {
+        this(curDir, backupDir, false);
+    }
+
     /**
      * Initializes the sync.
-     * 
+     *
      * @param curDir Source location
      * @param backupDir Destination location
-     * @throws IOException 
+     * @param dryRun True if only planning, destination will not be created if missing
+     * @throws IOException Unable to make destination folder
+     */
+    public SynchiveDiff(File curDir, File backupDir, boolean dryRun) throws Error, IOException
+    {
+        this(curDir, Arrays.asList(backupDir), dryRun);
+    }
+
+    /**
+     * Initializes the sync to several destinations.
+     *
+     * @param curDir Source location
+     * @param backupDirs Destination locations
+     * @throws IOException Unable to make destination folder
+     */
+    public SynchiveDiff(File curDir, List<File> backupDirs) throws Error, IOException
+    {
+        this(curDir, backupDirs, false);
+    }
+
+    /**
+     * Initializes the sync to several destinations.
+     *
+     * @param curDir Source location
+     * @param backupDirs Destination locations
+     * @param dryRun True if only planning, destinations will not be created if missing
+     * @throws IOException Unable to make destination folder
+     */
+    public SynchiveDiff(File curDir, List<File> backupDirs, boolean dryRun) throws Error, IOException
+    {
+        this(curDir, backupDirs, dryRun, RunConfig.fromSettings());
+    }
+
+    /**
+     * Initializes the sync to several destinations.
+     *
+     * @param curDir Source location
+     * @param backupDirs Destination locations
+     * @param dryRun True if only planning, destinations will not be created if missing
+     * @param config Settings of the run, shared with every reader, planner and executor of the run
+     * @throws IOException Unable to make destination folder
+     */
+    public SynchiveDiff(File curDir, List<File> backupDirs, boolean dryRun, RunConfig config) throws Error, IOException
+    {
+        if(backupDirs.isEmpty())
+        {
+            throw new Error("No destination given");
+        }
+        this.srcLoc = curDir.getAbsoluteFile();
+        this.control = new RunControl();
+        this.config = config;
+        this.destinations = new ArrayList<Destination>();
+
+        for(File backupDir : backupDirs)
+        {
+            Destination des = new Destination(backupDir);
+            destinations.add(des);
+            if(!dryRun && !des.location.exists())
+            {
+                Files.createDirectories(des.location.toPath());
+                postEvent(Events.ProcessingFile, "Directory \"" + des.location.getName() + "\" Created");
+            }
+        }
+    }
+
+    /**
+     * Reads in destination locations then source location once.
+     *
+     * @param dryRun True to leave disk untouched
+     */
+    private void readInLocations(boolean dryRun)
+    {
+        for(Destination des : destinations)
+        {
+            if(dryRun && !des.location.exists())
+            {
+                des.mapping = new Hashtable<String, SynchiveDirectory>(); // plan against an empty destination
+                continue;
+            }
+            long span = Tracer.begin();
+            des.reader = new DestinationFileProcessor(des.location, control, des.journal, dryRun, config);
+            des.mapping = des.reader.getFiles();
+            Tracer.end("read destination", span, des.location.getPath());
+            if(des.reader.wasStopped())
+            {
+                return;
+            }
+            if(!dryRun && config.getDiskIndexFlag())
+            {
+                openIndex(des);
+            }
+        }
+        long span = Tracer.begin();
+        srcReader = new SourceFileProcessor(srcLoc, control, destinations.get(0).journal, dryRun,
+            config.getQuickCompareFlag() ? destinations.get(0).mapping : null, config);
+        sourceList = srcReader.getFiles();
+        Tracer.end("read source", span, srcLoc.getPath());
+    }
+
+    /**
+     * Restores files of a destination whose update in place was interrupted, before destination is read,
+     * so the older version (as recorded in the idFile) is what gets compared, moved or updated.
+     *
+     * @param des Destination with its journal opened
      */
-    public SynchiveDiff(File curDir, File backupDir) throws Error, IOException 
+    private void rollbackUpdates(Destination des)
     {
-        this.srcLoc = curDir;
-        this.desLoc = backupDir;
+        DeltaEngine deltaEngine = new DeltaEngine();
+        for(String relativePath : des.journal.getUpdates())
+        {
+            File file = new File(des.location.getPath() + relativePath);
+            if(!Files.exists(DeltaEngine.getUndoFile(file))) // update completed or already rolled back
+            {
+                continue;
+            }
+            try
+            {
+                deltaEngine.rollback(file);
+                postEvent(Events.Status, getLabel(des) + "Rolled back interrupted update of \"" + file.getName() + "\"");
+            }
+            catch (IOException | SecurityException e)
+            {
+                postEvent(Events.ErrorOccurred, "Unable to roll back interrupted update of " + file.getPath());
+            }
+        }
+    }
 
-        if(!backupDir.exists())
+    /**
+     * Opens the index of a destination and keeps it in step with the destination idFile.
+     * Without it, files are looked up in the mapping alone.
+     *
+     * @param des Destination read in
+     */
+    private void openIndex(Destination des)
+    {
+        try
+        {
+            des.index = CatalogIndex.open(des.location, config.getChecksumAlgorithm());
+            des.reader.setIndex(des.index);
+            if(des.index.wasRebuilt())
+            {
+                postEvent(Events.Status, getLabel(des) + "Indexed " + des.index.getCount() + " files");
+            }
+        }
+        catch (IOException e)
         {
-            createDirectory(backupDir);
+            postEvent(Events.ErrorOccurred, "Unable to index " + des.location.getPath() + ", looking up files in memory");
         }
     }
-    
+
     /**
-     *  Reads in destination and source locations.
+     * Closes every opened index.
      */
-    private void readInLocations()
+    private void closeIndexes()
     {
-        desReader = new DestinationFileProcessor(desLoc);
-        destinationList = desReader.getFiles();
-        SourceFileProcessor rd = new SourceFileProcessor(srcLoc);
-        sourceList = rd.getFiles();
+        for(Destination des : destinations)
+        {
+            if(des.index != null)
+            {
+                des.reader.setIndex(null);
+                des.index.close();
+                des.index = null;
+            }
+        }
     }
 
     /**
-     * Scan through sourceList and for each file in source,
-     *  mark if found in destination, otherwise copy into destination. 
-     * Afterwards, if file in destination has not been marked, 
-     * delete it by moving the files into a separate location.
+     * Plan the sync then execute it. Files found in destination are marked, files not found are copied over
+     * and files in destination not found in source are moved into a separate location.
      */
     public void syncLocations()
     {
+        if(config.getTraceFlag())
+        {
+            Tracer.start();
+        }
+        for(Destination des : destinations)
+        {
+            des.journal = new SyncJournal(des.location);
+            if(des.journal.hasRecords())
+            {
+                postEvent(Events.Status, "Resuming " + getLabel(des) + "from journal of interrupted run...");
+                rollbackUpdates(des);
+            }
+        }
+        // save progress if program is closed while running
+        Thread checkpointHook = new Thread(() -> closeJournals());
+        Runtime.getRuntime().addShutdownHook(checkpointHook);
+
         try
         {
-            readInLocations(); // populate file list
+            readInLocations(false); // populate file list
+            if(control.isStopped())
+            {
+                stopped();
+                return;
+            }
             postEvent(Events.Status, "Comparing Differences...");
-            for(int i = 0; i < sourceList.size(); i++)
+            for(Destination des : destinations)
             {
-                // get file to search and search in hashTable of directories
-                SynchiveFile temp = sourceList.get(i); // file to parse through
-                
-                if(!temp.copyAllowed()) // if file determined to be bad, skip file
+                long span = Tracer.begin();
+                des.plan = planDestination(des);
+                Tracer.end("plan", span, des.location.getPath());
+                if(des.plan == null)
                 {
-                    postEvent(Events.ErrorOccurred, "Did not copy \"" + temp.getName() + "\" due to CRC mismatch.");
-                    continue;
+                    stopped();
+                    return;
                 }
-                
-                String dirUID = SynchiveDirectory.getDirectoryUniqueID(
-                    temp.getParentFile().getPath(), temp.getDepth(), srcLoc.getPath());
-                SynchiveDirectory dir = destinationList.get(dirUID);
-                boolean isRoot = temp.getParent().equals(srcLoc.getPath()) ? true : false; // if file is in root dir
+                postEvent(Events.Status, getLabel(des) + des.plan.getCount(ActionType.COPY) + " files (" +
+                    Utilities.formatBytes(des.plan.getBytes(ActionType.COPY)) + ") to copy, " +
+                    (des.plan.getCount(ActionType.UPDATE) > 0 ? des.plan.getCount(ActionType.UPDATE) + " changed files to update, " : "") +
+                    (des.plan.getCount(ActionType.LINK) > 0 ? des.plan.getCount(ActionType.LINK) + " duplicates to hardlink, " : "") +
+                    des.plan.getCount(ActionType.MOVE_TO_LEFTOVERS) + " files to move to leftovers");
+            }
 
-                if(dir != null && dir.getLookupTable().size() > 0) // if directory exist find file in directory
-                {
-                    if(!dir.doesFileExist(temp.getUniqueID())) // if file does not exist
-                    {
-                        try
-                        {
-                            copyFile(temp, StandardCopyOption.REPLACE_EXISTING); // Copy file over
-                            postEvent(Events.ProcessingFile, isRoot ? "Added \"" + temp.getName() + "\" to \"root\"" : 
-                                "Added \"" + temp.getName() + "\" to \"" + dir.getRelativeDirectoryPath() + "\"");
-                            dir.addFile(temp.getUniqueID(), SynchiveDirectory.FileFlag.FILE_EXIST); // add to hashTable
-                        }
-                        catch(IOException e)
-                        {
-                        }
-                    }
-                }
-                else
-                {
-                    // else make new directory and add to destinationList
-                    
-                    String relativeDir = isRoot ? File.separator : temp.getParentFile().getName();
-                    String relativeDirFromRoot = temp.getParent().substring(srcLoc.getPath().length());
-                    String destinationDir = desLoc.getPath() + relativeDirFromRoot;
-                    File fd = new File(destinationDir);
-                    
-                    if(!isRoot)
-                    {
-                        createDirectory(fd);
-                    }
-                    
-                    SynchiveDirectory newDir =
-                        isRoot ? new SynchiveDirectory(SynchiveDirectory.getDirectoryUniqueID(desLoc.getPath(), 0, desLoc.getPath()))
-                            : new SynchiveDirectory(SynchiveDirectory.getDirectoryUniqueID(fd.getPath(), temp.getDepth(), desLoc.getPath()));
-
-                    newDir.setRelativeDirectoryPath(relativeDir);
-                    
-                    try
-                    {
-                        copyFile(temp, StandardCopyOption.REPLACE_EXISTING); // copy file over
-                        newDir.addFile(temp.getUniqueID(), SynchiveDirectory.FileFlag.FILE_EXIST); // add file to new folder
-                        destinationList.put(newDir.getUniqueID(), newDir); // add newDir to folderHashTable
-                    }
-                    catch(IOException e)
-                    {
-                    }
-                    postEvent(Events.ProcessingFile, isRoot ? 
-                        "Added \"" + temp.getName() + "\" to \"root\"" :
-                        "Added \"" + temp.getName() + "\" to \"" + newDir.getRelativeDirectoryPath() + "\"");
-                }
+            long span = Tracer.begin();
+            boolean executed = execute();
+            Tracer.end("execute", span);
+            if(!executed)
+            {
+                stopped();
+                return;
             }
-            
-            // after completing all files
-//            postEvent(Events.ProcessingFile, "Rewritting CRC file...");
-            desReader.writeToFile(true); // writes idFile for destination
-            cleanupDestination(); // cleanup
-            postEvent(Events.Status, "Operation Completed");
-            postEvent(Events.RunningStatus, 
-                new Object[] {RunningStatusEvents.Completed, "Completed"});
+            completed();
         }
         catch (IOException | Error e)
         {
+            closeJournals();
+        }
+        finally
+        {
+            closeIndexes();
+            if(config.getTraceFlag())
+            {
+                writeTrace();
+            }
+            try
+            {
+                Runtime.getRuntime().removeShutdownHook(checkpointHook);
+            }
+            catch (IllegalStateException e)
+            {
+                // already shutting down, hook will run
+            }
         }
     }
 
     /**
-     * Makes directory for file. Will recurse through ensuring all directories created.
-     * 
-     * @param location File with missing directory
-     * @throws IOException Throws unable to make directory
+     * Plans the sync of a destination with SyncPlanner, or MergeJoinPlanner if enabled in settings.
+     *
+     * @param des Destination read in
+     * @return Plan of actions, null if stopped
+     * @throws IOException Unable to read the destination catalog
      */
-    private void createDirectory(File location) throws IOException
+    private SyncPlan planDestination(Destination des) throws IOException
     {
-        // recurse through parent directories to ensure there is a proper path
-        Path parentDir = location.getParentFile().toPath();
-        if(!Files.exists(parentDir)) 
+        if(config.getMergeJoinFlag())
+        {
+            try
+            {
+                return new MergeJoinPlanner(srcLoc, des.location, config).plan(sourceList,
+                    CatalogReader.fromMapping(des.mapping, config.getChecksumAlgorithm()), control);
+            }
+            catch (IOException e)
+            {
+                postEvent(Events.ErrorOccurred, "Unable to merge catalogs of " + des.location.getPath());
+                throw e;
+            }
+        }
+        SyncPlanner planner = new SyncPlanner(srcLoc, des.location, des.mapping, config);
+        planner.setIndex(des.index);
+        planner.setFilter(des.reader == null ? null : des.reader.getFilter());
+        SyncPlan plan = planner.plan(sourceList, control);
+        if(plan != null && des.reader != null && des.reader.getFilter() != null)
         {
-            createDirectory(location.getParentFile());
+            postEvent(Events.Status, getLabel(des) + des.reader.getFilter());
         }
-        
-        location.mkdir(); // makes the directory
-        postEvent(Events.ProcessingFile, "Directory \"" + location.getName() + "\" Created");
+        return plan;
     }
 
     /**
-     * Copies file from source to destination with same name and relative directory.
-     * 
-     * @param file File to be copied over to
-     * @param op Copy options
-     * @throws IOException Throws unable to copy file
+     * Compute what a sync to the first destination would do without touching disk.
+     *
+     * @return Plan of actions, null if stopped
      */
-    private void copyFile(SynchiveFile file, StandardCopyOption op) throws IOException
+    public SyncPlan planLocations()
     {
-        String relativePath = file.getParent().substring(srcLoc.getPath().length());
-        String destinationPath = desLoc.getPath() + relativePath + File.separator + file.getName();
+        readInLocations(true);
+        if(control.isStopped())
+        {
+            return null;
+        }
+        postEvent(Events.Status, "Comparing Differences...");
+        Destination des = destinations.get(0);
+        SyncPlan plan;
         try
         {
-            Files.copy(Paths.get(file.getPath()), Paths.get(destinationPath), op);
-            String desCRC = Utilities.calculateCRC32(new File(destinationPath));
-            if(file.getCRC().compareToIgnoreCase(desCRC) != 0)
-            {
-                postEvent(Events.ErrorOccurred, "Copy CRC MISMATCH for file: " + file.getName() + 
-                    " srcCRC: " + file.getCRC() + " desCRC: " + desCRC);
-            }
+            plan = planDestination(des);
         }
-        catch (IOException | UnsupportedOperationException | SecurityException e)
+        catch (IOException e)
         {
-            postEvent(Events.ErrorOccurred, "Unable to copy file " + file.getName());
-            throw new IOException();
+            return null;
         }
-        catch (ChecksumException e)
+        if(plan != null)
         {
-            postEvent(Events.ErrorOccurred, e.getMessage());
+            SyncPlanner.planRenames(plan, srcReader.getPendingRenames(), srcLoc, ActionType.RENAME_SOURCE);
+            if(des.reader != null)
+            {
+                SyncPlanner.planRenames(plan, des.reader.getPendingRenames(), des.location, ActionType.RENAME_DESTINATION);
+            }
         }
+        return plan;
     }
 
     /**
-     * Moves file from destination to leftovers folder. Will remove original file.
-     * 
-     * @param file File to be moved
-     * @param op Copy options
-     * @throws IOException Throws unable to move file
+     * Execute a plan created by planLocations on the first destination.
+     * Destination is read in (without renaming) to keep its idFile up to date.
+     *
+     * @param plan Plan to execute
      */
-    private void moveFile(File file, StandardCopyOption op) throws IOException
+    public void executePlan(SyncPlan plan)
     {
-        String relativePath = file.getParent().substring(desLoc.getPath().length());
-        String destinationPath = desLoc.getPath() + File.separator + LEFTOVER_FOLDER + relativePath + File.separator + file.getName();
-
+        Destination des = destinations.get(0);
+        des.journal = new SyncJournal(des.location);
+        rollbackUpdates(des);
+        des.plan = plan;
         try
         {
-            Files.move(Paths.get(file.getPath()), Paths.get(destinationPath), op);
-            postEvent(Events.ProcessingFile, 
-                "File \"" + file.getName() + "\" in \"" + relativePath + 
-                "\" not found in source. Moved to \"" + LEFTOVER_FOLDER + "\"");
+            des.reader = new DestinationFileProcessor(des.location, control, null, true, config);
+            des.mapping = des.reader.getFiles();
+            if(!control.isStopped() && execute())
+            {
+                completed();
+            }
+            else
+            {
+                stopped();
+            }
         }
-        catch (IOException e)
+        catch (IOException | Error e)
         {
-            postEvent(Events.ErrorOccurred, "Unable to move file: " + file.getName() + " to \"" + LEFTOVER_FOLDER + "\"");
-            throw new IOException();
+            closeJournals();
         }
     }
 
     /**
-     * Removes empty directories. Will recurse through removing empty parent directories.
-     * 
-     * @param file Directory to remove
-     * @throws IOException Throws unable to remove directory.
+     * Execute the plan of every destination. With several destinations, each destination is prepared first,
+     * then copies are fanned out so a source file is read once, then links are made.
+     *
+     * @return False if stopped before every action was executed
+     * @throws IOException Unable to write idFile
      */
-    private void removeEmptyDirectories(File file) throws IOException
+    private boolean execute() throws IOException
     {
-        if(file.isDirectory() && file.list().length == 0)
+        for(Destination des : destinations)
         {
-            File parent = file.getParentFile(); // get parent directory
-            file.delete(); // delete current directory
-            postEvent(Events.ProcessingFile, "Deleted empty directory \"" + file.getName());
+            des.executor = new SyncPlanExecutor(srcLoc, des.location, des.mapping, control, des.journal, config);
+        }
 
-            if(parent.getPath().equals(desLoc.getPath())) { // return if root directory
-                return;
-            } 
-            
-            removeEmptyDirectories(parent);
+        if(destinations.size() == 1)
+        {
+            Destination des = destinations.get(0);
+            if(!des.executor.execute(des.plan))
+            {
+                return false;
+            }
+        }
+        else
+        {
+            for(Destination des : destinations)
+            {
+                des.ordered = des.executor.start(des.plan);
+                if(!des.executor.executeBeforeCopies(des.ordered))
+                {
+                    return false;
+                }
+            }
+            if(!fanOutCopies())
+            {
+                return false;
+            }
+            for(Destination des : destinations)
+            {
+                if(!des.executor.executeAfterCopies(des.ordered))
+                {
+                    return false;
+                }
+            }
+        }
+
+        for(Destination des : destinations)
+        {
+            des.reader.writeToFile(false); // writes idFile for destination, moved files are no longer in mapping
         }
+        return true;
     }
 
     /**
-     * Cleanup directory by moving files not found in source into a leftover directory and removing empty directories.
+     * Copies each source file once to every destination needing it. Each copy is verified against
+     * the checksum of the single read. Copies follow the order of the first destination needing them.
+     *
+     * @return False if stopped before every copy was executed
      */
-    private void cleanupDestination()
+    private boolean fanOutCopies()
     {
-        try
+        LinkedHashMap<String, ArrayList<Destination>> targets = new LinkedHashMap<String, ArrayList<Destination>>();
+        LinkedHashMap<String, ArrayList<Action>> actions = new LinkedHashMap<String, ArrayList<Action>>();
+        for(Destination des : destinations)
         {
-            //TODO grab element directory instead of key
-            Enumeration<String> enu = destinationList.keys(); // gets each directory in destination
-            while(enu.hasMoreElements()) // go through each directory
+            for(Action action : des.ordered)
             {
-                String folderName = enu.nextElement();
-                // go through files in folder
-                SynchiveDirectory dir = destinationList.get(folderName);
-                Enumeration<String> enuFiles = dir.getLookupTable().keys();
-                while(enuFiles.hasMoreElements()) // go through each file in directory
+                if(action.getType() != ActionType.COPY)
+                {
+                    continue;
+                }
+                if(!targets.containsKey(action.getSource()))
                 {
-                    String fileCRC = enuFiles.nextElement();
-                    SynchiveDirectory.FileFlag val = dir.getValueForKey(fileCRC);
-                    if(val != null)
-                    {
-                        if(val == SynchiveDirectory.FileFlag.FILE_NOT_EXIST)
-                        {
-                            // make leftover folder for not found ones
-                            File leftoversFolder = new File(desLoc.getPath() + File.separator + LEFTOVER_FOLDER);
-                            if(!Files.exists(leftoversFolder.toPath()))
-                                createDirectory(leftoversFolder);
-
-                            // Get file that needs to be removed
-                            String filePath = getFilePathFromFileCRC(desLoc, dir, fileCRC);
-                            File toRemove = new File(filePath);
-                            String toRemoveLeftoverPath = getLeftoverPath(toRemove);
-                            File toRemoveLeftover = new File(toRemoveLeftoverPath);
-                            if(!Files.exists(toRemoveLeftover.getParentFile().toPath()))
-                                createDirectory(toRemoveLeftover.getParentFile());
-
-                            moveFile(toRemove, StandardCopyOption.REPLACE_EXISTING);
-                            removeEmptyDirectories(toRemove.getParentFile());
-                        }
-                    }
+                    targets.put(action.getSource(), new ArrayList<Destination>());
+                    actions.put(action.getSource(), new ArrayList<Action>());
                 }
+                targets.get(action.getSource()).add(des);
+                actions.get(action.getSource()).add(action);
             }
         }
+
+        CopyEngine copyEngine = new CopyEngine();
+        for(String source : targets.keySet())
+        {
+            if(!control.checkpoint())
+            {
+                return false;
+            }
+            ArrayList<SyncPlanExecutor> executors = new ArrayList<SyncPlanExecutor>();
+            ArrayList<Action> copies = new ArrayList<Action>();
+            ArrayList<File> files = new ArrayList<File>();
+            for(int i = 0; i < targets.get(source).size(); i++)
+            {
+                SyncPlanExecutor executor = targets.get(source).get(i).executor;
+                Action action = actions.get(source).get(i);
+                try
+                {
+                    files.add(executor.prepareCopy(action));
+                    executors.add(executor);
+                    copies.add(action);
+                }
+                catch (IOException e)
+                {
+                    // directory error already posted, other destinations still get the copy
+                }
+            }
+            if(files.isEmpty())
+            {
+                continue;
+            }
+
+            IOException[] errors = new IOException[files.size()];
+            boolean verify = config.getVerifyCopyFlag(); // checksum the bytes as they are written, same as a single copy
+            String crc;
+            long span = Tracer.begin();
+            Object event = FlightRecorder.begin(EventType.FILE_COPIED);
+            boolean succeeded = false;
+            try
+            {
+                crc = copyEngine.copy(new File(srcLoc.getPath() + source), files.toArray(new File[files.size()]),
+                    verify ? executors.get(0).getChecksumAlgorithm() : null, errors);
+                succeeded = Collections.frequency(Arrays.asList(errors), null) == errors.length; // every destination copied
+            }
+            catch (IOException | SecurityException e)
+            {
+                for(int i = 0; i < executors.size(); i++)
+                {
+                    executors.get(i).copyFailed(copies.get(i));
+                }
+                continue;
+            }
+            finally
+            {
+                Tracer.end(verify ? "copy and verify" : "copy", span, srcLoc.getPath() + source);
+                if(FlightRecorder.end(event))
+                {
+                    FlightRecorder.commitFileCopied(event, srcLoc.getPath() + source, files.get(0).getPath(), files.size(),
+                        copies.get(0).getSize(), verify, succeeded);
+                }
+            }
+            for(int i = 0; i < executors.size(); i++)
+            {
+                if(errors[i] != null)
+                {
+                    executors.get(i).copyFailed(copies.get(i));
+                    continue;
+                }
+                try
+                {
+                    executors.get(i).copyCompleted(copies.get(i), crc);
+                }
+                catch (IOException e)
+                {
+                    postEvent(Events.ErrorOccurred, "Unable to write to journal.");
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param des Destination
+     * @return Name of destination to prefix messages with when syncing several, otherwise empty
+     */
+    private String getLabel(Destination des)
+    {
+        return destinations.size() > 1 ? "\"" + des.location.getName() + "\": " : "";
+    }
+
+    /**
+     * Writes the spans traced during the run to the trace file in the working directory.
+     */
+    private void writeTrace()
+    {
+        File traceFile = new File(Tracer.TRACE_FILE_NAME).getAbsoluteFile();
+        try
+        {
+            int spans = Tracer.stop(traceFile);
+            postEvent(Events.Status, "Trace of " + spans + " spans written to \"" + traceFile.getPath() + "\"");
+        }
         catch (IOException e)
         {
-            postEvent(Events.ErrorOccurred, "Unable to cleanup destination");
+            postEvent(Events.ErrorOccurred, "Unable to write trace to \"" + traceFile.getPath() + "\"");
         }
     }
 
     /**
-     * @param file File to be moved
-     * @return New location for file
+     * Removes the journals and notifies that the run completed.
      */
-    private String getLeftoverPath(File file)
+    private void completed()
     {
-        String retVal = desLoc.getPath() + File.separator + LEFTOVER_FOLDER + file.getPath().substring(desLoc.getPath().length());
-        return retVal;
+        for(Destination des : destinations)
+        {
+            des.journal.delete(); // progress now stored in idFile
+        }
+        postEvent(Events.Status, "Operation Completed");
+        postEvent(Events.RunningStatus,
+            new Object[] {RunningStatusEvents.Completed, "Completed"});
     }
 
     /**
-     * @param desLoc Destination path
-     * @param fileDir Directory of file
-     * @param fileName Name of file
-     * @return Path of file
+     * Saves progress into the journals and notifies that the run was stopped.
      */
-    private String getFilePathFromFileCRC(File desLoc, SynchiveDirectory fileDir, String fileName)
+    private void stopped()
     {
-        String[] splitDir = fileDir.getUniqueID().split(": ");
-        String[] splitFile = fileName.split("\"");
-        String retVal = desLoc.getPath() + (splitDir.length == 2 ? splitDir[1] : "") + File.separator + splitFile[1];
-        return retVal;
+        closeJournals();
+        postEvent(Events.Status, "Stopped. Progress saved, next run will resume.");
+        postEvent(Events.RunningStatus,
+            new Object[] {RunningStatusEvents.Stopped, "Stopped"});
     }
-    
+
+    /**
+     * Checkpoints and closes every opened journal.
+     */
+    private void closeJournals()
+    {
+        for(Destination des : destinations)
+        {
+            if(des.journal != null)
+            {
+                des.journal.close();
+            }
+        }
+    }
+
+    /**
+     * Pause the run at the next file. Progress so far is checkpointed.
+     */
+    public void pause()
+    {
+        control.pause();
+        for(Destination des : destinations)
+        {
+            if(des.journal == null)
+            {
+                continue;
+            }
+            try
+            {
+                des.journal.checkpoint();
+            }
+            catch (IOException e)
+            {
+                postEvent(Events.ErrorOccurred, "Unable to write to journal.");
+            }
+        }
+        postEvent(Events.RunningStatus,
+            new Object[] {RunningStatusEvents.Paused, "Paused"});
+    }
+
+    /**
+     * Resume a paused run
+     */
+    public void resume()
+    {
+        control.resume();
+        postEvent(Events.RunningStatus,
+            new Object[] {RunningStatusEvents.Running, "Running"});
+    }
+
+    /**
+     * Stop the run at the next file. Progress is kept for the next run.
+     */
+    public void stop()
+    {
+        control.stop();
+    }
+
     /**
      * Short handed method
      * @param e Events
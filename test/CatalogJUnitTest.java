@@ -0,0 +1,235 @@
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import fileManagement.CatalogDiff;
+import fileManagement.CatalogEntry;
+import fileManagement.CatalogInventory;
+import fileManagement.CatalogInventory.Group;
+import fileManagement.CatalogReader;
+import fileManagement.ShardedDirectoryTable;
+import fileManagement.fileProcessor.DestinationFileProcessor;
+import support.Utilities;
+import synchive.Settings;
+import synchive.SynchiveDiff;
+
+/**
+ * JUnit Test for reading and comparing catalogs (idFiles)
+ *
+ * @author Tony Hsu
+ */
+public class CatalogJUnitTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File write(String name, String... lines) throws IOException
+    {
+        File file = folder.newFile(name);
+        FileWriter writer = new FileWriter(file);
+        writer.write("Synchive v1.3 - checksum=CRC32 - root=" + folder.getRoot().getPath() + "\n");
+        for(String line : lines)
+        {
+            writer.write(line + "\n");
+        }
+        writer.close();
+        return file;
+    }
+
+    @Test
+    public void testUnsortedCatalog() throws Exception
+    {
+        File idFile = write("unsorted.txt", "~0: ", "00000002 \"b.txt\" 2 1", "00000001 \"a.txt\"");
+        CatalogReader reader = new CatalogReader(idFile);
+        reader.next();
+        try
+        {
+            reader.next();
+            fail("Unsorted catalog streamed");
+        }
+        catch (IOException e)
+        {
+            // expected
+        }
+        reader.close();
+
+        reader = CatalogReader.openSorted(idFile); // sorted in memory instead
+        CatalogEntry entry = reader.next();
+        assertEquals("a.txt", entry.getName());
+        assertEquals(-1, entry.getSize());
+        entry = reader.next();
+        assertEquals("b.txt", entry.getName());
+        assertEquals(2, entry.getSize());
+        assertEquals(null, reader.next());
+        reader.close();
+
+        // streamed until the first entry out of order, the rest is then sorted in memory
+        idFile = write("partly.txt", "~0: ", "00000001 \"a.txt\"", "00000004 \"d.txt\"", "00000003 \"c.txt\"",
+            "~1: " + File.separator + "sub", "00000002 \"b.txt\"");
+        reader = CatalogReader.open(idFile);
+        ArrayList<String> names = new ArrayList<String>();
+        while((entry = reader.next()) != null)
+        {
+            names.add(entry.getName());
+        }
+        reader.close();
+        assertEquals(Arrays.asList("a.txt", "d.txt", "c.txt", "b.txt"), names); // each entry once
+    }
+
+    @Test
+    public void testDiff() throws Exception
+    {
+        String sub = File.separator + "sub";
+        File before = write("before.txt",
+            "~0: ", "0000000a \"keep.txt\" 10 1", "0000000b \"edit.txt\" 20 1", "0000000c \"old.txt\" 30 1",
+            "~1: " + sub, "0000000d \"gone.txt\" 40 1");
+        File after = write("after.txt",
+            "~0: ", "0000000e \"edit.txt\" 25 2", "0000000a \"keep.txt\" 10 1", "0000000f \"new.txt\" 50 2",
+            "~1: " + sub, "0000000c \"old.txt\" 30 1");
+
+        CatalogDiff diff = CatalogDiff.compare(before, after);
+        assertEquals(1, diff.getUnchanged());
+        assertEquals(1, diff.getChanged().size());
+        assertEquals(1, diff.getMoved().size());
+        assertEquals(sub + File.separator + "old.txt", diff.getMoved().get(0)[1].getRelativePath());
+        assertEquals(1, diff.getAdded().size());
+        assertEquals(50, CatalogDiff.getBytes(diff.getAdded()));
+        assertEquals(1, diff.getRemoved().size());
+        assertEquals("gone.txt", diff.getRemoved().get(0).getName());
+    }
+
+    @Test
+    public void testChangeLog() throws Exception
+    {
+        File src = folder.newFolder("src");
+        File des = folder.newFolder("des");
+        FileWriter writer = new FileWriter(new File(src, "a.txt"));
+        writer.write("a");
+        writer.close();
+        new SynchiveDiff(src, des).syncLocations();
+
+        File idFile = new File(des, Utilities.ID_FILE_NAME);
+        File logFile = new File(des, Utilities.ID_LOG_FILE_NAME);
+        long length = idFile.length();
+        assertEquals(true, logFile.exists()); // copy appended to log, idFile not rewritten
+
+        writer = new FileWriter(new File(src, "b.txt"));
+        writer.write("b");
+        writer.close();
+        new SynchiveDiff(src, des).syncLocations();
+        assertEquals(length, idFile.length());
+
+        DestinationFileProcessor reader = new DestinationFileProcessor(des);
+        assertEquals(2, reader.getFiles().get("~0: ").getLookupTable().size());
+        CatalogReader catalog = new CatalogReader(idFile);
+        assertEquals("a.txt", catalog.next().getName());
+        assertEquals("b.txt", catalog.next().getName());
+        assertEquals(null, catalog.next());
+        catalog.close();
+
+        reader.compact();
+        assertEquals(false, logFile.exists());
+        assertEquals(true, idFile.length() > length);
+        assertEquals(2, new DestinationFileProcessor(des).getFiles().get("~0: ").getLookupTable().size());
+    }
+
+    @Test
+    public void testShards() throws Exception
+    {
+        File src = folder.newFolder("src");
+        File des = folder.newFolder("des");
+        String[] paths = {"r.txt", "a" + File.separator + "x.txt", "b" + File.separator + "y.txt"};
+        for(String path : paths)
+        {
+            File file = new File(src, path);
+            file.getParentFile().mkdirs();
+            FileWriter writer = new FileWriter(file);
+            writer.write(path);
+            writer.close();
+        }
+        Settings.getInstance().setCatalogShardDepth(1);
+        try
+        {
+            new SynchiveDiff(src, des).syncLocations();
+            File shard = new File(new File(des, "a"), Utilities.ID_FILE_NAME);
+            assertEquals(true, shard.exists());
+            assertEquals(true, new File(des, Utilities.MANIFEST_FILE_NAME).exists());
+
+            DestinationFileProcessor reader = new DestinationFileProcessor(des);
+            ShardedDirectoryTable files = (ShardedDirectoryTable)reader.getFiles();
+            assertEquals(true, files.hasPending()); // shards read in when looked up
+            assertEquals(1, files.get("~1: " + File.separator + "a").getLookupTable().size());
+            assertEquals(true, files.hasPending());
+            assertEquals(3, files.size());
+
+            CatalogReader catalog = CatalogReader.open(new File(des, Utilities.ID_FILE_NAME));
+            for(String path : paths)
+            {
+                assertEquals(File.separator + path, catalog.next().getRelativePath());
+            }
+            assertEquals(null, catalog.next());
+            catalog.close();
+
+            Settings.getInstance().setCatalogShardDepth(0); // back to a single idFile
+            new DestinationFileProcessor(des);
+            assertEquals(false, shard.exists());
+            assertEquals(false, new File(des, Utilities.MANIFEST_FILE_NAME).exists());
+            assertEquals(1, new DestinationFileProcessor(des).getFiles().get("~1: " + File.separator + "b").getLookupTable().size());
+        }
+        finally
+        {
+            Settings.getInstance().setCatalogShardDepth(0);
+        }
+    }
+
+    @Test
+    public void testInventory() throws Exception
+    {
+        File des = folder.newFolder("des");
+        String sep = File.separator;
+        String[] files = {"a" + sep + "x.MKV", "a" + sep + "b" + sep + "y.mkv", "c" + sep + "z.txt", "readme"};
+        for(String name : files)
+        {
+            File file = new File(des, name);
+            file.getParentFile().mkdirs();
+            FileWriter writer = new FileWriter(file);
+            writer.write(name.length() > 6 ? "0123456789" : "0123");
+            writer.close();
+        }
+
+        CatalogInventory walked = CatalogInventory.of(des);
+        assertEquals(false, walked.isFromCatalog());
+        new DestinationFileProcessor(des); // writes the idFile
+        CatalogInventory inventory = CatalogInventory.of(des);
+        assertEquals(true, inventory.isFromCatalog());
+
+        for(CatalogInventory found : new CatalogInventory[] {walked, inventory})
+        {
+            assertEquals(4, found.getTotal()[0]);
+            assertEquals(34, found.getTotal()[1]); // "readme" holds 4 bytes, others 10
+            assertEquals(2, found.get(Group.EXTENSION, ".mkv")[0]); // extensions grouped regardless of case
+            assertEquals(20, found.get(Group.EXTENSION, ".mkv")[1]);
+            assertEquals(1, found.get(Group.EXTENSION, "(none)")[0]);
+            assertEquals(2, found.get(Group.DIRECTORY, sep + "a")[0]);
+            assertEquals(1, found.get(Group.DIRECTORY, sep)[0]);
+            assertEquals(4, found.get(Group.SIZE, "< 4 KB")[0]);
+            assertEquals(".mkv", found.getKeys(Group.EXTENSION).get(0)); // most bytes first
+        }
+
+        File csv = new File(folder.getRoot(), "inventory.csv");
+        inventory.writeToCSV(csv);
+        List<String> lines = Files.readAllLines(csv.toPath());
+        assertEquals("group,key,files,bytes,percent", lines.get(0));
+        assertEquals("extension,.mkv,2,20,58.82", lines.get(1));
+    }
+}
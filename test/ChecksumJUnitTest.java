@@ -0,0 +1,90 @@
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import support.checksum.ChecksumAlgorithm;
+import support.checksum.ChecksumProvider;
+
+/**
+ * JUnit Test for checksum algorithms
+ *
+ * @author Tony Hsu
+ */
+public class ChecksumJUnitTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private String hash(ChecksumAlgorithm algorithm, String text)
+    {
+        byte[] data = text.getBytes(StandardCharsets.UTF_8);
+        ChecksumProvider provider = algorithm.newProvider();
+        provider.update(data, 0, data.length);
+        return provider.getHexValue();
+    }
+
+    @Test
+    public void testKnownValues()
+    {
+        assertEquals("cbf43926", hash(ChecksumAlgorithm.CRC32, "123456789"));
+        assertEquals("e3069283", hash(ChecksumAlgorithm.CRC32C, "123456789"));
+        assertEquals("ef46db3751d8e999", hash(ChecksumAlgorithm.XXHASH64, ""));
+        assertEquals("44bc2cf5ad770999", hash(ChecksumAlgorithm.XXHASH64, "abc"));
+        assertEquals("fbcea83c8a378bf1", hash(ChecksumAlgorithm.XXHASH64, "Nobody inspects the spammish repetition"));
+        assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad", hash(ChecksumAlgorithm.SHA256, "abc"));
+    }
+
+    @Test
+    public void testChunkedUpdates()
+    {
+        byte[] data = new byte[1000];
+        for(int i = 0; i < data.length; i++)
+        {
+            data[i] = (byte)(i * 31);
+        }
+        for(ChecksumAlgorithm algorithm : ChecksumAlgorithm.values())
+        {
+            ChecksumProvider whole = algorithm.newProvider();
+            whole.update(data, 0, data.length);
+            ChecksumProvider chunked = algorithm.newProvider();
+            for(int off = 0, len = 1; off < data.length; off += len, len = len % 37 + 1)
+            {
+                chunked.update(data, off, Math.min(len, data.length - off));
+            }
+            String expected = whole.getHexValue(); // digests reset once read
+            assertEquals(algorithm.toString(), expected, chunked.getHexValue());
+            assertEquals(algorithm.getLength(), expected.length());
+            
+            ChecksumProvider direct = algorithm.newProvider(); // read in place where supported
+            ByteBuffer buffer = ByteBuffer.allocateDirect(data.length);
+            buffer.put(data);
+            ((Buffer)buffer).flip();
+            direct.update(buffer);
+            assertEquals(algorithm.toString(), expected, direct.getHexValue());
+            assertFalse(buffer.hasRemaining());
+        }
+    }
+
+    @Test
+    public void testCalculateFile() throws Exception
+    {
+        File file = folder.newFile("abc.txt");
+        FileWriter writer = new FileWriter(file);
+        writer.write("abc");
+        writer.close();
+
+        String[] values = ChecksumAlgorithm.calculate(file, ChecksumAlgorithm.XXHASH64, ChecksumAlgorithm.CRC32);
+        assertEquals("44bc2cf5ad770999", values[0]);
+        assertEquals("352441c2", values[1]);
+        assertEquals(ChecksumAlgorithm.XXHASH64, ChecksumAlgorithm.fromName("xxhash64"));
+        assertEquals(ChecksumAlgorithm.CRC32, ChecksumAlgorithm.fromName("unknown"));
+    }
+}
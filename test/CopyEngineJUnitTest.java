@@ -0,0 +1,100 @@
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import support.CopyEngine;
+import support.DeltaEngine;
+import support.checksum.ChecksumAlgorithm;
+
+/**
+ * JUnit Test for CopyEngine and DeltaEngine
+ *
+ * @author Tony Hsu
+ */
+public class CopyEngineJUnitTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File createFile(String name, int size) throws Exception
+    {
+        File file = folder.newFile(name);
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(data);
+        out.close();
+        return file;
+    }
+
+    @Test
+    public void testCopy() throws Exception
+    {
+        File source = createFile("source.bin", 3 * 1024 * 1024 + 17); // spans several buffers
+        File destination = new File(folder.getRoot(), "destination.bin");
+
+        assertEquals(source.length(), new CopyEngine().copy(source, destination));
+        assertArrayEquals(Files.readAllBytes(source.toPath()), Files.readAllBytes(destination.toPath()));
+
+        String crc = new CopyEngine(64 * 1024).copy(source, destination, ChecksumAlgorithm.CRC32);
+        assertEquals(ChecksumAlgorithm.CRC32.calculate(source), crc);
+        assertArrayEquals(Files.readAllBytes(source.toPath()), Files.readAllBytes(destination.toPath()));
+        
+        File other = new File(folder.getRoot(), "other.bin");
+        IOException[] errors = new IOException[2];
+        assertNull(new CopyEngine().copy(source, new File[] {destination, other}, null, errors)); // not checksummed
+        assertArrayEquals(new IOException[2], errors);
+        assertArrayEquals(Files.readAllBytes(source.toPath()), Files.readAllBytes(other.toPath()));
+    }
+
+    @Test
+    public void testReplaceKeepsHardlink() throws Exception
+    {
+        File source = createFile("source.bin", 100);
+        File original = createFile("original.bin", 200);
+        File linked = new File(folder.getRoot(), "linked.bin");
+        Files.createLink(linked.toPath(), original.toPath());
+
+        new CopyEngine().copy(source, linked, ChecksumAlgorithm.XXHASH64);
+        assertEquals(100, linked.length());
+        assertEquals(200, original.length()); // other link untouched
+    }
+
+    @Test
+    public void testDeltaUpdate() throws Exception
+    {
+        File source = createFile("source.bin", 1024 * 1024);
+        File destination = new File(folder.getRoot(), "destination.bin");
+        new CopyEngine().copy(source, destination);
+
+        RandomAccessFile changed = new RandomAccessFile(source, "rw");
+        changed.seek(300 * 1024);
+        changed.write(~changed.read());
+        changed.close();
+
+        DeltaEngine engine = new DeltaEngine(64 * 1024);
+        assertEquals(ChecksumAlgorithm.CRC32.calculate(source), engine.update(source, destination, ChecksumAlgorithm.CRC32));
+        assertEquals(64 * 1024, engine.getBytesWritten()); // only the changed block
+        assertArrayEquals(Files.readAllBytes(source.toPath()), Files.readAllBytes(destination.toPath()));
+        assertFalse(Files.exists(DeltaEngine.getUndoFile(destination)));
+
+        byte[] shorter = Arrays.copyOf(Files.readAllBytes(source.toPath()), 1000 * 1000);
+        Files.write(source.toPath(), shorter);
+        engine.update(source, destination, ChecksumAlgorithm.CRC32);
+        assertArrayEquals(shorter, Files.readAllBytes(destination.toPath()));
+
+        Files.write(source.toPath(), new byte[1000 * 1000]); // every block changed
+        assertNull(engine.update(source, destination, ChecksumAlgorithm.CRC32));
+        assertArrayEquals(shorter, Files.readAllBytes(destination.toPath())); // left for a full copy
+    }
+}
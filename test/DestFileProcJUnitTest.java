@@ -6,8 +6,13 @@ import static support.Utilities.*;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.Hashtable;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
 
 import org.junit.Rule;
 import org.junit.Test;
@@ -15,6 +20,7 @@ import org.junit.rules.TemporaryFolder;
 
 import fileManagement.SynchiveDirectory;
 import fileManagement.fileProcessor.DestinationFileProcessor;
+import support.TreeGenerator;
 
 public class DestFileProcJUnitTest
 {
@@ -117,4 +123,45 @@ public class DestFileProcJUnitTest
             
         } 
     }
+    
+    @Test
+    public void testGeneratedTree() throws Exception
+    {
+        File a = folder.newFolder("a");
+        TreeGenerator generator = new TreeGenerator(7);
+        generator.setFiles(60);
+        generator.setShape(2, 3);
+        generator.setDuplicateRatio(0.3);
+        generator.setCrcNameRatio(0.3);
+        generator.generate(a);
+        assertEquals(13, generator.getDirectoriesGenerated());
+        assertEquals(60, generator.getFilesGenerated());
+        assertTrue(generator.getDuplicatesGenerated() > 0);
+        
+        // idFile generated is the one a sync writes after reading every file
+        File generatedIDFile = new File(a, ID_FILE_NAME);
+        List<String> generated = Files.readAllLines(generatedIDFile.toPath());
+        generatedIDFile.delete();
+        new DestinationFileProcessor(a);
+        List<String> written = Files.readAllLines(generatedIDFile.toPath());
+        assertEquals(written.subList(1, written.size()), generated.subList(1, generated.size()));
+        assertTrue(generated.stream().anyMatch((str) -> str.contains(" [")));
+        
+        // same seed, same tree
+        File b = folder.newFolder("b");
+        generator.setIDFileFlag(false);
+        generator.generate(b);
+        assertFalse(new File(b, ID_FILE_NAME).exists());
+        Collection<File> files = FileUtils.listFiles(a, null, true);
+        assertEquals(61, files.size());
+        for(File file : files)
+        {
+            if(!file.getName().equals(ID_FILE_NAME))
+            {
+                File other = new File(b, file.getPath().substring(a.getPath().length()));
+                assertTrue(FileUtils.contentEquals(file, other));
+                assertEquals(file.lastModified(), other.lastModified());
+            }
+        }
+    }
 }
@@ -0,0 +1,59 @@
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import support.Utilities;
+import support.checksum.ChecksumAlgorithm;
+import support.jfr.FlightRecorder;
+
+/**
+ * JUnit Test for Flight Recorder events, only built where jdk.jfr is available
+ *
+ * @author Tony Hsu
+ */
+public class FlightRecorderJUnitTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testFlightRecorderEvents() throws Exception
+    {
+        File file = folder.newFile("data.txt");
+        FileWriter writer = new FileWriter(file);
+        writer.write("123456789");
+        writer.close();
+
+        assertEquals(true, FlightRecorder.isAvailable());
+        Recording recording = new Recording();
+        recording.enable("synchive.FileHashed");
+        recording.start();
+        ChecksumAlgorithm.calculate(file, ChecksumAlgorithm.XXHASH64, ChecksumAlgorithm.CRC32);
+        Utilities.calculateCRC32(file);
+        recording.stop();
+        Path dump = folder.getRoot().toPath().resolve("run.jfr");
+        recording.dump(dump);
+        recording.close();
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(dump);
+        assertEquals(2, events.size());
+        for(RecordedEvent event : events)
+        {
+            assertEquals(file.getPath(), event.getString("path"));
+            assertEquals(9, event.getLong("bytes"));
+        }
+        assertEquals("[XXHASH64, CRC32]", events.get(0).getString("algorithms"));
+        assertEquals("CRC32", events.get(1).getString("algorithms"));
+    }
+}
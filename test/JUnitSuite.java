@@ -14,6 +14,11 @@ import org.junit.runners.Suite;
    UtilitiesJUnitTest.class,
    DestFileProcJUnitTest.class,
    SrcFileProcJUnitTest.class,
+   SyncJournalJUnitTest.class,
+   SyncPlanJUnitTest.class,
+   ChecksumJUnitTest.class,
+   CopyEngineJUnitTest.class,
+   CatalogJUnitTest.class,
 })
 
 public class JUnitSuite {
@@ -14,7 +14,9 @@ import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
 import fileManagement.SynchiveFile;
+import fileManagement.fileProcessor.DestinationFileProcessor;
 import fileManagement.fileProcessor.SourceFileProcessor;
+import synchive.Settings;
 
 
 public class SrcFileProcJUnitTest
@@ -99,4 +101,67 @@ public class SrcFileProcJUnitTest
             assertEquals(true, file.canRead());
         } 
     }
+    
+    @Test
+    public void testDeferredRenames() throws Exception
+    {
+        Settings s = Settings.getInstance();
+        boolean crcInFilename = s.getCrcInFilenameFlag();
+        String extensions = s.getAddCrcToExtensionTypeText();
+        try
+        {
+            s.setCrcInFilenameFlag(true);
+            s.setAddCrcToExtensionTypeText(".txt");
+            String[] delimiter = {s.getCrcDelimLeadingText(), s.getCrcDelimTrailingText()};
+            
+            File a = writeFile(folder.getRoot(), "a.txt", "a");
+            File b = writeFile(folder.newFolder("sub"), "b.txt", "b");
+            File c = writeFile(folder.getRoot(), "c.txt", "c");
+            File renamedA = new File(a.getParent(), getFilenameWithCRC("a.txt", ".txt", calculateCRC32(a), delimiter));
+            File renamedB = new File(b.getParent(), getFilenameWithCRC("b.txt", ".txt", calculateCRC32(b), delimiter));
+            File takenC = writeFile(folder.getRoot(), getFilenameWithCRC("c.txt", ".txt", calculateCRC32(c), delimiter), "c");
+            
+            scrFP = new SourceFileProcessor(folder.getRoot());
+            assertEquals(false, a.exists());
+            assertEquals(true, renamedA.exists());
+            assertEquals(true, renamedB.exists());
+            assertEquals(true, c.exists()); // name with CRC already taken, left as is
+            HashSet<String> names = new HashSet<String>();
+            for(SynchiveFile file : scrFP.getFiles())
+            {
+                names.add(file.getName());
+            }
+            assertEquals(4, names.size());
+            assertEquals(true, names.contains(renamedA.getName()));
+            assertEquals(true, names.contains(c.getName()));
+            assertEquals(true, names.contains(takenC.getName()));
+            assertEquals(true, new File(folder.getRoot(), RENAME_UNDO_FILE_NAME).exists());
+            
+            s.setCrcInFilenameFlag(false);
+            DestinationFileProcessor destFP = new DestinationFileProcessor(folder.getRoot()); // writes the idFile
+            assertEquals(2, destFP.undoRenames());
+            assertEquals(true, a.exists());
+            assertEquals(true, b.exists());
+            assertEquals(false, renamedA.exists());
+            assertEquals(false, new File(folder.getRoot(), RENAME_UNDO_FILE_NAME).exists());
+            
+            DestinationFileProcessor reread = new DestinationFileProcessor(folder.getRoot());
+            assertEquals(true, reread.getFiles().get("~0: ").doesFileExist(calculateCRC32(a) + " \"a.txt\""));
+            assertEquals(false, reread.getFiles().get("~0: ").doesFileExist(calculateCRC32(a) + " \"" + renamedA.getName() + "\""));
+        }
+        finally
+        {
+            s.setCrcInFilenameFlag(crcInFilename);
+            s.setAddCrcToExtensionTypeText(extensions);
+        }
+    }
+    
+    private File writeFile(File dir, String name, String content) throws IOException
+    {
+        File file = new File(dir, name);
+        FileWriter writer = new FileWriter(file);
+        writer.write(content);
+        writer.close();
+        return file;
+    }
 }
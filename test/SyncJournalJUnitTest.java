@@ -0,0 +1,106 @@
+import static org.junit.Assert.*;
+import static support.Utilities.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Hashtable;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import fileManagement.SyncJournal;
+import fileManagement.SyncJournal.Location;
+import fileManagement.SynchiveDirectory;
+import fileManagement.fileProcessor.DestinationFileProcessor;
+import synchive.RunControl;
+
+/**
+ * JUnit Test for resuming from the sync journal
+ *
+ * @author Tony Hsu
+ */
+public class SyncJournalJUnitTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRecordAndReload() throws IOException
+    {
+        SyncJournal journal = new SyncJournal(folder.getRoot());
+        assertEquals(false, journal.hasRecords());
+
+        journal.recordFile(Location.DESTINATION, "~0: ", "352441c2 \"abc\"");
+        journal.recordScannedDirectory(Location.SOURCE, "~1: " + separatorsToSystem("\\Test"),
+            Arrays.asList("00000000 \"file1\"", "5AD84AD3 \"file2\""));
+        journal.close();
+
+        journal = new SyncJournal(folder.getRoot());
+        assertEquals(true, journal.hasRecords());
+        assertEquals(Arrays.asList("352441c2 \"abc\""), journal.getFiles(Location.DESTINATION, "~0: "));
+        assertEquals(false, journal.isDirectoryScanned(Location.DESTINATION, "~0: "));
+        assertEquals(true, journal.isDirectoryScanned(Location.SOURCE, "~1: " + separatorsToSystem("\\Test")));
+        assertEquals(2, journal.getFiles(Location.SOURCE, "~1: " + separatorsToSystem("\\Test")).size());
+
+        journal.clear(Location.DESTINATION);
+        journal = new SyncJournal(folder.getRoot());
+        assertEquals(0, journal.getDirectories(Location.DESTINATION).size());
+        assertEquals(true, journal.isDirectoryScanned(Location.SOURCE, "~1: " + separatorsToSystem("\\Test")));
+
+        journal.delete();
+        assertEquals(false, new File(folder.getRoot(), JOURNAL_FILE_NAME).exists());
+    }
+
+    @Test
+    public void testPartialRecordIgnored() throws IOException
+    {
+        FileWriter writer = new FileWriter(new File(folder.getRoot(), JOURNAL_FILE_NAME));
+        writer.write("+d\t~0: \t00000000 \"file1\"\n");
+        writer.write("+s\t~0: \t00000000 \"file1\"\n");
+        writer.write("#s"); // cut off by power loss
+        writer.close();
+
+        SyncJournal journal = new SyncJournal(folder.getRoot());
+        assertEquals(1, journal.getFiles(Location.DESTINATION, "~0: ").size());
+        assertEquals(false, journal.isDirectoryScanned(Location.SOURCE, "~0: "));
+    }
+
+    @Test
+    public void testDestinationMergesJournal() throws IOException
+    {
+        File idFile = folder.newFile(ID_FILE_NAME);
+        FileWriter writer = new FileWriter(idFile);
+        writer.write("Synchive v1.1 - root=D:\\TestA\n");
+        writer.write("~0: \n");
+        writer.write("00000000 \"file1\"\n");
+        writer.close();
+
+        SyncJournal journal = new SyncJournal(folder.getRoot());
+        journal.recordFile(Location.DESTINATION, "~0: ", "5AD84AD3 \"file2\"");
+        journal.recordFile(Location.DESTINATION, "~1: " + separatorsToSystem("\\Test"), "70c4251b \"HIHI\"");
+        journal.close();
+
+        journal = new SyncJournal(folder.getRoot());
+        DestinationFileProcessor destFP = new DestinationFileProcessor(folder.getRoot(), new RunControl(), journal);
+        Hashtable<String, SynchiveDirectory> table = destFP.getFiles();
+        assertEquals(2, table.size());
+        assertEquals(true, table.get("~0: ").doesFileExist("00000000 \"file1\""));
+        assertEquals(true, table.get("~0: ").doesFileExist("5AD84AD3 \"file2\""));
+        assertEquals(true, table.get("~1: " + separatorsToSystem("\\Test")).doesFileExist("70c4251b \"HIHI\""));
+
+        // merged into idFile, journal no longer needs destination records
+        assertEquals(false, journal.hasRecords());
+    }
+
+    @Test
+    public void testStoppedRunControl()
+    {
+        RunControl control = new RunControl();
+        assertEquals(true, control.checkpoint());
+        control.stop();
+        assertEquals(false, control.checkpoint());
+    }
+}
@@ -0,0 +1,461 @@
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import fileManagement.CatalogEntry;
+import fileManagement.CatalogIndex;
+import fileManagement.CatalogManifest;
+import fileManagement.CatalogReader;
+import fileManagement.SyncJournal;
+import fileManagement.fileProcessor.DestinationFileProcessor;
+import support.DeltaEngine;
+import support.DiskOrder;
+import support.Utilities;
+import support.checksum.ChecksumAlgorithm;
+
+import synchive.EventCenter;
+import synchive.EventCenter.Events;
+import synchive.EventCenter.RunningStatusEvents;
+import synchive.HeadlessRunner;
+import synchive.RunConfig;
+import synchive.RunControl;
+import synchive.SyncPlan;
+import synchive.SyncPlan.Action;
+import synchive.SyncPlan.ActionType;
+import synchive.Settings;
+import synchive.SynchiveDiff;
+
+/**
+ * JUnit Test for planning and executing a sync
+ *
+ * @author Tony Hsu
+ */
+public class SyncPlanJUnitTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private void write(File file, String text) throws IOException
+    {
+        file.getParentFile().mkdirs();
+        FileWriter writer = new FileWriter(file);
+        writer.write(text);
+        writer.close();
+    }
+
+    @Test
+    public void testOrderedActions()
+    {
+        String sep = File.separator;
+        SyncPlan plan = new SyncPlan(new File("src"), new File("des"), ChecksumAlgorithm.CRC32);
+        plan.add(new Action(ActionType.COPY, sep + "a" + sep + "small", sep + "a" + sep + "small", "00000001", 1, "~1: " + sep + "a"));
+        plan.add(new Action(ActionType.SKIP, sep + "same", sep + "same", "00000002", 0, "~0: "));
+        plan.add(new Action(ActionType.COPY, sep + "b", sep + "b", "00000003", 5, "~0: "));
+        plan.add(new Action(ActionType.COPY, sep + "a" + sep + "large", sep + "a" + sep + "large", "00000004", 10, "~1: " + sep + "a"));
+        plan.add(new Action(ActionType.MKDIR, "", sep + "a", "", 0, "~1: " + sep + "a"));
+        plan.add(new Action(ActionType.MOVE_TO_LEFTOVERS, sep + "b", sep + "~leftovers" + sep + "b", "00000005", 0, "~0: "));
+
+        assertEquals(3, plan.getCount(ActionType.COPY));
+        assertEquals(16, plan.getBytes(ActionType.COPY));
+
+        ArrayList<Action> ordered = plan.getOrderedActions();
+        assertEquals(5, ordered.size());
+        assertEquals(ActionType.MOVE_TO_LEFTOVERS, ordered.get(0).getType()); // replaced file moved before copy
+        assertEquals(ActionType.MKDIR, ordered.get(1).getType());
+        assertEquals(sep + "b", ordered.get(2).getDestination()); // root directory batch
+        assertEquals(sep + "a" + sep + "large", ordered.get(3).getDestination()); // large files first
+        assertEquals(sep + "a" + sep + "small", ordered.get(4).getDestination());
+        assertEquals("00000004 \"large\"", ordered.get(3).getFileID());
+    }
+
+    @Test
+    public void testDiskOrder() throws Exception
+    {
+        String sep = File.separator;
+        File src = folder.newFolder("src");
+        SyncPlan plan = new SyncPlan(src, folder.newFolder("des"), ChecksumAlgorithm.CRC32);
+        File[] files = new File[20];
+        for(int i = 0; i < files.length; i++)
+        {
+            files[i] = new File(src, "a" + sep + "f" + (i * 7 % files.length)); // names not in creation order
+            write(files[i], "file " + i);
+            plan.add(new Action(ActionType.COPY, sep + "a" + sep + files[i].getName(), sep + "a" + sep + files[i].getName(),
+                "0000000" + (i % 10), i % 3, "~1: " + sep + "a"));
+        }
+        write(new File(src, "b"), "root");
+        plan.add(new Action(ActionType.COPY, sep + "b", sep + "b", "00000001", 4, "~0: "));
+
+        ArrayList<Action> ordered = plan.getOrderedActions(true);
+        assertEquals(21, ordered.size());
+        assertEquals(sep + "b", ordered.get(0).getDestination()); // still batched per directory
+        for(int i = 2; i < ordered.size(); i++)
+        {
+            assertTrue(DiskOrder.getFileKey(new File(src.getPath() + ordered.get(i - 1).getSource())) <=
+                DiskOrder.getFileKey(new File(src.getPath() + ordered.get(i).getSource())));
+        }
+
+        File[] sorted = new File(src, "a").listFiles();
+        DiskOrder.sort(sorted);
+        assertEquals(files.length, sorted.length);
+        for(int i = 1; i < sorted.length; i++)
+        {
+            assertTrue(DiskOrder.getFileKey(sorted[i - 1]) <= DiskOrder.getFileKey(sorted[i]));
+        }
+    }
+
+    @Test
+    public void testPlanRoundTripAndExecute() throws Exception
+    {
+        File src = folder.newFolder("src");
+        File des = folder.newFolder("des");
+        write(new File(src, "x.txt"), "new");
+        write(new File(src, "a" + File.separator + "y.txt"), "yo");
+        write(new File(des, "x.txt"), "old");
+        write(new File(des, "gone.txt"), "gone");
+        write(new File(des, "old" + File.separator + "deep" + File.separator + "z.txt"), "z");
+
+        SyncPlan plan = new SynchiveDiff(src, des, true).planLocations();
+        assertEquals(2, plan.getCount(ActionType.COPY));
+        assertEquals(5, plan.getBytes(ActionType.COPY));
+        assertEquals(1, plan.getCount(ActionType.MKDIR));
+        assertEquals(3, plan.getCount(ActionType.MOVE_TO_LEFTOVERS));
+        assertEquals(false, new File(des, "a").exists()); // dry run left disk untouched
+
+        File planFile = folder.newFile("plan.txt");
+        plan.writeToFile(planFile);
+        plan = SyncPlan.readFromFile(planFile);
+        assertEquals(2, plan.getCount(ActionType.COPY));
+        assertEquals(3, plan.getCount(ActionType.MOVE_TO_LEFTOVERS));
+
+        new SynchiveDiff(plan.getSource(), plan.getDestination()).executePlan(plan);
+        assertEquals(true, new File(des, "a" + File.separator + "y.txt").exists());
+        assertEquals(3, new File(des, "x.txt").length()); // new version kept, old one in leftovers
+        assertEquals(true, new File(des, "~leftovers" + File.separator + "x.txt").exists());
+        assertEquals(true, new File(des, "~leftovers" + File.separator + "gone.txt").exists());
+        assertEquals(true, new File(des, "~leftovers" + File.separator + "old" + File.separator + "deep" + File.separator + "z.txt").exists());
+        assertEquals(false, new File(des, "old").exists()); // emptied directories pruned
+
+        plan = new SynchiveDiff(src, des, true).planLocations();
+        assertEquals(2, plan.getCount(ActionType.SKIP));
+        assertEquals(0, plan.getActions().size()); // files kept are only counted
+        plan.writeToFile(planFile);
+        assertEquals(1, Files.readAllLines(planFile.toPath()).size()); // header only
+    }
+
+    @Test
+    public void testDedupHardlinks() throws Exception
+    {
+        File src = folder.newFolder("src");
+        File des = folder.newFolder("des");
+        write(new File(src, "kept.txt"), "same");
+        write(new File(src, "a" + File.separator + "copy1.txt"), "same");
+        write(new File(src, "b" + File.separator + "one.txt"), "unique");
+        write(new File(src, "b" + File.separator + "two.txt"), "unique");
+        write(new File(des, "kept.txt"), "same");
+
+        Settings.getInstance().setDedupFlag(true);
+        Settings.getInstance().setDedupVerifyFlag(true);
+        try
+        {
+            SyncPlan plan = new SynchiveDiff(src, des, true).planLocations();
+            assertEquals(1, plan.getCount(ActionType.COPY)); // first of b/one.txt, b/two.txt
+            assertEquals(2, plan.getCount(ActionType.LINK));
+
+            new SynchiveDiff(src, des).executePlan(plan);
+        }
+        finally
+        {
+            Settings.getInstance().setDedupFlag(false);
+            Settings.getInstance().setDedupVerifyFlag(false);
+        }
+        assertTrue(Files.isSameFile(new File(des, "kept.txt").toPath(),
+            new File(des, "a" + File.separator + "copy1.txt").toPath()));
+        assertTrue(Files.isSameFile(new File(des, "b" + File.separator + "one.txt").toPath(),
+            new File(des, "b" + File.separator + "two.txt").toPath()));
+    }
+
+    @Test
+    public void testMultipleDestinations() throws Exception
+    {
+        File src = folder.newFolder("src");
+        File des1 = folder.newFolder("des1");
+        File des2 = new File(folder.getRoot(), "des2"); // created by sync
+        write(new File(src, "x.txt"), "new");
+        write(new File(src, "a" + File.separator + "y.txt"), "yo");
+        write(new File(des1, "x.txt"), "old");
+
+        new SynchiveDiff(src, Arrays.asList(des1, des2)).syncLocations();
+        for(File des : new File[] {des1, des2})
+        {
+            assertEquals("new", new String(Files.readAllBytes(new File(des, "x.txt").toPath())));
+            assertEquals("yo", new String(Files.readAllBytes(new File(des, "a" + File.separator + "y.txt").toPath())));
+        }
+        assertEquals(true, new File(des1, "~leftovers" + File.separator + "x.txt").exists());
+        assertEquals(false, new File(des2, "~leftovers").exists());
+    }
+
+    @Test
+    public void testDeltaUpdate() throws Exception
+    {
+        File src = folder.newFolder("src");
+        File des = folder.newFolder("des");
+        byte[] data = new byte[3 * 1024 * 1024]; // several blocks, one changes
+        Files.write(new File(src, "big.db").toPath(), data);
+        new SynchiveDiff(src, des).syncLocations();
+        data[1024 * 1024 + 5] = 1;
+        Files.write(new File(src, "big.db").toPath(), data);
+
+        Settings.getInstance().setDeltaFlag(true);
+        Settings.getInstance().setDeltaMinSize(0);
+        try
+        {
+            SyncPlan plan = new SynchiveDiff(src, des, true).planLocations();
+            assertEquals(1, plan.getCount(ActionType.UPDATE));
+            assertEquals(0, plan.getCount(ActionType.MOVE_TO_LEFTOVERS)); // older version updated, not moved
+            new SynchiveDiff(src, des).executePlan(plan);
+        }
+        finally
+        {
+            Settings.getInstance().setDeltaFlag(false);
+            Settings.getInstance().setDeltaMinSize(64L * 1024 * 1024);
+        }
+        assertArrayEquals(data, Files.readAllBytes(new File(des, "big.db").toPath()));
+        assertEquals(false, new File(des, "~leftovers").exists());
+    }
+
+    @Test
+    public void testInterruptedDeltaUpdate() throws Exception
+    {
+        File src = folder.newFolder("src");
+        File des = folder.newFolder("des");
+        byte[] original = new byte[2 * 1024 * 1024];
+        Files.write(new File(src, "big.db").toPath(), original);
+        new SynchiveDiff(src, des).syncLocations();
+        byte[] data = original.clone();
+        Arrays.fill(data, 0, data.length, (byte)7);
+        Files.write(new File(src, "big.db").toPath(), data);
+
+        // an update stopped after its first block was rewritten, as left by a crash
+        File big = new File(des, "big.db");
+        SyncJournal journal = new SyncJournal(des);
+        journal.recordUpdate(File.separator + "big.db");
+        journal.close();
+        ByteBuffer undo = ByteBuffer.allocate(8 + 12 + 1024 * 1024);
+        undo.putLong(original.length).putLong(0).putInt(1024 * 1024).put(original, 0, 1024 * 1024);
+        Files.write(DeltaEngine.getUndoFile(big), undo.array());
+        RandomAccessFile file = new RandomAccessFile(big, "rw");
+        file.write(data, 0, 1024 * 1024);
+        file.close();
+
+        new SynchiveDiff(src, des).syncLocations(); // without delta mode, older version is moved to leftovers
+        assertArrayEquals(data, Files.readAllBytes(big.toPath()));
+        assertArrayEquals(original, Files.readAllBytes(new File(des, "~leftovers" + File.separator + "big.db").toPath()));
+        assertEquals(false, Files.exists(DeltaEngine.getUndoFile(big)));
+    }
+
+    @Test
+    public void testQuickCompare() throws Exception
+    {
+        File src = folder.newFolder("src");
+        File des = folder.newFolder("des");
+        File same = new File(src, "same.txt");
+        write(same, "aaaa");
+        write(new File(src, "grown.txt"), "b");
+
+        Settings.getInstance().setQuickCompareFlag(true);
+        try
+        {
+            new SynchiveDiff(src, des).syncLocations();
+            assertEquals(same.lastModified(), new File(des, "same.txt").lastModified()); // time kept on copy
+
+            long modified = same.lastModified();
+            write(same, "cccc"); // same size and time, only reading would notice
+            same.setLastModified(modified);
+            write(new File(src, "grown.txt"), "bb");
+
+            SyncPlan plan = new SynchiveDiff(src, des, true).planLocations(); // destination metadata read from idFile
+            assertEquals(1, plan.getCount(ActionType.COPY));
+            assertEquals("\"grown.txt\"", plan.getOrderedActions().get(plan.getOrderedActions().size() - 1)
+                .getFileID().split(" ", 2)[1]);
+        }
+        finally
+        {
+            Settings.getInstance().setQuickCompareFlag(false);
+        }
+    }
+
+    @Test
+    public void testRunConfigSnapshot() throws Exception
+    {
+        File src = folder.newFolder("src");
+        File des = folder.newFolder("des");
+        write(new File(src, "x.txt"), "new");
+
+        RunConfig config = RunConfig.fromSettings();
+        Settings.getInstance().setMergeJoinFlag(true);
+        RunConfig mergeJoinConfig = RunConfig.fromSettings();
+        Settings.getInstance().setMergeJoinFlag(false);
+        Settings.getInstance().setChecksumAlgorithm(ChecksumAlgorithm.SHA256); // changed while the runs are set up
+        try
+        {
+            for(RunConfig runConfig : new RunConfig[] {config, mergeJoinConfig})
+            {
+                SyncPlan plan = new SynchiveDiff(src, Arrays.asList(des), true, runConfig).planLocations();
+                assertEquals(ChecksumAlgorithm.CRC32, plan.getChecksumAlgorithm());
+                assertEquals(1, plan.getCount(ActionType.COPY));
+                assertEquals(ChecksumAlgorithm.CRC32.calculate(new File(src, "x.txt")),
+                    plan.getOrderedActions().get(plan.getOrderedActions().size() - 1).getFileID().split(" ", 2)[0]);
+            }
+        }
+        finally
+        {
+            Settings.getInstance().setChecksumAlgorithm(ChecksumAlgorithm.CRC32);
+        }
+    }
+
+    @Test
+    public void testMergeJoin() throws Exception
+    {
+        File src = folder.newFolder("src");
+        File des = folder.newFolder("des");
+        write(new File(src, "x.txt"), "new");
+        write(new File(src, "b" + File.separator + "y.txt"), "yo");
+        write(new File(src, "a" + File.separator + "z.txt"), "z");
+        write(new File(des, "x.txt"), "old");
+        write(new File(des, "gone.txt"), "gone");
+
+        Settings.getInstance().setMergeJoinFlag(true);
+        try
+        {
+            SyncPlan plan = new SynchiveDiff(src, des, true).planLocations();
+            assertEquals(3, plan.getCount(ActionType.COPY));
+            assertEquals(2, plan.getCount(ActionType.MOVE_TO_LEFTOVERS)); // changed x.txt and gone.txt
+
+            new SynchiveDiff(src, des).syncLocations();
+            assertEquals(3, new File(des, "x.txt").length());
+            assertEquals(true, new File(des, "~leftovers" + File.separator + "gone.txt").exists());
+
+            // idFile is written sorted, so it streams without being loaded
+            CatalogReader catalog = new CatalogReader(new File(des, Utilities.ID_FILE_NAME));
+            int count = 0;
+            CatalogEntry previous = null;
+            for(CatalogEntry entry = catalog.next(); entry != null; entry = catalog.next())
+            {
+                assertEquals(true, previous == null || previous.compareTo(entry) < 0);
+                previous = entry;
+                count++;
+            }
+            catalog.close();
+            assertEquals(3, count);
+
+            plan = new SynchiveDiff(src, des, true).planLocations();
+            assertEquals(0, plan.getCount(ActionType.COPY));
+            assertEquals(0, plan.getCount(ActionType.MOVE_TO_LEFTOVERS));
+            assertEquals(3, plan.getCount(ActionType.SKIP));
+        }
+        finally
+        {
+            Settings.getInstance().setMergeJoinFlag(false);
+        }
+    }
+
+    @Test
+    public void testDiskIndex() throws Exception
+    {
+        File src = folder.newFolder("src");
+        File des = folder.newFolder("des");
+        write(new File(src, "keep.txt"), "keep");
+        File old = new File(src, "sub" + File.separator + "old.txt");
+        write(old, "old");
+
+        Settings.getInstance().setDiskIndexFlag(true);
+        try
+        {
+            new SynchiveDiff(src, des).syncLocations();
+            assertEquals(true, new File(des, Utilities.INDEX_FILE_NAME).exists());
+            assertEquals(RunConfig.INDEX_SHARD_DEPTH, CatalogManifest.read(des).getDepth()); // sharded so shards stay unread
+            assertNull(new DestinationFileProcessor(des, new RunControl(), null, true).getFilter()); // shards left to read in
+
+            old.delete();
+            write(new File(src, "new.txt"), "new");
+            new SynchiveDiff(src, des).syncLocations();
+            assertEquals(true, new File(des, "new.txt").exists());
+            assertEquals(true, new File(des, "~leftovers" + File.separator + "sub" + File.separator + "old.txt").exists());
+            assertEquals(true, new File(des, "keep.txt").exists());
+
+            CatalogIndex index = CatalogIndex.open(des, Settings.getInstance().getChecksumAlgorithm());
+            assertEquals(false, index.wasRebuilt()); // kept in step with the idFile, reopened as is
+            assertEquals(2, index.getCount());
+            for(int i = 0; i < 1000; i++) // grown past 70% of the fewest slots while mapped
+            {
+                index.put("~0: ", "0000000" + (i % 10) + " \"grown" + i + ".txt\"", null);
+            }
+            assertNotNull(index.mark("~0: ", "00000005 \"grown995.txt\""));
+            assertEquals(1002, index.getCount());
+            index.close();
+            
+            Settings.getInstance().setDiskIndexFlag(false);
+            write(new File(src, "stale.txt"), "stale");
+            new SynchiveDiff(src, des).syncLocations(); // idFile changed without the index
+            Settings.getInstance().setDiskIndexFlag(true);
+            index = CatalogIndex.open(des, Settings.getInstance().getChecksumAlgorithm());
+            assertEquals(true, index.wasRebuilt()); // written as a new file, the mapped one is not replaced
+            assertEquals(3, index.getCount());
+            index.close();
+            String[] indexFiles = des.list((dir, name) -> name.startsWith(Utilities.INDEX_FILE_NAME));
+            assertEquals(Arrays.toString(indexFiles), 1, indexFiles.length); // older files deleted once unmapped
+        }
+        finally
+        {
+            Settings.getInstance().setDiskIndexFlag(false);
+        }
+    }
+
+    @Test
+    public void testHeadlessRunner() throws Exception
+    {
+        File src = folder.newFolder("src");
+        File des = folder.newFolder("des");
+        write(new File(src, "a" + File.separator + "x.txt"), "x");
+
+        ByteArrayOutputStream console = new ByteArrayOutputStream();
+        HeadlessRunner runner = new HeadlessRunner(new PrintStream(console, true));
+        assertEquals(true, runner.run(src, new ArrayList<File>(Arrays.asList(des))));
+        assertEquals(RunningStatusEvents.Completed, runner.getState());
+        assertEquals(true, new File(des, "a" + File.separator + "x.txt").exists());
+        assertEquals(true, console.toString().contains("Completed in: "));
+        assertEquals("", runner.getErrorLogs());
+        
+        write(new File(src, "y.txt"), "y");
+        Object id = new Object();
+        EventCenter.getInstance().subscribeEvent(Events.Status, id, (str) -> { // a copy failing mid-run
+            EventCenter.getInstance().unsubscribeAllEvents(id);
+            EventCenter.getInstance().postEvent(Events.ErrorOccurred, "Unable to copy file y.txt");
+        });
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        runner = new HeadlessRunner(new PrintStream(console, true), new PrintStream(errors, true));
+        try
+        {
+            assertEquals(false, runner.run(src, new ArrayList<File>(Arrays.asList(des)))); // exits non-zero
+        }
+        finally
+        {
+            EventCenter.getInstance().unsubscribeAllEvents(id);
+        }
+        assertEquals(RunningStatusEvents.Completed, runner.getState());
+        assertEquals(true, errors.toString().contains("Unable to copy file y.txt"));
+    }
+}
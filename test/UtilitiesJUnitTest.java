@@ -5,7 +5,12 @@ import static org.junit.Assert.*;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.time.LocalTime;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 
 import org.junit.After;
@@ -16,8 +21,16 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
+import fileManagement.SynchiveFile;
+import support.BloomFilter;
+import support.ExtensionScanner;
+import support.ExtensionScanner.ExtensionScannerDelegate;
+import support.Throttle;
+import support.Tracer;
 import support.Utilities;
 import support.Utilities.ChecksumException;
+import synchive.RunConfig;
+import synchive.Settings;
 
 /**
  * JUnit Test Runner
@@ -142,6 +155,54 @@ public class UtilitiesJUnitTest
         assertEquals(Arrays.toString(expectedArr), Arrays.toString(actualArr));
     }
     
+    @Test
+    public void testExtensionScanner() throws IOException
+    {
+        for(int i = 0; i < 20; i++)
+        {
+            File dir = folder.newFolder("dir" + i, "sub");
+            FileWriter writer = new FileWriter(new File(dir, "file" + i + ".txt"));
+            writer.write("1234");
+            writer.close();
+            new File(dir, "song" + i + ".mp3").createNewFile();
+        }
+        folder.newFile("no_extension");
+        
+        List<String> found = Collections.synchronizedList(new ArrayList<String>());
+        ExtensionScanner scanner = new ExtensionScanner(new ExtensionScannerDelegate()
+        {
+            public void extensionFound(String extension)
+            {
+                found.add(extension);
+            }
+            
+            public boolean isCancelled()
+            {
+                return false;
+            }
+        });
+        assertEquals(true, scanner.scan(new File[] {folder.getRoot()}));
+        Collections.sort(found);
+        assertEquals("[.mp3, .txt]", found.toString()); // each reported once
+        assertEquals(20, scanner.getExtensions().get(".txt")[0]);
+        assertEquals(80, scanner.getExtensions().get(".txt")[1]);
+        assertEquals(0, scanner.getExtensions().get(".mp3")[1]);
+        
+        ExtensionScanner cancelled = new ExtensionScanner(new ExtensionScannerDelegate()
+        {
+            public void extensionFound(String extension)
+            {
+            }
+            
+            public boolean isCancelled()
+            {
+                return true;
+            }
+        });
+        assertEquals(false, cancelled.scan(new File[] {folder.getRoot()}));
+        assertEquals(0, cancelled.getExtensions().size());
+    }
+    
     @Test
     public void testAddSeparator()
     {
@@ -197,4 +258,158 @@ public class UtilitiesJUnitTest
         }
     }
     
+    @Test
+    public void testBloomFilter()
+    {
+        BloomFilter filter = new BloomFilter(1000, 0.01);
+        for(int i = 0; i < 1000; i++)
+        {
+            filter.add("added" + i);
+        }
+        for(int i = 0; i < 1000; i++)
+        {
+            assertEquals(true, filter.mightContain("added" + i));
+        }
+        int maybe = 0;
+        for(int i = 0; i < 1000; i++)
+        {
+            maybe += filter.mightContain("other" + i) ? 1 : 0;
+        }
+        assertEquals(true, maybe < 50);
+        assertEquals(2000, filter.getLookups());
+        assertEquals(1000 - maybe, filter.getMisses());
+    }
+    
+    @Test
+    public void testRunConfig() throws Exception
+    {
+        Settings s = Settings.getInstance();
+        String skipExtensions = s.getSkipExtensionTypesText();
+        String skipFolders = s.getSkipFoldersName();
+        String delimiters = s.getCrcDelimiterText();
+        try
+        {
+            s.setSkipExtensionTypesText("MP3, \".tmp\"");
+            s.setSkipFoldersName("\"Folder One\", \"Folder Two\", Three");
+            s.setCrcDelimiterText("[], (),");
+            RunConfig config = RunConfig.fromSettings();
+            s.setSkipExtensionTypesText(""); // changes apply to the next run only
+            
+            assertEquals(true, config.isExtensionSkipped(".mp3"));
+            assertEquals(true, config.isExtensionSkipped(".TMP"));
+            assertEquals(false, config.isExtensionSkipped(""));
+            assertEquals(false, RunConfig.fromSettings().isExtensionSkipped(".mp3"));
+            assertEquals(true, config.isFolderSkipped("Folder One")); // quoted as in the tooltip
+            assertEquals(true, config.isFolderSkipped("Folder Two"));
+            assertEquals(true, config.isFolderSkipped("Three"));
+            assertEquals(false, config.isFolderSkipped("Folder"));
+            
+            SynchiveFile file = new SynchiveFile(new File(folder.getRoot(), "name (0123ABCD) [deadbeef].txt"));
+            assertEquals(true, file.getHasCRCInFilename(config.getCrcPatterns()));
+            file.setCRC32("deadbeef");
+            assertEquals(true, file.determineCopyingAllowed(config.getCrcPatterns()));
+            assertEquals(false, new SynchiveFile(new File("name 0123ABCD.txt")).getHasCRCInFilename(config.getCrcPatterns()));
+            assertEquals(true, new SynchiveFile(new File("name 0123ABCD.txt")).getHasCRCInFilename(""));
+        }
+        finally
+        {
+            s.setSkipExtensionTypesText(skipExtensions);
+            s.setSkipFoldersName(skipFolders);
+            s.setCrcDelimiterText(delimiters);
+        }
+    }
+    
+    @Test
+    public void testThrottle() throws Exception
+    {
+        assertEquals(50L * 1024 * 1024, Throttle.parseRate("50M"));
+        assertEquals(1536, Throttle.parseRate(" 1.5kb"));
+        assertEquals(200, Throttle.parseRate("200"));
+        assertEquals(0, Throttle.parseRate(""));
+        try
+        {
+            Throttle.parseRate("fast");
+            fail("Invalid rate parsed");
+        }
+        catch (NumberFormatException e)
+        {
+        }
+        
+        Settings s = Settings.getInstance();
+        Throttle throttle = Throttle.getInstance();
+        String[] previous = {s.getThrottleReadRateText(), s.getThrottleWriteIopsText(), s.getThrottleScheduleText(),
+            s.getThrottleControlFile()};
+        try
+        {
+            s.setThrottleScheduleText("09:00-18:00");
+            assertEquals(true, throttle.isScheduled(LocalTime.of(9, 0)));
+            assertEquals(false, throttle.isScheduled(LocalTime.of(18, 0)));
+            s.setThrottleScheduleText("22:00-06:00, 12:00-13:00");
+            assertEquals(true, throttle.isScheduled(LocalTime.of(23, 30)));
+            assertEquals(true, throttle.isScheduled(LocalTime.of(5, 59)));
+            assertEquals(true, throttle.isScheduled(LocalTime.of(12, 30)));
+            assertEquals(false, throttle.isScheduled(LocalTime.of(8, 0)));
+            s.setThrottleScheduleText("9-");
+            assertEquals(true, throttle.isScheduled(LocalTime.of(23, 30))); // invalid keeps the schedule in effect
+            s.setThrottleScheduleText("");
+            assertEquals(false, throttle.isLimiting());
+            
+            // a second of burst, then paced at the rate
+            s.setThrottleReadRateText("4M");
+            s.setThrottleWriteIopsText("20");
+            assertEquals(true, throttle.isLimiting());
+            long start = System.nanoTime();
+            throttle.acquireRead(4 * 1024 * 1024);
+            assertTrue(System.nanoTime() - start < 300000000L);
+            throttle.acquireRead(2 * 1024 * 1024);
+            long elapsed = System.nanoTime() - start;
+            assertTrue("Read not paced: " + elapsed, elapsed >= 400000000L && elapsed < 3000000000L);
+            start = System.nanoTime();
+            for(int i = 0; i < 30; i++)
+            {
+                throttle.acquireWrite(1);
+            }
+            elapsed = System.nanoTime() - start;
+            assertTrue("Writes not paced: " + elapsed, elapsed >= 400000000L && elapsed < 3000000000L);
+            
+            // limits from a control file override and are lifted by it
+            File control = folder.newFile("throttle.txt");
+            FileWriter writer = new FileWriter(control);
+            writer.write("readRate=1M\nwriteIops=\nbogus\n");
+            writer.close();
+            s.setThrottleControlFile(control.getPath());
+            assertEquals(true, throttle.isLimiting());
+            assertArrayEquals(new long[] {1024 * 1024, 0, 0, 0}, throttle.getLimits());
+        }
+        finally
+        {
+            s.setThrottleReadRateText(previous[0]);
+            s.setThrottleWriteIopsText(previous[1]);
+            s.setThrottleScheduleText(previous[2]);
+            s.setThrottleControlFile(previous[3]);
+        }
+        assertEquals(false, throttle.isLimiting());
+    }
+    
+    @Test
+    public void testTracer() throws Exception
+    {
+        assertEquals(0, Tracer.begin()); // not recording
+        Tracer.start();
+        long span = Tracer.begin();
+        Thread thread = new Thread(() -> Tracer.end("hash", Tracer.begin(), "C:\\dir\\\"quoted\".txt"), "worker");
+        thread.start();
+        thread.join();
+        Tracer.end("list directory", span, "/dir");
+        File trace = new File(folder.getRoot(), Tracer.TRACE_FILE_NAME);
+        assertEquals(2, Tracer.stop(trace));
+        assertEquals(0, Tracer.begin());
+        
+        String json = new String(Files.readAllBytes(trace.toPath()), "UTF-8");
+        assertTrue(json.startsWith("{\"traceEvents\":["));
+        assertTrue(json.contains("\"name\":\"list directory\",\"cat\":\"synchive\",\"ph\":\"X\""));
+        assertTrue(json.contains("\"args\":{\"path\":\"C:\\\\dir\\\\\\\"quoted\\\".txt\"}"));
+        assertTrue(json.contains("\"args\":{\"name\":\"worker\"}"));
+        assertEquals(4, json.split("\n").length - 2); // a thread name and a span per thread
+    }
 }